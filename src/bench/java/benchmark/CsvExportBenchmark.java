@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.QueryResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.squareup.moshi.Moshi;
+
+import influx.RecordingInfluxDB;
+import influx.export.QueryExport;
+
+/**
+ * Exports a recorded query result of 500 Ethereum blocks into a CSV file the way
+ * the console export does, the result is streamed from an in-memory database
+ *
+ * @author Yannick
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvExportBenchmark {
+
+	private InfluxDB influxDB;
+	private File directory;
+
+	@Setup
+	public void setup() throws IOException {
+		String json = new String(Fixtures.load("ethereum-query.json"), StandardCharsets.UTF_8);
+		QueryResult result = new Moshi.Builder().build().adapter(QueryResult.class).fromJson(json);
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		recorder.addChunk(result);
+		influxDB = RecordingInfluxDB.create(recorder);
+		directory = Files.createTempDirectory("csv-export").toFile();
+	}
+
+	@TearDown
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		directory.delete();
+	}
+
+	@Benchmark
+	public long export() throws InterruptedException {
+		QueryExport export = new QueryExport(influxDB, directory, QueryExport.DEFAULT_CHUNK_SIZE);
+		// the file is overwritten by every run
+		export.setFileSuffix(".csv");
+		return export.run("SELECT * FROM Ethereum");
+	}
+}
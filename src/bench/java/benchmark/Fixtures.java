@@ -0,0 +1,40 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads the recorded node and database responses the benchmarks run on, so
+ * they don't need a node or a database
+ *
+ * @author Yannick
+ *
+ */
+public class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Reads a fixture from the classpath
+	 *
+	 * @param name
+	 *            - The file name in the fixtures folder
+	 * @return The content of the fixture
+	 * @throws IOException
+	 *             if the fixture doesn't exist or couldn't be read
+	 */
+	public static byte[] load(String name) throws IOException {
+		try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+			if (in == null)
+				throw new IOException("Fixture " + name + " not found!");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return out.toByteArray();
+		}
+	}
+}
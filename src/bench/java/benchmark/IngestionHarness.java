@@ -0,0 +1,178 @@
+package benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import blockchain.ethereum.EthereumAdapter;
+import blockchain.ethereum.StubRpcNode;
+import blockchain.ethereum.SyntheticChain;
+import client.Client;
+import influx.LineProtocolSink;
+import metrics.LatencyHistogram;
+
+/**
+ * Load test of the whole ingestion path: a {@link SyntheticChain} is mined at a
+ * fixed rate and served by a local {@link StubRpcNode}, the real
+ * {@link Client} polls it over HTTP and writes into a
+ * {@link LineProtocolSink}. Every second the mined and stored blocks and the
+ * latency from the announcement of a block till its record was written are
+ * printed, at the end the sustained rate and the latency percentiles of the
+ * whole run. Settings are passed as key=value pairs:
+ *
+ * <pre>
+ * rate=2000 seconds=30 uncleRate=0.3 reorgRate=0.05 transactions=20 pollingInterval=100
+ * </pre>
+ *
+ * @author Yannick
+ *
+ */
+public class IngestionHarness {
+
+	private static final String CLIENT_NAME = "HarnessClient";
+	private static final long DRAIN_TIMEOUT = 30000;
+	// Seconds of blocks the chain keeps for the client to catch up
+	private static final int RETAINED_SECONDS = 10;
+
+	private final int rate;
+	private final int seconds;
+	private final int pollingInterval;
+	private final SyntheticChain chain;
+	private final StubRpcNode node;
+	private final LineProtocolSink sink = new LineProtocolSink();
+	// Announcement times of the blocks that weren't stored yet
+	private final Map<String, Long> pending = new ConcurrentHashMap<>();
+	private final LongAdder mined = new LongAdder();
+	private final LongAdder stored = new LongAdder();
+	private final LatencyHistogram intervalLatency = new LatencyHistogram(1000);
+	private final LatencyHistogram totalLatency = new LatencyHistogram(TimeUnit.HOURS.toMillis(1));
+
+	public IngestionHarness(Map<String, String> settings) throws Exception {
+		rate = Integer.parseInt(get(settings, "rate", "2000"));
+		seconds = Integer.parseInt(get(settings, "seconds", "30"));
+		pollingInterval = Integer.parseInt(get(settings, "pollingInterval", "100"));
+		chain = new SyntheticChain(Long.parseLong(get(settings, "seed", "42")),
+				Double.parseDouble(get(settings, "uncleRate", "0.3")),
+				Double.parseDouble(get(settings, "reorgRate", "0.05")),
+				Integer.parseInt(get(settings, "transactions", "20")),
+				Math.max(SyntheticChain.DEFAULT_CAPACITY, rate * RETAINED_SECONDS));
+		node = new StubRpcNode(chain, 0);
+		sink.setListener(record -> {
+			if (!record.getMeasurement().equals("Ethereum") || Boolean.parseBoolean(record.get("Orphan")))
+				return;
+			Long announced = pending.remove(record.get("Hash"));
+			if (announced == null)
+				return;
+			intervalLatency.recordSince(announced);
+			totalLatency.recordSince(announced);
+			stored.increment();
+		});
+	}
+
+	private static String get(Map<String, String> settings, String key, String defaultValue) {
+		String value = settings.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Mines blocks at the configured rate for the configured time and waits till
+	 * the client stored them
+	 *
+	 * @return <code>true</code> if every block was stored and every record was
+	 *         valid
+	 */
+	public boolean run() throws InterruptedException {
+		node.start();
+		Client client = new Client(CLIENT_NAME, LineProtocolSink.create(sink),
+				new EthereumAdapter(node.getAddress()), pollingInterval);
+		client.start();
+		System.out.println("Mining " + rate + " blocks/s for " + seconds + "s, node at " + node.getAddress());
+
+		long start = System.nanoTime();
+		long end = start + TimeUnit.SECONDS.toNanos(seconds);
+		long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+		long reportedMined = 0;
+		long reportedStored = 0;
+		long now;
+		while ((now = System.nanoTime()) < end) {
+			// mine the heights the rate is behind
+			long target = (now - start) * rate / TimeUnit.SECONDS.toNanos(1);
+			while (mined.sum() < target) {
+				List<String> announced = chain.mine();
+				long announcedNanos = System.nanoTime();
+				for (String hash : announced)
+					if (chain.isMainchain(hash))
+						pending.put(hash, announcedNanos);
+				node.announce(announced);
+				mined.increment();
+			}
+			if (now >= nextReport) {
+				reportedMined = report(reportedMined, reportedStored);
+				reportedStored = stored.sum();
+				nextReport += TimeUnit.SECONDS.toNanos(1);
+			}
+			Thread.sleep(1);
+		}
+		long miningNanos = System.nanoTime() - start;
+
+		long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+		while (!pending.isEmpty() && System.currentTimeMillis() < deadline)
+			Thread.sleep(pollingInterval);
+		long totalNanos = System.nanoTime() - start;
+		client.stopClient();
+		node.stop();
+
+		LatencyHistogram.Snapshot latency = totalLatency.snapshot();
+		System.out.println();
+		System.out.println(String.format("Mined %d blocks and %d orphans in %.1fs, stored %d in %.1fs", mined.sum(),
+				chain.getOrphanedBlocks(), miningNanos / 1e9, stored.sum(), totalNanos / 1e9));
+		System.out.println(String.format("Sustained %.0f blocks/s", stored.sum() / (totalNanos / 1e9)));
+		System.out.println(String.format("Latency ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f",
+				latency.getSum() * 1000 / Math.max(1, latency.getCount()), latency.getQuantiles()[0] * 1000,
+				latency.getQuantiles()[1] * 1000, latency.getQuantiles()[2] * 1000, latency.getQuantiles()[3] * 1000,
+				latency.getMax() * 1000));
+		System.out.println(String.format("Node: %d requests in %d HTTP requests, sink: %d records in %d writes",
+				node.getRequests(), node.getHttpRequests(), sink.getRecords(), sink.getWriteCalls()));
+		System.out.println("Missing blocks: " + pending.size() + ", invalid records: " + sink.getInvalidRecords());
+		for (String error : sink.getErrors())
+			System.out.println("  " + error);
+		return pending.isEmpty() && sink.getInvalidRecords() == 0;
+	}
+
+	/**
+	 * Prints the blocks of the last second
+	 *
+	 * @return The number of mined blocks
+	 */
+	private long report(long reportedMined, long reportedStored) {
+		long minedNow = mined.sum();
+		long storedNow = stored.sum();
+		LatencyHistogram.Snapshot latency = intervalLatency.snapshot();
+		System.out.println(String.format("mined %6d/s, stored %6d/s, pending %6d, latency ms p50 %7.2f, p99 %7.2f",
+				minedNow - reportedMined, storedNow - reportedStored, pending.size(),
+				latency.getQuantiles()[0] * 1000, latency.getQuantiles()[2] * 1000));
+		return minedNow;
+	}
+
+	/**
+	 * Parses the key=value settings, arguments may contain several settings
+	 * separated by whitespace
+	 *
+	 * @param args
+	 *            - The settings
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> settings = new HashMap<>();
+		for (String arg : args)
+			for (String setting : arg.trim().split("\\s+")) {
+				int separator = setting.indexOf('=');
+				if (separator > 0)
+					settings.put(setting.substring(0, separator), setting.substring(separator + 1));
+			}
+		boolean isComplete = new IngestionHarness(settings).run();
+		System.exit(isComplete ? 0 : 1);
+	}
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import blockchain.Block;
+import influx.InfluxDBUtil;
+import influx.PointReference;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Compares encoding a block through an Influx Point with the
+ * {@link influx.SchemaCodec}
+ *
+ * @author Yannick
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineProtocolBenchmark {
+
+	private Block block;
+	private EthereumSchema orphan;
+
+	@Setup
+	public void setup() {
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setHash("0x88e96d4537bea4d9c05d12549907b32561d3bf31f45aae734cdc119f13406cb6");
+		blockData.setBlockNumber(8500000);
+		blockData.setTime(Instant.ofEpochSecond(1567000000));
+		blockData.setBlockCreationTime(13);
+		blockData.setDifficulty(2100000000000000L);
+		blockData.setExtraData("0x7070796520e4b883e5bda9e7a59ee4bb99e9b1bc");
+		blockData.setGasLimit(8000000);
+		blockData.setGasUsed(7990000);
+		blockData.setMiner("0xea674fdde714fd979de3edf0f56aa9716b898ec8");
+		blockData.setPeerCount(25);
+		blockData.setSize(32000);
+		blockData.setTotalDifficulty("11500000000000000000000");
+		blockData.setTransactions(180);
+		blockData.setUncles(1);
+		block = new Block(blockData, null);
+
+		orphan = blockData.copy();
+		orphan.setClient("client");
+		orphan.setNode("http://localhost:8545");
+	}
+
+	@Benchmark
+	public String point() {
+		return PointReference.toPoint(block, "client", "http://localhost:8545").lineProtocol();
+	}
+
+	@Benchmark
+	public String codec() {
+		return InfluxDBUtil.toLineProtocol(block, "client", "http://localhost:8545");
+	}
+
+	@Benchmark
+	public String orphanPoint() {
+		return PointReference.toOrphanPoint(block.getMeasurementName(), orphan).lineProtocol();
+	}
+
+	@Benchmark
+	public String orphanCodec() {
+		return InfluxDBUtil.toOrphanLineProtocol(block.getMeasurement(), orphan);
+	}
+}
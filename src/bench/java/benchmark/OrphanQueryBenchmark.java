@@ -0,0 +1,52 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import influx.InfluxDBUtil;
+
+/**
+ * Builds the condition the {@link client.pipeline.IngestionPipeline} queries
+ * Influx with for orphaned blocks that are older than the chain index
+ *
+ * @author Yannick
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrphanQueryBenchmark {
+
+	@Param({ "1", "2", "8" })
+	private int orphans;
+
+	private List<String> hashes;
+
+	@Setup
+	public void setup() {
+		hashes = new ArrayList<>(orphans);
+		for (int i = 0; i < orphans; i++)
+			hashes.add(String.format("0x%064x", 8500000 + i));
+	}
+
+	@Benchmark
+	public String hashCondition() {
+		return "SELECT * FROM Ethereum WHERE " + InfluxDBUtil.toHashCondition(hashes);
+	}
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.NetPeerCount;
+
+import blockchain.ethereum.JsonRpcBatch;
+
+/**
+ * Decodes a recorded answer of a node to the batch the
+ * {@link blockchain.ethereum.EthereumAdapter} fetches new blocks with: ten
+ * blocks with their transaction hashes and the peer count
+ *
+ * @author Yannick
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcDecodingBenchmark {
+
+	private static final int BLOCKS = 10;
+
+	private byte[] response;
+	private JsonRpcBatch batch;
+
+	@Setup
+	public void setup() throws IOException {
+		response = Fixtures.load("eth_getBlockByHash-batch.json");
+		batch = new JsonRpcBatch(null, null, null);
+		// the ids of the requests match the ids of the recorded responses
+		for (int i = 1; i <= BLOCKS; i++) {
+			Request<Object, EthBlock> request = new Request<>("eth_getBlockByHash",
+					Arrays.<Object>asList("0x" + i, false), null, EthBlock.class);
+			request.setId(i);
+			batch.add(request, EthBlock.class);
+		}
+		Request<String, NetPeerCount> peerCount = new Request<>("net_peerCount", Collections.<String>emptyList(),
+				null, NetPeerCount.class);
+		peerCount.setId(BLOCKS + 1);
+		batch.add(peerCount, NetPeerCount.class);
+	}
+
+	@Benchmark
+	public List<Response<?>> decodeBatch() throws IOException {
+		return batch.readResponses(new ByteArrayInputStream(response));
+	}
+}
@@ -1,6 +1,7 @@
 package blockchain;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.influxdb.annotation.Measurement;
 
@@ -13,8 +14,12 @@ import influx.schema.BlockSchema;
  */
 public class Block {
 
+	// Measurement names by schema class, looking up the annotation is expensive
+	private static final ConcurrentHashMap<Class<? extends BlockSchema>, String> MEASUREMENT_NAMES = new ConcurrentHashMap<>();
+
 	private List<String> orphanedBlocks;
 	private BlockSchema blockData;
+	private String parentHash;
 	
 	/**
 	 * Constructor
@@ -22,14 +27,29 @@ public class Block {
 	 * @param orphanedBlocks - A list of possible blocks that will become orphans
 	 */
 	public Block(BlockSchema blockData, List<String> orphanedBlocks) {
+		this(blockData, orphanedBlocks, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param blockData - The schema of the Influx measurement for a specific Blockchain
+	 * @param orphanedBlocks - A list of possible blocks that will become orphans
+	 * @param parentHash - The hash of the parent block or null if unknown
+	 */
+	public Block(BlockSchema blockData, List<String> orphanedBlocks, String parentHash) {
 		this.blockData = blockData;
 		this.orphanedBlocks = orphanedBlocks;
+		this.parentHash = parentHash;
 	}
 	
 	public String getHash() {
 		return blockData.getHash();
 	}
 
+	public String getParentHash() {
+		return parentHash;
+	}
+
 	public long getBlockNumber() {
 		return blockData.getBlockNumber();
 	}
@@ -58,7 +78,7 @@ public class Block {
 	}
 	
 	public String getMeasurementName() {
-		Measurement measurement = blockData.getClass().getAnnotation(Measurement.class);
-		return measurement.name();
+		return MEASUREMENT_NAMES.computeIfAbsent(blockData.getClass(),
+				schemaClass -> schemaClass.getAnnotation(Measurement.class).name());
 	}
 }
@@ -0,0 +1,131 @@
+package blockchain;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of decoded blocks that is shared by the adapters of all nodes
+ * on the same network. The first adapter that needs a block claims it and
+ * fetches it, all other adapters wait for that fetch instead of downloading
+ * the block from their own node. The oldest blocks are evicted once the maximum
+ * size is reached
+ *
+ * @author Yannick
+ *
+ */
+public class BlockCache {
+
+	private final int maxSize;
+	private final ConcurrentHashMap<String, CompletableFuture<Block>> blocks = new ConcurrentHashMap<>();
+	private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSize
+	 *            - The maximum number of blocks kept in the cache
+	 */
+	public BlockCache(int maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("Cache size must be positive!");
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Claims a block for fetching unless another adapter already did
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @param claim
+	 *            - The future the caller completes via
+	 *            {@link #complete(String, CompletableFuture, Block)} once it
+	 *            fetched the block
+	 * @return <code>null</code> if the caller claimed the block otherwise the
+	 *         future of the block that is or was fetched by another adapter
+	 */
+	public CompletableFuture<Block> claim(String blockHash, CompletableFuture<Block> claim) {
+		CompletableFuture<Block> existing = blocks.putIfAbsent(blockHash, claim);
+		if (existing != null) {
+			hits.incrementAndGet();
+			return existing;
+		}
+
+		misses.incrementAndGet();
+		insertionOrder.add(blockHash);
+		evict();
+		return null;
+	}
+
+	/**
+	 * Completes a claimed block. If the block couldn't be fetched it is removed,
+	 * so the next adapter that needs it fetches it again
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @param claim
+	 *            - The future passed to {@link #claim(String, CompletableFuture)}
+	 * @param block
+	 *            - The fetched {@link Block} or <code>null</code> if it couldn't be
+	 *            fetched
+	 */
+	public void complete(String blockHash, CompletableFuture<Block> claim, Block block) {
+		// The next claim adds the hash again, a stale entry would evict it early
+		if (block == null && blocks.remove(blockHash, claim))
+			insertionOrder.remove(blockHash);
+		claim.complete(block);
+	}
+
+	/**
+	 * Returns a block if it was already fetched without claiming it
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @return The {@link Block} or <code>null</code> if it isn't cached or still
+	 *         being fetched
+	 */
+	public Block peek(String blockHash) {
+		CompletableFuture<Block> future = blocks.get(blockHash);
+		if (future == null || !future.isDone() || future.isCompletedExceptionally())
+			return null;
+		return future.getNow(null);
+	}
+
+	/**
+	 * Removes the oldest blocks till the cache fits its maximum size
+	 */
+	private void evict() {
+		while (blocks.size() > maxSize) {
+			String eldest = insertionOrder.poll();
+			if (eldest == null)
+				return;
+			blocks.remove(eldest);
+		}
+	}
+
+	public int size() {
+		return blocks.size();
+	}
+
+	/**
+	 * Returns the number of blocks that were shared with another adapter
+	 *
+	 * @return The number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of blocks that had to be fetched from a node
+	 *
+	 * @return The number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+}
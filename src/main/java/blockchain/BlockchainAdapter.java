@@ -1,5 +1,6 @@
 package blockchain;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -10,8 +11,15 @@ import java.util.List;
  */
 public abstract class BlockchainAdapter {
 
+	public static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+	// Batches of a backfill take the node far longer to answer than one request
+	public static final long DEFAULT_REQUEST_TIMEOUT = 60000;
+
 	private String bcNodeAddress;
+	private long connectTimeout;
+	private long requestTimeout;
 	private boolean isConnected;
+	private volatile NewBlockListener newBlockListener;
 
 	/**
 	 * Constructor tries to establish a connection
@@ -20,8 +28,38 @@ public abstract class BlockchainAdapter {
 	 *            - The blockchain node to connect to
 	 */
 	public BlockchainAdapter(String bcNodeAddress) {
-		// TODO Auto-generated constructor stub
+		this(bcNodeAddress, DEFAULT_CONNECT_TIMEOUT);
+	}
+
+	/**
+	 * Constructor tries to establish a connection within the given time
+	 * 
+	 * @param bcNodeAddress
+	 *            - The blockchain node to connect to
+	 * @param connectTimeout
+	 *            - The time in milliseconds after which a node that didn't answer
+	 *            is given up
+	 */
+	public BlockchainAdapter(String bcNodeAddress, long connectTimeout) {
+		this(bcNodeAddress, connectTimeout, DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * Constructor tries to establish a connection within the given time
+	 * 
+	 * @param bcNodeAddress
+	 *            - The blockchain node to connect to
+	 * @param connectTimeout
+	 *            - The time in milliseconds after which a node that didn't answer
+	 *            is given up
+	 * @param requestTimeout
+	 *            - The time in milliseconds sending a request to the node and
+	 *            reading its answer may take each
+	 */
+	public BlockchainAdapter(String bcNodeAddress, long connectTimeout, long requestTimeout) {
 		this.bcNodeAddress = bcNodeAddress;
+		this.connectTimeout = connectTimeout;
+		this.requestTimeout = requestTimeout;
 		isConnected = connect(bcNodeAddress);
 	}
 
@@ -50,6 +88,41 @@ public abstract class BlockchainAdapter {
 	 */
 	public abstract Block getBlock(String blockHash);
 
+	/**
+	 * Retrieves all block data for the given block hashes. The default
+	 * implementation retrieves the blocks one by one, adapters should override it
+	 * if the node is able to answer multiple requests at once
+	 * 
+	 * @param blockHashes
+	 *            - The hashes of the blocks to be retrieved
+	 * @return A {@link List} of the requested {@link Block}s in the order of the
+	 *         given hashes. An entry is <code>null</code> if the data of the block
+	 *         couldn't be retrieved
+	 */
+	public List<Block> getBlocks(List<String> blockHashes) {
+		List<Block> blocks = new ArrayList<>(blockHashes.size());
+		for (String blockHash : blockHashes)
+			blocks.add(getBlock(blockHash));
+		return blocks;
+	}
+
+	/**
+	 * Retrieves all blocks of the mainchain within the given block number range.
+	 * Used to backfill historical data, adapters that don't support it throw an
+	 * {@link UnsupportedOperationException}
+	 * 
+	 * @param from
+	 *            - The first block number of the range
+	 * @param to
+	 *            - The last block number of the range (inclusive)
+	 * @return A {@link List} of the requested {@link Block}s ordered by block
+	 *         number. An entry is <code>null</code> if the data of the block
+	 *         couldn't be retrieved
+	 */
+	public List<Block> getBlockRange(long from, long to) {
+		throw new UnsupportedOperationException("Retrieving block ranges is not supported by this adapter!");
+	}
+
 	/**
 	 * Retrieves all hashes of new blocks since the last request
 	 * 
@@ -57,6 +130,38 @@ public abstract class BlockchainAdapter {
 	 */
 	public abstract List<String> getNextBlocks();
 
+	/**
+	 * Registers a listener that is notified when the node pushes new blocks.
+	 * Adapters that only support polling never notify it
+	 * 
+	 * @param newBlockListener
+	 *            - The {@link NewBlockListener} or <code>null</code> to remove it
+	 */
+	public void setNewBlockListener(NewBlockListener newBlockListener) {
+		this.newBlockListener = newBlockListener;
+	}
+
+	/**
+	 * Returns whether the node pushes new blocks to the registered
+	 * {@link NewBlockListener}
+	 * 
+	 * @return <code>true</code> if new blocks are pushed, <code>false</code> if
+	 *         they are only found by polling
+	 */
+	public boolean isSubscribed() {
+		return false;
+	}
+
+	/**
+	 * Notifies the registered {@link NewBlockListener} that new blocks are
+	 * available
+	 */
+	protected void notifyNewBlocks() {
+		NewBlockListener listener = newBlockListener;
+		if (listener != null)
+			listener.onNewBlocks();
+	}
+
 	/**
 	 * Returns the connection status of the node
 	 * 
@@ -82,6 +187,26 @@ public abstract class BlockchainAdapter {
 		cleanUp();
 	}
 
+	/**
+	 * Returns the time {@link #connect(String)} may take, it is already set when
+	 * the constructor connects
+	 * 
+	 * @return The connect timeout in milliseconds
+	 */
+	protected long getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Returns the time sending a request and reading its answer may take, it is
+	 * already set when the constructor connects
+	 * 
+	 * @return The request timeout in milliseconds
+	 */
+	protected long getRequestTimeout() {
+		return requestTimeout;
+	}
+
 	/**
 	 * Returns the address of the connected node
 	 * 
@@ -0,0 +1,125 @@
+package blockchain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache for block headers which evicts the least recently used header
+ * once the maximum size is reached. Adapters use it to avoid requesting blocks
+ * they have already seen, e.g. the parent of a new block
+ *
+ * @author Yannick
+ *
+ */
+public class HeaderCache {
+
+	/**
+	 * The header fields of a block that are kept in the cache
+	 */
+	public static class Header {
+
+		private final long number;
+		private final long timestamp;
+		private final String parentHash;
+
+		/**
+		 * Constructor
+		 *
+		 * @param number
+		 *            - The block number
+		 * @param timestamp
+		 *            - The timestamp of the block in seconds
+		 * @param parentHash
+		 *            - The hash of the parent block
+		 */
+		public Header(long number, long timestamp, String parentHash) {
+			this.number = number;
+			this.timestamp = timestamp;
+			this.parentHash = parentHash;
+		}
+
+		public long getNumber() {
+			return number;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getParentHash() {
+			return parentHash;
+		}
+	}
+
+	private final LinkedHashMap<String, Header> headers;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSize
+	 *            - The maximum number of headers kept in the cache
+	 */
+	public HeaderCache(final int maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("Cache size must be positive!");
+		headers = new LinkedHashMap<String, Header>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Header> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a header and counts the lookup as hit or miss
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @return The {@link Header} or <code>null</code> if it isn't cached
+	 */
+	public synchronized Header get(String blockHash) {
+		Header header = headers.get(blockHash);
+		if (header == null)
+			misses++;
+		else
+			hits++;
+		return header;
+	}
+
+	/**
+	 * Adds a header to the cache
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @param header
+	 *            - The {@link Header} of the block
+	 */
+	public synchronized void put(String blockHash, Header header) {
+		headers.put(blockHash, header);
+	}
+
+	/**
+	 * Removes all headers and resets the counters
+	 */
+	public synchronized void clear() {
+		headers.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	public synchronized int size() {
+		return headers.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
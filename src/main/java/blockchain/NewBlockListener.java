@@ -0,0 +1,17 @@
+package blockchain;
+
+/**
+ * Listener that gets notified by a {@link BlockchainAdapter} as soon as the node
+ * pushes new blocks, so they don't have to wait for the next poll
+ * 
+ * @author Yannick
+ *
+ */
+public interface NewBlockListener {
+
+	/**
+	 * Called when new block hashes are available via
+	 * {@link BlockchainAdapter#getNextBlocks()}
+	 */
+	void onNewBlocks();
+}
@@ -3,97 +3,736 @@ package blockchain.ethereum;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthLog;
 import org.web3j.protocol.core.methods.response.EthLog.LogResult;
+import org.web3j.protocol.core.methods.response.NetPeerCount;
 import org.web3j.protocol.http.HttpService;
+import org.web3j.protocol.websocket.WebSocketService;
 
 import blockchain.Block;
+import blockchain.BlockCache;
 import blockchain.BlockchainAdapter;
+import blockchain.HeaderCache;
 import client.Client;
 import influx.schema.ethereum.EthereumSchema;
+import io.reactivex.disposables.Disposable;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import okhttp3.OkHttpClient;
 
 /**
- * Ethereum implementation of {@link BlockchainAdapter} class
+ * Ethereum implementation of {@link BlockchainAdapter} class. Nodes addressed
+ * via http(s) are polled with a block filter. Nodes addressed via ws(s) push new
+ * blocks through a newHeads subscription, if the node doesn't support
+ * subscriptions the adapter falls back to polling the filter over the same
+ * connection. Blocks are requested in JSON-RPC batches from HTTP nodes, web3j
+ * can't send batches over websockets, so there the requests of a batch are sent
+ * one by one without waiting for the previous answers
  * 
  * @author Yannick
  *
  */
 public class EthereumAdapter extends BlockchainAdapter {
+
+	public static final int DEFAULT_HEADER_CACHE_SIZE = 1024;
+	private static final long SHARED_BLOCK_TIMEOUT = 30000;
+
 	private Web3j web3;
+	private Web3jService service;
+	private OkHttpClient httpClient;
 
 	private BigInteger filterId;
+	private HeaderCache headerCache;
+	private BlockCache blockCache;
+
+	// newHeads subscription state, only used for websocket nodes
+	private boolean isWebSocket;
+	private volatile boolean isSubscriptionSupported = true;
+	private Disposable subscription;
+	private ConcurrentLinkedQueue<String> pushedBlocks = new ConcurrentLinkedQueue<>();
+
+	// latencies of the RPC methods, batches are recorded as the method of their
+	// blocks
+	private LatencyHistogram blockByHashLatency;
+	private LatencyHistogram blockByNumberLatency;
+	private LatencyHistogram peerCountLatency;
+	private LatencyHistogram newFilterLatency;
+	private LatencyHistogram filterChangesLatency;
+	private LatencyHistogram syncingLatency;
 
 	public EthereumAdapter(String bcNodeAddress) {
-		super(bcNodeAddress);
+		this(bcNodeAddress, DEFAULT_HEADER_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param bcNodeAddress
+	 *            - The blockchain node to connect to
+	 * @param headerCacheSize
+	 *            - The number of block headers kept to look up parent blocks
+	 */
+	public EthereumAdapter(String bcNodeAddress, int headerCacheSize) {
+		this(bcNodeAddress, headerCacheSize, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param bcNodeAddress
+	 *            - The blockchain node to connect to
+	 * @param headerCacheSize
+	 *            - The number of block headers kept to look up parent blocks
+	 * @param blockCache
+	 *            - The {@link BlockCache} shared with the adapters of other nodes
+	 *            on the same network or <code>null</code> to fetch every block
+	 *            from this node
+	 */
+	public EthereumAdapter(String bcNodeAddress, int headerCacheSize, BlockCache blockCache) {
+		this(bcNodeAddress, headerCacheSize, blockCache, DEFAULT_CONNECT_TIMEOUT);
 	}
 
+	/**
+	 * Constructor
+	 * 
+	 * @param bcNodeAddress
+	 *            - The blockchain node to connect to
+	 * @param headerCacheSize
+	 *            - The number of block headers kept to look up parent blocks
+	 * @param blockCache
+	 *            - The {@link BlockCache} shared with the adapters of other nodes
+	 *            on the same network or <code>null</code> to fetch every block
+	 *            from this node
+	 * @param connectTimeout
+	 *            - The time in milliseconds the node has to accept the connection
+	 *            and to answer the client version request
+	 */
+	public EthereumAdapter(String bcNodeAddress, int headerCacheSize, BlockCache blockCache, long connectTimeout) {
+		this(bcNodeAddress, headerCacheSize, blockCache, connectTimeout, DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param bcNodeAddress
+	 *            - The blockchain node to connect to
+	 * @param headerCacheSize
+	 *            - The number of block headers kept to look up parent blocks
+	 * @param blockCache
+	 *            - The {@link BlockCache} shared with the adapters of other nodes
+	 *            on the same network or <code>null</code> to fetch every block
+	 *            from this node
+	 * @param connectTimeout
+	 *            - The time in milliseconds the node has to accept the connection
+	 *            and to answer the client version request
+	 * @param requestTimeout
+	 *            - The time in milliseconds sending a request to an HTTP node and
+	 *            reading its answer may take each. Has to fit the largest batch
+	 */
+	public EthereumAdapter(String bcNodeAddress, int headerCacheSize, BlockCache blockCache, long connectTimeout,
+			long requestTimeout) {
+		super(bcNodeAddress, connectTimeout, requestTimeout);
+		headerCache = new HeaderCache(headerCacheSize);
+		this.blockCache = blockCache;
+		blockByHashLatency = rpcLatency("eth_getBlockByHash");
+		blockByNumberLatency = rpcLatency("eth_getBlockByNumber");
+		peerCountLatency = rpcLatency("net_peerCount");
+		newFilterLatency = rpcLatency("eth_newBlockFilter");
+		filterChangesLatency = rpcLatency("eth_getFilterChanges");
+		syncingLatency = rpcLatency("eth_syncing");
+		MetricsRegistry.getDefault().gauge("bse_header_cache_hits_total",
+				"Parent lookups answered by the header cache", headerCache::getHits, "node", getNodeAddress());
+		MetricsRegistry.getDefault().gauge("bse_header_cache_misses_total",
+				"Parent lookups the node had to answer", headerCache::getMisses, "node", getNodeAddress());
+		// subscribed here as the fields of the subscription aren't initialized while
+		// the super constructor connects
+		if (isWebSocket && isConnected())
+			subscribe();
+	}
+
+	/**
+	 * Registers the latency histogram of an RPC method of this node
+	 * 
+	 * @param method
+	 *            - The name of the RPC method
+	 * @return The {@link LatencyHistogram} of the method
+	 */
+	private LatencyHistogram rpcLatency(String method) {
+		return MetricsRegistry.getDefault().histogram("bse_rpc_latency_seconds",
+				"Latency of the JSON-RPC requests to the node", "node", getNodeAddress(), "method", method);
+	}
+
+	/**
+	 * Sends a request and records its latency
+	 * 
+	 * @param request
+	 *            - The {@link Request} to send
+	 * @param latency
+	 *            - The {@link LatencyHistogram} of the method
+	 * @return The response of the node
+	 * @throws IOException
+	 *             if the request failed
+	 */
+	private static <T extends Response<?>> T send(Request<?, T> request, LatencyHistogram latency)
+			throws IOException {
+		long start = System.nanoTime();
+		try {
+			return request.send();
+		} finally {
+			latency.recordSince(start);
+		}
+	}
+
+	/**
+	 * Sends a batch and records its latency, empty batches aren't recorded
+	 * 
+	 * @param batch
+	 *            - The {@link JsonRpcBatch} to send
+	 * @param latency
+	 *            - The {@link LatencyHistogram} of the method
+	 * @return The responses of the node
+	 * @throws IOException
+	 *             if the batch failed
+	 */
+	private static List<Response<?>> send(JsonRpcBatch batch, LatencyHistogram latency) throws IOException {
+		if (batch.size() == 0)
+			return batch.send();
+		long start = System.nanoTime();
+		try {
+			return batch.send();
+		} finally {
+			latency.recordSince(start);
+		}
+	}
+
+	/**
+	 * Connects to the node and requests its client version. Both have to finish
+	 * within the connect timeout, so an unreachable node doesn't hold up the
+	 * caller
+	 */
 	@Override
 	protected boolean connect(String bcNodeAddress) {
+		long timeout = getConnectTimeout();
 		try {
-			web3 = Web3j.build(new HttpService(bcNodeAddress));
-			Client.logger.info(
-					"Connected to ethereum client version: " + web3.web3ClientVersion().send().getWeb3ClientVersion());
+			if (isWebSocketAddress(bcNodeAddress)) {
+				isWebSocket = true;
+				WebSocketService webSocketService = new WebSocketService(bcNodeAddress, false);
+				service = webSocketService;
+				connectWebSocket(webSocketService, timeout);
+			} else {
+				// batches are answered in one response, so reading it may take a while
+				httpClient = new OkHttpClient.Builder().connectTimeout(timeout, TimeUnit.MILLISECONDS)
+						.readTimeout(getRequestTimeout(), TimeUnit.MILLISECONDS)
+						.writeTimeout(getRequestTimeout(), TimeUnit.MILLISECONDS).build();
+				service = new HttpService(bcNodeAddress, httpClient);
+			}
+			web3 = Web3j.build(service);
+			String clientVersion = web3.web3ClientVersion().sendAsync().get(timeout, TimeUnit.MILLISECONDS)
+					.getWeb3ClientVersion();
+			Client.logger.info("Connected to ethereum client version: " + clientVersion);
 			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} catch (Exception e) {
-			Client.logger.error("Couldn't connect to ethereum node at address: " + bcNodeAddress);
+			Client.logger.error("Couldn't connect to ethereum node at address: " + bcNodeAddress + ": "
+					+ (e instanceof TimeoutException ? "no answer within " + timeout + "ms" : e.getMessage()));
 		}
+		closeService();
 		return false;
 	}
 
+	/**
+	 * Closes the connection to the node, also if web3j wasn't set up yet
+	 */
+	private void closeService() {
+		try {
+			if (web3 != null)
+				web3.shutdown();
+			else if (service != null)
+				service.close();
+		} catch (IOException | RuntimeException e) {
+			Client.logger.warn("Error closing connection to node " + getNodeAddress() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Opens the websocket connection. The handshake blocks without a timeout, so
+	 * it runs on its own thread which is interrupted once the timeout passed
+	 * 
+	 * @param webSocketService
+	 *            - The {@link WebSocketService} to connect
+	 * @param timeout
+	 *            - The time in milliseconds the handshake may take
+	 */
+	private static void connectWebSocket(final WebSocketService webSocketService, long timeout) throws Exception {
+		FutureTask<Void> handshake = new FutureTask<>(() -> {
+			webSocketService.connect();
+			return null;
+		});
+		Thread thread = new Thread(handshake, "WebSocketConnect");
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			handshake.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			handshake.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
 	@Override
 	protected void cleanUp() {
-		// TODO Auto-generated method stub
-		web3.shutdown();
+		if (subscription != null)
+			subscription.dispose();
+		closeService();
+	}
+
+	/**
+	 * Checks if the node should be connected to via websocket
+	 * 
+	 * @param bcNodeAddress
+	 *            - The address of the node
+	 * @return <code>true</code> if the address uses the ws or wss scheme otherwise
+	 *         <code>false</code>
+	 */
+	private static boolean isWebSocketAddress(String bcNodeAddress) {
+		String address = bcNodeAddress.toLowerCase();
+		return address.startsWith("ws://") || address.startsWith("wss://");
+	}
+
+	/**
+	 * Returns whether new blocks are pushed by the node
+	 * 
+	 * @return <code>true</code> if a newHeads subscription is active otherwise
+	 *         <code>false</code>
+	 */
+	@Override
+	public boolean isSubscribed() {
+		return subscription != null && isSubscriptionSupported;
+	}
+
+	/**
+	 * Subscribes to newHeads notifications of the node right after connecting.
+	 * Every pushed header is queued for the next call of {@link #getNextBlocks()}
+	 * and the registered listener is notified. If the subscription fails the
+	 * adapter falls back to polling
+	 */
+	private void subscribe() {
+		Client.logger.info("Subscribing to new blocks of node: " + getNodeAddress());
+		try {
+			subscription = web3.newHeadsNotifications().subscribe(notification -> {
+				pushedBlocks.add(notification.getParams().getResult().getHash());
+				notifyNewBlocks();
+			}, this::onSubscriptionFailed);
+		} catch (RuntimeException e) {
+			onSubscriptionFailed(e);
+		}
+	}
+
+	/**
+	 * Switches to polling the block filter over the websocket connection
+	 * 
+	 * @param error
+	 *            - The reason the subscription failed
+	 */
+	private void onSubscriptionFailed(Throwable error) {
+		isSubscriptionSupported = false;
+		Client.logger.warn("newHeads subscription of node " + getNodeAddress()
+				+ " failed, falling back to polling a block filter: " + error.getMessage());
 	}
 
 	@Override
 	public Block getBlock(String blockHash) {
-		// TODO Auto-generated method stub
+		List<String> blockHashes = new ArrayList<>();
+		blockHashes.add(blockHash);
+		return getBlocks(blockHashes).get(0);
+	}
+
+	/**
+	 * Retrieves the blocks, their parents and the peer count in batched requests.
+	 * Blocks are fetched together with the peer count in one batch, parents which
+	 * are neither part of the requested blocks nor cached in a second one. If a
+	 * {@link BlockCache} is shared with other adapters, blocks already fetched by
+	 * another adapter are only completed with the peer count of this node
+	 */
+	@Override
+	public List<Block> getBlocks(List<String> blockHashes) {
+		if (blockCache == null || !isConnected() || blockHashes.isEmpty())
+			return fetchBlocks(blockHashes);
+
+		// Claim all blocks no other adapter is fetching yet
+		Map<String, CompletableFuture<Block>> claimedBlocks = new HashMap<>();
+		Map<String, CompletableFuture<Block>> sharedBlocks = new HashMap<>();
+		for (String blockHash : blockHashes) {
+			if (claimedBlocks.containsKey(blockHash) || sharedBlocks.containsKey(blockHash))
+				continue;
+			CompletableFuture<Block> claim = new CompletableFuture<>();
+			CompletableFuture<Block> existing = blockCache.claim(blockHash, claim);
+			if (existing == null)
+				claimedBlocks.put(blockHash, claim);
+			else
+				sharedBlocks.put(blockHash, existing);
+		}
+
+		Map<String, Block> blocks = new HashMap<>();
+		Long peerCount = null;
+		if (!claimedBlocks.isEmpty()) {
+			List<String> claimedHashes = new ArrayList<>(claimedBlocks.keySet());
+			List<Block> fetchedBlocks = null;
+			try {
+				fetchedBlocks = fetchBlocks(claimedHashes);
+			} finally {
+				// Always complete the claims, otherwise other adapters wait for nothing
+				for (int i = 0; i < claimedHashes.size(); i++) {
+					String blockHash = claimedHashes.get(i);
+					Block block = fetchedBlocks == null ? null : fetchedBlocks.get(i);
+					blockCache.complete(blockHash, claimedBlocks.get(blockHash), block);
+					if (block != null) {
+						blocks.put(blockHash, block);
+						peerCount = ((EthereumSchema) block.getBlockData()).getPeerCount();
+					}
+				}
+			}
+		}
+
+		if (!sharedBlocks.isEmpty()) {
+			List<String> missingHashes = new ArrayList<>();
+			boolean isPeerCountMissing = false;
+			for (Map.Entry<String, CompletableFuture<Block>> sharedBlock : sharedBlocks.entrySet()) {
+				Block block = awaitSharedBlock(sharedBlock.getKey(), sharedBlock.getValue());
+				if (peerCount == null && block != null && !isPeerCountMissing) {
+					peerCount = getPeerCount();
+					isPeerCountMissing = peerCount == null;
+				}
+				// Without the peer count of this node the whole block is requested from it
+				if (block == null || peerCount == null) {
+					missingHashes.add(sharedBlock.getKey());
+					continue;
+				}
+				// Only the peer count is observed per node, the block data is shared
+				EthereumSchema blockData = ((EthereumSchema) block.getBlockData()).copy();
+				blockData.setPeerCount(peerCount);
+				blocks.put(sharedBlock.getKey(), new Block(blockData, block.getOrphanedBlocks(), block.getParentHash()));
+			}
+
+			// Blocks the other adapter couldn't fetch are requested from this node, as well
+			// as blocks without peer count
+			if (!missingHashes.isEmpty()) {
+				List<Block> fetchedBlocks = fetchBlocks(missingHashes);
+				for (int i = 0; i < missingHashes.size(); i++)
+					if (fetchedBlocks.get(i) != null)
+						blocks.put(missingHashes.get(i), fetchedBlocks.get(i));
+			}
+		}
+
+		List<Block> result = new ArrayList<>(blockHashes.size());
+		for (String blockHash : blockHashes)
+			result.add(blocks.get(blockHash));
+		return result;
+	}
+
+	/**
+	 * Waits till another adapter fetched a shared block
+	 * 
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @param sharedBlock
+	 *            - The future of the block fetched by the other adapter
+	 * @return The {@link Block} or <code>null</code> if the other adapter couldn't
+	 *         fetch it in time
+	 */
+	private Block awaitSharedBlock(String blockHash, CompletableFuture<Block> sharedBlock) {
+		try {
+			return sharedBlock.get(SHARED_BLOCK_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			Client.logger.warn("Shared block " + blockHash + " wasn't fetched in time, requesting it from node: "
+					+ getNodeAddress());
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the current peer count of the node
+	 * 
+	 * @return The peer count or <code>null</code> if it couldn't be retrieved
+	 */
+	private Long getPeerCount() {
+		try {
+			NetPeerCount peerCountResponse = send(web3.netPeerCount(), peerCountLatency);
+			if (!peerCountResponse.hasError())
+				return peerCountResponse.getQuantity().longValue();
+		} catch (IOException e) {
+			Client.logger.error("Error retrieving peer count!", e);
+			return null;
+		}
+		Client.logger.error("Peer count couldn't be retrieved!");
+		return null;
+	}
+
+	/**
+	 * Retrieves the blocks, their parents and the peer count from this node
+	 * 
+	 * @param blockHashes
+	 *            - The hashes of the blocks
+	 * @return A {@link List} of {@link Block}s in the order of the hashes, blocks
+	 *         that couldn't be retrieved are <code>null</code>
+	 */
+	private List<Block> fetchBlocks(List<String> blockHashes) {
+		List<Block> blocks = new ArrayList<>(blockHashes.size());
+		for (int i = 0; i < blockHashes.size(); i++)
+			blocks.add(null);
+
 		if (!isConnected()) {
 			Client.logger.error("Not connected to ethereum node!");
-			return null;
+			return blocks;
+		}
+		if (blockHashes.isEmpty())
+			return blocks;
+
+		try {
+			// Request all blocks and the peer count at once
+			JsonRpcBatch batch = newBatch();
+			for (String blockHash : blockHashes)
+				batch.add(web3.ethGetBlockByHash(blockHash, false), EthBlock.class);
+			int peerCountIndex = batch.add(web3.netPeerCount(), NetPeerCount.class);
+			List<Response<?>> responses = send(batch, blockByHashLatency);
+
+			Map<String, EthBlock.Block> ethBlocks = new HashMap<>();
+			for (int i = 0; i < blockHashes.size(); i++) {
+				EthBlock.Block ethBlock = getResult(responses.get(i), blockHashes.get(i));
+				if (ethBlock != null)
+					ethBlocks.put(blockHashes.get(i), ethBlock);
+			}
+			NetPeerCount peerCountResponse = (NetPeerCount) responses.get(peerCountIndex);
+			if (peerCountResponse == null || peerCountResponse.hasError())
+				throw new IOException("Peer count couldn't be retrieved!");
+			BigInteger peerCount = peerCountResponse.getQuantity();
+
+			// Look up parent timestamps in the batch and the cache first
+			Map<String, BigInteger> parentTimestamps = new HashMap<>();
+			JsonRpcBatch parentBatch = newBatch();
+			List<String> parentHashes = new ArrayList<>();
+			for (EthBlock.Block ethBlock : ethBlocks.values()) {
+				String parentHash = ethBlock.getParentHash();
+				if (parentTimestamps.containsKey(parentHash) || parentHashes.contains(parentHash))
+					continue;
+				if (ethBlocks.containsKey(parentHash)) {
+					parentTimestamps.put(parentHash, ethBlocks.get(parentHash).getTimestamp());
+					continue;
+				}
+				HeaderCache.Header parentHeader = headerCache.get(parentHash);
+				if (parentHeader != null) {
+					parentTimestamps.put(parentHash, BigInteger.valueOf(parentHeader.getTimestamp()));
+					continue;
+				}
+				Block sharedParent = blockCache == null ? null : blockCache.peek(parentHash);
+				if (sharedParent != null) {
+					parentTimestamps.put(parentHash, BigInteger.valueOf(sharedParent.getTimestamp()));
+					continue;
+				}
+				parentHashes.add(parentHash);
+				parentBatch.add(web3.ethGetBlockByHash(parentHash, false), EthBlock.class);
+			}
+
+			// Request all remaining parents at once
+			List<Response<?>> parentResponses = send(parentBatch, blockByHashLatency);
+			for (int i = 0; i < parentHashes.size(); i++) {
+				EthBlock.Block parentBlock = getResult(parentResponses.get(i), parentHashes.get(i));
+				if (parentBlock != null) {
+					cacheHeader(parentHashes.get(i), parentBlock);
+					parentTimestamps.put(parentHashes.get(i), parentBlock.getTimestamp());
+				}
+			}
+
+			for (int i = 0; i < blockHashes.size(); i++) {
+				String blockHash = blockHashes.get(i);
+				EthBlock.Block ethBlock = ethBlocks.get(blockHash);
+				// Block with specified hash doesn't exist
+				if (ethBlock == null)
+					continue;
+				cacheHeader(blockHash, ethBlock);
+				BigInteger parentTimestamp = parentTimestamps.get(ethBlock.getParentHash());
+				if (parentTimestamp == null) {
+					Client.logger.error("Parent of Block: " + blockHash + " couldn't be retrieved!");
+					continue;
+				}
+				blocks.set(i, toBlock(blockHash, ethBlock, parentTimestamp, peerCount));
+			}
+		} catch (IOException e) {
+			Client.logger.error("Error getting Block data for Blocks: " + blockHashes + "!", e);
+		}
+
+		return blocks;
+	}
+
+	/**
+	 * Retrieves the blocks of the range and the block before it together with the
+	 * peer count in a single batch
+	 */
+	@Override
+	public List<Block> getBlockRange(long from, long to) {
+		int size = (int) (to - from + 1);
+		List<Block> blocks = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			blocks.add(null);
+
+		if (!isConnected()) {
+			Client.logger.error("Not connected to ethereum node!");
+			return blocks;
 		}
 
-		Block block = null;
+		// The block before the range is needed to calculate the creation time
+		long first = Math.max(0, from - 1);
 		try {
-			EthBlock.Block ethBlock = web3.ethGetBlockByHash(blockHash, false).send().getBlock();
-
-			BigInteger peerCount = web3.netPeerCount().send().getQuantity();
-			// Block with specified number doesn't exist
-			if (ethBlock == null)
-				return block;
-			EthBlock.Block parentBlock = web3.ethGetBlockByHash(ethBlock.getParentHash(), false).send().getBlock();
-
-			// Calculate block creation time
-			BigInteger creationTime = ethBlock.getTimestamp().subtract(parentBlock.getTimestamp());
-
-			// Set block data
-			EthereumSchema blockData = new EthereumSchema();
-			blockData.setTime(Instant.ofEpochSecond(ethBlock.getTimestamp().longValue()));
-			blockData.setHash(blockHash);
-			blockData.setBlockNumber(ethBlock.getNumber().longValue());
-			blockData.setBlockCreationTime(creationTime.longValue());
-			blockData.setPeerCount(peerCount.longValue());
-			blockData.setDifficulty(ethBlock.getDifficulty().longValue());
-			blockData.setGasUsed(ethBlock.getGasUsed().longValue());
-			blockData.setGasLimit(ethBlock.getGasLimit().longValue());
-			blockData.setMiner(ethBlock.getMiner());
-			blockData.setExtraData(ethBlock.getExtraData());
-			blockData.setTotalDifficulty(ethBlock.getTotalDifficulty().toString());
-			blockData.setTransactions(ethBlock.getTransactions().size());
-			blockData.setSize(ethBlock.getSize().longValue());
-			blockData.setUncles(ethBlock.getUncles().size());
-
-			block = new Block(blockData, ethBlock.getUncles());
+			JsonRpcBatch batch = newBatch();
+			for (long number = first; number <= to; number++)
+				batch.add(web3.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(number)), false),
+						EthBlock.class);
+			int peerCountIndex = batch.add(web3.netPeerCount(), NetPeerCount.class);
+			List<Response<?>> responses = send(batch, blockByNumberLatency);
+
+			NetPeerCount peerCountResponse = (NetPeerCount) responses.get(peerCountIndex);
+			if (peerCountResponse == null || peerCountResponse.hasError())
+				throw new IOException("Peer count couldn't be retrieved!");
+			BigInteger peerCount = peerCountResponse.getQuantity();
+
+			EthBlock.Block previous = null;
+			for (long number = first; number <= to; number++) {
+				EthBlock.Block ethBlock = getResult(responses.get((int) (number - first)), "#" + number);
+				if (number >= from && ethBlock != null) {
+					BigInteger parentTimestamp = null;
+					if (number == 0)
+						parentTimestamp = ethBlock.getTimestamp();
+					else if (previous != null && previous.getHash().equals(ethBlock.getParentHash()))
+						parentTimestamp = previous.getTimestamp();
+
+					if (parentTimestamp == null)
+						Client.logger.error("Parent of Block: " + ethBlock.getHash() + " couldn't be retrieved!");
+					else
+						blocks.set((int) (number - from), toBlock(ethBlock.getHash(), ethBlock, parentTimestamp,
+								peerCount));
+				}
+				previous = ethBlock;
+			}
 		} catch (IOException e) {
-			Client.logger.error("Error getting Block data for Block: " + blockHash + "!", e);
+			Client.logger.error("Error getting Block data for Blocks: " + from + " - " + to + "!", e);
 		}
 
-		return block;
+		return blocks;
+	}
+
+	/**
+	 * Creates a new {@link JsonRpcBatch} for the connected node
+	 * 
+	 * @return An empty {@link JsonRpcBatch}
+	 */
+	private JsonRpcBatch newBatch() {
+		return new JsonRpcBatch(httpClient, getNodeAddress(), service);
+	}
+
+	/**
+	 * Stores the header of a block in the {@link HeaderCache}
+	 * 
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @param ethBlock
+	 *            - The block returned by the node
+	 */
+	private void cacheHeader(String blockHash, EthBlock.Block ethBlock) {
+		headerCache.put(blockHash, new HeaderCache.Header(ethBlock.getNumber().longValue(),
+				ethBlock.getTimestamp().longValue(), ethBlock.getParentHash()));
+	}
+
+	/**
+	 * Returns the cache holding the headers of recently seen blocks
+	 * 
+	 * @return The {@link HeaderCache} of this adapter
+	 */
+	public HeaderCache getHeaderCache() {
+		return headerCache;
+	}
+
+	/**
+	 * Extracts the block from a batch response
+	 * 
+	 * @param response
+	 *            - The {@link Response} of an eth_getBlockByHash request
+	 * @param blockHash
+	 *            - The hash that was requested
+	 * @return The {@link EthBlock.Block} or <code>null</code> if the node returned
+	 *         no block
+	 */
+	private EthBlock.Block getResult(Response<?> response, String blockHash) {
+		if (response == null)
+			return null;
+		if (response.hasError()) {
+			Client.logger.error("Error getting Block data for Block: " + blockHash + ": "
+					+ response.getError().getMessage());
+			return null;
+		}
+		return ((EthBlock) response).getBlock();
+	}
+
+	/**
+	 * Maps the block data returned by the node to the Influx measurement
+	 * 
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @param ethBlock
+	 *            - The block returned by the node
+	 * @param parentTimestamp
+	 *            - The timestamp of the parent block
+	 * @param peerCount
+	 *            - The current peer count of the node
+	 * @return The {@link Block}
+	 */
+	private Block toBlock(String blockHash, EthBlock.Block ethBlock, BigInteger parentTimestamp,
+			BigInteger peerCount) {
+		// Calculate block creation time
+		BigInteger creationTime = ethBlock.getTimestamp().subtract(parentTimestamp);
+
+		// Set block data
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setTime(Instant.ofEpochSecond(ethBlock.getTimestamp().longValue()));
+		blockData.setHash(blockHash);
+		blockData.setBlockNumber(ethBlock.getNumber().longValue());
+		blockData.setBlockCreationTime(creationTime.longValue());
+		blockData.setPeerCount(peerCount.longValue());
+		blockData.setDifficulty(ethBlock.getDifficulty().longValue());
+		blockData.setGasUsed(ethBlock.getGasUsed().longValue());
+		blockData.setGasLimit(ethBlock.getGasLimit().longValue());
+		blockData.setMiner(ethBlock.getMiner());
+		blockData.setExtraData(ethBlock.getExtraData());
+		blockData.setTotalDifficulty(ethBlock.getTotalDifficulty().toString());
+		blockData.setTransactions(ethBlock.getTransactions().size());
+		blockData.setSize(ethBlock.getSize().longValue());
+		blockData.setUncles(ethBlock.getUncles().size());
+
+		return new Block(blockData, ethBlock.getUncles(), ethBlock.getParentHash());
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -106,10 +745,20 @@ public class EthereumAdapter extends BlockchainAdapter {
 		}
 
 		LinkedList<String> newBlocks = new LinkedList<>();
+
+		// Drain pushed blocks if the node supports subscriptions
+		if (isWebSocket && isSubscriptionSupported) {
+			String hash;
+			while ((hash = pushedBlocks.poll()) != null)
+				newBlocks.add(hash);
+			if (isSubscriptionSupported)
+				return newBlocks;
+		}
+
 		try {
 			if (filterId == null)
-				filterId = web3.ethNewBlockFilter().send().getFilterId();
-			for (LogResult log : web3.ethGetFilterChanges(filterId).send().getLogs()) {
+				filterId = send(web3.ethNewBlockFilter(), newFilterLatency).getFilterId();
+			for (LogResult log : send(web3.ethGetFilterChanges(filterId), filterChangesLatency).getLogs()) {
 				String hash = ((EthLog.Hash) log).get();
 				newBlocks.add(hash);
 			}
@@ -124,7 +773,7 @@ public class EthereumAdapter extends BlockchainAdapter {
 	public boolean isSynced() {
 		boolean isSynced = true;
 		try {
-			isSynced = !web3.ethSyncing().send().isSyncing();
+			isSynced = !send(web3.ethSyncing(), syncingLatency).isSyncing();
 		} catch (IOException e) {
 			Client.logger.error("Error retrieving sync status!", e);
 		}
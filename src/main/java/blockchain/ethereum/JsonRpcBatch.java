@@ -0,0 +1,174 @@
+package blockchain.ethereum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.http.HttpService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+
+/**
+ * Collects several JSON-RPC requests and sends them to an ethereum node in a
+ * single round trip. If no HTTP endpoint is available, e.g. for websocket
+ * nodes, the requests are sent one by one over the given {@link Web3jService}
+ * without waiting for the previous answers, so they are still answered in
+ * about one round trip
+ *
+ * @author Yannick
+ *
+ */
+public class JsonRpcBatch {
+
+	private static final ObjectMapper MAPPER = ObjectMapperFactory.getObjectMapper();
+
+	private final OkHttpClient httpClient;
+	private final String url;
+	private final Web3jService service;
+
+	private final List<Request<?, ?>> requests = new ArrayList<>();
+	private final List<Class<? extends Response<?>>> responseTypes = new ArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param httpClient
+	 *            - The {@link OkHttpClient} used to post the batch or
+	 *            <code>null</code> if the node is not reachable via HTTP
+	 * @param url
+	 *            - The HTTP address of the node
+	 * @param service
+	 *            - The {@link Web3jService} used if the batch can't be sent via
+	 *            HTTP
+	 */
+	public JsonRpcBatch(OkHttpClient httpClient, String url, Web3jService service) {
+		this.httpClient = httpClient;
+		this.url = url;
+		this.service = service;
+	}
+
+	/**
+	 * Adds a request to this batch
+	 *
+	 * @param request
+	 *            - The {@link Request} to add
+	 * @param responseType
+	 *            - The type the response should be mapped to
+	 * @return The index of the response in the list returned by {@link #send()}
+	 */
+	public <T extends Response<?>> int add(Request<?, T> request, Class<T> responseType) {
+		requests.add(request);
+		responseTypes.add(responseType);
+		return requests.size() - 1;
+	}
+
+	/**
+	 * Returns the number of requests in this batch
+	 *
+	 * @return The number of requests
+	 */
+	public int size() {
+		return requests.size();
+	}
+
+	/**
+	 * Sends all requests of this batch
+	 *
+	 * @return A {@link List} of {@link Response}s in the order the requests were
+	 *         added. A response is <code>null</code> if the node didn't answer the
+	 *         corresponding request
+	 * @throws IOException
+	 *             if the batch couldn't be sent or the response couldn't be parsed
+	 */
+	public List<Response<?>> send() throws IOException {
+		List<Response<?>> responses = new ArrayList<>(requests.size());
+		if (requests.isEmpty())
+			return responses;
+
+		// Fall back to pipelined single requests if node is not reachable via HTTP
+		if (httpClient == null) {
+			List<CompletableFuture<? extends Response<?>>> futures = new ArrayList<>(requests.size());
+			for (int i = 0; i < requests.size(); i++)
+				futures.add(service.sendAsync(requests.get(i), responseTypes.get(i)));
+			for (CompletableFuture<? extends Response<?>> future : futures)
+				responses.add(await(future));
+			return responses;
+		}
+
+		String payload = MAPPER.writeValueAsString(requests);
+		okhttp3.Request httpRequest = new okhttp3.Request.Builder().url(url)
+				.post(RequestBody.create(payload, HttpService.JSON_MEDIA_TYPE)).build();
+
+		try (okhttp3.Response httpResponse = httpClient.newCall(httpRequest).execute()) {
+			if (!httpResponse.isSuccessful() || httpResponse.body() == null)
+				throw new IOException("Batch request failed with HTTP status " + httpResponse.code());
+			return readResponses(httpResponse.body().byteStream());
+		}
+	}
+
+	/**
+	 * Waits for the answer to a single request
+	 *
+	 * @param future
+	 *            - The future of the request
+	 * @return The {@link Response} of the node
+	 * @throws IOException
+	 *             if the request failed or the thread was interrupted
+	 */
+	private static Response<?> await(CompletableFuture<? extends Response<?>> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the node!");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Reads the answer of the node to this batch
+	 *
+	 * @param in
+	 *            - The {@link InputStream} of the JSON array of responses
+	 * @return A {@link List} of {@link Response}s in the order the requests were
+	 *         added. A response is <code>null</code> if the node didn't answer the
+	 *         corresponding request
+	 * @throws IOException
+	 *             if the responses couldn't be parsed
+	 */
+	public List<Response<?>> readResponses(InputStream in) throws IOException {
+		JsonNode root = MAPPER.readTree(in);
+		if (!root.isArray())
+			throw new IOException("Node didn't answer with a batch response: " + root);
+
+		// Responses may arrive in any order so match them by id
+		Map<Long, JsonNode> byId = new HashMap<>();
+		for (JsonNode node : root)
+			byId.put(node.path("id").asLong(), node);
+
+		List<Response<?>> responses = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			JsonNode node = byId.get(requests.get(i).getId());
+			responses.add(node == null ? null : MAPPER.treeToValue(node, responseTypes.get(i)));
+		}
+
+		return responses;
+	}
+}
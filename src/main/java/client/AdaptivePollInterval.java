@@ -0,0 +1,119 @@
+package client;
+
+import blockchain.Block;
+import client.PollScheduler.PollInterval;
+import client.pipeline.BlockObserver;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * {@link PollInterval} that adapts to the block time of the chain. The expected
+ * block time is the mean of the creation times of the recent blocks, i.e. the
+ * differences between their timestamps and the ones of their parents, so blocks
+ * that were skipped don't distort it. Till shortly before
+ * the next block is expected the poll sleeps, around the expected time it polls
+ * with the minimum interval and if the block is overdue it backs off up to the
+ * maximum interval
+ *
+ * @author Yannick
+ *
+ */
+public class AdaptivePollInterval implements PollInterval, BlockObserver {
+
+	private static final int NR_SAMPLES = 32;
+	private static final int MIN_SAMPLES = 3;
+
+	private final long minInterval;
+	private final long maxInterval;
+
+	// ring buffer of recent block creation times in milliseconds
+	private final long[] blockTimes = new long[NR_SAMPLES];
+	private int nrSamples;
+	private int nextSample;
+	private long blockTimeSum;
+
+	private long latestTimestamp = -1;
+	private long latestArrival;
+
+	/**
+	 * Constructor
+	 *
+	 * @param minInterval
+	 *            - The shortest delay between two polls in milliseconds
+	 * @param maxInterval
+	 *            - The longest delay between two polls in milliseconds, also used
+	 *            till enough blocks have been seen
+	 */
+	public AdaptivePollInterval(long minInterval, long maxInterval) {
+		if (minInterval <= 0 || maxInterval < minInterval)
+			throw new IllegalArgumentException("Invalid polling interval: " + minInterval + " - " + maxInterval);
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+	}
+
+	/**
+	 * Records the creation time of every block that is newer than the latest
+	 * known block
+	 */
+	@Override
+	public synchronized void onBlock(Block block) {
+		long timestamp = block.getTimestamp();
+		if (timestamp <= latestTimestamp)
+			return;
+
+		if (block.getBlockData() instanceof EthereumSchema) {
+			long blockTime = ((EthereumSchema) block.getBlockData()).getBlockCreationTime() * 1000;
+			if (blockTime > 0) {
+				blockTimeSum += blockTime - blockTimes[nextSample];
+				blockTimes[nextSample] = blockTime;
+				nextSample = (nextSample + 1) % NR_SAMPLES;
+				nrSamples = Math.min(nrSamples + 1, NR_SAMPLES);
+			}
+		}
+		latestTimestamp = timestamp;
+		latestArrival = currentTime();
+	}
+
+	@Override
+	public synchronized long nextDelay() {
+		if (nrSamples < MIN_SAMPLES)
+			return maxInterval;
+
+		long expected = getExpectedBlockTime();
+		long elapsed = currentTime() - latestArrival;
+		long remaining = expected - elapsed;
+
+		long delay;
+		if (remaining > minInterval)
+			// sleep till shortly before the next block is expected
+			delay = remaining - minInterval;
+		else if (-remaining <= expected)
+			// block is due, poll aggressively
+			delay = minInterval;
+		else
+			// quiet period, back off the longer the block is overdue
+			delay = (-remaining - expected) / 2;
+
+		return Math.max(minInterval, Math.min(maxInterval, delay));
+	}
+
+	/**
+	 * Returns the mean of the recent block creation times
+	 *
+	 * @return The expected block time in milliseconds or <code>-1</code> if not
+	 *         enough blocks have been seen
+	 */
+	public synchronized long getExpectedBlockTime() {
+		if (nrSamples < MIN_SAMPLES)
+			return -1;
+		return blockTimeSum / nrSamples;
+	}
+
+	/**
+	 * Returns the current time, can be overridden for testing
+	 *
+	 * @return The current time in milliseconds
+	 */
+	protected long currentTime() {
+		return System.currentTimeMillis();
+	}
+}
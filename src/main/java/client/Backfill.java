@@ -0,0 +1,258 @@
+package client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import blockchain.Block;
+import blockchain.BlockchainAdapter;
+import influx.BatchWriter;
+import influx.InfluxDBUtil;
+import influx.schema.SchemaVersion;
+
+/**
+ * Loads historical blocks of a block number range into Influx. The range is
+ * split into chunks which are fetched concurrently from the given nodes. Every
+ * stored chunk is recorded in a checkpoint file, so an interrupted backfill can
+ * be resumed by starting it again with the same range and chunk size. Chunks of
+ * all workers are combined into the batches of a {@link BatchWriter}
+ *
+ * @author Yannick
+ *
+ */
+public class Backfill {
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	private String id;
+	private BatchWriter batchWriter;
+	private List<BlockchainAdapter> adapters;
+	private List<Semaphore> nodePermits;
+	private int workers;
+	private int chunkSize;
+	private File checkpointFile;
+
+	private List<long[]> completedChunks = new ArrayList<>();
+	private AtomicLong storedBlocks = new AtomicLong();
+	private SchemaVersion schemaVersion = SchemaVersion.V1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            - The ID of the client the blocks are stored for
+	 * @param batchWriter
+	 *            - The started {@link BatchWriter} the blocks are written with
+	 * @param adapters
+	 *            - The {@link BlockchainAdapter}s of the nodes to load blocks from
+	 * @param workers
+	 *            - The number of chunks fetched concurrently
+	 * @param chunkSize
+	 *            - The number of blocks fetched per request
+	 * @param nodeConcurrency
+	 *            - The maximum number of concurrent requests per node
+	 * @param checkpointFile
+	 *            - The file completed chunks are recorded in
+	 */
+	public Backfill(String id, BatchWriter batchWriter, List<BlockchainAdapter> adapters, int workers, int chunkSize,
+			int nodeConcurrency, File checkpointFile) {
+		if (adapters.isEmpty())
+			throw new IllegalArgumentException("At least one node is needed for a backfill!");
+		if (workers <= 0 || chunkSize <= 0 || nodeConcurrency <= 0)
+			throw new IllegalArgumentException("Workers, chunk size and node concurrency must be positive!");
+
+		this.id = id;
+		this.batchWriter = batchWriter;
+		this.adapters = adapters;
+		this.workers = workers;
+		this.chunkSize = chunkSize;
+		this.checkpointFile = checkpointFile;
+
+		nodePermits = new ArrayList<>();
+		for (int i = 0; i < adapters.size(); i++)
+			nodePermits.add(new Semaphore(nodeConcurrency));
+	}
+
+	/**
+	 * Sets the layout the blocks are stored with, {@link SchemaVersion#V1} by
+	 * default
+	 *
+	 * @param schemaVersion
+	 *            - The {@link SchemaVersion} of the measurements
+	 */
+	public void setSchemaVersion(SchemaVersion schemaVersion) {
+		this.schemaVersion = schemaVersion;
+	}
+
+	/**
+	 * Loads all blocks of the range and blocks till the backfill is finished
+	 *
+	 * @param from
+	 *            - The first block number to load
+	 * @param to
+	 *            - The last block number to load (inclusive)
+	 * @return <code>true</code> if all chunks were stored otherwise
+	 *         <code>false</code>
+	 */
+	public boolean run(long from, long to) {
+		if (from < 0 || to < from)
+			throw new IllegalArgumentException("Invalid block range: " + from + " - " + to);
+
+		loadCheckpoints();
+
+		// Split range into chunks and skip the ones already stored
+		List<long[]> chunks = new LinkedList<>();
+		for (long start = from; start <= to; start += chunkSize) {
+			long end = Math.min(to, start + chunkSize - 1);
+			if (!isCompleted(start, end))
+				chunks.add(new long[] { start, end });
+		}
+		Client.logger.info("Backfilling blocks " + from + " - " + to + ": " + chunks.size() + " chunks left!");
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		List<Future<Boolean>> results = new ArrayList<>();
+		int chunkIndex = 0;
+		long startTime = System.currentTimeMillis();
+		for (final long[] chunk : chunks) {
+			// Distribute chunks round robin over the nodes
+			final int node = chunkIndex++ % adapters.size();
+			results.add(executor.submit(() -> storeChunk(chunk[0], chunk[1], node)));
+		}
+		executor.shutdown();
+
+		boolean isSuccess = true;
+		for (Future<Boolean> result : results) {
+			try {
+				isSuccess &= result.get();
+			} catch (Exception e) {
+				Client.logger.error("Backfill worker failed!", e);
+				isSuccess = false;
+			}
+		}
+
+		long seconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startTime));
+		Client.logger.info("Backfill finished: " + storedBlocks.get() + " blocks stored in " + seconds + "s ("
+				+ storedBlocks.get() / seconds + " blocks/s)!");
+		return isSuccess;
+	}
+
+	/**
+	 * Fetches the blocks of a chunk and stores them
+	 *
+	 * @param start
+	 *            - The first block number of the chunk
+	 * @param end
+	 *            - The last block number of the chunk
+	 * @param node
+	 *            - The index of the node to fetch the chunk from
+	 * @return <code>true</code> if the chunk was stored otherwise
+	 *         <code>false</code>
+	 */
+	private boolean storeChunk(long start, long end, int node) throws InterruptedException {
+		BlockchainAdapter bca = adapters.get(node);
+		Semaphore permits = nodePermits.get(node);
+
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+			List<Block> blocks;
+			permits.acquire();
+			try {
+				blocks = bca.getBlockRange(start, end);
+			} finally {
+				permits.release();
+			}
+
+			List<String> records = new ArrayList<>(blocks.size());
+			for (Block block : blocks) {
+				if (block == null)
+					break;
+				records.add(InfluxDBUtil.toLineProtocol(block, id, bca.getNodeAddress(), schemaVersion));
+			}
+			if (records.size() < blocks.size()) {
+				Client.logger.warn("Chunk " + start + " - " + end + " incomplete, attempt " + attempt + " of "
+						+ MAX_ATTEMPTS + "!");
+				continue;
+			}
+
+			try {
+				batchWriter.write(records).get();
+			} catch (ExecutionException e) {
+				Client.logger.warn("Chunk " + start + " - " + end + " couldn't be written, attempt " + attempt + " of "
+						+ MAX_ATTEMPTS + "!", e.getCause());
+				continue;
+			}
+			storedBlocks.addAndGet(records.size());
+			saveCheckpoint(start, end);
+			Client.logger.debug("Chunk " + start + " - " + end + " stored!");
+			return true;
+		}
+
+		Client.logger.error("Chunk " + start + " - " + end + " couldn't be stored!");
+		return false;
+	}
+
+	/**
+	 * Checks if a chunk was already stored by a previous run
+	 *
+	 * @param start
+	 *            - The first block number of the chunk
+	 * @param end
+	 *            - The last block number of the chunk
+	 * @return <code>true</code> if the chunk is covered by a checkpoint otherwise
+	 *         <code>false</code>
+	 */
+	private synchronized boolean isCompleted(long start, long end) {
+		for (long[] completed : completedChunks)
+			if (completed[0] <= start && end <= completed[1])
+				return true;
+		return false;
+	}
+
+	/**
+	 * Reads all completed chunks from the checkpoint file
+	 */
+	private synchronized void loadCheckpoints() {
+		completedChunks.clear();
+		if (!checkpointFile.exists())
+			return;
+
+		try (BufferedReader br = new BufferedReader(new FileReader(checkpointFile))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] range = line.trim().split("-");
+				if (range.length == 2)
+					completedChunks.add(new long[] { Long.parseLong(range[0]), Long.parseLong(range[1]) });
+			}
+		} catch (IOException | NumberFormatException e) {
+			Client.logger.error("Error reading backfill checkpoints from " + checkpointFile + "!", e);
+		}
+	}
+
+	/**
+	 * Appends a completed chunk to the checkpoint file
+	 *
+	 * @param start
+	 *            - The first block number of the chunk
+	 * @param end
+	 *            - The last block number of the chunk
+	 */
+	private synchronized void saveCheckpoint(long start, long end) {
+		completedChunks.add(new long[] { start, end });
+		try (FileWriter fw = new FileWriter(checkpointFile, true)) {
+			fw.write(start + "-" + end + System.lineSeparator());
+		} catch (IOException e) {
+			Client.logger.error("Error writing backfill checkpoint to " + checkpointFile + "!", e);
+		}
+	}
+}
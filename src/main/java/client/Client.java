@@ -1,39 +1,44 @@
 package client;
 
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.influxdb.InfluxDB;
-import org.influxdb.dto.Point;
-import org.influxdb.dto.Point.Builder;
-import org.influxdb.dto.Query;
-import org.influxdb.dto.QueryResult;
-import org.influxdb.impl.InfluxDBResultMapper;
 
-import blockchain.Block;
 import blockchain.BlockchainAdapter;
-import influx.schema.BlockSchema;
+import blockchain.NewBlockListener;
+import client.PollScheduler.ScheduledPoll;
+import client.pipeline.FetchTask;
+import client.pipeline.IngestionPipeline;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 
 /**
- * Connects to a Blockchain node and continuously retrieves data from it
+ * Connects to a Blockchain node and continuously retrieves data from it. Polls
+ * run on a {@link PollScheduler} that can be shared by many clients. New blocks
+ * are handed to an {@link IngestionPipeline} which fetches, processes and
+ * stores them
  * 
  * @author Yannick
  *
  */
-public class Client extends Thread {
+public class Client {
 
 	public static Logger logger = Logger.getLogger("Client");
 
-	private final int DEFAULT_POLLING_INTERVAL = 10000;
+	public static final int DEFAULT_POLLING_INTERVAL = 10000;
+	public static final int DEFAULT_MIN_POLLING_INTERVAL = 1000;
 
 	private String id;
-	private Timer timer;
-	private InfluxDB influxDB;
 	private BlockchainAdapter bca;
 	private int pollingInterval;
+	private AdaptivePollInterval adaptiveInterval;
+	private IngestionPipeline pipeline;
+	private boolean ownsPipeline;
+	private PollScheduler scheduler;
+	private ScheduledPoll poll;
+	private PropagationTracker.Node propagationNode;
+	private LatencyHistogram pollDuration;
 
 	/**
 	 * Constructor
@@ -48,9 +53,11 @@ public class Client extends Thread {
 	public Client(String id, InfluxDB influxDB, BlockchainAdapter bca) {
 
 		this.id = id;
-		this.influxDB = influxDB;
 		this.bca = bca;
 		this.pollingInterval = DEFAULT_POLLING_INTERVAL;
+		this.pipeline = new IngestionPipeline(influxDB);
+		this.ownsPipeline = true;
+		this.scheduler = new PollScheduler(1);
 	}
 
 	/**
@@ -69,49 +76,128 @@ public class Client extends Thread {
 	public Client(String id, InfluxDB influxDB, BlockchainAdapter bca, int pollingInterval) {
 
 		this.id = id;
-		this.influxDB = influxDB;
 		this.bca = bca;
 		this.pollingInterval = pollingInterval;
+		this.pipeline = new IngestionPipeline(influxDB);
+		this.ownsPipeline = true;
+		this.scheduler = new PollScheduler(1);
+	}
+
+	/**
+	 * Constructor for clients that share an {@link IngestionPipeline} and a
+	 * {@link PollScheduler}. Both have to be started and stopped by the caller
+	 * 
+	 * @param id
+	 *            - The ID of this client
+	 * @param bca
+	 *            - An instance of a {@link BlockchainAdapter}
+	 * @param minPollingInterval
+	 *            - The minimum amount of time in milliseconds this client waits to
+	 *            poll for new data. If it is lower than the polling interval the
+	 *            interval adapts to the observed block time
+	 * @param pollingInterval
+	 *            - The maximum amount of time in milliseconds this client waits to
+	 *            poll for new data
+	 * @param pipeline
+	 *            - The {@link IngestionPipeline} that processes the new blocks
+	 * @param scheduler
+	 *            - The {@link PollScheduler} that runs the polls
+	 */
+	public Client(String id, BlockchainAdapter bca, int minPollingInterval, int pollingInterval,
+			IngestionPipeline pipeline, PollScheduler scheduler) {
+
+		this.id = id;
+		this.bca = bca;
+		this.pollingInterval = pollingInterval;
+		if (minPollingInterval < pollingInterval)
+			this.adaptiveInterval = new AdaptivePollInterval(minPollingInterval, pollingInterval);
+		this.pipeline = pipeline;
+		this.ownsPipeline = false;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Registers the node of this client at a {@link PropagationTracker}, which
+	 * then records when the node reported new blocks. Must be called before the
+	 * client is started
+	 * 
+	 * @param tracker
+	 *            - The {@link PropagationTracker} shared by the clients of all
+	 *            nodes
+	 */
+	public void setPropagationTracker(PropagationTracker tracker) {
+		this.propagationNode = tracker.register(id, bca.getNodeAddress());
 	}
 
 	/**
 	 * Stops the client and closes the Blockchain connection
 	 */
 	public void stopClient() {
-		timer.cancel();
+		bca.setNewBlockListener(null);
+		if (poll != null)
+			poll.cancel();
+		if (ownsPipeline) {
+			scheduler.shutdown();
+			pipeline.stop();
+		} else
+			pipeline.removeNode(bca);
 		bca.stopConnection();
 		logger.info("Client stopped!");
 	}
 
 	/**
-	 * Asynchronously polls the {@link BlockchainAdapter} for new data and processes
-	 * it
+	 * Starts to asynchronously poll the {@link BlockchainAdapter} for new data.
+	 * Polls never overlap and blocks pushed by the adapter trigger an immediate
+	 * poll
 	 */
-	@Override
-	public void run() {
+	public void start() {
 		logger.info(id + " started for node: " + bca.getNodeAddress() + "!");
-		timer = new Timer();
-		timer.scheduleAtFixedRate(new TimerTask() {
+		if (ownsPipeline)
+			pipeline.start();
+		pollDuration = MetricsRegistry.getDefault().histogram("bse_poll_duration_seconds",
+				"Duration of the polls for new blocks", "node", bca.getNodeAddress());
+		Runnable pollTask = new Runnable() {
 
 			@Override
 			public void run() {
-				// Gather Data if Blockchain Adapter is connected else stop this client
-				if (bca.isConnected()) {
-					// wait for sync then collect new blocks
-					if (bca.isSynced())
-						gatherBlockchainData(bca);
-					else
-						logger.info("Node is still syncing, waiting for sync to finish...");
-
-				} else
-					stopClient();
+				poll();
+			}
+		};
+		if (adaptiveInterval != null)
+			poll = scheduler.schedule(pollTask, adaptiveInterval);
+		else
+			poll = scheduler.schedule(pollTask, pollingInterval);
+		bca.setNewBlockListener(new NewBlockListener() {
+
+			@Override
+			public void onNewBlocks() {
+				poll.trigger();
 			}
-		}, 0, pollingInterval);
+		});
+	}
+
+	/**
+	 * Polls the {@link BlockchainAdapter} once
+	 */
+	private void poll() {
+		long start = System.nanoTime();
+		// Gather Data if Blockchain Adapter is connected else stop this client
+		if (bca.isConnected()) {
+			// wait for sync then collect new blocks
+			if (bca.isSynced())
+				gatherBlockchainData(bca);
+			else
+				logger.info("Node is still syncing, waiting for sync to finish...");
+
+		} else
+			stopClient();
+		pollDuration.recordSince(start);
 	}
 
 	/**
-	 * Retrieves new blocks from the {@link BlockchainAdapter}, processes them and
-	 * stores them in Influx
+	 * Retrieves the hashes of new blocks from the {@link BlockchainAdapter} and
+	 * hands them to the {@link IngestionPipeline}. Blocks while the pipeline is
+	 * full
 	 * 
 	 * @param bca
 	 *            - The {@link BlockchainAdapter} to read from
@@ -124,53 +210,23 @@ public class Client extends Thread {
 		logger.debug("Polling for new blocks...");
 		// Stop if error was encountered
 		List<String> newBlocks = bca.getNextBlocks();
+		if (propagationNode != null) {
+			// pushed blocks trigger the poll right away, polled ones are seen up to
+			// a polling interval late
+			long arrival = System.nanoTime();
+			boolean isPushed = bca.isSubscribed();
+			for (String hash : newBlocks)
+				propagationNode.onBlock(hash, arrival, isPushed);
+		}
 		logger.debug("Recieved " + newBlocks.size() + " new blocks!");
-
-		for (String blockHash : newBlocks) {
-			logger.debug("Processing block " + blockHash + "...");
-			Block block = bca.getBlock(blockHash);
-			if (block == null) {
-				// TODO Possibly retry?
-				logger.warn("Block data couldn't be retrieved, skipping block " + blockHash + "!");
-				continue;
-			}
-
-			// Query InfluxDB to retrieve all stored blocks which are not part of the
-			// mainchain anymore
-			if (block.hasOrphanedBlocks()) {
-				logger.debug("Block (Nr: " + block.getBlockNumber() + ", Hash: " + blockHash
-						+ "): Block has orphaned blocks! Checking DB for mainchain continuity...");
-				// Build the where clause: WHERE Hash=<OrphanHash1> OR Hash=<OrphanHash2> ...
-				StringBuilder whereCond = new StringBuilder(" WHERE Hash=");
-				for (int i = 0; i < block.getOrphanedBlocks().size() - 1; i++)
-					whereCond.append("'" + block.getOrphanedBlocks().get(i) + "'" + " OR Hash=");
-				whereCond.append("'" + block.getOrphanedBlocks().get(block.getOrphanedBlocks().size() - 1) + "'");
-
-				// perform query and store results in list
-				Query query = new Query("SELECT * FROM " + block.getMeasurementName() + whereCond);
-				InfluxDBResultMapper resultMapper = new InfluxDBResultMapper();
-				QueryResult qr = influxDB.query(query);
-				List<? extends BlockSchema> queryResults = resultMapper.toPOJO(qr, block.getMeasurement());
-
-				// iterate results and adjust all found blocks
-				for (BlockSchema record : queryResults) {
-					Builder builder = Point.measurement(block.getMeasurementName())
-							.time(record.getTime().getEpochSecond(), TimeUnit.SECONDS).tag("Hash", record.getHash())
-							.tag("Client", record.getClient()).tag("Node", record.getNode()).addField("Orphan", true);
-					influxDB.write(builder.build());
-					logger.debug("Found block " + record.getHash() + " and removed it from the mainchain!");
-				}
-				logger.debug("Mainchain updated!");
-			}
-
-			Builder builder = Point.measurement(block.getMeasurementName()).time(block.getTimestamp(), TimeUnit.SECONDS)
-					.tag("Hash", block.getHash()).tag("Client", id).tag("Node", bca.getNodeAddress())
-					.addField("BlockNumber", block.getBlockNumber()).addField("Orphan", false);
-
-			builder.addFieldsFromPOJO(block.getBlockData());
-			influxDB.write(builder.build());
-
-			logger.info("Block (Nr: " + block.getBlockNumber() + ", Hash: " + blockHash + "): stored in DB!");
+		if (newBlocks.isEmpty())
+			return;
+
+		try {
+			pipeline.submit(new FetchTask(id, bca, newBlocks, adaptiveInterval));
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while handing new blocks to the pipeline!");
+			Thread.currentThread().interrupt();
 		}
 	}
 }
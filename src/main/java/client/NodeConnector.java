@@ -0,0 +1,155 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import blockchain.BlockchainAdapter;
+
+/**
+ * Connects to many nodes at the same time on a bounded pool of threads. Every
+ * adapter that connected is handed to a listener right away, so ingestion of a
+ * node starts as soon as it answered and unreachable nodes only delay
+ * themselves. How long a single attempt may take is up to the adapter's
+ * connect timeout
+ *
+ * @author Yannick
+ *
+ */
+public class NodeConnector {
+
+	public static final int DEFAULT_POOL_SIZE = 16;
+
+	private final ExecutorService executor;
+	private final List<BlockchainAdapter> adapters = new ArrayList<>();
+	private Consumer<BlockchainAdapter> listener;
+	private int pending;
+	private boolean isStopped;
+
+	/**
+	 * Constructor
+	 *
+	 * @param poolSize
+	 *            - The maximum number of nodes connected to at the same time
+	 */
+	public NodeConnector(int poolSize) {
+		if (poolSize <= 0)
+			throw new IllegalArgumentException("Pool size must be positive!");
+		final AtomicInteger threadNr = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("Connector-" + threadNr.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Starts to connect to the nodes in the background
+	 *
+	 * @param nodeAddresses
+	 *            - The addresses of the nodes
+	 * @param factory
+	 *            - Creates the {@link BlockchainAdapter} of an address, which
+	 *            connects in its constructor
+	 * @param listener
+	 *            - Gets every connected adapter on the connecting thread or
+	 *            <code>null</code> to only collect them. Must not block, as it
+	 *            is called while other connections wait to be handed over
+	 */
+	public void connect(List<String> nodeAddresses, final Function<String, BlockchainAdapter> factory,
+			Consumer<BlockchainAdapter> listener) {
+		synchronized (this) {
+			this.listener = listener;
+			pending += nodeAddresses.size();
+		}
+		for (final String nodeAddress : nodeAddresses) {
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						BlockchainAdapter bca = null;
+						try {
+							bca = factory.apply(nodeAddress.trim());
+						} catch (RuntimeException e) {
+							Client.logger.error("Couldn't connect to node " + nodeAddress + "!", e);
+						}
+						onAttempt(bca);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				onAttempt(null);
+			}
+		}
+	}
+
+	/**
+	 * Hands a connected adapter to the listener and closes it if the connector
+	 * was stopped meanwhile
+	 *
+	 * @param bca
+	 *            - The {@link BlockchainAdapter} of the attempt or
+	 *            <code>null</code> if it couldn't be created
+	 */
+	private synchronized void onAttempt(BlockchainAdapter bca) {
+		pending--;
+		if (bca != null && bca.isConnected()) {
+			if (isStopped)
+				bca.stopConnection();
+			else {
+				adapters.add(bca);
+				if (listener != null)
+					listener.accept(bca);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Waits till the first node connected or all attempts failed
+	 *
+	 * @return <code>true</code> if a node is connected otherwise
+	 *         <code>false</code>
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public synchronized boolean awaitConnected() throws InterruptedException {
+		while (adapters.isEmpty() && pending > 0)
+			wait();
+		return !adapters.isEmpty();
+	}
+
+	/**
+	 * Waits till all attempts finished
+	 *
+	 * @return The connected {@link BlockchainAdapter}s in the order they
+	 *         connected
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public synchronized List<BlockchainAdapter> awaitAll() throws InterruptedException {
+		while (pending > 0)
+			wait();
+		return new ArrayList<>(adapters);
+	}
+
+	/**
+	 * Stops to connect. No adapter is handed to the listener after this returns,
+	 * nodes that still connect are disconnected again
+	 */
+	public synchronized void stop() {
+		isStopped = true;
+		// attempts that didn't start yet are dropped, running ones are interrupted
+		pending -= executor.shutdownNow().size();
+		notifyAll();
+	}
+}
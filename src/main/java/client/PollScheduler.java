@@ -0,0 +1,191 @@
+package client;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the polls of many clients on a bounded pool of threads. After each
+ * execution a poll is rescheduled with the delay its {@link PollInterval}
+ * returns and it can additionally be triggered on demand, executions of the
+ * same poll never overlap
+ *
+ * @author Yannick
+ *
+ */
+public class PollScheduler {
+
+	public static final int DEFAULT_POOL_SIZE = 4;
+
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * Determines the delay between two executions of a poll
+	 */
+	public interface PollInterval {
+
+		/**
+		 * Called after every scheduled execution of a poll
+		 * 
+		 * @return The delay in milliseconds till the next execution
+		 */
+		long nextDelay();
+	}
+
+	/**
+	 * A poll registered at the {@link PollScheduler}
+	 */
+	public class ScheduledPoll {
+
+		private final Runnable poll;
+		private final PollInterval interval;
+		private final AtomicBoolean isRunning = new AtomicBoolean();
+		private final AtomicBoolean isRequested = new AtomicBoolean();
+		private volatile boolean isCancelled;
+		private ScheduledFuture<?> future;
+
+		private ScheduledPoll(Runnable poll, PollInterval interval) {
+			this.poll = poll;
+			this.interval = interval;
+		}
+
+		/**
+		 * Schedules the next regular execution of the poll
+		 * 
+		 * @param delay
+		 *            - The delay in milliseconds
+		 */
+		private synchronized void scheduleNext(long delay) {
+			if (isCancelled)
+				return;
+			try {
+				future = executor.schedule(new Runnable() {
+					@Override
+					public void run() {
+						runOnce();
+						scheduleNext(interval.nextDelay());
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				Client.logger.debug("Scheduler already shut down, poll not rescheduled!");
+			}
+		}
+
+		/**
+		 * Runs the poll as soon as a thread is available. If the poll is currently
+		 * running it is run once more after it finished
+		 */
+		public void trigger() {
+			if (isCancelled)
+				return;
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						runOnce();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				Client.logger.debug("Scheduler already shut down, ignoring poll trigger!");
+			}
+		}
+
+		/**
+		 * Stops all future executions of the poll
+		 */
+		public synchronized void cancel() {
+			isCancelled = true;
+			if (future != null)
+				future.cancel(false);
+		}
+
+		/**
+		 * Runs the poll unless it is already running on another thread, in which
+		 * case that thread repeats it
+		 */
+		private void runOnce() {
+			isRequested.set(true);
+			while (!isCancelled && isRequested.get() && isRunning.compareAndSet(false, true)) {
+				try {
+					isRequested.set(false);
+					poll.run();
+				} catch (RuntimeException e) {
+					Client.logger.error("Poll failed!", e);
+				} finally {
+					isRunning.set(false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param poolSize
+	 *            - The maximum number of polls running at the same time
+	 */
+	public PollScheduler(int poolSize) {
+		if (poolSize <= 0)
+			throw new IllegalArgumentException("Pool size must be positive!");
+		final AtomicInteger threadNr = new AtomicInteger();
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(poolSize, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("Poller-" + threadNr.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		this.executor = executor;
+	}
+
+	/**
+	 * Schedules a poll that runs immediately and then with the given delay between
+	 * the end of one and the start of the next execution
+	 *
+	 * @param poll
+	 *            - The poll to run
+	 * @param interval
+	 *            - The delay between two executions in milliseconds
+	 * @return The {@link ScheduledPoll} to trigger or cancel the poll
+	 */
+	public ScheduledPoll schedule(Runnable poll, final long interval) {
+		return schedule(poll, new PollInterval() {
+			@Override
+			public long nextDelay() {
+				return interval;
+			}
+		});
+	}
+
+	/**
+	 * Schedules a poll that runs immediately and then with the delay determined by
+	 * the {@link PollInterval} after every execution
+	 *
+	 * @param poll
+	 *            - The poll to run
+	 * @param interval
+	 *            - The {@link PollInterval} that determines the delays
+	 * @return The {@link ScheduledPoll} to trigger or cancel the poll
+	 */
+	public ScheduledPoll schedule(Runnable poll, PollInterval interval) {
+		ScheduledPoll scheduledPoll = new ScheduledPoll(poll, interval);
+		scheduledPoll.scheduleNext(0);
+		return scheduledPoll;
+	}
+
+	/**
+	 * Stops the scheduler, running polls are finished
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,304 @@
+package client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.dto.Point;
+
+/**
+ * Measures how blocks propagate through the network by recording when every
+ * node reported a block first. The arrival times of the most recent blocks are
+ * kept in a bounded map that evicts the oldest block, a block is reported with
+ * its spread between the first and the last node once all nodes saw it or it
+ * settled. The lag of every node behind the first node is kept in a rolling
+ * window, so a reported arrival doesn't allocate memory. Blocks pushed by a
+ * node are reported right away, while polled blocks are only seen with the
+ * next poll, so the lags of pushed and polled blocks are kept apart
+ *
+ * @author Yannick
+ *
+ */
+public class PropagationTracker {
+
+	public static final int DEFAULT_MAX_BLOCKS = 1024;
+	public static final int DEFAULT_WINDOW_SIZE = 256;
+	// Time after which a block that wasn't seen by all nodes is reported anyway
+	public static final long DEFAULT_SETTLE_TIME = 60000;
+	public static final String BLOCK_MEASUREMENT = "Propagation";
+	public static final String NODE_MEASUREMENT = "PropagationLag";
+
+	/**
+	 * The arrival times of a block
+	 */
+	private static class Arrivals {
+
+		private final String hash;
+		private final long firstNanos;
+		private final long firstMillis;
+		private final long[] seenBy;
+		private long lastNanos;
+		private int nodes;
+		private boolean isReported;
+
+		private Arrivals(String hash, long firstNanos, long firstMillis, int maxNodes) {
+			this.hash = hash;
+			this.firstNanos = firstNanos;
+			this.firstMillis = firstMillis;
+			this.lastNanos = firstNanos;
+			this.seenBy = new long[(maxNodes + 63) / 64];
+		}
+
+		/**
+		 * Marks the block as seen by a node
+		 *
+		 * @return <code>false</code> if the node already saw the block
+		 */
+		private boolean markSeen(int nodeIndex, long nanos) {
+			long bit = 1L << (nodeIndex & 63);
+			if ((seenBy[nodeIndex >> 6] & bit) != 0)
+				return false;
+			seenBy[nodeIndex >> 6] |= bit;
+			nodes++;
+			if (nanos > lastNanos)
+				lastNanos = nanos;
+			return true;
+		}
+	}
+
+	/**
+	 * A node whose arrivals are tracked
+	 */
+	public class Node {
+
+		private final int index;
+		private final String clientId;
+		private final String nodeAddress;
+		private final RollingWindow pushLags;
+		private final RollingWindow pollLags;
+
+		private Node(int index, String clientId, String nodeAddress) {
+			this.index = index;
+			this.clientId = clientId;
+			this.nodeAddress = nodeAddress;
+			this.pushLags = new RollingWindow(windowSize);
+			this.pollLags = new RollingWindow(windowSize);
+		}
+
+		/**
+		 * Records that the node reported a block
+		 *
+		 * @param hash
+		 *            - The hash of the block
+		 * @param nanos
+		 *            - The time the block was reported at from
+		 *            {@link System#nanoTime()}
+		 * @param isPushed
+		 *            - <code>true</code> if the node pushed the block,
+		 *            <code>false</code> if it was found by polling the node
+		 */
+		public void onBlock(String hash, long nanos, boolean isPushed) {
+			Arrivals arrivals = getArrivals(hash, nanos);
+			long lag;
+			synchronized (arrivals) {
+				if (!arrivals.markSeen(index, nanos))
+					return;
+				lag = Math.max(0, nanos - arrivals.firstNanos);
+			}
+			synchronized (this) {
+				(isPushed ? pushLags : pollLags).add(lag / 1e6);
+			}
+		}
+
+		public String getClientId() {
+			return clientId;
+		}
+
+		public String getNodeAddress() {
+			return nodeAddress;
+		}
+	}
+
+	private final int maxBlocks;
+	private final int maxNodes;
+	private final int windowSize;
+	private final long settleTime;
+	private final Map<String, Arrivals> blocks = new ConcurrentHashMap<>();
+	// Hashes in the order they were first seen, to evict the oldest block
+	private final String[] order;
+	private int next;
+	private final List<Node> nodes = new CopyOnWriteArrayList<>();
+	private final ArrayDeque<String> pendingRecords = new ArrayDeque<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxNodes
+	 *            - The maximum number of nodes that can be registered
+	 */
+	public PropagationTracker(int maxNodes) {
+		this(maxNodes, DEFAULT_MAX_BLOCKS, DEFAULT_WINDOW_SIZE, DEFAULT_SETTLE_TIME);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxNodes
+	 *            - The maximum number of nodes that can be registered
+	 * @param maxBlocks
+	 *            - The number of recent blocks whose arrival times are kept
+	 * @param windowSize
+	 *            - The number of recent arrivals per node the lag percentiles are
+	 *            computed of
+	 * @param settleTime
+	 *            - The time in milliseconds after the first arrival a block is
+	 *            reported even if not all nodes saw it
+	 */
+	public PropagationTracker(int maxNodes, int maxBlocks, int windowSize, long settleTime) {
+		if (maxNodes <= 0 || maxBlocks <= 0 || windowSize <= 0)
+			throw new IllegalArgumentException("Number of nodes, blocks and window size must be positive!");
+		this.maxNodes = maxNodes;
+		this.maxBlocks = maxBlocks;
+		this.windowSize = windowSize;
+		this.settleTime = settleTime;
+		this.order = new String[maxBlocks];
+	}
+
+	/**
+	 * Registers a node whose arrivals are tracked
+	 *
+	 * @param clientId
+	 *            - The ID of the client polling the node
+	 * @param nodeAddress
+	 *            - The address of the node
+	 * @return The {@link Node} to record the arrivals with
+	 * @throws IllegalStateException
+	 *             if the maximum number of nodes is already registered
+	 */
+	public synchronized Node register(String clientId, String nodeAddress) {
+		if (nodes.size() >= maxNodes)
+			throw new IllegalStateException("Only " + maxNodes + " nodes can be tracked!");
+		Node node = new Node(nodes.size(), clientId, nodeAddress);
+		nodes.add(node);
+		return node;
+	}
+
+	/**
+	 * Returns the arrival times of a block and starts tracking it on its first
+	 * arrival. The oldest block is evicted if too many blocks are tracked
+	 *
+	 * @param hash
+	 *            - The hash of the block
+	 * @param nanos
+	 *            - The time of the arrival
+	 * @return The {@link Arrivals} of the block
+	 */
+	private Arrivals getArrivals(String hash, long nanos) {
+		Arrivals arrivals = blocks.get(hash);
+		if (arrivals != null)
+			return arrivals;
+		synchronized (order) {
+			arrivals = blocks.get(hash);
+			if (arrivals != null)
+				return arrivals;
+			arrivals = new Arrivals(hash, nanos, System.currentTimeMillis(), maxNodes);
+			if (order[next] != null) {
+				Arrivals evicted = blocks.remove(order[next]);
+				if (evicted != null)
+					report(evicted);
+			}
+			order[next] = hash;
+			next = (next + 1) % maxBlocks;
+			blocks.put(hash, arrivals);
+			return arrivals;
+		}
+	}
+
+	/**
+	 * Encodes the spread of a block once
+	 *
+	 * @param arrivals
+	 *            - The {@link Arrivals} of the block
+	 */
+	private void report(Arrivals arrivals) {
+		String record;
+		synchronized (arrivals) {
+			if (arrivals.isReported)
+				return;
+			arrivals.isReported = true;
+			record = Point.measurement(BLOCK_MEASUREMENT).time(arrivals.firstMillis, TimeUnit.MILLISECONDS)
+					.addField("Hash", arrivals.hash).addField("Nodes", arrivals.nodes)
+					.addField("Spread", (arrivals.lastNanos - arrivals.firstNanos) / 1e6).build().lineProtocol();
+		}
+		synchronized (pendingRecords) {
+			// Drop the oldest records if nobody collects them
+			if (pendingRecords.size() >= maxBlocks)
+				pendingRecords.poll();
+			pendingRecords.add(record);
+		}
+	}
+
+	/**
+	 * Encodes the spread of every block that was seen by all nodes or settled and
+	 * the lag percentiles of every node. The spread of a block is only returned
+	 * once
+	 *
+	 * @param timestamp
+	 *            - The time of the node records in seconds
+	 * @return A {@link List} of line protocol records
+	 */
+	public List<String> toRecords(long timestamp) {
+		long now = System.nanoTime();
+		long settleNanos = TimeUnit.MILLISECONDS.toNanos(settleTime);
+		int nodeCount = nodes.size();
+		for (Arrivals arrivals : blocks.values()) {
+			boolean isComplete;
+			synchronized (arrivals) {
+				isComplete = !arrivals.isReported
+						&& (arrivals.nodes >= nodeCount || now - arrivals.firstNanos >= settleNanos);
+			}
+			if (isComplete)
+				report(arrivals);
+		}
+
+		List<String> records;
+		synchronized (pendingRecords) {
+			records = new ArrayList<>(pendingRecords);
+			pendingRecords.clear();
+		}
+		for (Node node : nodes) {
+			synchronized (node) {
+				addLagRecord(records, timestamp, node, "push", node.pushLags);
+				addLagRecord(records, timestamp, node, "poll", node.pollLags);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Encodes the lag percentiles of the blocks a node pushed or that were polled
+	 */
+	private static void addLagRecord(List<String> records, long timestamp, Node node, String discovery,
+			RollingWindow lags) {
+		if (lags.getCount() == 0)
+			return;
+		records.add(Point.measurement(NODE_MEASUREMENT).time(timestamp, TimeUnit.SECONDS)
+				.tag("Client", node.clientId).tag("Node", node.nodeAddress).tag("Discovery", discovery)
+				.addField("Blocks", lags.getCount()).addField("LagMean", lags.getMean())
+				.addField("LagP50", lags.getPercentile(50)).addField("LagP99", lags.getPercentile(99)).build()
+				.lineProtocol());
+	}
+
+	/**
+	 * Returns the number of tracked blocks
+	 *
+	 * @return The number of blocks whose arrival times are kept
+	 */
+	public int size() {
+		return blocks.size();
+	}
+}
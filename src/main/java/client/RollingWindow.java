@@ -0,0 +1,100 @@
+package client;
+
+import java.util.Arrays;
+
+/**
+ * Ring buffer of the last samples of a metric. Adding a sample overwrites the
+ * oldest one once the window is full and updates the running sum, so neither
+ * adding nor the mean allocate memory. Percentiles sort a copy of the samples
+ * in a scratch array allocated with the window
+ *
+ * @author Yannick
+ *
+ */
+public class RollingWindow {
+
+	private final double[] samples;
+	private final double[] sorted;
+	private int next;
+	private int count;
+	private double sum;
+
+	/**
+	 * Constructor
+	 *
+	 * @param size
+	 *            - The number of samples kept
+	 */
+	public RollingWindow(int size) {
+		if (size <= 0)
+			throw new IllegalArgumentException("Window size must be positive!");
+		samples = new double[size];
+		sorted = new double[size];
+	}
+
+	/**
+	 * Adds a sample and evicts the oldest one if the window is full
+	 *
+	 * @param sample
+	 *            - The value of the sample
+	 */
+	public void add(double sample) {
+		if (count == samples.length)
+			sum -= samples[next];
+		else
+			count++;
+		samples[next] = sample;
+		sum += sample;
+		next = (next + 1) % samples.length;
+		// Recompute the sum once per round to stop rounding errors from adding up
+		if (next == 0) {
+			sum = 0;
+			for (int i = 0; i < count; i++)
+				sum += samples[i];
+		}
+	}
+
+	/**
+	 * Returns the number of samples in the window
+	 *
+	 * @return The number of samples, at most the window size
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the mean of the samples
+	 *
+	 * @return The mean or NaN if the window is empty
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	/**
+	 * Returns a percentile of the samples using the nearest rank
+	 *
+	 * @param percentile
+	 *            - The percentile between 0 and 100, e.g. 99
+	 * @return The smallest sample that is greater than or equal to the given
+	 *         percentage of the samples or NaN if the window is empty
+	 */
+	public double getPercentile(double percentile) {
+		if (count == 0)
+			return Double.NaN;
+		System.arraycopy(samples, 0, sorted, 0, count);
+		Arrays.sort(sorted, 0, count);
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return sorted[Math.min(count, Math.max(1, rank)) - 1];
+	}
+
+	/**
+	 * Removes all samples
+	 */
+	public void clear() {
+		next = 0;
+		count = 0;
+		sum = 0;
+	}
+}
@@ -0,0 +1,21 @@
+package client.pipeline;
+
+import blockchain.Block;
+
+/**
+ * Gets notified by the {@link IngestionPipeline} about every block it fetched
+ * for a client
+ * 
+ * @author Yannick
+ *
+ */
+public interface BlockObserver {
+
+	/**
+	 * Called by the fetch stage for every successfully fetched block
+	 * 
+	 * @param block
+	 *            - The fetched {@link Block}
+	 */
+	void onBlock(Block block);
+}
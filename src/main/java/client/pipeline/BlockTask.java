@@ -0,0 +1,94 @@
+package client.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import blockchain.Block;
+import blockchain.BlockchainAdapter;
+import influx.schema.BlockSchema;
+
+/**
+ * A single block that moves through the reconcile, encode and write stages of
+ * the {@link IngestionPipeline}
+ * 
+ * @author Yannick
+ *
+ */
+public class BlockTask {
+
+	private final String clientId;
+	private final BlockchainAdapter bca;
+	private final Block block;
+	private List<BlockSchema> orphans = new ArrayList<>();
+	private List<String> records = new ArrayList<>();
+	private BlockTracer.Span span;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param clientId
+	 *            - The ID of the client that discovered the block
+	 * @param bca
+	 *            - The {@link BlockchainAdapter} the block was fetched from
+	 * @param block
+	 *            - The fetched {@link Block}
+	 */
+	public BlockTask(String clientId, BlockchainAdapter bca, Block block) {
+		this.clientId = clientId;
+		this.bca = bca;
+		this.block = block;
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	public BlockchainAdapter getAdapter() {
+		return bca;
+	}
+
+	public Block getBlock() {
+		return block;
+	}
+
+	/**
+	 * Returns the stored blocks that were found to be no longer part of the
+	 * mainchain
+	 * 
+	 * @return A {@link List} of the orphaned records
+	 */
+	public List<BlockSchema> getOrphans() {
+		return orphans;
+	}
+
+	public void setOrphans(List<BlockSchema> orphans) {
+		this.orphans = orphans;
+	}
+
+	/**
+	 * Returns the encoded line protocol records of the block and its orphans
+	 * 
+	 * @return A {@link List} of line protocol records
+	 */
+	public List<String> getRecords() {
+		return records;
+	}
+
+	public void setRecords(List<String> records) {
+		this.records = records;
+	}
+
+	/**
+	 * Returns the trace of the block
+	 * 
+	 * @return The {@link BlockTracer.Span} or <code>null</code> if the block
+	 *         isn't traced
+	 */
+	public BlockTracer.Span getSpan() {
+		return span;
+	}
+
+	public void setSpan(BlockTracer.Span span) {
+		this.span = span;
+	}
+}
@@ -0,0 +1,138 @@
+package client.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.influxdb.dto.Point;
+
+import blockchain.Block;
+
+/**
+ * Traces a sample of the blocks through the {@link IngestionPipeline}: when a
+ * client discovered the block, when its data was fetched, when the mainchain was
+ * reconciled and when Influx acknowledged the write. Every finished span is
+ * encoded as an {@value #MEASUREMENT} record, so the latency the client adds to
+ * the block arrival times can be told apart from the network and the stage that
+ * slows down under load can be found
+ *
+ * @author Yannick
+ *
+ */
+public class BlockTracer {
+
+	public static final int DEFAULT_SAMPLE_RATE = 100;
+	public static final String MEASUREMENT = "IngestLatency";
+	// Spans kept if nobody collects the records
+	private static final int MAX_PENDING_RECORDS = 10000;
+
+	/**
+	 * The times a sampled block passed the stages of the pipeline
+	 */
+	public static class Span {
+
+		private final long discoveredMillis;
+		private final long discoveredNanos;
+		private final long fetchedNanos;
+		private long reconciledNanos;
+
+		/**
+		 * Constructor
+		 *
+		 * @param discoveredMillis
+		 *            - The wall clock time the block was discovered at in
+		 *            milliseconds
+		 * @param discoveredNanos
+		 *            - The time the block was discovered at from
+		 *            {@link System#nanoTime()}
+		 * @param fetchedNanos
+		 *            - The time the block data was fetched at from
+		 *            {@link System#nanoTime()}
+		 */
+		public Span(long discoveredMillis, long discoveredNanos, long fetchedNanos) {
+			this.discoveredMillis = discoveredMillis;
+			this.discoveredNanos = discoveredNanos;
+			this.fetchedNanos = fetchedNanos;
+		}
+
+		/**
+		 * Marks the end of the reconciliation
+		 */
+		public void reconciled() {
+			reconciledNanos = System.nanoTime();
+		}
+	}
+
+	private final int sampleRate;
+	private final AtomicLong blocks = new AtomicLong();
+	private final ArrayDeque<String> pendingRecords = new ArrayDeque<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param sampleRate
+	 *            - Every how many blocks one is traced, 1 to trace all blocks
+	 */
+	public BlockTracer(int sampleRate) {
+		if (sampleRate <= 0)
+			throw new IllegalArgumentException("Sample rate must be positive!");
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Decides if the next block is traced
+	 *
+	 * @return <code>true</code> for one block of every sample rate blocks
+	 */
+	public boolean sample() {
+		return blocks.getAndIncrement() % sampleRate == 0;
+	}
+
+	/**
+	 * Finishes the span of a block whose write was acknowledged and encodes it
+	 *
+	 * @param span
+	 *            - The {@link Span} of the block
+	 * @param clientId
+	 *            - The ID of the client that discovered the block
+	 * @param nodeAddress
+	 *            - The address of the node the block was fetched from
+	 * @param block
+	 *            - The stored {@link Block}
+	 */
+	public void finish(Span span, String clientId, String nodeAddress, Block block) {
+		long writtenNanos = System.nanoTime();
+		String record = Point.measurement(MEASUREMENT).time(span.discoveredMillis, TimeUnit.MILLISECONDS)
+				.tag("Client", clientId).tag("Node", nodeAddress).addField("Hash", block.getHash())
+				.addField("BlockNumber", block.getBlockNumber())
+				.addField("BlockAge", span.discoveredMillis - TimeUnit.SECONDS.toMillis(block.getTimestamp()))
+				.addField("FetchTime", toMillis(span.fetchedNanos - span.discoveredNanos))
+				.addField("ReconcileTime", toMillis(span.reconciledNanos - span.fetchedNanos))
+				.addField("WriteTime", toMillis(writtenNanos - span.reconciledNanos))
+				.addField("TotalTime", toMillis(writtenNanos - span.discoveredNanos)).build().lineProtocol();
+		synchronized (pendingRecords) {
+			if (pendingRecords.size() >= MAX_PENDING_RECORDS)
+				pendingRecords.poll();
+			pendingRecords.add(record);
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * Returns the records of the spans finished since the last call
+	 *
+	 * @return A {@link List} of line protocol records
+	 */
+	public List<String> toRecords() {
+		synchronized (pendingRecords) {
+			List<String> records = new ArrayList<>(pendingRecords);
+			pendingRecords.clear();
+			return records;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package client.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.dto.Point;
+
+import blockchain.Block;
+import client.RollingWindow;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Keeps rolling statistics of the last blocks of every node: the block time,
+ * the gas utilization, the uncle rate and the transactions per block. The
+ * windows are ring buffers of primitives, so a block doesn't allocate memory.
+ * The statistics are stored as one compact record per node in the
+ * {@value #MEASUREMENT} measurement, so dashboards don't have to aggregate the
+ * raw blocks
+ *
+ * @author Yannick
+ *
+ */
+public class ChainHealthMonitor {
+
+	public static final int DEFAULT_WINDOW_SIZE = 256;
+	public static final String MEASUREMENT = "ChainHealth";
+
+	/**
+	 * The windows of one node
+	 */
+	private static class NodeHealth {
+
+		private final String clientId;
+		private final String nodeAddress;
+		private final RollingWindow blockTimes;
+		private final RollingWindow gasUtilization;
+		private final RollingWindow uncles;
+		private final RollingWindow transactions;
+
+		private NodeHealth(String clientId, String nodeAddress, int windowSize) {
+			this.clientId = clientId;
+			this.nodeAddress = nodeAddress;
+			blockTimes = new RollingWindow(windowSize);
+			gasUtilization = new RollingWindow(windowSize);
+			uncles = new RollingWindow(windowSize);
+			transactions = new RollingWindow(windowSize);
+		}
+	}
+
+	private final int windowSize;
+	private final Map<String, NodeHealth> nodes = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param windowSize
+	 *            - The number of recent blocks per node the statistics are
+	 *            computed of
+	 */
+	public ChainHealthMonitor(int windowSize) {
+		if (windowSize <= 0)
+			throw new IllegalArgumentException("Window size must be positive!");
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Adds a block to the windows of the node it was retrieved from. Only blocks
+	 * of the {@link EthereumSchema} carry the gas and uncle data, other blocks
+	 * are ignored
+	 *
+	 * @param clientId
+	 *            - The ID of the client that retrieved the block
+	 * @param nodeAddress
+	 *            - The address of the node the block was retrieved from
+	 * @param block
+	 *            - The {@link Block} to add
+	 */
+	public void onBlock(String clientId, String nodeAddress, Block block) {
+		if (!(block.getBlockData() instanceof EthereumSchema))
+			return;
+		EthereumSchema data = (EthereumSchema) block.getBlockData();
+		NodeHealth health = getNodeHealth(clientId, nodeAddress);
+		synchronized (health) {
+			health.blockTimes.add(data.getBlockCreationTime());
+			if (data.getGasLimit() > 0)
+				health.gasUtilization.add((double) data.getGasUsed() / data.getGasLimit());
+			health.uncles.add(data.getUncles());
+			health.transactions.add(data.getTransactions());
+		}
+	}
+
+	/**
+	 * Returns the windows of a node and creates them on first use
+	 *
+	 * @param clientId
+	 *            - The ID of the client
+	 * @param nodeAddress
+	 *            - The address of the node
+	 * @return The {@link NodeHealth} of the node
+	 */
+	private NodeHealth getNodeHealth(String clientId, String nodeAddress) {
+		String key = clientId + "|" + nodeAddress;
+		NodeHealth health = nodes.get(key);
+		if (health == null) {
+			nodes.putIfAbsent(key, new NodeHealth(clientId, nodeAddress, windowSize));
+			health = nodes.get(key);
+		}
+		return health;
+	}
+
+	/**
+	 * Encodes the current statistics of every node that received blocks
+	 *
+	 * @param timestamp
+	 *            - The time of the records in seconds
+	 * @return A {@link List} of line protocol records, one per node
+	 */
+	public List<String> toRecords(long timestamp) {
+		List<String> records = new ArrayList<>(nodes.size());
+		for (NodeHealth health : nodes.values()) {
+			synchronized (health) {
+				if (health.blockTimes.getCount() == 0)
+					continue;
+				Point.Builder builder = Point.measurement(MEASUREMENT).time(timestamp, TimeUnit.SECONDS)
+						.tag("Client", health.clientId).tag("Node", health.nodeAddress)
+						.addField("Blocks", health.blockTimes.getCount())
+						.addField("BlockTimeMean", health.blockTimes.getMean())
+						.addField("BlockTimeP50", health.blockTimes.getPercentile(50))
+						.addField("BlockTimeP99", health.blockTimes.getPercentile(99))
+						.addField("UncleRate", health.uncles.getMean())
+						.addField("Transactions", health.transactions.getMean());
+				if (health.gasUtilization.getCount() > 0)
+					builder.addField("GasUtilization", health.gasUtilization.getMean());
+				records.add(builder.build().lineProtocol());
+			}
+		}
+		return records;
+	}
+}
@@ -0,0 +1,211 @@
+package client.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import blockchain.Block;
+
+/**
+ * Index of the most recent blocks stored for one node. The blocks are kept in a
+ * ring buffer of primitive arrays and looked up by hash, which allows to detect
+ * orphans and reorgs without querying the database. Blocks older than the
+ * window are evicted in the order they were added
+ *
+ * @author Yannick
+ *
+ */
+public class ChainIndex {
+
+	public static final int DEFAULT_SIZE = 256;
+
+	/**
+	 * A block of the index that was removed from the mainchain
+	 */
+	public static class Entry {
+
+		private final String hash;
+		private final long number;
+		private final long timestamp;
+
+		private Entry(String hash, long number, long timestamp) {
+			this.hash = hash;
+			this.number = number;
+			this.timestamp = timestamp;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public long getNumber() {
+			return number;
+		}
+
+		/**
+		 * Returns the timestamp of the block
+		 *
+		 * @return The timestamp in seconds
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+	}
+
+	private final String[] hashes;
+	private final String[] parentHashes;
+	private final long[] numbers;
+	private final long[] timestamps;
+	private final boolean[] isOrphan;
+
+	private final Map<String, Integer> slotsByHash;
+	private final Map<Long, Integer> mainchain = new HashMap<>();
+	// Slots in the order they were added with increasing block numbers, the first
+	// one holds the lowest indexed block number
+	private final ArrayDeque<Integer> lowestSlots = new ArrayDeque<>();
+	private int next;
+	private int size;
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity
+	 *            - The number of blocks kept in the index
+	 */
+	public ChainIndex(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Index size must be positive!");
+		hashes = new String[capacity];
+		parentHashes = new String[capacity];
+		numbers = new long[capacity];
+		timestamps = new long[capacity];
+		isOrphan = new boolean[capacity];
+		slotsByHash = new HashMap<>(capacity * 2);
+	}
+
+	/**
+	 * Adds a new mainchain block. Indexed blocks at the height of the block or its
+	 * ancestors which are not part of its chain and all their descendants are
+	 * marked as orphans. A block only replaces another one if the parents of both
+	 * are known, blocks of unknown ancestry are left to the uncle detection
+	 *
+	 * @param block
+	 *            - The new {@link Block}
+	 * @return A {@link List} of the blocks removed from the mainchain
+	 */
+	public synchronized List<Entry> add(Block block) {
+		List<Entry> orphans = new ArrayList<>();
+		if (slotsByHash.containsKey(block.getHash()))
+			return orphans;
+
+		int slot = insert(block.getHash(), block.getParentHash(), block.getBlockNumber(), block.getTimestamp());
+
+		// Walk back till the chain of the block joins the indexed mainchain
+		Integer current = slot;
+		while (current != null) {
+			Integer replaced = mainchain.put(numbers[current], current);
+			if (replaced != null && replaced.intValue() == current.intValue())
+				break;
+			if (replaced != null && parentHashes[current] != null && parentHashes[replaced] != null)
+				markOrphan(replaced, orphans);
+			current = parentHashes[current] == null ? null : slotsByHash.get(parentHashes[current]);
+		}
+
+		// Descendants of replaced blocks are not part of the mainchain either
+		for (long number = block.getBlockNumber() + 1;; number++) {
+			Integer descendant = mainchain.get(number);
+			if (descendant == null)
+				break;
+			Integer parent = parentHashes[descendant] == null ? null : slotsByHash.get(parentHashes[descendant]);
+			if (parent == null || !isOrphan[parent])
+				break;
+			mainchain.remove(number);
+			markOrphan(descendant, orphans);
+		}
+		return orphans;
+	}
+
+	/**
+	 * Marks a block as orphan, e.g. because it was included as uncle
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @return The {@link Entry} of the block or <code>null</code> if it isn't
+	 *         indexed or already marked as orphan
+	 */
+	public synchronized Entry markOrphan(String blockHash) {
+		Integer slot = slotsByHash.get(blockHash);
+		if (slot == null || isOrphan[slot])
+			return null;
+		mainchain.remove(numbers[slot], slot);
+
+		List<Entry> orphans = new ArrayList<>(1);
+		markOrphan(slot, orphans);
+		return orphans.get(0);
+	}
+
+	/**
+	 * Checks if a block is indexed
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @return <code>true</code> if the block is indexed otherwise
+	 *         <code>false</code>
+	 */
+	public synchronized boolean contains(String blockHash) {
+		return slotsByHash.containsKey(blockHash);
+	}
+
+	/**
+	 * Checks if the index reaches back to a block number, i.e. whether a block of
+	 * that height stored for this node would be indexed
+	 *
+	 * @param number
+	 *            - The block number
+	 * @return <code>true</code> if the lowest indexed block number is lower or
+	 *         equal otherwise <code>false</code>
+	 */
+	public synchronized boolean covers(long number) {
+		return !lowestSlots.isEmpty() && numbers[lowestSlots.peekFirst()] <= number;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Stores a block in the next slot and evicts the block stored there before
+	 *
+	 * @return The slot of the block
+	 */
+	private int insert(String hash, String parentHash, long number, long timestamp) {
+		int slot = next;
+		next = (next + 1) % hashes.length;
+		if (size == hashes.length) {
+			slotsByHash.remove(hashes[slot]);
+			mainchain.remove(numbers[slot], slot);
+			// The evicted block is the oldest one and therefore first if still kept
+			if (lowestSlots.peekFirst() == slot)
+				lowestSlots.pollFirst();
+		} else
+			size++;
+		while (!lowestSlots.isEmpty() && numbers[lowestSlots.peekLast()] >= number)
+			lowestSlots.pollLast();
+		lowestSlots.addLast(slot);
+
+		hashes[slot] = hash;
+		parentHashes[slot] = parentHash;
+		numbers[slot] = number;
+		timestamps[slot] = timestamp;
+		isOrphan[slot] = false;
+		slotsByHash.put(hash, slot);
+		return slot;
+	}
+
+	private void markOrphan(int slot, List<Entry> orphans) {
+		isOrphan[slot] = true;
+		orphans.add(new Entry(hashes[slot], numbers[slot], timestamps[slot]));
+	}
+}
@@ -0,0 +1,89 @@
+package client.pipeline;
+
+import java.util.List;
+
+import blockchain.BlockchainAdapter;
+
+/**
+ * The hashes of new blocks a client discovered during a poll
+ * 
+ * @author Yannick
+ *
+ */
+public class FetchTask {
+
+	private final String clientId;
+	private final BlockchainAdapter bca;
+	private final List<String> blockHashes;
+	private final BlockObserver observer;
+	private final long discoveredMillis = System.currentTimeMillis();
+	private final long discoveredNanos = System.nanoTime();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param clientId
+	 *            - The ID of the client that discovered the blocks
+	 * @param bca
+	 *            - The {@link BlockchainAdapter} the blocks are fetched from
+	 * @param blockHashes
+	 *            - The hashes of the new blocks
+	 */
+	public FetchTask(String clientId, BlockchainAdapter bca, List<String> blockHashes) {
+		this(clientId, bca, blockHashes, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param clientId
+	 *            - The ID of the client that discovered the blocks
+	 * @param bca
+	 *            - The {@link BlockchainAdapter} the blocks are fetched from
+	 * @param blockHashes
+	 *            - The hashes of the new blocks
+	 * @param observer
+	 *            - The {@link BlockObserver} notified about every fetched block or
+	 *            <code>null</code>
+	 */
+	public FetchTask(String clientId, BlockchainAdapter bca, List<String> blockHashes, BlockObserver observer) {
+		this.clientId = clientId;
+		this.bca = bca;
+		this.blockHashes = blockHashes;
+		this.observer = observer;
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	public BlockchainAdapter getAdapter() {
+		return bca;
+	}
+
+	public List<String> getBlockHashes() {
+		return blockHashes;
+	}
+
+	public BlockObserver getObserver() {
+		return observer;
+	}
+
+	/**
+	 * Returns the wall clock time the blocks were discovered at
+	 * 
+	 * @return The time the task was created in milliseconds
+	 */
+	public long getDiscoveredMillis() {
+		return discoveredMillis;
+	}
+
+	/**
+	 * Returns the time the blocks were discovered at to measure durations
+	 * 
+	 * @return The time the task was created from {@link System#nanoTime()}
+	 */
+	public long getDiscoveredNanos() {
+		return discoveredNanos;
+	}
+}
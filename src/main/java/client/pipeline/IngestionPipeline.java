@@ -0,0 +1,650 @@
+package client.pipeline;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.influxdb.impl.InfluxDBResultMapper;
+
+import blockchain.Block;
+import blockchain.BlockchainAdapter;
+import client.Client;
+import client.PropagationTracker;
+import influx.BatchWriter;
+import influx.InfluxDBUtil;
+import influx.RecordWriter;
+import influx.schema.BlockSchema;
+import influx.schema.SchemaVersion;
+import metrics.Counter;
+import metrics.MetricsRegistry;
+
+/**
+ * Processes the blocks discovered by one or more clients in separate stages:
+ * fetch the block data, reconcile the mainchain, encode the Influx records and
+ * write them. The stages are connected by bounded queues, so a slow node or a
+ * slow database only blocks the stages in front of it while the other stages
+ * keep working
+ *
+ * @author Yannick
+ *
+ */
+public class IngestionPipeline {
+
+	public static final int DEFAULT_PARALLELISM = 1;
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+	public static final long DEFAULT_HEALTH_INTERVAL = 60000;
+	public static final long DEFAULT_RECORD_INTERVAL = 60000;
+	private static final long STATISTICS_INTERVAL = 60000;
+	// Ethereum includes uncles of up to 6 generations before the including block
+	private static final int MAX_UNCLE_DEPTH = 7;
+	// Seconds before a block that replaced blocks and uncles are looked up in
+	private static final long QUERY_TIME_WINDOW = 3600;
+
+	private InfluxDB influxDB;
+	private RecordWriter recordWriter;
+	private BatchWriter ownedBatchWriter;
+	private Timer statisticsTimer;
+	private Timer healthTimer;
+	private Timer recordTimer;
+	private ChainHealthMonitor healthMonitor;
+	private PropagationTracker propagationTracker;
+	private MetricsRegistry metricsRegistry;
+	private BlockTracer blockTracer;
+	private long healthInterval = DEFAULT_HEALTH_INTERVAL;
+	private long recordInterval = DEFAULT_RECORD_INTERVAL;
+	private int chainIndexSize;
+	private SchemaVersion schemaVersion = SchemaVersion.V1;
+	private ConcurrentHashMap<BlockchainAdapter, ChainIndex> chainIndexes = new ConcurrentHashMap<>();
+	private ConcurrentHashMap<BlockchainAdapter, NodeMetrics> nodeMetrics = new ConcurrentHashMap<>();
+
+	/**
+	 * The counters of the blocks of one node
+	 */
+	private static class NodeMetrics {
+
+		private final Counter processedBlocks;
+		private final Counter indexLookups;
+		private final Counter influxLookups;
+
+		private NodeMetrics(String nodeAddress) {
+			MetricsRegistry registry = MetricsRegistry.getDefault();
+			processedBlocks = registry.counter("bse_blocks_processed_total", "Blocks stored in Influx", "node",
+					nodeAddress);
+			indexLookups = registry.counter("bse_orphan_lookups_total",
+					"Lookups of replaced blocks and uncles by where they were answered", "node", nodeAddress,
+					"source", "index");
+			influxLookups = registry.counter("bse_orphan_lookups_total",
+					"Lookups of replaced blocks and uncles by where they were answered", "node", nodeAddress,
+					"source", "influx");
+		}
+	}
+
+	private Stage<FetchTask> fetchStage;
+	private Stage<BlockTask> reconcileStage;
+	private Stage<BlockTask> encodeStage;
+	private Stage<BlockTask> writeStage;
+
+	/**
+	 * Constructor that uses one thread per stage
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 */
+	public IngestionPipeline(InfluxDB influxDB) {
+		this(influxDB, DEFAULT_PARALLELISM, DEFAULT_PARALLELISM, DEFAULT_PARALLELISM, DEFAULT_PARALLELISM,
+				DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param fetchParallelism
+	 *            - The number of threads fetching blocks from the nodes. Every
+	 *            node is fetched by one thread, so a slow node only delays the
+	 *            nodes sharing its thread
+	 * @param reconcileParallelism
+	 *            - The number of threads updating the mainchain
+	 * @param encodeParallelism
+	 *            - The number of threads encoding Influx records
+	 * @param writeParallelism
+	 *            - The number of threads writing to Influx
+	 * @param queueSize
+	 *            - The maximum number of items waiting in front of each stage
+	 */
+	public IngestionPipeline(InfluxDB influxDB, int fetchParallelism, int reconcileParallelism,
+			int encodeParallelism, int writeParallelism, int queueSize) {
+		this(influxDB, new BatchWriter(influxDB), fetchParallelism, reconcileParallelism, encodeParallelism,
+				writeParallelism, queueSize, ChainIndex.DEFAULT_SIZE);
+		ownedBatchWriter = (BatchWriter) recordWriter;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param recordWriter
+	 *            - The started {@link RecordWriter} the records are written with
+	 * @param fetchParallelism
+	 *            - The number of threads fetching blocks from the nodes. Every
+	 *            node is fetched by one thread, so a slow node only delays the
+	 *            nodes sharing its thread
+	 * @param reconcileParallelism
+	 *            - The number of threads updating the mainchain
+	 * @param encodeParallelism
+	 *            - The number of threads encoding Influx records
+	 * @param writeParallelism
+	 *            - The number of threads handing records to the
+	 *            {@link RecordWriter}
+	 * @param queueSize
+	 *            - The maximum number of items waiting in front of each stage
+	 * @param chainIndexSize
+	 *            - The number of recent blocks per node used to detect orphans
+	 *            without querying Influx
+	 */
+	public IngestionPipeline(InfluxDB influxDB, RecordWriter recordWriter, int fetchParallelism,
+			int reconcileParallelism, int encodeParallelism, int writeParallelism, int queueSize, int chainIndexSize) {
+		if (chainIndexSize <= 0)
+			throw new IllegalArgumentException("Chain index size must be positive!");
+		this.influxDB = influxDB;
+		this.recordWriter = recordWriter;
+		this.chainIndexSize = chainIndexSize;
+
+		writeStage = new Stage<>("Write", writeParallelism, queueSize, new StageWorker<BlockTask>() {
+			@Override
+			public void process(BlockTask task) throws Exception {
+				write(task);
+			}
+		});
+		encodeStage = new Stage<>("Encode", encodeParallelism, queueSize, new StageWorker<BlockTask>() {
+			@Override
+			public void process(BlockTask task) throws Exception {
+				encode(task);
+				writeStage.put(task);
+			}
+		});
+		// The blocks of a node are fetched and reconciled in the order they were
+		// discovered, the chain index relies on it to detect replaced blocks
+		reconcileStage = new Stage<>("Reconcile", reconcileParallelism, queueSize, new StageWorker<BlockTask>() {
+			@Override
+			public void process(BlockTask task) throws Exception {
+				reconcile(task);
+				if (task.getSpan() != null)
+					task.getSpan().reconciled();
+				if (healthMonitor != null)
+					healthMonitor.onBlock(task.getClientId(), task.getAdapter().getNodeAddress(), task.getBlock());
+				encodeStage.put(task);
+			}
+		}, BlockTask::getAdapter);
+		fetchStage = new Stage<>("Fetch", fetchParallelism, queueSize, new StageWorker<FetchTask>() {
+			@Override
+			public void process(FetchTask task) throws Exception {
+				fetch(task);
+			}
+		}, FetchTask::getAdapter);
+	}
+
+	/**
+	 * Sets the layout the blocks are stored with, {@link SchemaVersion#V1} by
+	 * default. Must be set before the pipeline is started
+	 *
+	 * @param schemaVersion
+	 *            - The {@link SchemaVersion} of the measurements
+	 */
+	public void setSchemaVersion(SchemaVersion schemaVersion) {
+		this.schemaVersion = schemaVersion;
+	}
+
+	/**
+	 * Sets the monitor that keeps rolling statistics of the reconciled blocks.
+	 * Must be set before the pipeline is started
+	 *
+	 * @param healthMonitor
+	 *            - The {@link ChainHealthMonitor} or <code>null</code> to disable
+	 *            it
+	 */
+	public void setHealthMonitor(ChainHealthMonitor healthMonitor) {
+		this.healthMonitor = healthMonitor;
+	}
+
+	/**
+	 * Sets the tracker whose propagation records are stored with the chain
+	 * health. The clients feed it with the blocks they discover. Must be set
+	 * before the pipeline is started
+	 *
+	 * @param propagationTracker
+	 *            - The {@link PropagationTracker} or <code>null</code> to disable
+	 *            it
+	 */
+	public void setPropagationTracker(PropagationTracker propagationTracker) {
+		this.propagationTracker = propagationTracker;
+	}
+
+	/**
+	 * Sets the tracer that follows a sample of the blocks through the stages, its
+	 * records are stored every record interval. Must be set before the pipeline
+	 * is started
+	 *
+	 * @param blockTracer
+	 *            - The {@link BlockTracer} or <code>null</code> to disable it
+	 */
+	public void setBlockTracer(BlockTracer blockTracer) {
+		this.blockTracer = blockTracer;
+	}
+
+	/**
+	 * Sets the registry whose metrics are stored every record interval. Must be
+	 * set before the pipeline is started
+	 *
+	 * @param metricsRegistry
+	 *            - The {@link MetricsRegistry} or <code>null</code> to not store
+	 *            the metrics in Influx
+	 */
+	public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		this.metricsRegistry = metricsRegistry;
+	}
+
+	/**
+	 * Sets the time between two stored chain health and propagation records,
+	 * {@link #DEFAULT_HEALTH_INTERVAL} by default
+	 *
+	 * @param healthInterval
+	 *            - The interval in milliseconds
+	 */
+	public void setHealthInterval(long healthInterval) {
+		if (healthInterval <= 0)
+			throw new IllegalArgumentException("Health interval must be positive!");
+		this.healthInterval = healthInterval;
+	}
+
+	/**
+	 * Sets the time between two stored metrics and trace records,
+	 * {@link #DEFAULT_RECORD_INTERVAL} by default
+	 *
+	 * @param recordInterval
+	 *            - The interval in milliseconds
+	 */
+	public void setRecordInterval(long recordInterval) {
+		if (recordInterval <= 0)
+			throw new IllegalArgumentException("Record interval must be positive!");
+		this.recordInterval = recordInterval;
+	}
+
+	/**
+	 * Starts all stages
+	 */
+	public void start() {
+		if (ownedBatchWriter != null)
+			ownedBatchWriter.start();
+		writeStage.start();
+		encodeStage.start();
+		reconcileStage.start();
+		fetchStage.start();
+		for (Stage<?> stage : getStages())
+			MetricsRegistry.getDefault().gauge("bse_queue_depth", "Items waiting in front of a pipeline stage",
+					stage::getQueueDepth, "stage", stage.getName());
+
+		statisticsTimer = new Timer("PipelineStatistics", true);
+		statisticsTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				Client.logger.debug("Pipeline: " + getStatistics());
+			}
+		}, STATISTICS_INTERVAL, STATISTICS_INTERVAL);
+
+		if (healthMonitor != null || propagationTracker != null) {
+			healthTimer = new Timer("ChainHealth", true);
+			healthTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					writeHealth();
+				}
+			}, healthInterval, healthInterval);
+		}
+		if (metricsRegistry != null || blockTracer != null) {
+			recordTimer = new Timer("PipelineRecords", true);
+			recordTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					writeRecords();
+				}
+			}, recordInterval, recordInterval);
+		}
+	}
+
+	/**
+	 * Stops all stages after the queued blocks have been processed
+	 */
+	public void stop() {
+		if (statisticsTimer != null)
+			statisticsTimer.cancel();
+		if (healthTimer != null)
+			healthTimer.cancel();
+		if (recordTimer != null)
+			recordTimer.cancel();
+		fetchStage.stop();
+		reconcileStage.stop();
+		encodeStage.stop();
+		writeStage.stop();
+		if (ownedBatchWriter != null)
+			ownedBatchWriter.stop();
+		chainIndexes.clear();
+	}
+
+	/**
+	 * Drops the {@link ChainIndex} of a node, e.g. because its client stopped.
+	 * Blocks of the node processed later start a new index, so they are not
+	 * reconciled against blocks stored in an earlier run
+	 *
+	 * @param bca
+	 *            - The {@link BlockchainAdapter} of the node
+	 */
+	public void removeNode(BlockchainAdapter bca) {
+		chainIndexes.remove(bca);
+		fetchStage.release(bca);
+		reconcileStage.release(bca);
+	}
+
+	/**
+	 * Hands newly discovered blocks to the pipeline. Blocks while the fetch stage
+	 * is full
+	 *
+	 * @param task
+	 *            - The {@link FetchTask} with the discovered hashes
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the fetch stage
+	 */
+	public void submit(FetchTask task) throws InterruptedException {
+		fetchStage.put(task);
+	}
+
+	/**
+	 * Returns all stages in processing order
+	 *
+	 * @return A {@link List} of all {@link Stage}s
+	 */
+	public List<Stage<?>> getStages() {
+		return Arrays.<Stage<?>>asList(fetchStage, reconcileStage, encodeStage, writeStage);
+	}
+
+	/**
+	 * Returns the queue depth, capacity and processed items of every stage
+	 *
+	 * @return The statistics of all stages and the {@link RecordWriter}
+	 */
+	public String getStatistics() {
+		StringBuilder sb = new StringBuilder();
+		for (Stage<?> stage : getStages()) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(stage.getName() + ": " + stage.getQueueDepth() + "/" + stage.getQueueCapacity() + " queued, "
+					+ stage.getProcessed() + " processed, " + stage.getFailed() + " failed");
+		}
+		sb.append(", " + recordWriter.getStatistics());
+		return sb.toString();
+	}
+
+	/**
+	 * Hands the current statistics of the {@link ChainHealthMonitor} and the
+	 * {@link PropagationTracker} to the {@link RecordWriter}
+	 */
+	private void writeHealth() {
+		long timestamp = System.currentTimeMillis() / 1000;
+		List<String> records = new ArrayList<>();
+		if (healthMonitor != null)
+			records.addAll(healthMonitor.toRecords(timestamp));
+		if (propagationTracker != null)
+			records.addAll(propagationTracker.toRecords(timestamp));
+		store(records, "Chain health");
+	}
+
+	/**
+	 * Hands the current values of the {@link MetricsRegistry} and the finished
+	 * spans of the {@link BlockTracer} to the {@link RecordWriter}
+	 */
+	private void writeRecords() {
+		long timestamp = System.currentTimeMillis() / 1000;
+		List<String> records = new ArrayList<>();
+		if (metricsRegistry != null)
+			records.addAll(metricsRegistry.toRecords(timestamp));
+		if (blockTracer != null)
+			records.addAll(blockTracer.toRecords());
+		store(records, "Metrics and traces");
+	}
+
+	/**
+	 * Writes records in the background and logs if they couldn't be stored
+	 *
+	 * @param records
+	 *            - The line protocol records
+	 * @param description
+	 *            - What the records contain, for the log
+	 */
+	private void store(List<String> records, String description) {
+		if (records.isEmpty())
+			return;
+		try {
+			recordWriter.write(records).whenComplete((result, e) -> {
+				if (e != null)
+					Client.logger.warn(description + " not stored in DB!");
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Retrieves the data of all discovered blocks from the node
+	 *
+	 * @param task
+	 *            - The {@link FetchTask} to process
+	 */
+	private void fetch(FetchTask task) throws InterruptedException {
+		BlockchainAdapter bca = task.getAdapter();
+		List<Block> blocks = bca.getBlocks(task.getBlockHashes());
+		long fetchedNanos = System.nanoTime();
+		Iterator<String> hashes = task.getBlockHashes().iterator();
+		for (Block block : blocks) {
+			String blockHash = hashes.next();
+			if (block == null) {
+				// TODO Possibly retry?
+				Client.logger.warn("Block data couldn't be retrieved, skipping block " + blockHash + "!");
+				continue;
+			}
+			Client.logger.debug("Processing block " + blockHash + "...");
+			if (task.getObserver() != null)
+				task.getObserver().onBlock(block);
+			BlockTask blockTask = new BlockTask(task.getClientId(), bca, block);
+			if (blockTracer != null && blockTracer.sample())
+				blockTask.setSpan(
+						new BlockTracer.Span(task.getDiscoveredMillis(), task.getDiscoveredNanos(), fetchedNanos));
+			reconcileStage.put(blockTask);
+		}
+	}
+
+	/**
+	 * Determines all stored blocks which are not part of the mainchain anymore.
+	 * Uncles and replaced blocks are looked up in the {@link ChainIndex} of the
+	 * node, InfluxDB is only queried if they could be older than the index
+	 *
+	 * @param task
+	 *            - The {@link BlockTask} to process
+	 */
+	private void reconcile(BlockTask task) throws ReflectiveOperationException {
+		Block block = task.getBlock();
+		ChainIndex index = getChainIndex(task.getAdapter());
+		NodeMetrics metrics = getNodeMetrics(task.getAdapter());
+		boolean isReorgCovered = index.size() == 0 || block.getParentHash() == null
+				|| index.contains(block.getParentHash()) || index.covers(block.getBlockNumber() - 1);
+		boolean areUnclesCovered = index.covers(block.getBlockNumber() - MAX_UNCLE_DEPTH);
+
+		List<BlockSchema> orphans = new ArrayList<>();
+		for (ChainIndex.Entry entry : index.add(block))
+			orphans.add(toOrphan(task, entry));
+
+		// The block replaced a block older than the index
+		if (isReorgCovered)
+			metrics.indexLookups.increment();
+		else {
+			metrics.influxLookups.increment();
+			Client.logger.debug("Block (Nr: " + block.getBlockNumber() + ", Hash: " + block.getHash()
+					+ "): Parent not indexed! Checking DB for replaced blocks...");
+			orphans.addAll(queryBlocks(block, "BlockNumber=" + block.getBlockNumber() + " AND Hash!='"
+					+ block.getHash() + "' AND Client='" + task.getClientId() + "' AND Node='"
+					+ task.getAdapter().getNodeAddress() + "'"));
+		}
+
+		if (!block.hasOrphanedBlocks()) {
+			task.setOrphans(orphans);
+			return;
+		}
+
+		List<String> unresolved = new ArrayList<>();
+		for (String orphanHash : block.getOrphanedBlocks()) {
+			ChainIndex.Entry entry = index.markOrphan(orphanHash);
+			if (entry != null)
+				orphans.add(toOrphan(task, entry));
+			else if (!index.contains(orphanHash) && !areUnclesCovered) {
+				unresolved.add(orphanHash);
+				continue;
+			}
+			metrics.indexLookups.increment();
+		}
+
+		if (!unresolved.isEmpty()) {
+			metrics.influxLookups.increment();
+			Client.logger.debug("Block (Nr: " + block.getBlockNumber() + ", Hash: " + block.getHash()
+					+ "): Block has orphaned blocks! Checking DB for mainchain continuity...");
+			orphans.addAll(queryBlocks(block, InfluxDBUtil.toHashCondition(unresolved)));
+		}
+		task.setOrphans(orphans);
+	}
+
+	/**
+	 * Returns the {@link ChainIndex} of a node and creates it on first use
+	 *
+	 * @param bca
+	 *            - The {@link BlockchainAdapter} of the node
+	 * @return The {@link ChainIndex} of the node
+	 */
+	private ChainIndex getChainIndex(BlockchainAdapter bca) {
+		ChainIndex index = chainIndexes.get(bca);
+		if (index == null) {
+			chainIndexes.putIfAbsent(bca, new ChainIndex(chainIndexSize));
+			index = chainIndexes.get(bca);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the counters of a node and registers them on first use
+	 *
+	 * @param bca
+	 *            - The {@link BlockchainAdapter} of the node
+	 * @return The {@link NodeMetrics} of the node
+	 */
+	private NodeMetrics getNodeMetrics(BlockchainAdapter bca) {
+		NodeMetrics metrics = nodeMetrics.get(bca);
+		if (metrics == null) {
+			nodeMetrics.putIfAbsent(bca, new NodeMetrics(bca.getNodeAddress()));
+			metrics = nodeMetrics.get(bca);
+		}
+		return metrics;
+	}
+
+	/**
+	 * Queries InfluxDB for stored blocks. As the hash is no tag in
+	 * {@link SchemaVersion#V2}, the query is limited to the blocks of the last
+	 * hour before the block to avoid scanning the whole measurement
+	 *
+	 * @param block
+	 *            - The {@link Block} determining the measurement
+	 * @param whereCond
+	 *            - The condition of the where clause
+	 * @return A {@link List} of the stored blocks
+	 */
+	private List<BlockSchema> queryBlocks(Block block, String whereCond) {
+		String where = " WHERE " + whereCond;
+		if (!schemaVersion.isHashTag())
+			where = " WHERE (" + whereCond + ") AND time >= " + (block.getTimestamp() - QUERY_TIME_WINDOW) + "s";
+		Query query = new Query("SELECT * FROM " + block.getMeasurementName() + where);
+		InfluxDBResultMapper resultMapper = new InfluxDBResultMapper();
+		QueryResult qr = influxDB.query(query);
+		return new ArrayList<>(resultMapper.toPOJO(qr, block.getMeasurement()));
+	}
+
+	/**
+	 * Creates the record of an indexed block that is stored for the node of the
+	 * task
+	 *
+	 * @param task
+	 *            - The {@link BlockTask} that orphaned the block
+	 * @param entry
+	 *            - The {@link ChainIndex.Entry} of the orphaned block
+	 * @return The record of the orphaned block
+	 */
+	private static BlockSchema toOrphan(BlockTask task, ChainIndex.Entry entry) throws ReflectiveOperationException {
+		BlockSchema orphan = task.getBlock().getMeasurement().getDeclaredConstructor().newInstance();
+		orphan.setTime(Instant.ofEpochSecond(entry.getTimestamp()));
+		orphan.setHash(entry.getHash());
+		orphan.setClient(task.getClientId());
+		orphan.setNode(task.getAdapter().getNodeAddress());
+		orphan.setBlockNumber(entry.getNumber());
+		orphan.setOrphan(true);
+		return orphan;
+	}
+
+	/**
+	 * Encodes the block and the orphan updates as line protocol records
+	 *
+	 * @param task
+	 *            - The {@link BlockTask} to process
+	 */
+	private void encode(BlockTask task) {
+		Block block = task.getBlock();
+		List<String> records = new ArrayList<>(task.getOrphans().size() + 1);
+		for (BlockSchema orphan : task.getOrphans())
+			records.add(InfluxDBUtil.toOrphanLineProtocol(block.getMeasurement(), orphan, schemaVersion));
+		records.add(InfluxDBUtil.toLineProtocol(block, task.getClientId(), task.getAdapter().getNodeAddress(),
+				schemaVersion));
+		task.setRecords(records);
+	}
+
+	/**
+	 * Hands the encoded records of the block to the {@link RecordWriter}, the block
+	 * and its orphan updates are written together
+	 *
+	 * @param task
+	 *            - The {@link BlockTask} to process
+	 */
+	private void write(BlockTask task) throws InterruptedException {
+		Block block = task.getBlock();
+		NodeMetrics metrics = getNodeMetrics(task.getAdapter());
+		recordWriter.write(task.getRecords()).whenComplete((result, e) -> {
+			if (e != null) {
+				Client.logger.error(
+						"Block (Nr: " + block.getBlockNumber() + ", Hash: " + block.getHash() + "): not stored in DB!");
+				return;
+			}
+			metrics.processedBlocks.increment();
+			if (task.getSpan() != null)
+				blockTracer.finish(task.getSpan(), task.getClientId(), task.getAdapter().getNodeAddress(), block);
+			for (BlockSchema orphan : task.getOrphans())
+				Client.logger.debug("Found block " + orphan.getHash() + " and removed it from the mainchain!");
+			if (!task.getOrphans().isEmpty())
+				Client.logger.debug("Mainchain updated!");
+			Client.logger
+					.info("Block (Nr: " + block.getBlockNumber() + ", Hash: " + block.getHash() + "): stored in DB!");
+		});
+	}
+}
@@ -0,0 +1,223 @@
+package client.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import client.Client;
+
+/**
+ * A stage of the {@link IngestionPipeline}. Items are queued in a bounded queue
+ * and processed by a fixed number of worker threads. If the queue is full,
+ * {@link #put(Object)} blocks so a slow stage slows down the stages in front of
+ * it instead of buffering unlimited items. A partitioned stage gives every
+ * worker its own queue and hands all items of the same key to the same worker,
+ * so they are processed in the order they were put
+ * 
+ * @author Yannick
+ *
+ * @param <T>
+ *            - The type of items processed by this stage
+ */
+public class Stage<T> {
+
+	private static final long POLL_TIMEOUT = 100;
+
+	private final String name;
+	private final int parallelism;
+	private final List<BlockingQueue<T>> queues = new ArrayList<>();
+	private final StageWorker<T> worker;
+	private final Function<? super T, ?> partitioner;
+	// The worker of every key, keys are assigned to the workers in turn
+	private final ConcurrentHashMap<Object, Integer> partitions = new ConcurrentHashMap<>();
+	private final AtomicInteger nextPartition = new AtomicInteger();
+	private final List<Thread> threads = new ArrayList<>();
+
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private volatile boolean isRunning;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name
+	 *            - The name of this stage
+	 * @param parallelism
+	 *            - The number of threads processing items
+	 * @param queueSize
+	 *            - The maximum number of items waiting to be processed
+	 * @param worker
+	 *            - The {@link StageWorker} that processes the items
+	 */
+	public Stage(String name, int parallelism, int queueSize, StageWorker<T> worker) {
+		this(name, parallelism, queueSize, worker, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name
+	 *            - The name of this stage
+	 * @param parallelism
+	 *            - The number of threads processing items
+	 * @param queueSize
+	 *            - The maximum number of items waiting to be processed, split
+	 *            evenly between the workers of a partitioned stage
+	 * @param worker
+	 *            - The {@link StageWorker} that processes the items
+	 * @param partitioner
+	 *            - The {@link Function} returning the key of an item whose items
+	 *            are processed in order by one worker or <code>null</code> to let
+	 *            all workers take items from one queue
+	 */
+	public Stage(String name, int parallelism, int queueSize, StageWorker<T> worker,
+			Function<? super T, ?> partitioner) {
+		if (parallelism <= 0 || queueSize <= 0)
+			throw new IllegalArgumentException("Parallelism and queue size of stage " + name + " must be positive!");
+		this.name = name;
+		this.parallelism = parallelism;
+		this.worker = worker;
+		this.partitioner = partitioner;
+		if (partitioner == null)
+			queues.add(new ArrayBlockingQueue<T>(queueSize));
+		else
+			for (int i = 0; i < parallelism; i++)
+				queues.add(new ArrayBlockingQueue<T>(Math.max(1, (queueSize + parallelism - 1) / parallelism)));
+	}
+
+	/**
+	 * Starts the worker threads of this stage
+	 */
+	public synchronized void start() {
+		if (isRunning)
+			return;
+		isRunning = true;
+		for (int i = 0; i < parallelism; i++) {
+			final BlockingQueue<T> queue = queues.get(i % queues.size());
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(queue);
+				}
+			}, name + "-" + i);
+			t.setDaemon(true);
+			threads.add(t);
+			t.start();
+		}
+	}
+
+	/**
+	 * Stops this stage after all queued items have been processed
+	 */
+	public synchronized void stop() {
+		isRunning = false;
+		for (Thread t : threads) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		threads.clear();
+	}
+
+	/**
+	 * Queues an item and blocks while the queue is full
+	 * 
+	 * @param item
+	 *            - The item to process
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for space in the queue
+	 */
+	public void put(T item) throws InterruptedException {
+		if (partitioner == null) {
+			queues.get(0).put(item);
+			return;
+		}
+		Object key = partitioner.apply(item);
+		Integer partition = partitions.get(key);
+		if (partition == null)
+			partition = partitions.computeIfAbsent(key,
+					k -> Math.floorMod(nextPartition.getAndIncrement(), parallelism));
+		queues.get(partition).put(item);
+	}
+
+	/**
+	 * Forgets the worker of a key, e.g. because no more items of the key follow.
+	 * Later items of the key are assigned to a worker again
+	 * 
+	 * @param key
+	 *            - The key returned by the partitioner
+	 */
+	public void release(Object key) {
+		partitions.remove(key);
+	}
+
+	/**
+	 * Takes items from a queue and processes them till the stage is stopped and
+	 * the queue is empty
+	 * 
+	 * @param queue
+	 *            - The queue of the worker
+	 */
+	private void work(BlockingQueue<T> queue) {
+		while (isRunning || !queue.isEmpty()) {
+			T item;
+			try {
+				item = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (item == null)
+				continue;
+
+			try {
+				worker.process(item);
+				processed.incrementAndGet();
+			} catch (InterruptedException e) {
+				Client.logger.warn("Stage " + name + " interrupted!");
+				return;
+			} catch (Exception e) {
+				failed.incrementAndGet();
+				Client.logger.error("Stage " + name + " failed to process item!", e);
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getQueueDepth() {
+		int depth = 0;
+		for (BlockingQueue<T> queue : queues)
+			depth += queue.size();
+		return depth;
+	}
+
+	public int getQueueCapacity() {
+		int capacity = 0;
+		for (BlockingQueue<T> queue : queues)
+			capacity += queue.size() + queue.remainingCapacity();
+		return capacity;
+	}
+
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+}
@@ -0,0 +1,22 @@
+package client.pipeline;
+
+/**
+ * Processes the items of a {@link Stage}
+ * 
+ * @author Yannick
+ *
+ * @param <T>
+ *            - The type of items processed by the stage
+ */
+public interface StageWorker<T> {
+
+	/**
+	 * Processes a single item and hands the result to the next stage
+	 * 
+	 * @param item
+	 *            - The item to process
+	 * @throws Exception
+	 *             if the item couldn't be processed
+	 */
+	void process(T item) throws Exception;
+}
@@ -0,0 +1,347 @@
+package influx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.influxdb.InfluxDB;
+
+import client.Client;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+/**
+ * Collects line protocol records of many writers and sends them to Influx in
+ * batches. A batch is flushed once it holds the maximum number of records or
+ * bytes or once its oldest record waited for the flush interval. Batches are
+ * written by a single background thread, writers block if too many batches are
+ * waiting for it
+ *
+ * @author Yannick
+ *
+ */
+public class BatchWriter implements RecordWriter {
+
+	public static final int DEFAULT_BATCH_SIZE = 5000;
+	public static final int DEFAULT_BATCH_BYTES = 1024 * 1024;
+	public static final int DEFAULT_FLUSH_INTERVAL = 1000;
+	private static final int MAX_PENDING_BATCHES = 4;
+	// Time the stopped writer thread waits for batches that are still handed over
+	private static final long STOP_POLL_INTERVAL = 10;
+	// Queued by stop() to wake up the writer thread
+	private static final Batch WAKE_UP = new Batch();
+
+	/**
+	 * Records collected for one write request
+	 */
+	private static class Batch {
+
+		private final List<String> records = new ArrayList<>();
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+		private long bytes;
+		// Time the first record was added
+		private long created;
+	}
+
+	private final InfluxDB influxDB;
+	private final int batchSize;
+	private final int batchBytes;
+	private final long flushInterval;
+
+	private final Object lock = new Object();
+	private final BlockingQueue<Batch> sealedBatches = new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
+	private Batch currentBatch = new Batch();
+	// Sealed batches not yet put into the queue, guarded by the lock
+	private int pendingPuts;
+	private volatile boolean isRunning;
+	private Thread flusher;
+
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong failedFlushes = new AtomicLong();
+	private final AtomicLong writtenRecords = new AtomicLong();
+	private final AtomicLong totalFlushNanos = new AtomicLong();
+	private final AtomicLong maxFlushNanos = new AtomicLong();
+	private final LatencyHistogram writeLatency = MetricsRegistry.getDefault().histogram("bse_influx_write_seconds",
+			"Latency of the batched writes to Influx");
+	private final Counter failedWrites = MetricsRegistry.getDefault().counter("bse_influx_write_failures_total",
+			"Batched writes to Influx that failed");
+
+	/**
+	 * Constructor with the default flush policy
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 */
+	public BatchWriter(InfluxDB influxDB) {
+		this(influxDB, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_BYTES, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param batchSize
+	 *            - The maximum number of records per write
+	 * @param batchBytes
+	 *            - The maximum size of a write in bytes
+	 * @param flushInterval
+	 *            - The maximum time in milliseconds a record waits for its batch
+	 *            to be written
+	 */
+	public BatchWriter(InfluxDB influxDB, int batchSize, int batchBytes, long flushInterval) {
+		if (batchSize <= 0 || batchBytes <= 0 || flushInterval <= 0)
+			throw new IllegalArgumentException("Batch size, batch bytes and flush interval must be positive!");
+		this.influxDB = influxDB;
+		this.batchSize = batchSize;
+		this.batchBytes = batchBytes;
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Starts the thread writing the batches
+	 */
+	public synchronized void start() {
+		if (isRunning)
+			return;
+		isRunning = true;
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		}, "InfluxBatchWriter");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Writes the remaining records and stops the writer thread. Writes after this
+	 * was called are rejected
+	 */
+	public synchronized void stop() {
+		if (!isRunning)
+			return;
+		// records are only added while holding the lock, so none are added after this
+		synchronized (lock) {
+			isRunning = false;
+		}
+		try {
+			sealedBatches.put(WAKE_UP);
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Adds records to the current batch. All records passed at once are written
+	 * in the same request. Blocks while too many batches wait to be written
+	 *
+	 * @param records
+	 *            - The line protocol records to write
+	 * @return A {@link CompletableFuture} which completes once the records were
+	 *         written or completes exceptionally if the write failed or the
+	 *         writer is not running
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the writer thread
+	 */
+	@Override
+	public CompletableFuture<Void> write(List<String> records) throws InterruptedException {
+		Batch fullBatch = null;
+		CompletableFuture<Void> future;
+		synchronized (lock) {
+			if (!isRunning) {
+				CompletableFuture<Void> rejected = new CompletableFuture<>();
+				rejected.completeExceptionally(new IllegalStateException("Batch writer is not running!"));
+				return rejected;
+			}
+			Batch batch = currentBatch;
+			if (batch.records.isEmpty())
+				batch.created = System.nanoTime();
+			batch.records.addAll(records);
+			for (String record : records)
+				batch.bytes += record.length() + 1;
+			future = batch.future;
+			if (batch.records.size() >= batchSize || batch.bytes >= batchBytes)
+				fullBatch = sealForPut();
+		}
+		if (fullBatch != null)
+			put(fullBatch);
+		return future;
+	}
+
+	/**
+	 * Hands the current batch to the writer thread without waiting for the flush
+	 * interval
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the writer thread
+	 */
+	public void flush() throws InterruptedException {
+		Batch batch = sealForPut();
+		if (batch != null)
+			put(batch);
+	}
+
+	/**
+	 * Seals the current batch to hand it to the writer thread, which doesn't stop
+	 * before the batch was put into the queue
+	 *
+	 * @return The sealed batch or <code>null</code> if it was empty
+	 */
+	private Batch sealForPut() {
+		synchronized (lock) {
+			Batch batch = seal();
+			if (batch != null)
+				pendingPuts++;
+			return batch;
+		}
+	}
+
+	/**
+	 * Puts a batch sealed by {@link #sealForPut()} into the queue of the writer
+	 * thread
+	 *
+	 * @param batch
+	 *            - The sealed batch
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the writer thread, the batch is
+	 *             failed then
+	 */
+	private void put(Batch batch) throws InterruptedException {
+		try {
+			sealedBatches.put(batch);
+		} catch (InterruptedException e) {
+			batch.future.completeExceptionally(e);
+			throw e;
+		} finally {
+			synchronized (lock) {
+				pendingPuts--;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the current batch by an empty one
+	 *
+	 * @return The replaced batch or <code>null</code> if it was empty
+	 */
+	private Batch seal() {
+		synchronized (lock) {
+			if (currentBatch.records.isEmpty())
+				return null;
+			Batch batch = currentBatch;
+			currentBatch = new Batch();
+			return batch;
+		}
+	}
+
+	/**
+	 * Writes full batches as soon as they are sealed and the current batch once
+	 * the flush interval elapsed. Drains all batches after the writer was stopped
+	 */
+	private void flushLoop() {
+		while (true) {
+			Batch batch = null;
+			try {
+				long waitNanos;
+				synchronized (lock) {
+					waitNanos = currentBatch.records.isEmpty() ? TimeUnit.MILLISECONDS.toNanos(flushInterval)
+							: currentBatch.created + TimeUnit.MILLISECONDS.toNanos(flushInterval) - System.nanoTime();
+				}
+				if (isRunning)
+					batch = sealedBatches.poll(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+				else
+					batch = sealedBatches.poll(STOP_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				isRunning = false;
+			}
+
+			if (batch == WAKE_UP)
+				batch = null;
+			if (batch == null) {
+				synchronized (lock) {
+					long age = System.nanoTime() - currentBatch.created;
+					if (!isRunning || (!currentBatch.records.isEmpty()
+							&& age >= TimeUnit.MILLISECONDS.toNanos(flushInterval)))
+						batch = seal();
+				}
+			}
+			if (batch != null)
+				flush(batch);
+			else if (!isRunning) {
+				// Writers that sealed a batch before the stop may still hand it over
+				synchronized (lock) {
+					if (sealedBatches.isEmpty() && pendingPuts == 0 && currentBatch.records.isEmpty())
+						return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a batch to Influx and records the statistics
+	 *
+	 * @param batch
+	 *            - The batch to write
+	 */
+	private void flush(Batch batch) {
+		long start = System.nanoTime();
+		try {
+			influxDB.write(batch.records);
+			writtenRecords.addAndGet(batch.records.size());
+			batch.future.complete(null);
+		} catch (Exception e) {
+			failedFlushes.incrementAndGet();
+			failedWrites.increment();
+			Client.logger.error("Batch of " + batch.records.size() + " records couldn't be written to Influx!", e);
+			batch.future.completeExceptionally(e);
+		} finally {
+			long nanos = System.nanoTime() - start;
+			flushes.incrementAndGet();
+			totalFlushNanos.addAndGet(nanos);
+			maxFlushNanos.accumulateAndGet(nanos, Math::max);
+			writeLatency.recordNanos(nanos);
+		}
+	}
+
+	/**
+	 * Returns the number of written batches including failed ones
+	 *
+	 * @return The number of flushes
+	 */
+	public long getFlushes() {
+		return flushes.get();
+	}
+
+	public long getFailedFlushes() {
+		return failedFlushes.get();
+	}
+
+	public long getWrittenRecords() {
+		return writtenRecords.get();
+	}
+
+	/**
+	 * Returns the flush statistics
+	 *
+	 * @return The number of flushes, failures, the average batch size and the
+	 *         average and maximum flush latency
+	 */
+	@Override
+	public String getStatistics() {
+		long flushes = getFlushes();
+		long successful = Math.max(1, flushes - getFailedFlushes());
+		long avgNanos = flushes == 0 ? 0 : totalFlushNanos.get() / flushes;
+		return "Writer: " + flushes + " flushes, " + getFailedFlushes() + " failed, " + getWrittenRecords() / successful
+				+ " records/batch, " + TimeUnit.NANOSECONDS.toMillis(avgNanos) + "ms avg, "
+				+ TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get()) + "ms max latency";
+	}
+}
@@ -1,22 +1,28 @@
 package influx;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
 
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBException;
+import org.influxdb.dto.Pong;
 import org.influxdb.dto.Query;
-import org.influxdb.dto.QueryResult.Result;
-import org.influxdb.dto.QueryResult.Series;
+
+import blockchain.Block;
+import client.Client;
+import influx.export.ExportFormat;
+import influx.export.QueryExport;
+import influx.schema.BlockSchema;
+import influx.schema.SchemaVersion;
 
 public class InfluxDBUtil {
 
+	// Upper bound of the time between two readiness probes
+	public static final long MAX_PROBE_BACKOFF = 30000;
+
 	/**
-	 * Exports Data from InfluxDB into a csv file
+	 * Exports Data from InfluxDB into a csv file per series. The result is
+	 * streamed in chunks, so exports of any size only need constant memory
 	 * 
 	 * @param influxDB
 	 *            - An instance of a {@link InfluxDB}
@@ -24,54 +30,172 @@ public class InfluxDBUtil {
 	 *            - The Influx query to extract data with
 	 */
 	public static void exportData(InfluxDB influxDB, String query) {
-		List<Result> results = null;
+		exportData(influxDB, query, ExportFormat.CSV);
+	}
+
+	/**
+	 * Exports Data from InfluxDB into a file per series of the given format. The
+	 * result is streamed in chunks, so exports of any size only need constant
+	 * memory
+	 * 
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param query
+	 *            - The Influx query to extract data with
+	 * @param format
+	 *            - The {@link ExportFormat} of the files
+	 */
+	public static void exportData(InfluxDB influxDB, String query, ExportFormat format) {
+		QueryExport export = new QueryExport(influxDB, new File("exports"), QueryExport.DEFAULT_CHUNK_SIZE);
+		export.setFormat(format);
+		try {
+			long rows = export.run(query);
+			if (rows == 0) {
+				System.out.println("Query returned no results!");
+				return;
+			}
+			for (File file : export.getFiles())
+				System.out.println(format + " file " + file.getName() + " successfully created!");
+			System.out.println(rows + " rows exported (" + export.getRowsPerSecond() + " rows/s)!");
+		} catch (QueryExport.ExportException e) {
+			System.err.println(e.getMessage() + (e.getCause() != null ? " " + e.getCause().getMessage() : ""));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.err.println("Export interrupted!");
+		}
+	}
+
+	/**
+	 * Encodes a block of the mainchain as line protocol record without building a
+	 * Point
+	 * 
+	 * @param block
+	 *            - The {@link Block} to store
+	 * @param clientId
+	 *            - The ID of the client that retrieved the block
+	 * @param nodeAddress
+	 *            - The address of the node the block was retrieved from
+	 * @return The line protocol record of the block
+	 */
+	public static String toLineProtocol(Block block, String clientId, String nodeAddress) {
+		return SchemaCodec.forClass(block.getMeasurement()).encode(block, clientId, nodeAddress);
+	}
+
+	/**
+	 * Encodes a block of the mainchain as line protocol record of the given schema
+	 * version
+	 * 
+	 * @param block
+	 *            - The {@link Block} to store
+	 * @param clientId
+	 *            - The ID of the client that retrieved the block
+	 * @param nodeAddress
+	 *            - The address of the node the block was retrieved from
+	 * @param version
+	 *            - The {@link SchemaVersion} of the measurement
+	 * @return The line protocol record of the block
+	 */
+	public static String toLineProtocol(Block block, String clientId, String nodeAddress, SchemaVersion version) {
+		return SchemaCodec.forClass(block.getMeasurement(), version).encode(block, clientId, nodeAddress);
+	}
+
+	/**
+	 * Encodes the record that marks a stored block as not part of the mainchain
+	 * anymore
+	 * 
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass of the measurement the block is
+	 *            stored in
+	 * @param record
+	 *            - The stored block
+	 * @return The line protocol record that overwrites the orphan flag
+	 */
+	public static String toOrphanLineProtocol(Class<? extends BlockSchema> schemaClass, BlockSchema record) {
+		return SchemaCodec.forClass(schemaClass).encodeOrphan(record);
+	}
+
+	/**
+	 * Encodes the record that marks a stored block as not part of the mainchain
+	 * anymore in the given schema version
+	 * 
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass of the measurement the block is
+	 *            stored in
+	 * @param record
+	 *            - The stored block
+	 * @param version
+	 *            - The {@link SchemaVersion} of the measurement
+	 * @return The line protocol record that overwrites the orphan flag
+	 */
+	public static String toOrphanLineProtocol(Class<? extends BlockSchema> schemaClass, BlockSchema record,
+			SchemaVersion version) {
+		return SchemaCodec.forClass(schemaClass, version).encodeOrphan(record);
+	}
+
+	/**
+	 * Builds the condition that matches all blocks with one of the hashes:
+	 * Hash='&lt;Hash1&gt;' OR Hash='&lt;Hash2&gt;' ...
+	 * 
+	 * @param hashes
+	 *            - The non-empty {@link List} of block hashes
+	 * @return The condition of the where clause
+	 */
+	public static String toHashCondition(List<String> hashes) {
+		StringBuilder whereCond = new StringBuilder(hashes.size() * 80);
+		for (String hash : hashes) {
+			if (whereCond.length() > 0)
+				whereCond.append(" OR ");
+			whereCond.append("Hash='").append(hash).append('\'');
+		}
+		return whereCond.toString();
+	}
+
+	/**
+	 * Checks if Influx answers its health endpoint
+	 * 
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @return <code>true</code> if Influx is ready to take requests otherwise
+	 *         <code>false</code>
+	 */
+	public static boolean isReady(InfluxDB influxDB) {
 		try {
-			results = influxDB.query(new Query(query)).getResults();
+			Pong pong = influxDB.ping();
+			return pong != null && pong.isGood();
 		} catch (InfluxDBException e) {
-			System.err.println("Malformed Query!");
-			return;
+			return false;
 		}
+	}
 
-		if (results != null && results.get(0).getSeries() != null) {
-			// Field order: time, BlockNumber, Client, Hash, Orphan, Value
-			StringBuilder csv = new StringBuilder();
-			List<Series> seriesL = results.get(0).getSeries();
-			// set csv header
-			for (int j = 0; j < seriesL.size(); j++) {
-				Series series = seriesL.get(j);
-				// write header
-				for (String column : series.getColumns())
-					csv.append(column + ",");
-				// Delete last comma
-				csv.deleteCharAt(csv.length() - 1);
-				// next line
-				csv.append(System.lineSeparator());
-
-				// write values
-				for (List<Object> row : series.getValues()) {
-					// print list and delete brackets
-					String fieldValues = row.toString().substring(1, row.toString().length() - 1);
-					csv.append(fieldValues + System.lineSeparator());
-				}
-
-				try {
-					SimpleDateFormat format = new SimpleDateFormat("HHmmddMMyyyy");
-					// Create exports folder if not exists
-					File exportsFolder = new File("exports");
-					exportsFolder.mkdir();
-					FileWriter fw = new FileWriter(new File(exportsFolder.getName() + File.separator + series.getName()
-							+ "-" + format.format(new Date()) + ".csv"));
-					fw.write(csv.toString());
-					fw.close();
-					System.out.println("CSV file for series " + series.getName() + " successfully created!");
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					System.err.println("Error when trying to write CSV file for series " + series.getName() + "!");
-					e.printStackTrace();
-				}
-			}
-		} else
-			System.out.println("Query returned no results!");
+	/**
+	 * Probes Influx till it is ready. The time between two probes starts with the
+	 * given backoff and doubles after every failed probe up to
+	 * {@value #MAX_PROBE_BACKOFF} milliseconds, so a starting database is found
+	 * quickly without flooding one that takes longer
+	 * 
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param probes
+	 *            - The maximum number of probes
+	 * @param initialBackoff
+	 *            - The time in milliseconds before the second probe
+	 * @return <code>true</code> if Influx became ready otherwise
+	 *         <code>false</code>
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the next probe
+	 */
+	public static boolean awaitReady(InfluxDB influxDB, int probes, long initialBackoff)
+			throws InterruptedException {
+		long backoff = Math.max(1, initialBackoff);
+		for (int probe = 1;; probe++) {
+			if (isReady(influxDB))
+				return true;
+			if (probe >= probes)
+				return false;
+			Client.logger.info("InfluxDB not ready yet, probing again in " + backoff + "ms...");
+			Thread.sleep(backoff);
+			backoff = Math.min(backoff * 2, MAX_PROBE_BACKOFF);
+		}
 	}
 
 	/**
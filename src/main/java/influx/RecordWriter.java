@@ -0,0 +1,32 @@
+package influx;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes line protocol records to Influx asynchronously
+ *
+ * @author Yannick
+ *
+ */
+public interface RecordWriter {
+
+	/**
+	 * Hands records to the writer. All records passed at once are written together
+	 *
+	 * @param records
+	 *            - The line protocol records to write
+	 * @return A {@link CompletableFuture} which completes once the records were
+	 *         written or completes exceptionally if they couldn't be written
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the writer
+	 */
+	CompletableFuture<Void> write(List<String> records) throws InterruptedException;
+
+	/**
+	 * Returns the statistics of the writer
+	 *
+	 * @return A summary of the written records
+	 */
+	String getStatistics();
+}
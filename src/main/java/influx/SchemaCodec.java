@@ -0,0 +1,526 @@
+package influx;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.influxdb.annotation.Column;
+import org.influxdb.annotation.Measurement;
+
+import blockchain.Block;
+import influx.schema.BlockSchema;
+import influx.schema.SchemaVersion;
+
+/**
+ * Encodes the blocks of one {@link BlockSchema} subclass as Influx line
+ * protocol. The columns of the class are introspected once and read through
+ * generated getters, the records are written into a reusable buffer per thread.
+ * The {@link SchemaVersion#V1} records are identical to the line protocol of
+ * the Points the blocks used to be written as
+ *
+ * @author Yannick
+ *
+ */
+public class SchemaCodec {
+
+	private static final EnumMap<SchemaVersion, ConcurrentHashMap<Class<? extends BlockSchema>, SchemaCodec>> CODECS = new EnumMap<>(
+			SchemaVersion.class);
+	static {
+		for (SchemaVersion version : SchemaVersion.values())
+			CODECS.put(version, new ConcurrentHashMap<>());
+	}
+	private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+	private static final ThreadLocal<NumberFormat> NUMBER_FORMAT = ThreadLocal.withInitial(() -> {
+		// Same format as org.influxdb.dto.Point
+		NumberFormat numberFormat = NumberFormat.getInstance(Locale.ENGLISH);
+		numberFormat.setMaximumFractionDigits(340);
+		numberFormat.setGroupingUsed(false);
+		numberFormat.setMinimumFractionDigits(1);
+		return numberFormat;
+	});
+
+	private static final String HASH = "Hash";
+	private static final String CLIENT = "Client";
+	private static final String NODE = "Node";
+	private static final String BLOCK_NUMBER = "BlockNumber";
+	private static final String ORPHAN = "Orphan";
+
+	/**
+	 * Writes one column of a block
+	 */
+	private interface ColumnEncoder {
+
+		/**
+		 * Appends the value of the column
+		 *
+		 * @param blockData
+		 *            - The block to read the value from
+		 * @param clientId
+		 *            - The ID of the client that retrieved the block
+		 * @param nodeAddress
+		 *            - The address of the node the block was retrieved from
+		 * @param sb
+		 *            - The buffer to append to
+		 * @return <code>false</code> if the column has no value and nothing was
+		 *         appended otherwise <code>true</code>
+		 */
+		boolean encode(BlockSchema blockData, String clientId, String nodeAddress, StringBuilder sb);
+	}
+
+	private final Class<? extends BlockSchema> schemaClass;
+	private final SchemaVersion version;
+	private final String measurementName;
+	private final String escapedMeasurement;
+	// Tags and fields in the order Influx expects them, each with its key
+	private final String[] tagKeys;
+	private final ColumnEncoder[] tagEncoders;
+	private final String[] fieldKeys;
+	private final ColumnEncoder[] fieldEncoders;
+
+	/**
+	 * Returns the {@link SchemaVersion#V1} codec of a schema class and introspects
+	 * the class on first use
+	 *
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass
+	 * @return The {@link SchemaCodec} of the class
+	 */
+	public static SchemaCodec forClass(Class<? extends BlockSchema> schemaClass) {
+		return forClass(schemaClass, SchemaVersion.V1);
+	}
+
+	/**
+	 * Returns the codec of a schema class and introspects the class on first use
+	 *
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass
+	 * @param version
+	 *            - The {@link SchemaVersion} the records are written with
+	 * @return The {@link SchemaCodec} of the class
+	 */
+	public static SchemaCodec forClass(Class<? extends BlockSchema> schemaClass, SchemaVersion version) {
+		ConcurrentHashMap<Class<? extends BlockSchema>, SchemaCodec> codecs = CODECS.get(version);
+		SchemaCodec codec = codecs.get(schemaClass);
+		if (codec == null) {
+			codecs.putIfAbsent(schemaClass, new SchemaCodec(schemaClass, version));
+			codec = codecs.get(schemaClass);
+		}
+		return codec;
+	}
+
+	/**
+	 * Introspects the columns of a schema class
+	 *
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass
+	 * @param version
+	 *            - The {@link SchemaVersion} the records are written with
+	 */
+	private SchemaCodec(Class<? extends BlockSchema> schemaClass, SchemaVersion version) {
+		this.schemaClass = schemaClass;
+		this.version = version;
+		Measurement measurement = schemaClass.getAnnotation(Measurement.class);
+		if (measurement == null)
+			throw new IllegalArgumentException(schemaClass.getName() + " has no @Measurement annotation!");
+		measurementName = measurement.name();
+		StringBuilder sb = new StringBuilder();
+		escapeKey(sb, measurementName);
+		escapedMeasurement = sb.toString();
+
+		TreeMap<String, ColumnEncoder> tags = new TreeMap<>();
+		TreeMap<String, ColumnEncoder> fields = new TreeMap<>();
+		if (version.isHashTag())
+			tags.put(HASH, (blockData, clientId, nodeAddress, buffer) -> escapeValue(buffer, blockData.getHash()));
+		else
+			fields.put(HASH, (blockData, clientId, nodeAddress, buffer) -> appendValue(buffer, blockData.getHash()));
+		tags.put(CLIENT, (blockData, clientId, nodeAddress, buffer) -> escapeValue(buffer, clientId));
+		tags.put(NODE, (blockData, clientId, nodeAddress, buffer) -> escapeValue(buffer, nodeAddress));
+		fields.put(BLOCK_NUMBER, (blockData, clientId, nodeAddress, buffer) -> {
+			buffer.append(blockData.getBlockNumber()).append('i');
+			return true;
+		});
+		fields.put(ORPHAN, (blockData, clientId, nodeAddress, buffer) -> {
+			// Blocks retrieved from a node are never orphans, migrated records may be
+			buffer.append(blockData.isOrphan());
+			return true;
+		});
+
+		// Like Point.Builder.addFieldsFromPOJO only the columns declared by the
+		// subclass itself are added, the base columns are set explicitly
+		for (Field field : schemaClass.getDeclaredFields()) {
+			Column column = field.getAnnotation(Column.class);
+			if (column == null)
+				continue;
+			if (column.tag())
+				tags.put(column.name(), createTagEncoder(schemaClass, field));
+			else
+				fields.put(column.name(), createFieldEncoder(schemaClass, field));
+		}
+
+		tagKeys = toKeys(tags, ",");
+		tagEncoders = tags.values().toArray(new ColumnEncoder[tags.size()]);
+		fieldKeys = toKeys(fields, ",");
+		fieldEncoders = fields.values().toArray(new ColumnEncoder[fields.size()]);
+	}
+
+	/**
+	 * Escapes all keys and prefixes them with the separator and appends the equal
+	 * sign
+	 */
+	private static String[] toKeys(TreeMap<String, ColumnEncoder> columns, String separator) {
+		String[] keys = new String[columns.size()];
+		int i = 0;
+		for (String key : columns.keySet()) {
+			StringBuilder sb = new StringBuilder(separator);
+			escapeKey(sb, key);
+			keys[i++] = sb.append('=').toString();
+		}
+		return keys;
+	}
+
+	public Class<? extends BlockSchema> getSchemaClass() {
+		return schemaClass;
+	}
+
+	public SchemaVersion getVersion() {
+		return version;
+	}
+
+	public String getMeasurementName() {
+		return measurementName;
+	}
+
+	/**
+	 * Encodes a block as line protocol record
+	 *
+	 * @param block
+	 *            - The {@link Block} to store
+	 * @param clientId
+	 *            - The ID of the client that retrieved the block
+	 * @param nodeAddress
+	 *            - The address of the node the block was retrieved from
+	 * @return The line protocol record
+	 */
+	public String encode(Block block, String clientId, String nodeAddress) {
+		StringBuilder sb = BUFFER.get();
+		sb.setLength(0);
+		encode(block.getBlockData(), clientId, nodeAddress, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Encodes a stored block with its own client, node and orphan flag, e.g. to
+	 * copy it into another schema version
+	 *
+	 * @param record
+	 *            - The stored block
+	 * @return The line protocol record
+	 */
+	public String encodeRecord(BlockSchema record) {
+		StringBuilder sb = BUFFER.get();
+		sb.setLength(0);
+		encode(record, record.getClient(), record.getNode(), sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the line protocol record of a block to a buffer
+	 *
+	 * @param blockData
+	 *            - The {@link BlockSchema} of the block
+	 * @param clientId
+	 *            - The ID of the client that retrieved the block
+	 * @param nodeAddress
+	 *            - The address of the node the block was retrieved from
+	 * @param sb
+	 *            - The buffer to append to
+	 */
+	public void encode(BlockSchema blockData, String clientId, String nodeAddress, StringBuilder sb) {
+		sb.append(escapedMeasurement);
+		for (int i = 0; i < tagEncoders.length; i++) {
+			int start = sb.length();
+			sb.append(tagKeys[i]);
+			if (!tagEncoders[i].encode(blockData, clientId, nodeAddress, sb))
+				sb.setLength(start);
+		}
+
+		boolean isFirst = true;
+		for (int i = 0; i < fieldEncoders.length; i++) {
+			int start = sb.length();
+			sb.append(isFirst ? " " : ",").append(fieldKeys[i], 1, fieldKeys[i].length());
+			if (fieldEncoders[i].encode(blockData, clientId, nodeAddress, sb))
+				isFirst = false;
+			else
+				sb.setLength(start);
+		}
+
+		sb.append(' ').append(version.toNanos(blockData.getTime(), blockData.getHash()));
+	}
+
+	/**
+	 * Encodes the record that marks a stored block as not part of the mainchain
+	 * anymore
+	 *
+	 * @param record
+	 *            - The stored block
+	 * @return The line protocol record that overwrites the orphan flag
+	 */
+	public String encodeOrphan(BlockSchema record) {
+		StringBuilder sb = BUFFER.get();
+		sb.setLength(0);
+		sb.append(escapedMeasurement);
+		appendTag(sb, CLIENT, record.getClient());
+		if (version.isHashTag())
+			appendTag(sb, HASH, record.getHash());
+		appendTag(sb, NODE, record.getNode());
+		sb.append(" Orphan=true ").append(version.toNanos(record.getTime(), record.getHash()));
+		return sb.toString();
+	}
+
+	private static void appendTag(StringBuilder sb, String key, String value) {
+		if (value == null || value.isEmpty())
+			return;
+		sb.append(',').append(key).append('=');
+		escapeKey(sb, value);
+	}
+
+	/**
+	 * Creates the encoder of a tag column declared by a schema class
+	 */
+	private static ColumnEncoder createTagEncoder(Class<?> schemaClass, Field field) {
+		Function<Object, Object> getter = createGetter(schemaClass, field);
+		// Unlike the fixed tags, Point keeps empty tag columns. It fails on null tags,
+		// those are skipped
+		return (blockData, clientId, nodeAddress, sb) -> {
+			String value = (String) getter.apply(blockData);
+			if (value == null)
+				return false;
+			escapeKey(sb, value);
+			return true;
+		};
+	}
+
+	/**
+	 * Creates the encoder of a field column declared by a schema class. Primitive
+	 * columns are read without boxing
+	 */
+	@SuppressWarnings("unchecked")
+	private static ColumnEncoder createFieldEncoder(Class<?> schemaClass, Field field) {
+		Class<?> type = field.getType();
+		Method getter = findGetter(schemaClass, field);
+		if (getter != null) {
+			if (type == long.class || type == int.class || type == short.class || type == byte.class) {
+				ToLongFunction<Object> longGetter = (ToLongFunction<Object>) createLambda(getter, ToLongFunction.class,
+						"applyAsLong", long.class);
+				if (longGetter != null)
+					return (blockData, clientId, nodeAddress, sb) -> {
+						sb.append(longGetter.applyAsLong(blockData)).append('i');
+						return true;
+					};
+			} else if (type == double.class || type == float.class) {
+				ToDoubleFunction<Object> doubleGetter = (ToDoubleFunction<Object>) createLambda(getter,
+						ToDoubleFunction.class, "applyAsDouble", double.class);
+				if (doubleGetter != null)
+					return (blockData, clientId, nodeAddress, sb) -> {
+						sb.append(NUMBER_FORMAT.get().format(doubleGetter.applyAsDouble(blockData)));
+						return true;
+					};
+			} else if (type == boolean.class) {
+				Predicate<Object> booleanGetter = (Predicate<Object>) createLambda(getter, Predicate.class, "test",
+						boolean.class);
+				if (booleanGetter != null)
+					return (blockData, clientId, nodeAddress, sb) -> {
+						sb.append(booleanGetter.test(blockData));
+						return true;
+					};
+			}
+		}
+
+		Function<Object, Object> objectGetter = createGetter(schemaClass, field);
+		return (blockData, clientId, nodeAddress, sb) -> appendValue(sb, objectGetter.apply(blockData));
+	}
+
+	/**
+	 * Creates a getter returning the value of a column as object. Uses the public
+	 * getter if available, otherwise reads the field reflectively
+	 */
+	@SuppressWarnings("unchecked")
+	private static Function<Object, Object> createGetter(Class<?> schemaClass, Field field) {
+		Method getter = findGetter(schemaClass, field);
+		if (getter != null && !getter.getReturnType().isPrimitive()) {
+			Function<Object, Object> function = (Function<Object, Object>) createLambda(getter, Function.class,
+					"apply", Object.class);
+			if (function != null)
+				return function;
+		}
+
+		field.setAccessible(true);
+		return blockData -> {
+			try {
+				return field.get(blockData);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Column " + field.getName() + " couldn't be read!", e);
+			}
+		};
+	}
+
+	/**
+	 * Looks up the public getter of a field, e.g. getMiner for miner or isOrphan
+	 * for isOrphan
+	 *
+	 * @return The getter or <code>null</code> if there is none
+	 */
+	private static Method findGetter(Class<?> schemaClass, Field field) {
+		String name = field.getName();
+		String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		for (String getterName : new String[] { "get" + capitalized, "is" + capitalized, name }) {
+			try {
+				Method method = schemaClass.getMethod(getterName);
+				if (method.getReturnType() == field.getType() && Modifier.isPublic(schemaClass.getModifiers()))
+					return method;
+			} catch (NoSuchMethodException e) {
+				// try next naming convention
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Generates an implementation of a functional interface that calls the getter
+	 * directly, like a method reference
+	 *
+	 * @return The implementation or <code>null</code> if it couldn't be generated
+	 */
+	private static Object createLambda(Method getter, Class<?> functionalInterface, String methodName,
+			Class<?> returnType) {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle handle = lookup.unreflect(getter);
+			CallSite site = LambdaMetafactory.metafactory(lookup, methodName, MethodType.methodType(functionalInterface),
+					MethodType.methodType(returnType, Object.class), handle,
+					MethodType.methodType(getter.getReturnType(), getter.getDeclaringClass()));
+			return site.getTarget().invoke();
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Appends a field value formatted like {@link org.influxdb.dto.Point}
+	 */
+	private static boolean appendValue(StringBuilder sb, Object value) {
+		if (value == null)
+			return false;
+		if (value instanceof Number) {
+			if (value instanceof Double || value instanceof Float || value instanceof java.math.BigDecimal)
+				sb.append(NUMBER_FORMAT.get().format(value));
+			else
+				sb.append(value).append('i');
+		} else if (value instanceof String) {
+			sb.append('"');
+			escapeField(sb, (String) value);
+			sb.append('"');
+		} else
+			sb.append(value);
+		return true;
+	}
+
+	/**
+	 * Appends a tag value, empty tags are skipped like by
+	 * {@link org.influxdb.dto.Point.Builder#tag}
+	 */
+	private static boolean escapeValue(StringBuilder sb, String value) {
+		if (value == null || value.isEmpty())
+			return false;
+		escapeKey(sb, value);
+		return true;
+	}
+
+	/**
+	 * Escapes measurement names, keys and tag values
+	 */
+	private static void escapeKey(StringBuilder sb, String key) {
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c == ' ' || c == ',' || c == '=')
+				sb.append('\\');
+			sb.append(c);
+		}
+	}
+
+	/**
+	 * Escapes string field values
+	 */
+	private static void escapeField(StringBuilder sb, String field) {
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '\\' || c == '"')
+				sb.append('\\');
+			sb.append(c);
+		}
+	}
+
+	/**
+	 * Introspects the given schema classes, e.g. at startup
+	 *
+	 * @param version
+	 *            - The {@link SchemaVersion} the records are written with
+	 * @param schemaClasses
+	 *            - The {@link BlockSchema} subclasses
+	 * @return A {@link Map} of the codecs by measurement name
+	 */
+	@SafeVarargs
+	public static Map<String, SchemaCodec> register(SchemaVersion version,
+			Class<? extends BlockSchema>... schemaClasses) {
+		Map<String, SchemaCodec> codecs = new TreeMap<>();
+		for (Class<? extends BlockSchema> schemaClass : schemaClasses) {
+			SchemaCodec codec = forClass(schemaClass, version);
+			codecs.put(codec.getMeasurementName(), codec);
+		}
+		return codecs;
+	}
+
+	/**
+	 * Returns all codecs created so far
+	 *
+	 * @return A {@link List} of the codecs
+	 */
+	public static List<SchemaCodec> getCodecs() {
+		List<SchemaCodec> codecs = new ArrayList<>();
+		for (ConcurrentHashMap<Class<? extends BlockSchema>, SchemaCodec> versionCodecs : CODECS.values())
+			codecs.addAll(versionCodecs.values());
+		return codecs;
+	}
+
+	/**
+	 * Looks up the schema class of a measurement among the codecs created so far
+	 *
+	 * @param measurementName
+	 *            - The name of the measurement, e.g. Ethereum
+	 * @return The {@link BlockSchema} subclass or <code>null</code> if no codec
+	 *         of the measurement exists
+	 */
+	public static Class<? extends BlockSchema> findSchemaClass(String measurementName) {
+		for (SchemaCodec codec : getCodecs())
+			if (codec.getMeasurementName().equals(measurementName))
+				return codec.getSchemaClass();
+		return null;
+	}
+}
@@ -0,0 +1,157 @@
+package influx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDB.ConsistencyLevel;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.influxdb.impl.InfluxDBResultMapper;
+
+import client.Client;
+import influx.schema.BlockSchema;
+import influx.schema.SchemaVersion;
+
+/**
+ * Copies the measurements of a database into another database with a different
+ * {@link SchemaVersion}. The stored blocks are streamed in chunks, so
+ * measurements of any size can be migrated. The source database is left
+ * untouched and a migration can be repeated, as the same block is always
+ * written to the same point
+ *
+ * @author Yannick
+ *
+ */
+public class SchemaMigration {
+
+	public static final int DEFAULT_CHUNK_SIZE = 10000;
+	private static final long PROGRESS_INTERVAL = 100000;
+
+	private final InfluxDB influxDB;
+	private final String sourceDatabase;
+	private final String targetDatabase;
+	private final SchemaVersion targetVersion;
+	private final int chunkSize;
+
+	/**
+	 * Constructor
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param sourceDatabase
+	 *            - The database the blocks are read from
+	 * @param targetDatabase
+	 *            - The database the blocks are written to, it is created if it
+	 *            doesn't exist
+	 * @param targetVersion
+	 *            - The {@link SchemaVersion} the blocks are written with
+	 * @param chunkSize
+	 *            - The number of blocks read and written at once
+	 */
+	public SchemaMigration(InfluxDB influxDB, String sourceDatabase, String targetDatabase,
+			SchemaVersion targetVersion, int chunkSize) {
+		if (sourceDatabase.equals(targetDatabase))
+			throw new IllegalArgumentException("Source and target database must differ!");
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size must be positive!");
+		this.influxDB = influxDB;
+		this.sourceDatabase = sourceDatabase;
+		this.targetDatabase = targetDatabase;
+		this.targetVersion = targetVersion;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Copies all blocks of a measurement and blocks till they were written
+	 *
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass of the measurement
+	 * @return The number of copied blocks
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the migration
+	 * @throws MigrationException
+	 *             if reading or writing the blocks failed
+	 */
+	public long migrate(Class<? extends BlockSchema> schemaClass) throws InterruptedException {
+		SchemaCodec codec = SchemaCodec.forClass(schemaClass, targetVersion);
+		influxDB.query(new Query("CREATE DATABASE \"" + targetDatabase + "\""));
+
+		InfluxDBResultMapper resultMapper = new InfluxDBResultMapper();
+		AtomicLong migrated = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+		Query query = new Query("SELECT * FROM \"" + codec.getMeasurementName() + "\"", sourceDatabase);
+
+		Client.logger.info("Migrating measurement " + codec.getMeasurementName() + " from " + sourceDatabase
+				+ " to " + targetDatabase + " (schema version " + targetVersion.getNumber() + ")...");
+		// Chunks are delivered one after the other, the next one is only read once
+		// the current one was written
+		influxDB.query(query, chunkSize, (cancellable, result) -> {
+			try {
+				if ("DONE".equals(result.getError()))
+					return;
+				String error = getError(result);
+				if (error != null)
+					throw new MigrationException(error);
+				if (result.getResults().get(0).getSeries() == null)
+					return;
+
+				List<String> records = new ArrayList<>(chunkSize);
+				for (BlockSchema record : resultMapper.toPOJO(result, schemaClass))
+					records.add(codec.encodeRecord(record));
+				influxDB.write(targetDatabase, null, ConsistencyLevel.ONE, records);
+
+				long total = migrated.addAndGet(records.size());
+				if (total / PROGRESS_INTERVAL != (total - records.size()) / PROGRESS_INTERVAL)
+					Client.logger.info(total + " blocks of " + codec.getMeasurementName() + " migrated...");
+			} catch (RuntimeException e) {
+				failure.compareAndSet(null, e);
+				cancellable.cancel();
+				done.countDown();
+			}
+		}, done::countDown, e -> {
+			failure.compareAndSet(null, e);
+			done.countDown();
+		});
+		done.await();
+
+		if (failure.get() != null)
+			throw new MigrationException("Migration of " + codec.getMeasurementName() + " failed after "
+					+ migrated.get() + " blocks!", failure.get());
+		Client.logger.info(migrated.get() + " blocks of " + codec.getMeasurementName() + " migrated!");
+		return migrated.get();
+	}
+
+	/**
+	 * Returns the error of a chunk
+	 *
+	 * @return The error message or <code>null</code> if the query succeeded
+	 */
+	private static String getError(QueryResult result) {
+		if (result.hasError())
+			return result.getError();
+		if (result.getResults() == null || result.getResults().isEmpty())
+			return "Query returned no results!";
+		return result.getResults().get(0).getError();
+	}
+
+	/**
+	 * Thrown if a migration couldn't be completed
+	 */
+	public static class MigrationException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public MigrationException(String message) {
+			super(message);
+		}
+
+		public MigrationException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
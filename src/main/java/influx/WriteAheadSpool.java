@@ -0,0 +1,610 @@
+package influx;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.influxdb.InfluxDBException;
+
+import client.Client;
+
+/**
+ * Write-ahead journal in front of a {@link BatchWriter}. Records are appended
+ * to segment files in a local directory first and drained to Influx in order by
+ * a background thread, so writers are never blocked by a slow or unreachable
+ * database. Segments are deleted once all their records were acknowledged,
+ * segments left over from a previous run are replayed on start. Records of a
+ * partially drained segment may be written twice, which Influx ignores as the
+ * same point is overwritten. Appended records are forced to disk in a fixed
+ * interval instead of once per write, so a crash of the machine loses at most
+ * the records of the last interval. Records Influx rejects permanently, e.g.
+ * because they can't be parsed or conflict with the types of stored fields, and
+ * segments that can't be read are moved to a dead-letter file instead of
+ * holding back all later records
+ *
+ * @author Yannick
+ *
+ */
+public class WriteAheadSpool implements RecordWriter {
+
+	public static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	public static final long DEFAULT_SYNC_INTERVAL = 1000;
+	private static final int MAX_DRAIN_RECORDS = BatchWriter.DEFAULT_BATCH_SIZE;
+	private static final int MAX_DRAIN_BYTES = BatchWriter.DEFAULT_BATCH_BYTES;
+	private static final long MIN_RETRY_DELAY = 1000;
+	private static final long MAX_RETRY_DELAY = 60000;
+	private static final long IDLE_WAIT = 1000;
+	private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.lp");
+	private static final String DEAD_LETTER_FILE = "dead-letter.lp";
+	private static final String DEAD_SEGMENT_SUFFIX = ".dead";
+
+	/**
+	 * Records read from a segment that are drained together
+	 */
+	private static class Chunk {
+
+		private final long segment;
+		private final long endOffset;
+		private final List<String> records;
+
+		private Chunk(long segment, long endOffset, List<String> records) {
+			this.segment = segment;
+			this.endOffset = endOffset;
+			this.records = records;
+		}
+	}
+
+	/**
+	 * Records of a writer that wait to be acknowledged
+	 */
+	private static class PendingWrite {
+
+		private final long segment;
+		private final long endOffset;
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		private PendingWrite(long segment, long endOffset) {
+			this.segment = segment;
+			this.endOffset = endOffset;
+		}
+	}
+
+	/**
+	 * Signals that a spool segment couldn't be read
+	 */
+	private static class SegmentReadException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+		private final long segment;
+
+		private SegmentReadException(long segment, IOException cause) {
+			super(cause);
+			this.segment = segment;
+		}
+	}
+
+	private final File directory;
+	private final long segmentSize;
+	private final long syncInterval;
+	private final BatchWriter batchWriter;
+
+	private final Object lock = new Object();
+	// All segments not yet drained by their number, the last one is appended to
+	private final TreeMap<Long, File> segments = new TreeMap<>();
+	private final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+	private long activeSegment;
+	private FileChannel activeChannel;
+	private long activeSize;
+	// Whether the active segment was appended to since it was forced to disk
+	private boolean isDirty;
+	private long readOffset;
+
+	private volatile boolean isRunning;
+	private CountDownLatch stopped;
+	private Thread drainer;
+	private Timer syncTimer;
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory
+	 *            - The directory the segments are stored in
+	 * @param segmentSize
+	 *            - The size in bytes after which a new segment is started
+	 * @param batchWriter
+	 *            - The started {@link BatchWriter} the records are drained to
+	 */
+	public WriteAheadSpool(File directory, long segmentSize, BatchWriter batchWriter) {
+		this(directory, segmentSize, DEFAULT_SYNC_INTERVAL, batchWriter);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory
+	 *            - The directory the segments are stored in
+	 * @param segmentSize
+	 *            - The size in bytes after which a new segment is started
+	 * @param syncInterval
+	 *            - The interval in milliseconds in which appended records are
+	 *            forced to disk or 0 to force them on every write
+	 * @param batchWriter
+	 *            - The started {@link BatchWriter} the records are drained to
+	 */
+	public WriteAheadSpool(File directory, long segmentSize, long syncInterval, BatchWriter batchWriter) {
+		if (segmentSize <= 0)
+			throw new IllegalArgumentException("Segment size must be positive!");
+		if (syncInterval < 0)
+			throw new IllegalArgumentException("Sync interval must not be negative!");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.syncInterval = syncInterval;
+		this.batchWriter = batchWriter;
+	}
+
+	/**
+	 * Opens a new segment and starts draining the segments of previous runs
+	 *
+	 * @throws IOException
+	 *             if the spool directory can't be used
+	 */
+	public synchronized void start() throws IOException {
+		if (isRunning)
+			return;
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Spool directory " + directory + " couldn't be created!");
+
+		synchronized (lock) {
+			File[] files = directory.listFiles();
+			if (files != null)
+				for (File file : files) {
+					Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+					if (matcher.matches())
+						segments.put(Long.parseLong(matcher.group(1)), file);
+				}
+			if (!segments.isEmpty())
+				Client.logger.info("Replaying " + segments.size() + " spooled segments from " + directory + "!");
+			activeSegment = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+			openSegment(activeSegment);
+			readOffset = 0;
+		}
+
+		isRunning = true;
+		stopped = new CountDownLatch(1);
+		drainer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		}, "InfluxSpoolDrainer");
+		drainer.setDaemon(true);
+		drainer.start();
+
+		if (syncInterval > 0) {
+			syncTimer = new Timer("InfluxSpoolSync", true);
+			syncTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					synchronized (lock) {
+						try {
+							sync();
+						} catch (IOException e) {
+							Client.logger.error("Spool segment " + activeSegment + " couldn't be forced to disk!", e);
+						}
+					}
+				}
+			}, syncInterval, syncInterval);
+		}
+	}
+
+	/**
+	 * Stops draining after the spooled records were written or the next write
+	 * failed. Records left in the spool are replayed on the next start
+	 */
+	public synchronized void stop() {
+		if (!isRunning)
+			return;
+		isRunning = false;
+		stopped.countDown();
+		if (syncTimer != null)
+			syncTimer.cancel();
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+		try {
+			drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (lock) {
+			try {
+				sync();
+				activeChannel.close();
+			} catch (IOException e) {
+				Client.logger.error("Error closing spool segment!", e);
+			}
+			// Don't replay a drained segment on the next run
+			if (segments.size() == 1 && readOffset >= activeSize)
+				segments.remove(activeSegment).delete();
+		}
+	}
+
+	/**
+	 * Appends the records to the active segment. They are forced to disk right
+	 * away if there is no sync interval. A failed write is cut off the segment,
+	 * so no partial record is replayed
+	 */
+	@Override
+	public CompletableFuture<Void> write(List<String> records) {
+		if (!isRunning) {
+			CompletableFuture<Void> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(new IllegalStateException("Spool is not running!"));
+			return rejected;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (String record : records)
+			sb.append(record).append('\n');
+		ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+		synchronized (lock) {
+			long start = -1;
+			try {
+				if (activeSize >= segmentSize)
+					rollSegment();
+				start = activeSize;
+				isDirty = true;
+				while (buffer.hasRemaining())
+					activeSize += activeChannel.write(buffer);
+				if (syncInterval == 0)
+					sync();
+			} catch (IOException e) {
+				Client.logger.error("Records couldn't be appended to spool segment " + activeSegment + "!", e);
+				if (start >= 0)
+					truncate(start);
+				CompletableFuture<Void> failed = new CompletableFuture<>();
+				failed.completeExceptionally(e);
+				return failed;
+			}
+			PendingWrite pendingWrite = new PendingWrite(activeSegment, activeSize);
+			pendingWrites.add(pendingWrite);
+			lock.notifyAll();
+			return pendingWrite.future;
+		}
+	}
+
+	/**
+	 * Cuts the active segment back to the end of the last complete write
+	 *
+	 * @param offset
+	 *            - The size of the segment before the failed write
+	 */
+	private void truncate(long offset) {
+		activeSize = offset;
+		try {
+			activeChannel.truncate(offset);
+		} catch (IOException e) {
+			// Replaying the segment would read the partial record, start a new one
+			Client.logger.error("Spool segment " + activeSegment + " couldn't be truncated!", e);
+			try {
+				rollSegment();
+			} catch (IOException re) {
+				Client.logger.error("No new spool segment could be opened!", re);
+			}
+		}
+	}
+
+	/**
+	 * Forces the records appended to the active segment to disk. Must be called
+	 * while holding the lock
+	 */
+	private void sync() throws IOException {
+		if (!isDirty)
+			return;
+		activeChannel.force(false);
+		isDirty = false;
+	}
+
+	/**
+	 * Closes the active segment and opens the next one
+	 */
+	private void rollSegment() throws IOException {
+		try {
+			sync();
+		} finally {
+			activeChannel.close();
+		}
+		openSegment(activeSegment + 1);
+	}
+
+	private void openSegment(long segment) throws IOException {
+		File file = new File(directory, String.format("segment-%019d.lp", segment));
+		activeChannel = new FileOutputStream(file, true).getChannel();
+		activeSegment = segment;
+		activeSize = activeChannel.size();
+		isDirty = false;
+		segments.put(segment, file);
+	}
+
+	/**
+	 * Drains the segments in order and retries failed writes with an increasing
+	 * delay till the database is reachable again. Chunks Influx rejects
+	 * permanently are moved to the dead-letter file
+	 */
+	private void drainLoop() {
+		long retryDelay = MIN_RETRY_DELAY;
+		while (true) {
+			Chunk chunk;
+			try {
+				chunk = readChunk();
+			} catch (SegmentReadException e) {
+				Client.logger.error("Spool segment " + e.segment + " couldn't be read, moving it aside!", e);
+				deadLetterSegment(e.segment);
+				continue;
+			}
+
+			if (chunk == null) {
+				if (!isRunning)
+					return;
+				synchronized (lock) {
+					try {
+						lock.wait(IDLE_WAIT);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				continue;
+			}
+
+			try {
+				CompletableFuture<Void> future = batchWriter.write(chunk.records);
+				batchWriter.flush();
+				future.get();
+				acknowledge(chunk);
+				retryDelay = MIN_RETRY_DELAY;
+			} catch (ExecutionException e) {
+				if (!isRetryable(e.getCause())) {
+					deadLetter(chunk, e.getCause());
+					retryDelay = MIN_RETRY_DELAY;
+					continue;
+				}
+				if (!isRunning)
+					return;
+				Client.logger.warn("Influx unreachable, retrying spooled records in " + retryDelay + "ms!");
+				try {
+					if (stopped.await(retryDelay, TimeUnit.MILLISECONDS))
+						return;
+				} catch (InterruptedException ie) {
+					return;
+				}
+				retryDelay = Math.min(MAX_RETRY_DELAY, retryDelay * 2);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Checks if a write may succeed when it is repeated. Influx marks errors
+	 * caused by the records themselves as not worth a retry, all other errors
+	 * like an unreachable database are retried
+	 *
+	 * @param cause
+	 *            - The cause of the failed write
+	 * @return <code>true</code> if the write should be retried otherwise
+	 *         <code>false</code>
+	 */
+	private static boolean isRetryable(Throwable cause) {
+		return !(cause instanceof InfluxDBException) || ((InfluxDBException) cause).isRetryWorth();
+	}
+
+	/**
+	 * Appends the records of a rejected chunk to the dead-letter file and skips
+	 * them, the writes they belong to fail
+	 *
+	 * @param chunk
+	 *            - The rejected {@link Chunk}
+	 * @param cause
+	 *            - The error Influx rejected the records with
+	 */
+	private void deadLetter(Chunk chunk, Throwable cause) {
+		File file = new File(directory, DEAD_LETTER_FILE);
+		Client.logger.error("Influx rejected " + chunk.records.size() + " spooled records, moving them to " + file
+				+ "!", cause);
+		try (Writer writer = new FileWriter(file, true)) {
+			for (String record : chunk.records)
+				writer.write(record + '\n');
+		} catch (IOException e) {
+			Client.logger.error(chunk.records.size() + " rejected records couldn't be written to " + file
+					+ " and are lost!", e);
+		}
+		synchronized (lock) {
+			readOffset = chunk.endOffset;
+		}
+		completeWrites(chunk.segment, chunk.endOffset, cause);
+	}
+
+	/**
+	 * Renames a segment that can't be read, so it is neither drained nor replayed
+	 * anymore, the writes it contains fail
+	 *
+	 * @param segment
+	 *            - The number of the segment
+	 */
+	private void deadLetterSegment(long segment) {
+		synchronized (lock) {
+			if (segment == activeSegment) {
+				try {
+					rollSegment();
+				} catch (IOException e) {
+					Client.logger.error("No new spool segment could be opened!", e);
+				}
+			}
+			File file = segments.remove(segment);
+			readOffset = 0;
+			if (file != null && !file.renameTo(new File(directory, file.getName() + DEAD_SEGMENT_SUFFIX)))
+				Client.logger.error("Unreadable spool segment " + file + " couldn't be moved aside!");
+		}
+		completeWrites(segment, Long.MAX_VALUE, new IOException("Spool segment " + segment + " couldn't be read!"));
+	}
+
+	/**
+	 * Reads the next complete records after the last acknowledged one
+	 *
+	 * @return The next {@link Chunk} or <code>null</code> if all records were
+	 *         drained
+	 * @throws SegmentReadException
+	 *             if the segment couldn't be read
+	 */
+	private Chunk readChunk() throws SegmentReadException {
+		long segment;
+		File file;
+		long offset;
+		long end;
+		synchronized (lock) {
+			segment = segments.firstKey();
+			file = segments.firstEntry().getValue();
+			offset = readOffset;
+			end = segment == activeSegment ? activeSize : file.length();
+
+			// Drained segments are deleted, except the one that is appended to
+			if (offset >= end) {
+				if (segment == activeSegment)
+					return null;
+				segments.remove(segment);
+				if (!file.delete())
+					Client.logger.warn("Drained spool segment " + file + " couldn't be deleted!");
+				readOffset = 0;
+				return readChunk();
+			}
+		}
+
+		try {
+			return readChunk(segment, file, offset, end);
+		} catch (IOException e) {
+			throw new SegmentReadException(segment, e);
+		}
+	}
+
+	private Chunk readChunk(long segment, File file, long offset, long end) throws IOException {
+		byte[] bytes = new byte[(int) Math.min(MAX_DRAIN_BYTES, end - offset)];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.seek(offset);
+			raf.readFully(bytes);
+		}
+
+		List<String> records = new ArrayList<>();
+		int lineStart = 0;
+		for (int i = 0; i < bytes.length && records.size() < MAX_DRAIN_RECORDS; i++) {
+			if (bytes[i] != '\n')
+				continue;
+			if (i > lineStart)
+				records.add(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8));
+			lineStart = i + 1;
+		}
+		if (lineStart == 0) {
+			// A single record larger than the read buffer
+			bytes = new byte[(int) (end - offset)];
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				raf.seek(offset);
+				raf.readFully(bytes);
+			}
+			int lineEnd = 0;
+			while (lineEnd < bytes.length && bytes[lineEnd] != '\n')
+				lineEnd++;
+			records.add(new String(bytes, 0, lineEnd, StandardCharsets.UTF_8));
+			lineStart = Math.min(bytes.length, lineEnd + 1);
+		}
+		return new Chunk(segment, offset + lineStart, records);
+	}
+
+	/**
+	 * Marks the records of a chunk as written and completes the writes they belong
+	 * to
+	 *
+	 * @param chunk
+	 *            - The written {@link Chunk}
+	 */
+	private void acknowledge(Chunk chunk) {
+		synchronized (lock) {
+			readOffset = chunk.endOffset;
+		}
+		completeWrites(chunk.segment, chunk.endOffset, null);
+	}
+
+	/**
+	 * Completes the writes whose records end before the given position
+	 *
+	 * @param segment
+	 *            - The segment of the position
+	 * @param endOffset
+	 *            - The offset of the position within the segment
+	 * @param error
+	 *            - The error the writes fail with or <code>null</code> if they
+	 *            were written
+	 */
+	private void completeWrites(long segment, long endOffset, Throwable error) {
+		List<PendingWrite> completed = new ArrayList<>();
+		synchronized (lock) {
+			Iterator<PendingWrite> it = pendingWrites.iterator();
+			while (it.hasNext()) {
+				PendingWrite pendingWrite = it.next();
+				if (pendingWrite.segment > segment
+						|| (pendingWrite.segment == segment && pendingWrite.endOffset > endOffset))
+					break;
+				it.remove();
+				completed.add(pendingWrite);
+			}
+		}
+		for (PendingWrite pendingWrite : completed) {
+			if (error == null)
+				pendingWrite.future.complete(null);
+			else
+				pendingWrite.future.completeExceptionally(error);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes waiting to be written to Influx
+	 *
+	 * @return The spooled bytes
+	 */
+	public long getPendingBytes() {
+		synchronized (lock) {
+			long pending = -readOffset;
+			for (Map.Entry<Long, File> segment : segments.entrySet())
+				pending += segment.getKey() == activeSegment ? activeSize : segment.getValue().length();
+			return pending;
+		}
+	}
+
+	@Override
+	public String getStatistics() {
+		int segmentCount;
+		synchronized (lock) {
+			segmentCount = segments.size();
+		}
+		return "Spool: " + segmentCount + " segments, " + getPendingBytes() / 1024 + "KB pending, "
+				+ batchWriter.getStatistics();
+	}
+}
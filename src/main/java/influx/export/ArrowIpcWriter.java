@@ -0,0 +1,376 @@
+package influx.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampNanoTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.compression.CompressionUtil;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.influxdb.annotation.Column;
+import org.influxdb.dto.QueryResult.Series;
+
+import influx.schema.BlockSchema;
+
+/**
+ * Writes the rows of a series as Arrow IPC file with one typed column per
+ * {@link Column} of a {@link BlockSchema} class, e.g. BlockNumber as 64 bit
+ * integer and time as timestamp in nanoseconds. The record batches are
+ * compressed with ZSTD.<br>
+ * String columns with few distinct values, e.g. Client, Node or Miner, are
+ * dictionary encoded. Arrow writes a dictionary once before the first batch, so
+ * the chunks are first streamed uncompressed into a temporary file while the
+ * distinct values are collected. Closing the writer encodes the temporary file
+ * batch by batch into the final file, so the memory used doesn't depend on the
+ * number of rows
+ *
+ * @author Yannick
+ *
+ */
+public class ArrowIpcWriter implements SeriesWriter {
+
+	// Columns with more distinct values are written without dictionary
+	public static final int DEFAULT_MAX_DICTIONARY_SIZE = 4096;
+	private static final CompressionUtil.CodecType COMPRESSION = CompressionUtil.CodecType.ZSTD;
+	private static final ArrowType INDEX_TYPE = new ArrowType.Int(32, true);
+
+	/**
+	 * The types a column is converted to
+	 */
+	private enum ColumnType {
+		TIME(new ArrowType.Timestamp(TimeUnit.NANOSECOND, "UTC")), INTEGER(new ArrowType.Int(64, true)), FLOAT(
+				new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), BOOLEAN(
+						new ArrowType.Bool()), STRING(new ArrowType.Utf8());
+
+		private final ArrowType arrowType;
+
+		private ColumnType(ArrowType arrowType) {
+			this.arrowType = arrowType;
+		}
+	}
+
+	private final File file;
+	private final File tempFile;
+	private final int maxDictionarySize;
+	private final String[] names;
+	private final ColumnType[] types;
+	// Distinct values of the string columns with their index, null if too many
+	private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+
+	private final BufferAllocator allocator = new RootAllocator();
+	private final VectorSchemaRoot root;
+	private final FileChannel channel;
+	private final ArrowStreamWriter writer;
+	private long rows;
+	private boolean isClosed;
+
+	/**
+	 * Creates the file, an existing file is overwritten
+	 *
+	 * @param file
+	 *            - The Arrow file to write
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass defining the columns
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	public ArrowIpcWriter(File file, Class<? extends BlockSchema> schemaClass) throws IOException {
+		this(file, schemaClass, DEFAULT_MAX_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * Creates the file, an existing file is overwritten
+	 *
+	 * @param file
+	 *            - The Arrow file to write
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass defining the columns
+	 * @param maxDictionarySize
+	 *            - The maximum number of distinct values of a dictionary encoded
+	 *            column
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	public ArrowIpcWriter(File file, Class<? extends BlockSchema> schemaClass, int maxDictionarySize)
+			throws IOException {
+		this.file = file;
+		this.tempFile = new File(file.getPath() + ".tmp");
+		this.maxDictionarySize = maxDictionarySize;
+
+		Map<String, ColumnType> columns = getColumns(schemaClass);
+		names = columns.keySet().toArray(new String[columns.size()]);
+		types = columns.values().toArray(new ColumnType[columns.size()]);
+		List<org.apache.arrow.vector.types.pojo.Field> fields = new ArrayList<>();
+		for (int i = 0; i < names.length; i++) {
+			fields.add(new org.apache.arrow.vector.types.pojo.Field(names[i], FieldType.nullable(types[i].arrowType),
+					null));
+			dictionaries.add(types[i] == ColumnType.STRING ? new LinkedHashMap<>() : null);
+		}
+
+		root = VectorSchemaRoot.create(new Schema(fields), allocator);
+		channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		writer = new ArrowStreamWriter(root, new DictionaryProvider.MapDictionaryProvider(), channel);
+		writer.start();
+	}
+
+	/**
+	 * Maps the columns of a schema class and its superclasses to column types
+	 *
+	 * @param schemaClass
+	 *            - The {@link BlockSchema} subclass
+	 * @return The column types by column name, the columns of the superclasses
+	 *         first
+	 */
+	private static Map<String, ColumnType> getColumns(Class<?> schemaClass) {
+		List<Class<?>> hierarchy = new ArrayList<>();
+		for (Class<?> c = schemaClass; c != null && c != Object.class; c = c.getSuperclass())
+			hierarchy.add(c);
+		Collections.reverse(hierarchy);
+
+		Map<String, ColumnType> columns = new LinkedHashMap<>();
+		for (Class<?> c : hierarchy) {
+			for (Field field : c.getDeclaredFields()) {
+				Column column = field.getAnnotation(Column.class);
+				if (column == null)
+					continue;
+				Class<?> type = field.getType();
+				if (type == Instant.class)
+					columns.put(column.name(), ColumnType.TIME);
+				else if (type == long.class || type == int.class || type == Long.class || type == Integer.class)
+					columns.put(column.name(), ColumnType.INTEGER);
+				else if (type == double.class || type == float.class || type == Double.class || type == Float.class)
+					columns.put(column.name(), ColumnType.FLOAT);
+				else if (type == boolean.class || type == Boolean.class)
+					columns.put(column.name(), ColumnType.BOOLEAN);
+				else
+					columns.put(column.name(), ColumnType.STRING);
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Appends the rows of a chunk as record batch. Columns of the schema missing
+	 * in the chunk are taken from the tags of the series or written as null,
+	 * columns unknown to the schema are skipped
+	 *
+	 * @param series
+	 *            - The chunk with the columns and rows
+	 * @throws IOException
+	 *             if the rows can't be written
+	 */
+	@Override
+	public void writeSeries(Series series) throws IOException {
+		List<List<Object>> values = series.getValues();
+		if (values == null || values.isEmpty())
+			return;
+		List<String> resultColumns = series.getColumns();
+		root.allocateNew();
+		for (int c = 0; c < names.length; c++) {
+			FieldVector vector = root.getVector(c);
+			int index = resultColumns.indexOf(names[c]);
+			Object tag = index < 0 && series.getTags() != null ? series.getTags().get(names[c]) : null;
+			for (int row = 0; row < values.size(); row++)
+				setValue(c, vector, row, index < 0 ? tag : values.get(row).get(index));
+		}
+		root.setRowCount(values.size());
+		writer.writeBatch();
+		rows += values.size();
+	}
+
+	/**
+	 * Converts a value of the query result to the type of its column, Influx
+	 * returns all numbers as double and the time as RFC3339 string
+	 */
+	private void setValue(int column, FieldVector vector, int row, Object value) {
+		if (value == null) {
+			vector.setNull(row);
+			return;
+		}
+		switch (types[column]) {
+		case TIME:
+			long nanos;
+			if (value instanceof Number)
+				nanos = ((Number) value).longValue();
+			else {
+				Instant time = Instant.parse(value.toString());
+				nanos = time.getEpochSecond() * 1000000000L + time.getNano();
+			}
+			((TimeStampNanoTZVector) vector).setSafe(row, nanos);
+			break;
+		case INTEGER:
+			((BigIntVector) vector).setSafe(row,
+					value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString()));
+			break;
+		case FLOAT:
+			((Float8Vector) vector).setSafe(row,
+					value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString()));
+			break;
+		case BOOLEAN:
+			boolean isTrue = value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(value.toString());
+			((BitVector) vector).setSafe(row, isTrue ? 1 : 0);
+			break;
+		default:
+			String text = value.toString();
+			((VarCharVector) vector).setSafe(row, text.getBytes(StandardCharsets.UTF_8));
+			Map<String, Integer> dictionary = dictionaries.get(column);
+			if (dictionary != null && !dictionary.containsKey(text)) {
+				if (dictionary.size() < maxDictionarySize)
+					dictionary.put(text, dictionary.size());
+				else
+					dictionaries.set(column, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns if a string column is dictionary encoded, that is if its distinct
+	 * values are at most half of the rows
+	 */
+	private boolean isDictionaryEncoded(int column) {
+		Map<String, Integer> dictionary = dictionaries.get(column);
+		return dictionary != null && !dictionary.isEmpty() && dictionary.size() * 2L <= rows;
+	}
+
+	/**
+	 * Writes the compressed and dictionary encoded file from the temporary file
+	 * and deletes it
+	 */
+	private void encode() throws IOException {
+		DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+		List<org.apache.arrow.vector.types.pojo.Field> fields = new ArrayList<>();
+		List<VarCharVector> dictionaryVectors = new ArrayList<>();
+		try {
+			for (int c = 0; c < names.length; c++) {
+				if (!isDictionaryEncoded(c)) {
+					fields.add(root.getSchema().getFields().get(c));
+					continue;
+				}
+				DictionaryEncoding encoding = new DictionaryEncoding(c, false, (ArrowType.Int) INDEX_TYPE);
+				fields.add(new org.apache.arrow.vector.types.pojo.Field(names[c],
+						new FieldType(true, INDEX_TYPE, encoding), null));
+
+				VarCharVector values = new VarCharVector(names[c], allocator);
+				dictionaryVectors.add(values);
+				values.allocateNew();
+				int index = 0;
+				for (String value : dictionaries.get(c).keySet())
+					values.setSafe(index++, value.getBytes(StandardCharsets.UTF_8));
+				values.setValueCount(index);
+				provider.put(new Dictionary(values, encoding));
+			}
+
+			try (FileChannel input = FileChannel.open(tempFile.toPath(), StandardOpenOption.READ);
+					ArrowStreamReader reader = new ArrowStreamReader(input, allocator);
+					VectorSchemaRoot encoded = VectorSchemaRoot.create(new Schema(fields), allocator);
+					FileChannel output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+							StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					ArrowFileWriter fileWriter = new ArrowFileWriter(encoded, provider, output,
+							Collections.emptyMap(), IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE,
+							COMPRESSION)) {
+				fileWriter.start();
+				VectorSchemaRoot plain = reader.getVectorSchemaRoot();
+				while (reader.loadNextBatch()) {
+					int rowCount = plain.getRowCount();
+					for (int c = 0; c < names.length; c++) {
+						FieldVector source = plain.getVector(c);
+						FieldVector target = encoded.getVector(c);
+						if (!isDictionaryEncoded(c)) {
+							source.makeTransferPair(target).transfer();
+							continue;
+						}
+						Map<String, Integer> dictionary = dictionaries.get(c);
+						IntVector indices = (IntVector) target;
+						indices.allocateNew(rowCount);
+						for (int row = 0; row < rowCount; row++) {
+							if (source.isNull(row))
+								indices.setNull(row);
+							else
+								indices.set(row, dictionary
+										.get(new String(((VarCharVector) source).get(row), StandardCharsets.UTF_8)));
+						}
+					}
+					encoded.setRowCount(rowCount);
+					fileWriter.writeBatch();
+				}
+				fileWriter.end();
+			}
+		} finally {
+			for (VarCharVector values : dictionaryVectors)
+				values.close();
+			Files.deleteIfExists(tempFile.toPath());
+		}
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of written rows
+	 *
+	 * @return The number of rows
+	 */
+	@Override
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Finishes the temporary file and writes the final file
+	 *
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed)
+			return;
+		isClosed = true;
+		try {
+			try {
+				writer.end();
+			} finally {
+				writer.close();
+				channel.close();
+				root.close();
+			}
+			encode();
+		} finally {
+			allocator.close();
+		}
+	}
+}
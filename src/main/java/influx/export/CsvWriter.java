@@ -0,0 +1,208 @@
+package influx.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.influxdb.dto.QueryResult.Series;
+
+/**
+ * Writes rows of a query result as CSV file through a buffered
+ * {@link FileChannel}. Values containing separators, quotes or line breaks are
+ * quoted, numbers without fraction are written without decimal point
+ *
+ * @author Yannick
+ *
+ */
+public class CsvWriter implements SeriesWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String LINE_SEPARATOR = System.lineSeparator();
+	// Largest double up to which all integers are exact
+	private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+
+	private final File file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final StringBuilder line = new StringBuilder();
+	private long rows;
+	private boolean isHeaderWritten;
+
+	/**
+	 * Creates the file, an existing file is overwritten
+	 *
+	 * @param file
+	 *            - The CSV file to write
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	public CsvWriter(File file) throws IOException {
+		this(file, false);
+	}
+
+	/**
+	 * Opens the file. Appending to a file that isn't empty doesn't write the
+	 * header again
+	 *
+	 * @param file
+	 *            - The CSV file to write
+	 * @param isAppending
+	 *            - <code>true</code> to append to an existing file
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public CsvWriter(File file, boolean isAppending) throws IOException {
+		this.file = file;
+		isHeaderWritten = isAppending && file.length() > 0;
+		channel = isAppending
+				? FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.APPEND)
+				: FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Writes the column names
+	 *
+	 * @param columns
+	 *            - The names of the columns
+	 * @throws IOException
+	 *             if the header can't be written
+	 */
+	public void writeHeader(List<String> columns) throws IOException {
+		writeLine(columns);
+		isHeaderWritten = true;
+	}
+
+	/**
+	 * Writes one row
+	 *
+	 * @param values
+	 *            - The values of the row in column order
+	 * @throws IOException
+	 *             if the row can't be written
+	 */
+	public void writeRow(List<?> values) throws IOException {
+		writeLine(values);
+		rows++;
+	}
+
+	/**
+	 * Writes the rows of a series and its column names before the first rows
+	 *
+	 * @param series
+	 *            - The chunk with the columns and rows
+	 * @throws IOException
+	 *             if the rows can't be written
+	 */
+	@Override
+	public void writeSeries(Series series) throws IOException {
+		if (!isHeaderWritten)
+			writeHeader(series.getColumns());
+		for (List<Object> row : series.getValues())
+			writeRow(row);
+	}
+
+	private void writeLine(List<?> values) throws IOException {
+		line.setLength(0);
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0)
+				line.append(',');
+			appendValue(line, values.get(i));
+		}
+		line.append(LINE_SEPARATOR);
+
+		byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > buffer.remaining())
+			flush();
+		if (bytes.length > buffer.capacity())
+			write(ByteBuffer.wrap(bytes));
+		else
+			buffer.put(bytes);
+	}
+
+	/**
+	 * Appends a value of a query result. Influx returns all numbers as double, so
+	 * integral numbers are written without fraction
+	 *
+	 * @param sb
+	 *            - The line to append to
+	 * @param value
+	 *            - The value, <code>null</code> is written as empty value
+	 */
+	static void appendValue(StringBuilder sb, Object value) {
+		if (value == null)
+			return;
+		if (value instanceof Double) {
+			double number = (Double) value;
+			if (number == Math.rint(number) && Math.abs(number) <= MAX_EXACT_INTEGER)
+				sb.append((long) number);
+			else
+				sb.append(number);
+			return;
+		}
+		String text = value.toString();
+		boolean isQuoted = false;
+		for (int i = 0; i < text.length() && !isQuoted; i++) {
+			char c = text.charAt(i);
+			isQuoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!isQuoted) {
+			sb.append(text);
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"')
+				sb.append('"');
+			sb.append(c);
+		}
+		sb.append('"');
+	}
+
+	/**
+	 * Writes the buffered rows to the file
+	 *
+	 * @throws IOException
+	 *             if the rows can't be written
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		write(buffer);
+		buffer.clear();
+	}
+
+	private void write(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining())
+			channel.write(bytes);
+	}
+
+	@Override
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the number of written rows without the header
+	 *
+	 * @return The number of rows
+	 */
+	@Override
+	public long getRows() {
+		return rows;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
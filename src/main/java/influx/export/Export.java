@@ -0,0 +1,50 @@
+package influx.export;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * An export of query results into files whose progress can be followed while
+ * it runs
+ *
+ * @author Yannick
+ *
+ */
+public interface Export {
+
+	/**
+	 * Stops the export after the current chunk
+	 */
+	void cancel();
+
+	boolean isCanceled();
+
+	/**
+	 * Returns the number of rows exported so far
+	 *
+	 * @return The number of rows
+	 */
+	long getRows();
+
+	/**
+	 * Returns the throughput of the export
+	 *
+	 * @return The exported rows per second
+	 */
+	long getRowsPerSecond();
+
+	/**
+	 * Returns the exported files
+	 *
+	 * @return A {@link List} of the files
+	 */
+	List<File> getFiles();
+
+	/**
+	 * Returns the progress of the export
+	 *
+	 * @return A description of the progress, e.g. the exported rows and the
+	 *         throughput
+	 */
+	String getProgress();
+}
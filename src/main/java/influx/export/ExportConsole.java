@@ -0,0 +1,176 @@
+package influx.export;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.influxdb.InfluxDB;
+
+import influx.export.ExportJobManager.ExportJob;
+
+/**
+ * Console commands that submit exports as background jobs to an
+ * {@link ExportJobManager}, follow their progress and report their results
+ * 
+ * @author Yannick
+ *
+ */
+public class ExportConsole {
+
+	/**
+	 * Submits an export of the result of a query into a file per series as
+	 * background job
+	 * 
+	 * @param jobs
+	 *            - The {@link ExportJobManager} running the export
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param query
+	 *            - The Influx query to extract data with
+	 * @param format
+	 *            - The {@link ExportFormat} of the files
+	 */
+	public static void submitExport(ExportJobManager jobs, InfluxDB influxDB, String query, ExportFormat format) {
+		QueryExport export = new QueryExport(influxDB, new File("exports"), QueryExport.DEFAULT_CHUNK_SIZE);
+		export.setFormat(format);
+		submitJob(jobs, query, export, () -> export.run(query));
+	}
+
+	/**
+	 * Submits an export of a time range into csv files as background job, which
+	 * queries partitions of the range in parallel
+	 * 
+	 * @param jobs
+	 *            - The {@link ExportJobManager} running the export
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param command
+	 *            - The export command: &lt;from&gt; &lt;to&gt; &lt;query&gt; with the
+	 *            time range in ISO-8601, e.g. 2019-01-01T00:00:00Z
+	 * @param concurrency
+	 *            - The maximum number of partitions queried at once
+	 * @param partitionLength
+	 *            - The length of a partition
+	 * @param isMerging
+	 *            - <code>true</code> to merge the partitions into one file per
+	 *            series
+	 */
+	public static void exportTimeRange(ExportJobManager jobs, InfluxDB influxDB, String command, int concurrency,
+			Duration partitionLength, boolean isMerging) {
+		String[] args = command.trim().split("\\s+", 3);
+		Instant from;
+		Instant to;
+		try {
+			if (args.length < 3)
+				throw new DateTimeParseException("Missing arguments", command, 0);
+			from = Instant.parse(args[0]);
+			to = Instant.parse(args[1]);
+		} catch (DateTimeParseException e) {
+			System.err.println("Usage: export <from> <to> <query>, e.g. export 2019-01-01T00:00:00Z "
+					+ "2019-02-01T00:00:00Z select * from Ethereum");
+			return;
+		}
+
+		PartitionedExport export = new PartitionedExport(influxDB, new File("exports"), concurrency,
+				QueryExport.DEFAULT_CHUNK_SIZE);
+		submitJob(jobs, command.trim(), export, () -> export.run(args[2], from, to, partitionLength, isMerging));
+	}
+
+	/**
+	 * Submits an export of the rows written since the last export of the same
+	 * query as background job. The rows are appended to the files of the
+	 * previous exports in the incremental folder
+	 * 
+	 * @param jobs
+	 *            - The {@link ExportJobManager} running the export
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param query
+	 *            - The Influx query to extract data with, without a time
+	 *            condition
+	 */
+	public static void submitIncrementalExport(ExportJobManager jobs, InfluxDB influxDB, String query) {
+		IncrementalExport export = new IncrementalExport(influxDB, new File("exports", "incremental"), query,
+				QueryExport.DEFAULT_CHUNK_SIZE);
+		submitJob(jobs, "incremental " + query.trim(), export, export::run);
+	}
+
+	/**
+	 * Submits an export and reports its ID
+	 */
+	private static void submitJob(ExportJobManager jobs, String description, Export export,
+			ExportJobManager.ExportTask task) {
+		try {
+			ExportJob job = jobs.submit(description, export, task);
+			System.out.println("Export job #" + job.getId() + " submitted, type jobs to follow its progress!");
+		} catch (RejectedExecutionException e) {
+			System.err.println("Too many export jobs, try again once a job finished!");
+		}
+	}
+
+	/**
+	 * Reports the result of a finished export job on the console
+	 * 
+	 * @param job
+	 *            - The finished {@link ExportJob}
+	 */
+	public static void printJobResult(ExportJob job) {
+		Export export = job.getExport();
+		switch (job.getStatus()) {
+		case DONE:
+			if (export.getRows() == 0) {
+				System.out.println("Export job #" + job.getId() + ": Query returned no results!");
+				break;
+			}
+			for (File file : export.getFiles())
+				System.out.println("Export job #" + job.getId() + ": File " + file.getPath() + " successfully created!");
+			System.out.println("Export job #" + job.getId() + ": " + export.getRows() + " rows exported ("
+					+ export.getRowsPerSecond() + " rows/s)!");
+			break;
+		case FAILED:
+			System.err.println("Export job #" + job.getId() + " failed: " + job.getError());
+			break;
+		default:
+			System.out.println("Export job #" + job.getId() + " canceled after " + export.getRows() + " rows!");
+		}
+	}
+
+	/**
+	 * Lists the export jobs and their progress on the console
+	 * 
+	 * @param jobs
+	 *            - The {@link ExportJobManager}
+	 */
+	public static void printJobs(ExportJobManager jobs) {
+		List<ExportJob> list = jobs.getJobs();
+		if (list.isEmpty())
+			System.out.println("No export jobs!");
+		for (ExportJob job : list)
+			System.out.println(job);
+	}
+
+	/**
+	 * Cancels an export job
+	 * 
+	 * @param jobs
+	 *            - The {@link ExportJobManager}
+	 * @param id
+	 *            - The ID of the job as typed in
+	 */
+	public static void cancelJob(ExportJobManager jobs, String id) {
+		int jobId;
+		try {
+			jobId = Integer.parseInt(id.trim().replace("#", ""));
+		} catch (NumberFormatException e) {
+			System.err.println("Usage: cancel <job id>");
+			return;
+		}
+		if (jobs.cancel(jobId))
+			System.out.println("Export job #" + jobId + " canceled!");
+		else
+			System.err.println("No running export job #" + jobId + "!");
+	}
+}
@@ -0,0 +1,25 @@
+package influx.export;
+
+/**
+ * The file formats a query result can be exported to
+ *
+ * @author Yannick
+ *
+ */
+public enum ExportFormat {
+
+	// Comma separated text, every value is written as text
+	CSV(".csv"),
+	// Arrow IPC file with typed, compressed columns, see ArrowIpcWriter
+	ARROW(".arrow");
+
+	private final String extension;
+
+	private ExportFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+}
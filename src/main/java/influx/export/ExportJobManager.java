@@ -0,0 +1,298 @@
+package influx.export;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import client.Client;
+
+/**
+ * Runs exports as background jobs on a bounded pool of threads, so the console
+ * stays responsive while they run. Every job gets an ID to follow its progress
+ * and to cancel it. Jobs exceeding the number of running jobs are queued, if
+ * the queue is full further jobs are rejected
+ *
+ * @author Yannick
+ *
+ */
+public class ExportJobManager {
+
+	public static final int DEFAULT_MAX_RUNNING_JOBS = 2;
+	public static final int DEFAULT_MAX_QUEUED_JOBS = 8;
+	// Number of finished jobs kept for the job list
+	private static final int MAX_FINISHED_JOBS = 20;
+
+	/**
+	 * The states of an export job
+	 */
+	public enum Status {
+		QUEUED, RUNNING, DONE, FAILED, CANCELED
+	}
+
+	/**
+	 * Runs an export and blocks till it finished
+	 */
+	public interface ExportTask {
+
+		/**
+		 * Runs the export
+		 *
+		 * @return The number of exported rows
+		 * @throws InterruptedException
+		 *             if interrupted while waiting for the export
+		 */
+		long run() throws InterruptedException;
+	}
+
+	/**
+	 * An export submitted to the {@link ExportJobManager}
+	 */
+	public class ExportJob {
+
+		private final int id;
+		private final String description;
+		private final Export export;
+		private final ExportTask task;
+		private volatile Status status = Status.QUEUED;
+		private volatile String error;
+		private volatile long startTime;
+		private volatile long endTime;
+		private Future<?> future;
+
+		private ExportJob(int id, String description, Export export, ExportTask task) {
+			this.id = id;
+			this.description = description;
+			this.export = export;
+			this.task = task;
+		}
+
+		/**
+		 * Runs the export unless the job was canceled while queued
+		 */
+		private void run() {
+			synchronized (this) {
+				if (status != Status.QUEUED)
+					return;
+				status = Status.RUNNING;
+			}
+			startTime = System.nanoTime();
+			Client.logger.info("Export job #" + id + " started: " + description);
+			try {
+				task.run();
+				status = export.isCanceled() ? Status.CANCELED : Status.DONE;
+			} catch (InterruptedException e) {
+				export.cancel();
+				status = Status.CANCELED;
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				error = e.getMessage() + (e.getCause() != null ? " " + e.getCause().getMessage() : "");
+				status = export.isCanceled() ? Status.CANCELED : Status.FAILED;
+				Client.logger.error("Export job #" + id + " failed!", e);
+			} finally {
+				endTime = System.nanoTime();
+			}
+			Client.logger.info("Export job #" + id + " " + status + ": " + export.getProgress());
+			onFinished.accept(this);
+		}
+
+		/**
+		 * Removes the job from the queue or stops the running export after its
+		 * current chunk
+		 *
+		 * @return <code>false</code> if the job already finished otherwise
+		 *         <code>true</code>
+		 */
+		public boolean cancel() {
+			synchronized (this) {
+				if (status == Status.QUEUED) {
+					status = Status.CANCELED;
+					future.cancel(false);
+					onFinished.accept(this);
+					return true;
+				}
+			}
+			if (status != Status.RUNNING)
+				return false;
+			export.cancel();
+			return true;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public Export getExport() {
+			return export;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Returns the error of a failed job
+		 *
+		 * @return The error message or <code>null</code> if the job didn't fail
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * Returns the time the job has been running
+		 *
+		 * @return The duration in seconds, 0 if the job didn't start yet
+		 */
+		public long getSeconds() {
+			if (startTime == 0)
+				return 0;
+			return TimeUnit.NANOSECONDS.toSeconds((endTime == 0 ? System.nanoTime() : endTime) - startTime);
+		}
+
+		public boolean isFinished() {
+			return status != Status.QUEUED && status != Status.RUNNING;
+		}
+
+		@Override
+		public String toString() {
+			return "#" + id + " " + status + " " + export.getProgress() + ", " + getSeconds() + "s: " + description
+					+ (error != null ? " (" + error + ")" : "");
+		}
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final Consumer<ExportJob> onFinished;
+	private final Map<Integer, ExportJob> jobs = new LinkedHashMap<>();
+	private final AtomicInteger nextId = new AtomicInteger(1);
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxRunningJobs
+	 *            - The maximum number of exports running at the same time
+	 * @param maxQueuedJobs
+	 *            - The maximum number of exports waiting for a thread
+	 * @param onFinished
+	 *            - Called with every job that finished, failed or was canceled
+	 */
+	public ExportJobManager(int maxRunningJobs, int maxQueuedJobs, Consumer<ExportJob> onFinished) {
+		if (maxRunningJobs <= 0 || maxQueuedJobs <= 0)
+			throw new IllegalArgumentException("Number of running and queued jobs must be positive!");
+		this.onFinished = onFinished;
+		final AtomicInteger threadNr = new AtomicInteger();
+		executor = new ThreadPoolExecutor(maxRunningJobs, maxRunningJobs, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(maxQueuedJobs), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = Executors.defaultThreadFactory().newThread(r);
+						t.setName("Exporter-" + threadNr.getAndIncrement());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+	}
+
+	/**
+	 * Submits an export that runs as soon as a thread is available
+	 *
+	 * @param description
+	 *            - The description of the job, e.g. the query
+	 * @param export
+	 *            - The {@link Export} to follow the progress of
+	 * @param task
+	 *            - The {@link ExportTask} that runs the export
+	 * @return The {@link ExportJob}
+	 * @throws RejectedExecutionException
+	 *             if too many jobs are queued or the manager was stopped
+	 */
+	public synchronized ExportJob submit(String description, Export export, ExportTask task) {
+		ExportJob job = new ExportJob(nextId.getAndIncrement(), description, export, task);
+		job.future = executor.submit(job::run);
+		jobs.put(job.getId(), job);
+		removeFinishedJobs();
+		return job;
+	}
+
+	/**
+	 * Forgets the oldest finished jobs if more than {@link #MAX_FINISHED_JOBS}
+	 * are kept
+	 */
+	private void removeFinishedJobs() {
+		int finished = 0;
+		for (ExportJob job : jobs.values())
+			if (job.isFinished())
+				finished++;
+		Iterator<ExportJob> it = jobs.values().iterator();
+		while (finished > MAX_FINISHED_JOBS && it.hasNext()) {
+			if (it.next().isFinished()) {
+				it.remove();
+				finished--;
+			}
+		}
+	}
+
+	/**
+	 * Returns a job
+	 *
+	 * @param id
+	 *            - The ID of the job
+	 * @return The {@link ExportJob} or <code>null</code> if no job with the ID
+	 *         is known
+	 */
+	public synchronized ExportJob getJob(int id) {
+		return jobs.get(id);
+	}
+
+	/**
+	 * Returns the running, queued and recently finished jobs
+	 *
+	 * @return A {@link List} of the jobs in the order they were submitted
+	 */
+	public synchronized List<ExportJob> getJobs() {
+		return new ArrayList<>(jobs.values());
+	}
+
+	/**
+	 * Cancels a job
+	 *
+	 * @param id
+	 *            - The ID of the job
+	 * @return <code>false</code> if the job is unknown or already finished
+	 *         otherwise <code>true</code>
+	 */
+	public boolean cancel(int id) {
+		ExportJob job = getJob(id);
+		return job != null && job.cancel();
+	}
+
+	/**
+	 * Cancels all jobs and waits for the running exports to stop
+	 *
+	 * @param timeout
+	 *            - The maximum time to wait in milliseconds
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void stop(long timeout) throws InterruptedException {
+		for (ExportJob job : getJobs())
+			job.cancel();
+		executor.shutdown();
+		if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS))
+			Client.logger.warn("Export jobs didn't stop within " + timeout + "ms!");
+	}
+}
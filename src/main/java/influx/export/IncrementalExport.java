@@ -0,0 +1,557 @@
+package influx.export;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.QueryResult.Series;
+
+import client.Client;
+import influx.export.QueryExport.ExportException;
+
+/**
+ * Exports only the rows written since the last run of a query. The end of the
+ * exported time range is kept as watermark in the directory of the query,
+ * together with the highest exported block number. Every run appends the new
+ * rows to the newest file of each series and starts a new file once it exceeds
+ * the maximum size, so the files form a log of all runs.<br>
+ * Blocks can become orphans after they were exported. Every run therefore
+ * queries the orphans shortly before the watermark and appends the ones not
+ * exported as orphan yet as correction records, i.e. a later row with the same
+ * time, hash and node replaces an earlier one. If a run fails or is canceled,
+ * the files are truncated to their previous size and the watermark is kept
+ *
+ * @author Yannick
+ *
+ */
+public class IncrementalExport implements Export {
+
+	// Rows younger than the lag aren't exported yet, as they might still be written
+	public static final long DEFAULT_LAG = 60;
+	// Time before the watermark in which blocks are checked for new orphans
+	public static final long DEFAULT_CORRECTION_WINDOW = 3600;
+	public static final long DEFAULT_MAX_FILE_SIZE = 128L * 1024 * 1024;
+	private static final String STATE_FILE = "watermark.properties";
+	private static final String ORPHANS_FILE = "orphans.txt";
+	private static final String LOCK_FILE = "lock";
+	private static final String TIME = "time";
+	private static final String ORPHAN = "Orphan";
+	private static final String BLOCK_NUMBER = "BlockNumber";
+	// Columns that identify the record of a block together with its time
+	private static final String[] KEY_COLUMNS = { "Hash", "Client", "Node" };
+
+	private final InfluxDB influxDB;
+	private final String query;
+	private final File directory;
+	private final int chunkSize;
+	private Duration lag = Duration.ofSeconds(DEFAULT_LAG);
+	private Duration correctionWindow = Duration.ofSeconds(DEFAULT_CORRECTION_WINDOW);
+	private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+
+	// State of the previous runs
+	private Instant watermark;
+	private volatile long blockNumber = -1;
+	// Keys of the orphans exported within the correction window
+	private final Set<String> orphanKeys = new LinkedHashSet<>();
+
+	private final List<DeltaWriter> writers = new CopyOnWriteArrayList<>();
+	private volatile QueryExport currentExport;
+	private volatile boolean isCanceled;
+	private volatile long startTime;
+	private volatile long endTime;
+
+	/**
+	 * Constructor
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param baseDirectory
+	 *            - The directory containing the directories of all incremental
+	 *            queries
+	 * @param query
+	 *            - The Influx query to extract data with, without a time
+	 *            condition
+	 * @param chunkSize
+	 *            - The number of rows Influx returns at once
+	 */
+	public IncrementalExport(InfluxDB influxDB, File baseDirectory, String query, int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size must be positive!");
+		this.influxDB = influxDB;
+		this.query = query.trim();
+		this.directory = getDirectory(baseDirectory, this.query);
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns the directory of a query containing its watermark and files
+	 *
+	 * @param baseDirectory
+	 *            - The directory containing the directories of all incremental
+	 *            queries
+	 * @param query
+	 *            - The Influx query
+	 * @return The directory of the query
+	 */
+	public static File getDirectory(File baseDirectory, String query) {
+		return new File(baseDirectory, "query-" + Integer.toHexString(query.trim().hashCode()));
+	}
+
+	/**
+	 * Exports the rows since the last run and blocks till they were written
+	 *
+	 * @return The number of exported rows including the correction records
+	 * @throws ExportException
+	 *             if the query failed or a file couldn't be written
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the export
+	 */
+	public long run() throws InterruptedException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new ExportException("Export directory " + directory + " couldn't be created!");
+		try (FileChannel lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock lock = lockChannel.tryLock()) {
+			if (lock == null)
+				throw new ExportException("Incremental export of " + query + " is already running!");
+			return runLocked();
+		} catch (OverlappingFileLockException e) {
+			throw new ExportException("Incremental export of " + query + " is already running!");
+		} catch (IOException e) {
+			throw new ExportException("Incremental export of " + query + " failed!", e);
+		}
+	}
+
+	private long runLocked() throws IOException, InterruptedException {
+		loadState();
+		Instant from = watermark == null ? Instant.EPOCH : watermark;
+		Instant to = Instant.now().minus(lag).truncatedTo(ChronoUnit.SECONDS);
+		if (!to.isAfter(from))
+			return 0;
+		startTime = System.nanoTime();
+
+		boolean isSuccess = false;
+		try {
+			if (watermark != null)
+				runPass(PartitionedExport.withCondition(query, ORPHAN + " = true AND time >= '"
+						+ from.minus(correctionWindow) + "' AND time < '" + from + "'"), true);
+			if (!isCanceled)
+				runPass(PartitionedExport.withTimeRange(query, from, to), false);
+			isSuccess = !isCanceled;
+		} finally {
+			endTime = System.nanoTime();
+			if (!isSuccess)
+				rollback();
+		}
+		if (isCanceled)
+			return 0;
+
+		watermark = to;
+		Instant oldest = to.minus(correctionWindow);
+		for (Iterator<String> it = orphanKeys.iterator(); it.hasNext();)
+			if (getTime(it.next()).isBefore(oldest))
+				it.remove();
+		saveState();
+		Client.logger.info("Incremental export of " + query + " till " + to + ": " + getProgress());
+		return getRows();
+	}
+
+	/**
+	 * Exports the rows of a query into the files of their series
+	 *
+	 * @param passQuery
+	 *            - The query of the pass
+	 * @param isCorrection
+	 *            - <code>true</code> if only orphans not exported yet should be
+	 *            written
+	 */
+	private void runPass(String passQuery, boolean isCorrection) throws InterruptedException {
+		QueryExport export = new QueryExport(influxDB, directory, chunkSize);
+		export.setWriterFactory(series -> {
+			DeltaWriter writer = new DeltaWriter(series, isCorrection);
+			writers.add(writer);
+			return writer;
+		});
+		currentExport = export;
+		if (isCanceled)
+			export.cancel();
+		export.run(passQuery);
+		if (export.isCanceled())
+			isCanceled = true;
+	}
+
+	/**
+	 * Truncates all files to their size before the run
+	 */
+	private void rollback() {
+		// newest writers first, a file created by the correction pass may have been
+		// appended to by the following pass
+		for (int i = writers.size() - 1; i >= 0; i--) {
+			DeltaWriter writer = writers.get(i);
+			try {
+				writer.rollback();
+			} catch (IOException e) {
+				Client.logger.error("Export file " + writer.getFile() + " couldn't be rolled back!", e);
+			}
+		}
+	}
+
+	/**
+	 * Reads the watermark and the orphans of the previous runs
+	 */
+	private void loadState() throws IOException {
+		File stateFile = new File(directory, STATE_FILE);
+		if (!stateFile.exists())
+			return;
+		Properties state = new Properties();
+		try (InputStreamReader reader = new InputStreamReader(new FileInputStream(stateFile),
+				StandardCharsets.UTF_8)) {
+			state.load(reader);
+		}
+		if (!query.equals(state.getProperty("query")))
+			throw new ExportException("Directory " + directory + " belongs to the query " + state.getProperty("query"));
+		try {
+			watermark = Instant.parse(state.getProperty("watermark"));
+			blockNumber = Long.parseLong(state.getProperty("blockNumber", "-1"));
+		} catch (DateTimeParseException | NumberFormatException | NullPointerException e) {
+			throw new ExportException("Watermark " + stateFile + " is corrupt!", e);
+		}
+
+		File orphansFile = new File(directory, ORPHANS_FILE);
+		if (orphansFile.exists())
+			orphanKeys.addAll(Files.readAllLines(orphansFile.toPath(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Replaces the watermark and the orphans of the previous runs
+	 */
+	private void saveState() throws IOException {
+		File orphansFile = new File(directory, ORPHANS_FILE);
+		File orphansTemp = new File(directory, ORPHANS_FILE + ".tmp");
+		Files.write(orphansTemp.toPath(), orphanKeys, StandardCharsets.UTF_8);
+		Files.move(orphansTemp.toPath(), orphansFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		Properties state = new Properties();
+		state.setProperty("query", query);
+		state.setProperty("watermark", watermark.toString());
+		state.setProperty("blockNumber", String.valueOf(blockNumber));
+		File stateFile = new File(directory, STATE_FILE);
+		File stateTemp = new File(directory, STATE_FILE + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(stateTemp), StandardCharsets.UTF_8)) {
+			state.store(writer, "Incremental export");
+		}
+		Files.move(stateTemp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Returns the time of an orphan key
+	 */
+	private static Instant getTime(String key) {
+		try {
+			return Instant.parse(key.substring(0, Math.max(0, key.indexOf('|'))));
+		} catch (DateTimeParseException e) {
+			return Instant.EPOCH;
+		}
+	}
+
+	/**
+	 * Appends the rows of a series to its newest file and keeps track of the
+	 * exported orphans and block numbers
+	 */
+	private class DeltaWriter implements SeriesWriter {
+
+		private final boolean isCorrection;
+		private final File file;
+		private final boolean isNewFile;
+		private final long startLength;
+		private final CsvWriter writer;
+		private long rows;
+
+		/**
+		 * Opens the newest file of the series or starts a new one if it is full or
+		 * has other columns
+		 */
+		DeltaWriter(Series series, boolean isCorrection) throws IOException {
+			this.isCorrection = isCorrection;
+			StringBuilder name = new StringBuilder(series.getName());
+			if (series.getTags() != null)
+				for (String tag : series.getTags().values())
+					name.append('-').append(tag);
+			String baseName = name.toString().replaceAll("[^A-Za-z0-9._-]", "_");
+
+			int index = 1;
+			while (getFile(baseName, index + 1).exists())
+				index++;
+			File newest = getFile(baseName, index);
+			if (newest.exists() && (newest.length() >= maxFileSize || !hasHeader(newest, series.getColumns())))
+				newest = getFile(baseName, index + 1);
+			file = newest;
+			isNewFile = !file.exists();
+			startLength = isNewFile ? 0 : file.length();
+			writer = new CsvWriter(file, true);
+		}
+
+		private File getFile(String baseName, int index) {
+			return new File(directory, baseName + String.format("-%05d", index) + ".csv");
+		}
+
+		/**
+		 * Returns if the header of a file has the given columns
+		 */
+		private boolean hasHeader(File existing, List<String> columns) throws IOException {
+			StringBuilder header = new StringBuilder();
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0)
+					header.append(',');
+				CsvWriter.appendValue(header, columns.get(i));
+			}
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(new FileInputStream(existing), StandardCharsets.UTF_8))) {
+				return header.toString().equals(reader.readLine());
+			}
+		}
+
+		/**
+		 * Writes the rows of a chunk, correction passes skip the orphans exported
+		 * before
+		 */
+		@Override
+		public void writeSeries(Series series) throws IOException {
+			List<String> columns = series.getColumns();
+			int orphanIndex = columns.indexOf(ORPHAN);
+			int blockNumberIndex = columns.indexOf(BLOCK_NUMBER);
+			List<List<Object>> values = new ArrayList<>(series.getValues().size());
+			for (List<Object> row : series.getValues()) {
+				if (orphanIndex >= 0 && Boolean.TRUE.equals(row.get(orphanIndex))) {
+					boolean isNew = orphanKeys.add(getKey(columns, series.getTags(), row));
+					if (isCorrection && !isNew)
+						continue;
+				}
+				if (!isCorrection && blockNumberIndex >= 0 && row.get(blockNumberIndex) instanceof Number)
+					blockNumber = Math.max(blockNumber, ((Number) row.get(blockNumberIndex)).longValue());
+				values.add(row);
+			}
+			if (values.isEmpty())
+				return;
+
+			Series delta = new Series();
+			delta.setName(series.getName());
+			delta.setTags(series.getTags());
+			delta.setColumns(columns);
+			delta.setValues(values);
+			writer.writeSeries(delta);
+			rows += values.size();
+		}
+
+		/**
+		 * Returns the key identifying the record of a block: its time, hash, client
+		 * and node
+		 */
+		private String getKey(List<String> columns, Map<String, String> tags, List<Object> row) {
+			StringBuilder key = new StringBuilder();
+			int timeIndex = columns.indexOf(TIME);
+			key.append(timeIndex >= 0 ? row.get(timeIndex) : "");
+			for (String column : KEY_COLUMNS) {
+				int index = columns.indexOf(column);
+				key.append('|').append(index >= 0 ? row.get(index) : tags != null ? tags.get(column) : null);
+			}
+			return key.toString();
+		}
+
+		/**
+		 * Truncates the file to its size before the run or deletes it if it was
+		 * created by the run
+		 */
+		void rollback() throws IOException {
+			if (isNewFile) {
+				Files.deleteIfExists(file.toPath());
+				return;
+			}
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(startLength);
+			}
+		}
+
+		boolean isCorrection() {
+			return isCorrection;
+		}
+
+		@Override
+		public File getFile() {
+			return file;
+		}
+
+		@Override
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * Closes the file and deletes it if the run created it without writing a
+		 * row
+		 */
+		@Override
+		public void close() throws IOException {
+			writer.close();
+			if (isNewFile && rows == 0)
+				Files.deleteIfExists(file.toPath());
+		}
+	}
+
+	/**
+	 * Sets the age of the youngest rows exported, younger rows are exported by
+	 * the next run
+	 *
+	 * @param lag
+	 *            - The lag behind the current time
+	 */
+	public void setLag(Duration lag) {
+		this.lag = lag;
+	}
+
+	/**
+	 * Sets the time before the watermark in which blocks are checked for new
+	 * orphans
+	 *
+	 * @param correctionWindow
+	 *            - The length of the window
+	 */
+	public void setCorrectionWindow(Duration correctionWindow) {
+		this.correctionWindow = correctionWindow;
+	}
+
+	/**
+	 * Sets the size after which a new file is started
+	 *
+	 * @param maxFileSize
+	 *            - The maximum size of a file in bytes
+	 */
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the end of the time range exported so far
+	 *
+	 * @return The watermark or <code>null</code> if the query wasn't exported
+	 *         yet
+	 */
+	public Instant getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * Returns the highest block number exported so far
+	 *
+	 * @return The block number or -1 if no block was exported yet
+	 */
+	public long getBlockNumber() {
+		return blockNumber;
+	}
+
+	/**
+	 * Stops the export after the current chunk, the files are rolled back
+	 */
+	@Override
+	public void cancel() {
+		isCanceled = true;
+		QueryExport export = currentExport;
+		if (export != null)
+			export.cancel();
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return isCanceled;
+	}
+
+	/**
+	 * Returns the number of rows exported by the run including the correction
+	 * records
+	 *
+	 * @return The number of rows
+	 */
+	@Override
+	public long getRows() {
+		long rows = 0;
+		for (DeltaWriter writer : writers)
+			rows += writer.getRows();
+		return rows;
+	}
+
+	/**
+	 * Returns the number of correction records written by the run
+	 *
+	 * @return The number of rows
+	 */
+	public long getCorrections() {
+		long rows = 0;
+		for (DeltaWriter writer : writers)
+			if (writer.isCorrection())
+				rows += writer.getRows();
+		return rows;
+	}
+
+	@Override
+	public long getRowsPerSecond() {
+		if (startTime == 0)
+			return 0;
+		long nanos = (endTime == 0 ? System.nanoTime() : endTime) - startTime;
+		return getRows() * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+	}
+
+	/**
+	 * Returns the files the run appended to
+	 *
+	 * @return A {@link List} of the CSV files
+	 */
+	@Override
+	public List<File> getFiles() {
+		Set<File> files = new LinkedHashSet<>();
+		for (DeltaWriter writer : writers)
+			if (writer.getRows() > 0)
+				files.add(writer.getFile());
+		return new ArrayList<>(files);
+	}
+
+	/**
+	 * Returns the progress of the export
+	 *
+	 * @return The exported rows, the correction records and the throughput
+	 */
+	@Override
+	public String getProgress() {
+		return getRows() + " rows, " + getCorrections() + " corrections, " + getRowsPerSecond() + " rows/s";
+	}
+}
@@ -0,0 +1,470 @@
+package influx.export;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.influxdb.InfluxDB;
+
+import client.Client;
+
+/**
+ * Exports a time range by splitting it into partitions which are queried in
+ * parallel. Every partition is exported into its own directory and retried on
+ * failure. The files of the partitions can be merged into one file per series
+ * ordered by time afterwards
+ *
+ * @author Yannick
+ *
+ */
+public class PartitionedExport implements Export {
+
+	public static final long DEFAULT_PARTITION_LENGTH = 86400;
+	public static final int DEFAULT_CONCURRENCY = 4;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_DELAY = 1000;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// Clauses that follow the where clause of a query
+	private static final String[] TRAILING_CLAUSES = { " GROUP BY ", " ORDER BY ", " LIMIT ", " OFFSET ",
+			" SLIMIT ", " SOFFSET ", " TZ(" };
+
+	private final InfluxDB influxDB;
+	private final File directory;
+	private final int concurrency;
+	private final int chunkSize;
+
+	private final ConcurrentHashMap<Integer, QueryExport> runningExports = new ConcurrentHashMap<>();
+	private final AtomicLong finishedRows = new AtomicLong();
+	private final AtomicInteger finishedPartitions = new AtomicInteger();
+	private volatile int partitionCount;
+	private volatile boolean isCanceled;
+	private volatile long startTime;
+	private volatile long endTime;
+	private volatile List<File> files = new ArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param directory
+	 *            - The directory the CSV files are written to
+	 * @param concurrency
+	 *            - The maximum number of partitions queried at once
+	 * @param chunkSize
+	 *            - The number of rows Influx returns at once
+	 */
+	public PartitionedExport(InfluxDB influxDB, File directory, int concurrency, int chunkSize) {
+		if (concurrency <= 0 || chunkSize <= 0)
+			throw new IllegalArgumentException("Concurrency and chunk size must be positive!");
+		this.influxDB = influxDB;
+		this.directory = directory;
+		this.concurrency = concurrency;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Exports all partitions of the time range and blocks till they were written
+	 *
+	 * @param query
+	 *            - The Influx query to extract data with, without a time
+	 *            condition
+	 * @param from
+	 *            - The start of the time range
+	 * @param to
+	 *            - The end of the time range (exclusive)
+	 * @param partitionLength
+	 *            - The length of a partition
+	 * @param isMerging
+	 *            - <code>true</code> to merge the partitions into one file per
+	 *            series, otherwise the files of every partition are kept in their
+	 *            own directory
+	 * @return The number of exported rows
+	 * @throws QueryExport.ExportException
+	 *             if a partition couldn't be exported
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the export
+	 */
+	public long run(String query, Instant from, Instant to, Duration partitionLength, boolean isMerging)
+			throws InterruptedException {
+		if (!to.isAfter(from) || partitionLength.isZero() || partitionLength.isNegative())
+			throw new IllegalArgumentException("Invalid time range or partition length!");
+
+		List<Instant[]> partitions = new ArrayList<>();
+		for (Instant start = from; start.isBefore(to); start = start.plus(partitionLength)) {
+			Instant end = start.plus(partitionLength);
+			partitions.add(new Instant[] { start, end.isAfter(to) ? to : end });
+		}
+		partitionCount = partitions.size();
+		File runDirectory = new File(directory, "partitions-" + from.getEpochSecond() + "-" + to.getEpochSecond());
+		Client.logger.info("Exporting " + from + " - " + to + " in " + partitions.size() + " partitions...");
+
+		startTime = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, partitions.size()));
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < partitions.size(); i++) {
+			final int index = i;
+			final Instant[] partition = partitions.get(i);
+			results.add(executor.submit(() -> exportPartition(query, index, partition[0], partition[1],
+					getPartitionDirectory(runDirectory, index))));
+		}
+		executor.shutdown();
+
+		boolean isSuccess = true;
+		try {
+			for (Future<Boolean> result : results) {
+				try {
+					isSuccess &= result.get();
+				} catch (ExecutionException e) {
+					Client.logger.error("Export worker failed!", e);
+					isSuccess = false;
+				}
+			}
+		} catch (InterruptedException e) {
+			cancel();
+			executor.shutdownNow();
+			throw e;
+		} finally {
+			endTime = System.nanoTime();
+		}
+
+		if (!isSuccess)
+			throw new QueryExport.ExportException(
+					"Export incomplete, partitions were kept in " + runDirectory + "!");
+		if (isCanceled)
+			return finishedRows.get();
+
+		try {
+			files = isMerging ? merge(runDirectory, partitions.size()) : listFiles(runDirectory, partitions.size());
+		} catch (IOException e) {
+			throw new QueryExport.ExportException("Partitions couldn't be merged!", e);
+		}
+		return finishedRows.get();
+	}
+
+	/**
+	 * Exports one partition and retries it if it failed
+	 *
+	 * @return <code>true</code> if the partition was exported otherwise
+	 *         <code>false</code>
+	 */
+	private boolean exportPartition(String query, int index, Instant start, Instant end, File partitionDirectory)
+			throws InterruptedException {
+		String partitionQuery = withTimeRange(query, start, end);
+		for (int attempt = 1; attempt <= MAX_ATTEMPTS && !isCanceled; attempt++) {
+			deleteFiles(partitionDirectory);
+			QueryExport export = new QueryExport(influxDB, partitionDirectory, chunkSize);
+			export.setFileSuffix(".csv");
+			runningExports.put(index, export);
+			try {
+				long rows = export.run(partitionQuery);
+				runningExports.remove(index);
+				finishedRows.addAndGet(rows);
+				Client.logger.info("Partition " + (index + 1) + "/" + partitionCount + " (" + start + " - " + end
+						+ ") exported: " + rows + " rows! " + getProgress());
+				finishedPartitions.incrementAndGet();
+				return true;
+			} catch (QueryExport.ExportException e) {
+				Client.logger.warn("Partition " + (index + 1) + " failed, attempt " + attempt + " of " + MAX_ATTEMPTS
+						+ "!", e);
+				if (attempt < MAX_ATTEMPTS)
+					Thread.sleep(RETRY_DELAY * attempt);
+			} finally {
+				runningExports.remove(index);
+			}
+		}
+		return isCanceled;
+	}
+
+	/**
+	 * Adds the time range to the where clause of a query
+	 *
+	 * @param query
+	 *            - The Influx query
+	 * @param start
+	 *            - The start of the time range
+	 * @param end
+	 *            - The end of the time range (exclusive)
+	 * @return The query limited to the time range
+	 */
+	static String withTimeRange(String query, Instant start, Instant end) {
+		return withCondition(query, "time >= '" + start + "' AND time < '" + end + "'");
+	}
+
+	/**
+	 * Adds a condition to the where clause of a query
+	 *
+	 * @param query
+	 *            - The Influx query
+	 * @param condition
+	 *            - The condition all rows have to match
+	 * @return The query with the condition
+	 */
+	static String withCondition(String query, String condition) {
+		String upperQuery = query.toUpperCase(Locale.ENGLISH);
+		int clauseStart = query.length();
+		for (String clause : TRAILING_CLAUSES) {
+			int index = upperQuery.indexOf(clause);
+			if (index >= 0 && index < clauseStart)
+				clauseStart = index;
+		}
+		String head = query.substring(0, clauseStart).trim();
+		String tail = query.substring(clauseStart);
+
+		int where = head.toUpperCase(Locale.ENGLISH).indexOf(" WHERE ");
+		if (where < 0)
+			return head + " WHERE " + condition + tail;
+		return head.substring(0, where) + " WHERE (" + head.substring(where + 7).trim() + ") AND " + condition
+				+ tail;
+	}
+
+	/**
+	 * Concatenates the files of every series in partition order and deletes the
+	 * partitions. Partitions may return different columns, e.g. if a field has no
+	 * values in one of them, so the merged file has the columns of all partitions
+	 *
+	 * @return The merged files
+	 */
+	private List<File> merge(File runDirectory, int partitions) throws IOException {
+		Set<String> fileNames = new TreeSet<>();
+		for (int i = 0; i < partitions; i++) {
+			String[] names = getPartitionDirectory(runDirectory, i).list();
+			if (names != null)
+				for (String name : names)
+					fileNames.add(name);
+		}
+
+		List<File> merged = new ArrayList<>();
+		for (String fileName : fileNames) {
+			List<File> parts = new ArrayList<>();
+			List<String> columns = new ArrayList<>();
+			for (int i = 0; i < partitions; i++) {
+				File part = new File(getPartitionDirectory(runDirectory, i), fileName);
+				if (!part.isFile())
+					continue;
+				parts.add(part);
+				for (String column : readHeader(part))
+					if (!columns.contains(column))
+						columns.add(column);
+			}
+
+			String baseName = fileName.substring(0, fileName.length() - ".csv".length());
+			File target = new File(directory,
+					baseName + "-" + runDirectory.getName().substring("partitions-".length()) + ".csv");
+			try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				Writer writer = Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE);
+				writer.write(String.join(",", columns) + System.lineSeparator());
+				writer.flush();
+				for (File part : parts) {
+					List<String> partColumns = readHeader(part);
+					if (partColumns.equals(columns))
+						transferRows(part, out);
+					else {
+						remapRows(part, partColumns, columns, writer);
+						writer.flush();
+					}
+				}
+			}
+			merged.add(target);
+		}
+
+		for (int i = 0; i < partitions; i++)
+			deleteFiles(getPartitionDirectory(runDirectory, i));
+		deleteFiles(runDirectory);
+		return merged;
+	}
+
+	/**
+	 * Copies the rows of a partition file without its header
+	 */
+	private static void transferRows(File part, FileChannel out) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(part, "r")) {
+			in.readLine();
+			long offset = in.getFilePointer();
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			while (offset < size)
+				offset += channel.transferTo(offset, size - offset, out);
+		}
+	}
+
+	/**
+	 * Copies the rows of a partition file in the column order of the merged file
+	 */
+	private static void remapRows(File part, List<String> partColumns, List<String> columns, Writer writer)
+			throws IOException {
+		int[] mapping = new int[columns.size()];
+		for (int i = 0; i < mapping.length; i++)
+			mapping[i] = partColumns.indexOf(columns.get(i));
+
+		try (BufferedReader reader = Files.newBufferedReader(part.toPath(), StandardCharsets.UTF_8)) {
+			readRecord(reader);
+			List<String> fields;
+			StringBuilder line = new StringBuilder();
+			while ((fields = readRecord(reader)) != null) {
+				line.setLength(0);
+				for (int i = 0; i < mapping.length; i++) {
+					if (i > 0)
+						line.append(',');
+					if (mapping[i] >= 0 && mapping[i] < fields.size())
+						line.append(fields.get(mapping[i]));
+				}
+				writer.write(line.append(System.lineSeparator()).toString());
+			}
+		}
+	}
+
+	private static List<String> readHeader(File part) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(part.toPath(), StandardCharsets.UTF_8)) {
+			List<String> header = readRecord(reader);
+			return header == null ? new ArrayList<String>() : header;
+		}
+	}
+
+	/**
+	 * Reads the next record of a file written by a {@link CsvWriter}. The fields
+	 * are returned as written, quoted fields keep their quotes
+	 *
+	 * @return The fields of the record or <code>null</code> at the end of the file
+	 */
+	static List<String> readRecord(BufferedReader reader) throws IOException {
+		int c = reader.read();
+		if (c < 0)
+			return null;
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean isQuoted = false;
+		for (; c >= 0; c = reader.read()) {
+			if (c == '"')
+				isQuoted = !isQuoted;
+			else if (!isQuoted && c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+				continue;
+			} else if (!isQuoted && (c == '\n' || c == '\r')) {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n')
+						reader.reset();
+				}
+				break;
+			}
+			field.append((char) c);
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	private static List<File> listFiles(File runDirectory, int partitions) {
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < partitions; i++) {
+			File[] partitionFiles = getPartitionDirectory(runDirectory, i).listFiles();
+			if (partitionFiles != null)
+				for (File file : partitionFiles)
+					files.add(file);
+		}
+		return files;
+	}
+
+	private static File getPartitionDirectory(File runDirectory, int index) {
+		return new File(runDirectory, String.format("part-%05d", index));
+	}
+
+	/**
+	 * Deletes the files of a directory and the directory itself
+	 */
+	private static void deleteFiles(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null)
+			for (File file : files)
+				if (!file.delete())
+					Client.logger.warn("Export file " + file + " couldn't be deleted!");
+		directory.delete();
+	}
+
+	/**
+	 * Stops all running partitions after their current chunk and skips the
+	 * remaining ones
+	 */
+	@Override
+	public void cancel() {
+		isCanceled = true;
+		for (QueryExport export : runningExports.values())
+			export.cancel();
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return isCanceled;
+	}
+
+	/**
+	 * Returns the exported files once the export finished
+	 *
+	 * @return A {@link List} of the CSV files
+	 */
+	@Override
+	public List<File> getFiles() {
+		return files;
+	}
+
+	/**
+	 * Returns the number of rows exported so far, including running partitions
+	 *
+	 * @return The number of rows
+	 */
+	@Override
+	public long getRows() {
+		long rows = finishedRows.get();
+		for (QueryExport export : runningExports.values())
+			rows += export.getRows();
+		return rows;
+	}
+
+	/**
+	 * Returns the throughput of the export
+	 *
+	 * @return The exported rows per second
+	 */
+	@Override
+	public long getRowsPerSecond() {
+		if (startTime == 0)
+			return 0;
+		long nanos = (endTime == 0 ? System.nanoTime() : endTime) - startTime;
+		return getRows() * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+	}
+
+	/**
+	 * Returns the progress of the export
+	 *
+	 * @return The finished partitions, the exported rows and the throughput
+	 */
+	@Override
+	public String getProgress() {
+		return finishedPartitions.get() + "/" + partitionCount + " partitions, " + getRows() + " rows, "
+				+ getRowsPerSecond() + " rows/s";
+	}
+}
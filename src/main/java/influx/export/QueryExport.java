@@ -0,0 +1,333 @@
+package influx.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.influxdb.dto.QueryResult.Result;
+import org.influxdb.dto.QueryResult.Series;
+
+import client.Client;
+import influx.SchemaCodec;
+import influx.schema.BlockSchema;
+
+/**
+ * Exports the result of an Influx query into one file per series, by default
+ * as CSV. The result is streamed in chunks and every chunk is written before
+ * the next one is read, so the memory used doesn't depend on the size of the
+ * result
+ *
+ * @author Yannick
+ *
+ */
+public class QueryExport implements Export {
+
+	public static final int DEFAULT_CHUNK_SIZE = 10000;
+	private static final long PROGRESS_INTERVAL = 1000000;
+
+	private final InfluxDB influxDB;
+	private final File directory;
+	private final int chunkSize;
+
+	// Writers of all series of the result by series name and tags
+	private final Map<String, SeriesWriter> writers = new LinkedHashMap<>();
+	private final AtomicLong rows = new AtomicLong();
+	private volatile boolean isCanceled;
+	private volatile long startTime;
+	private volatile long endTime;
+	private String fileSuffix;
+	private ExportFormat format = ExportFormat.CSV;
+	private WriterFactory writerFactory;
+
+	/**
+	 * Creates the writers of the series instead of the export format, e.g. to
+	 * append to existing files
+	 */
+	public interface WriterFactory {
+
+		/**
+		 * Creates the writer of a series on its first chunk
+		 *
+		 * @param series
+		 *            - The first chunk of the series
+		 * @return The {@link SeriesWriter}
+		 * @throws IOException
+		 *             if the file can't be created
+		 */
+		SeriesWriter create(Series series) throws IOException;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param influxDB
+	 *            - An instance of a {@link InfluxDB}
+	 * @param directory
+	 *            - The directory the files are written to
+	 * @param chunkSize
+	 *            - The number of rows Influx returns at once
+	 */
+	public QueryExport(InfluxDB influxDB, File directory, int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("Chunk size must be positive!");
+		this.influxDB = influxDB;
+		this.directory = directory;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Runs the query and blocks till all rows were written
+	 *
+	 * @param query
+	 *            - The Influx query to extract data with
+	 * @return The number of exported rows
+	 * @throws ExportException
+	 *             if the query failed or a file couldn't be written
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the export
+	 */
+	public long run(String query) throws InterruptedException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new ExportException("Export directory " + directory + " couldn't be created!");
+		if (fileSuffix == null)
+			fileSuffix = "-" + new SimpleDateFormat("HHmmddMMyyyy").format(new Date()) + format.getExtension();
+		startTime = System.nanoTime();
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+		influxDB.query(new Query(query), chunkSize, (cancellable, result) -> {
+			try {
+				if ("DONE".equals(result.getError()))
+					return;
+				if (isCanceled) {
+					cancellable.cancel();
+					done.countDown();
+					return;
+				}
+				writeChunk(result);
+			} catch (IOException | RuntimeException e) {
+				failure.compareAndSet(null, e);
+				cancellable.cancel();
+				done.countDown();
+			}
+		}, done::countDown, e -> {
+			failure.compareAndSet(null, e);
+			done.countDown();
+		});
+
+		try {
+			done.await();
+		} finally {
+			endTime = System.nanoTime();
+			IOException closeFailure = closeWriters();
+			if (failure.get() == null && closeFailure != null)
+				failure.set(closeFailure);
+		}
+
+		Throwable e = failure.get();
+		if (e instanceof ExportException)
+			throw (ExportException) e;
+		if (e != null)
+			throw new ExportException("Export failed after " + rows.get() + " rows!", e);
+		return rows.get();
+	}
+
+	/**
+	 * Appends the rows of a chunk to the files of their series
+	 *
+	 * @param result
+	 *            - The chunk
+	 */
+	private void writeChunk(QueryResult result) throws IOException {
+		if (result.hasError())
+			throw new ExportException("Malformed Query! " + result.getError());
+		if (result.getResults() == null)
+			return;
+		for (Result r : result.getResults()) {
+			if (r.hasError())
+				throw new ExportException("Malformed Query! " + r.getError());
+			if (r.getSeries() == null)
+				continue;
+			for (Series series : r.getSeries()) {
+				getWriter(series).writeSeries(series);
+
+				long total = rows.addAndGet(series.getValues().size());
+				if (total / PROGRESS_INTERVAL != (total - series.getValues().size()) / PROGRESS_INTERVAL)
+					Client.logger.info("Export: " + total + " rows (" + getRowsPerSecond() + " rows/s)...");
+			}
+		}
+	}
+
+	/**
+	 * Returns the writer of a series and creates its file on first use
+	 */
+	private synchronized SeriesWriter getWriter(Series series) throws IOException {
+		String key = series.getName() + (series.getTags() == null ? "" : series.getTags().toString());
+		SeriesWriter writer = writers.get(key);
+		if (writer == null) {
+			StringBuilder name = new StringBuilder(series.getName());
+			if (series.getTags() != null)
+				for (String tag : series.getTags().values())
+					name.append('-').append(tag);
+			String fileName = name.toString().replaceAll("[^A-Za-z0-9._-]", "_") + fileSuffix;
+			writer = writerFactory != null ? writerFactory.create(series)
+					: createWriter(series.getName(), new File(directory, fileName));
+			writers.put(key, writer);
+		}
+		return writer;
+	}
+
+	/**
+	 * Creates the writer of the export format
+	 *
+	 * @param measurementName
+	 *            - The name of the series
+	 * @param file
+	 *            - The file to write
+	 * @return The {@link SeriesWriter}
+	 */
+	private SeriesWriter createWriter(String measurementName, File file) throws IOException {
+		if (format == ExportFormat.CSV)
+			return new CsvWriter(file);
+		Class<? extends BlockSchema> schemaClass = SchemaCodec.findSchemaClass(measurementName);
+		if (schemaClass == null)
+			throw new ExportException("No schema of measurement " + measurementName + " to map the columns with!");
+		return new ArrowIpcWriter(file, schemaClass);
+	}
+
+	/**
+	 * Closes all files
+	 *
+	 * @return The first error or <code>null</code> if all files were closed
+	 */
+	private synchronized IOException closeWriters() {
+		IOException failure = null;
+		for (SeriesWriter writer : writers.values()) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				if (failure == null)
+					failure = e;
+			}
+		}
+		return failure;
+	}
+
+	/**
+	 * Sets the suffix of the file names, by default the current time and the
+	 * extension of the format
+	 *
+	 * @param fileSuffix
+	 *            - The suffix appended to the series name
+	 */
+	public void setFileSuffix(String fileSuffix) {
+		this.fileSuffix = fileSuffix;
+	}
+
+	/**
+	 * Sets the format of the files, {@link ExportFormat#CSV} by default
+	 *
+	 * @param format
+	 *            - The {@link ExportFormat}
+	 */
+	public void setFormat(ExportFormat format) {
+		this.format = format;
+	}
+
+	public ExportFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Sets the factory that creates the writers instead of the export format
+	 *
+	 * @param writerFactory
+	 *            - The {@link WriterFactory} or <code>null</code> to write new
+	 *            files of the export format
+	 */
+	public void setWriterFactory(WriterFactory writerFactory) {
+		this.writerFactory = writerFactory;
+	}
+
+	/**
+	 * Stops the export after the current chunk
+	 */
+	@Override
+	public void cancel() {
+		isCanceled = true;
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return isCanceled;
+	}
+
+	/**
+	 * Returns the exported files
+	 *
+	 * @return A {@link List} of the files
+	 */
+	@Override
+	public synchronized List<File> getFiles() {
+		List<File> files = new ArrayList<>();
+		for (SeriesWriter writer : writers.values())
+			files.add(writer.getFile());
+		return files;
+	}
+
+	@Override
+	public long getRows() {
+		return rows.get();
+	}
+
+	/**
+	 * Returns the throughput of the export
+	 *
+	 * @return The exported rows per second
+	 */
+	@Override
+	public long getRowsPerSecond() {
+		if (startTime == 0)
+			return 0;
+		long nanos = (endTime == 0 ? System.nanoTime() : endTime) - startTime;
+		return rows.get() * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+	}
+
+	/**
+	 * Returns the progress of the export
+	 *
+	 * @return The exported rows and the throughput
+	 */
+	@Override
+	public String getProgress() {
+		return getRows() + " rows, " + getRowsPerSecond() + " rows/s";
+	}
+
+	/**
+	 * Thrown if an export couldn't be completed
+	 */
+	public static class ExportException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public ExportException(String message) {
+			super(message);
+		}
+
+		public ExportException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
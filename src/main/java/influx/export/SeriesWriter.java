@@ -0,0 +1,36 @@
+package influx.export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.influxdb.dto.QueryResult.Series;
+
+/**
+ * Writes the rows of one series of a query result into a file. A series may be
+ * delivered in several chunks, every chunk is passed on its own
+ *
+ * @author Yannick
+ *
+ */
+public interface SeriesWriter extends Closeable {
+
+	/**
+	 * Appends the rows of a chunk of the series
+	 *
+	 * @param series
+	 *            - The chunk with the columns and rows
+	 * @throws IOException
+	 *             if the rows can't be written
+	 */
+	void writeSeries(Series series) throws IOException;
+
+	File getFile();
+
+	/**
+	 * Returns the number of written rows
+	 *
+	 * @return The number of rows
+	 */
+	long getRows();
+}
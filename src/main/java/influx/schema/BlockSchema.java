@@ -38,6 +38,21 @@ public abstract class BlockSchema {
 	@Column(name = "Orphan")
 	private boolean isOrphan;
 
+	/**
+	 * Copies the columns of another block into this one
+	 * 
+	 * @param other
+	 *            - The {@link BlockSchema} to copy
+	 */
+	protected void copyFrom(BlockSchema other) {
+		time = other.time;
+		hash = other.hash;
+		client = other.client;
+		node = other.node;
+		blockNumber = other.blockNumber;
+		isOrphan = other.isOrphan;
+	}
+
 	public Instant getTime() {
 		return time;
 	}
@@ -0,0 +1,96 @@
+package influx.schema;
+
+import java.time.Instant;
+
+/**
+ * Layout of the Influx measurements a {@link BlockSchema} is stored with
+ *
+ * @author Yannick
+ *
+ */
+public enum SchemaVersion {
+
+	/**
+	 * The hash of a block is a tag, so every block is stored in its own series
+	 */
+	V1(1),
+
+	/**
+	 * The hash of a block is a field and the series are only keyed by the client
+	 * and the node. Blocks of the same second are kept apart by a nanosecond
+	 * offset derived from their hash
+	 */
+	V2(2);
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	// FNV-1a 64 bit
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int number;
+
+	private SchemaVersion(int number) {
+		this.number = number;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	/**
+	 * Returns the schema version with the given number
+	 *
+	 * @param number
+	 *            - The number of the version, e.g. from the config
+	 * @return The {@link SchemaVersion}
+	 */
+	public static SchemaVersion fromNumber(int number) {
+		for (SchemaVersion version : values())
+			if (version.number == number)
+				return version;
+		throw new IllegalArgumentException("Unknown schema version " + number + "!");
+	}
+
+	/**
+	 * Returns whether the hash of a block is stored as tag
+	 *
+	 * @return <code>true</code> if the hash is part of the series key
+	 */
+	public boolean isHashTag() {
+		return this == V1;
+	}
+
+	/**
+	 * Returns the timestamp a block is stored with. In {@link #V2} the same block
+	 * always gets the same timestamp, so records overwriting a stored block can be
+	 * written without querying it first
+	 *
+	 * @param time
+	 *            - The time of the block
+	 * @param hash
+	 *            - The hash of the block
+	 * @return The timestamp in nanoseconds
+	 */
+	public long toNanos(Instant time, String hash) {
+		long nanos = time.getEpochSecond() * NANOS_PER_SECOND;
+		if (this == V1 || hash == null)
+			return nanos;
+		return nanos + getTimeOffset(hash);
+	}
+
+	/**
+	 * Derives the nanosecond offset of a block from its hash
+	 *
+	 * @param hash
+	 *            - The hash of the block
+	 * @return An offset between 0 and one second
+	 */
+	static long getTimeOffset(String hash) {
+		long fnv = FNV_OFFSET_BASIS;
+		for (int i = 0; i < hash.length(); i++) {
+			fnv ^= hash.charAt(i);
+			fnv *= FNV_PRIME;
+		}
+		return Math.floorMod(fnv, NANOS_PER_SECOND);
+	}
+}
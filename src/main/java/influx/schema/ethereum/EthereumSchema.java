@@ -47,6 +47,29 @@ public class EthereumSchema extends BlockSchema {
 	@Column(name = "Uncles")
 	private long uncles;
 
+	/**
+	 * Creates a copy of this block, e.g. to change the per-node columns of a block
+	 * shared between several nodes
+	 * 
+	 * @return A new {@link EthereumSchema} with the same columns
+	 */
+	public EthereumSchema copy() {
+		EthereumSchema copy = new EthereumSchema();
+		copy.copyFrom(this);
+		copy.blockCreationTime = blockCreationTime;
+		copy.difficulty = difficulty;
+		copy.extraData = extraData;
+		copy.gasLimit = gasLimit;
+		copy.gasUsed = gasUsed;
+		copy.miner = miner;
+		copy.peerCount = peerCount;
+		copy.size = size;
+		copy.totalDifficulty = totalDifficulty;
+		copy.transactions = transactions;
+		copy.uncles = uncles;
+		return copy;
+	}
+
 	public long getBlockCreationTime() {
 		return blockCreationTime;
 	}
@@ -0,0 +1,42 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count. Increments are lock-free and spread over
+ * cells under contention, so many threads can count without waiting for each
+ * other
+ *
+ * @author Yannick
+ *
+ */
+public class Counter {
+
+	private final LongAdder value = new LongAdder();
+
+	/**
+	 * Adds one to the count
+	 */
+	public void increment() {
+		value.increment();
+	}
+
+	/**
+	 * Adds to the count
+	 *
+	 * @param amount
+	 *            - The non-negative amount to add
+	 */
+	public void add(long amount) {
+		value.add(amount);
+	}
+
+	/**
+	 * Returns the count
+	 *
+	 * @return The sum of all increments
+	 */
+	public long get() {
+		return value.sum();
+	}
+}
@@ -0,0 +1,161 @@
+package metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Records latencies into an HDR histogram. Recording is wait-free and doesn't
+ * allocate memory, the recorded values are only moved into the histograms the
+ * percentiles are read from when a snapshot is taken. The count and the sum
+ * cover all recorded latencies, the percentiles the last one to two windows
+ *
+ * @author Yannick
+ *
+ */
+public class LatencyHistogram {
+
+	public static final long DEFAULT_WINDOW = 60000;
+	public static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+	public static final String[] QUANTILE_FIELDS = { "p50", "p90", "p99", "p999" };
+	// Latencies are recorded in microseconds, longer ones than a minute are
+	// clamped
+	private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+	private static final int SIGNIFICANT_DIGITS = 2;
+
+	/**
+	 * The state of a histogram at the time of the snapshot
+	 */
+	public static class Snapshot {
+
+		private final long count;
+		private final double sum;
+		private final double max;
+		private final double[] quantiles;
+
+		private Snapshot(long count, double sum, double max, double[] quantiles) {
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+			this.quantiles = quantiles;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the sum of all latencies
+		 *
+		 * @return The sum in seconds
+		 */
+		public double getSum() {
+			return sum;
+		}
+
+		/**
+		 * Returns the maximum latency of the window
+		 *
+		 * @return The maximum in seconds
+		 */
+		public double getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns the latencies at {@link LatencyHistogram#QUANTILES}
+		 *
+		 * @return The latencies of the window in seconds
+		 */
+		public double[] getQuantiles() {
+			return quantiles;
+		}
+	}
+
+	private final Recorder recorder = new Recorder(1, HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+	private final LongAdder sumMicros = new LongAdder();
+	private final long windowNanos;
+	private Histogram interval;
+	private Histogram recent = new Histogram(1, HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+	private Histogram previous = new Histogram(1, HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+	private final Histogram window = new Histogram(1, HIGHEST_MICROS, SIGNIFICANT_DIGITS);
+	private long count;
+	private long windowStart = System.nanoTime();
+
+	/**
+	 * Constructor that computes the percentiles of the last
+	 * {@link #DEFAULT_WINDOW} milliseconds
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param window
+	 *            - The time in milliseconds after which recorded latencies start
+	 *            to be dropped from the percentiles
+	 */
+	public LatencyHistogram(long window) {
+		if (window <= 0)
+			throw new IllegalArgumentException("Window must be positive!");
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+	}
+
+	/**
+	 * Records a latency
+	 *
+	 * @param nanos
+	 *            - The latency in nanoseconds
+	 */
+	public void recordNanos(long nanos) {
+		long micros = Math.min(HIGHEST_MICROS, Math.max(0, nanos / 1000));
+		recorder.recordValue(micros);
+		sumMicros.add(micros);
+	}
+
+	/**
+	 * Records the time passed since a start time
+	 *
+	 * @param startNanos
+	 *            - The start time from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		recordNanos(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Moves the recorded latencies into the window and reads its percentiles. The
+	 * window is rotated once it is older than the window time
+	 *
+	 * @return The {@link Snapshot} of the histogram
+	 */
+	public synchronized Snapshot snapshot() {
+		interval = recorder.getIntervalHistogram(interval);
+		count += interval.getTotalCount();
+		long now = System.nanoTime();
+		if (now - windowStart >= windowNanos) {
+			Histogram oldest = previous;
+			previous = recent;
+			recent = oldest;
+			recent.reset();
+			windowStart = now;
+		}
+		recent.add(interval);
+
+		window.reset();
+		window.add(previous);
+		window.add(recent);
+		double[] quantiles = new double[QUANTILES.length];
+		for (int i = 0; i < QUANTILES.length; i++)
+			quantiles[i] = toSeconds(window.getValueAtPercentile(QUANTILES[i] * 100));
+		return new Snapshot(count, toSeconds(sumMicros.sum()), toSeconds(window.getMaxValue()), quantiles);
+	}
+
+	private static double toSeconds(long micros) {
+		return micros / 1e6;
+	}
+}
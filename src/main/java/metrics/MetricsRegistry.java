@@ -0,0 +1,251 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.influxdb.dto.Point;
+
+/**
+ * Holds the counters, gauges and latency histograms the client instruments
+ * itself with. Metrics are registered once with their name and labels and the
+ * returned instance is kept by the caller, so recording never looks anything
+ * up. The registry renders all metrics in the Prometheus text format or as
+ * Influx records
+ *
+ * @author Yannick
+ *
+ */
+public class MetricsRegistry {
+
+	private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+	/**
+	 * The kinds of metrics
+	 */
+	private enum Type {
+		COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+		private final String name;
+
+		private Type(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * All metrics with the same name
+	 */
+	private static class Family {
+
+		private final String name;
+		private final String help;
+		private final Type type;
+		private final Map<String, Child> children = new LinkedHashMap<>();
+
+		private Family(String name, String help, Type type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	/**
+	 * A metric with its labels
+	 */
+	private static class Child {
+
+		private final String[] labels;
+		private final String labelText;
+		private Object metric;
+
+		private Child(String[] labels, String labelText) {
+			this.labels = labels;
+			this.labelText = labelText;
+		}
+	}
+
+	private final Map<String, Family> families = new LinkedHashMap<>();
+
+	/**
+	 * Returns the registry shared by the whole process
+	 *
+	 * @return The default {@link MetricsRegistry}
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns a counter and registers it on first use
+	 *
+	 * @param name
+	 *            - The name of the metric, should end with _total
+	 * @param help
+	 *            - The description of the metric
+	 * @param labels
+	 *            - Pairs of label names and values, e.g. "node", address
+	 * @return The {@link Counter}
+	 */
+	public synchronized Counter counter(String name, String help, String... labels) {
+		Child child = getChild(name, help, Type.COUNTER, labels);
+		if (child.metric == null)
+			child.metric = new Counter();
+		return (Counter) child.metric;
+	}
+
+	/**
+	 * Returns a latency histogram and registers it on first use
+	 *
+	 * @param name
+	 *            - The name of the metric, should end with _seconds
+	 * @param help
+	 *            - The description of the metric
+	 * @param labels
+	 *            - Pairs of label names and values, e.g. "node", address
+	 * @return The {@link LatencyHistogram}
+	 */
+	public synchronized LatencyHistogram histogram(String name, String help, String... labels) {
+		Child child = getChild(name, help, Type.SUMMARY, labels);
+		if (child.metric == null)
+			child.metric = new LatencyHistogram();
+		return (LatencyHistogram) child.metric;
+	}
+
+	/**
+	 * Registers a gauge whose value is read when the metrics are rendered. A
+	 * gauge with the same name and labels is replaced
+	 *
+	 * @param name
+	 *            - The name of the metric
+	 * @param help
+	 *            - The description of the metric
+	 * @param supplier
+	 *            - The {@link DoubleSupplier} of the current value
+	 * @param labels
+	 *            - Pairs of label names and values, e.g. "stage", name
+	 */
+	public synchronized void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+		getChild(name, help, Type.GAUGE, labels).metric = supplier;
+	}
+
+	/**
+	 * Returns the metric of a family with the given labels and creates the
+	 * family and the metric on first use
+	 */
+	private Child getChild(String name, String help, Type type, String... labels) {
+		if (labels.length % 2 != 0)
+			throw new IllegalArgumentException("Labels must be pairs of names and values!");
+		Family family = families.get(name);
+		if (family == null) {
+			family = new Family(name, help, type);
+			families.put(name, family);
+		} else if (family.type != type)
+			throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type.name);
+
+		StringBuilder labelText = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0)
+				labelText.append(',');
+			labelText.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+		}
+		String key = labelText.toString();
+		Child child = family.children.get(key);
+		if (child == null) {
+			child = new Child(labels.clone(), key);
+			family.children.put(key, child);
+		}
+		return child;
+	}
+
+	/**
+	 * Escapes a label value for the Prometheus text format
+	 */
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Renders all metrics in the Prometheus text exposition format
+	 *
+	 * @return The metrics as text
+	 */
+	public synchronized String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		for (Family family : families.values()) {
+			sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+			sb.append("# TYPE ").append(family.name).append(' ').append(family.type.name).append('\n');
+			for (Child child : family.children.values()) {
+				switch (family.type) {
+				case COUNTER:
+					appendSample(sb, family.name, child.labelText, ((Counter) child.metric).get());
+					break;
+				case GAUGE:
+					appendSample(sb, family.name, child.labelText, ((DoubleSupplier) child.metric).getAsDouble());
+					break;
+				case SUMMARY:
+					LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) child.metric).snapshot();
+					double[] quantiles = snapshot.getQuantiles();
+					for (int i = 0; i < quantiles.length; i++)
+						appendSample(sb, family.name, (child.labelText.isEmpty() ? "" : child.labelText + ",")
+								+ "quantile=\"" + LatencyHistogram.QUANTILES[i] + "\"", quantiles[i]);
+					appendSample(sb, family.name + "_sum", child.labelText, snapshot.getSum());
+					appendSample(sb, family.name + "_count", child.labelText, snapshot.getCount());
+					break;
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void appendSample(StringBuilder sb, String name, String labelText, double value) {
+		sb.append(name);
+		if (!labelText.isEmpty())
+			sb.append('{').append(labelText).append('}');
+		sb.append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Encodes all metrics as Influx records. Every metric is stored in the
+	 * measurement of its name with its labels as tags
+	 *
+	 * @param timestamp
+	 *            - The time of the records in seconds
+	 * @return A {@link List} of line protocol records
+	 */
+	public synchronized List<String> toRecords(long timestamp) {
+		List<String> records = new ArrayList<>();
+		for (Family family : families.values()) {
+			for (Child child : family.children.values()) {
+				Point.Builder builder = Point.measurement(family.name).time(timestamp, TimeUnit.SECONDS);
+				for (int i = 0; i < child.labels.length; i += 2)
+					builder.tag(child.labels[i], child.labels[i + 1]);
+				switch (family.type) {
+				case COUNTER:
+					builder.addField("value", ((Counter) child.metric).get());
+					break;
+				case GAUGE:
+					double value = ((DoubleSupplier) child.metric).getAsDouble();
+					// Influx can't store NaN or infinite values
+					if (Double.isNaN(value) || Double.isInfinite(value))
+						continue;
+					builder.addField("value", value);
+					break;
+				case SUMMARY:
+					LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) child.metric).snapshot();
+					builder.addField("count", snapshot.getCount()).addField("sum", snapshot.getSum())
+							.addField("max", snapshot.getMax());
+					double[] quantiles = snapshot.getQuantiles();
+					for (int i = 0; i < quantiles.length; i++)
+						builder.addField(LatencyHistogram.QUANTILE_FIELDS[i], quantiles[i]);
+					break;
+				}
+				records.add(builder.build().lineProtocol());
+			}
+		}
+		return records;
+	}
+}
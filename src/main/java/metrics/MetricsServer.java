@@ -0,0 +1,109 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import client.Client;
+
+/**
+ * Embedded HTTP server that serves the metrics of a {@link MetricsRegistry} in
+ * the Prometheus text format at {@value #PATH}. Requests are answered by a
+ * single daemon thread, so scrapes don't compete with the ingestion
+ *
+ * @author Yannick
+ *
+ */
+public class MetricsServer {
+
+	public static final String PATH = "/metrics";
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final MetricsRegistry registry;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Constructor that binds the server
+	 *
+	 * @param registry
+	 *            - The {@link MetricsRegistry} to serve
+	 * @param port
+	 *            - The port to listen on, 0 to pick a free one
+	 * @throws IOException
+	 *             if the port couldn't be bound
+	 */
+	public MetricsServer(MetricsRegistry registry, int port) throws IOException {
+		this.registry = registry;
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext(PATH, this::handle);
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("MetricsServer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Answers a scrape with the current metrics
+	 *
+	 * @param exchange
+	 *            - The {@link HttpExchange} of the request
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = registry.toPrometheus().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (RuntimeException e) {
+			Client.logger.error("Metrics couldn't be rendered!", e);
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Starts to answer requests
+	 */
+	public void start() {
+		server.start();
+		Client.logger.info("Metrics available at http://localhost:" + getPort() + PATH);
+	}
+
+	/**
+	 * Stops the server
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the port the server listens on
+	 *
+	 * @return The bound port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+}
@@ -9,8 +9,10 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
@@ -38,9 +40,32 @@ import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Query;
 
+import blockchain.BlockCache;
+import blockchain.BlockchainAdapter;
 import blockchain.ethereum.EthereumAdapter;
+import client.Backfill;
 import client.Client;
+import client.NodeConnector;
+import client.PollScheduler;
+import client.PropagationTracker;
+import client.pipeline.BlockTracer;
+import client.pipeline.ChainHealthMonitor;
+import client.pipeline.ChainIndex;
+import client.pipeline.IngestionPipeline;
+import influx.BatchWriter;
 import influx.InfluxDBUtil;
+import influx.RecordWriter;
+import influx.SchemaCodec;
+import influx.SchemaMigration;
+import influx.WriteAheadSpool;
+import influx.export.ExportConsole;
+import influx.export.ExportFormat;
+import influx.export.ExportJobManager;
+import influx.export.PartitionedExport;
+import influx.schema.SchemaVersion;
+import metrics.MetricsRegistry;
+import metrics.MetricsServer;
+import influx.schema.ethereum.EthereumSchema;
 
 /**
  * Main class that is called first on application start
@@ -68,6 +93,43 @@ public class Main {
 	private final static String DEFAULT_LOG_FILE = "config" + File.separator + "log4j.properties";
 	private final static int DEFAULT_RETRIES = 10;
 	private final static int DEFAULT_TIME_BETWEEN_RETRIES = 2000;
+	private final static int DEFAULT_BACKFILL_WORKERS = 4;
+	private final static int DEFAULT_BACKFILL_CHUNK_SIZE = 100;
+	private final static int DEFAULT_BACKFILL_NODE_CONCURRENCY = 2;
+	private final static String DEFAULT_BACKFILL_CHECKPOINT = "backfill.checkpoint";
+	private final static int DEFAULT_PARALLELISM = IngestionPipeline.DEFAULT_PARALLELISM;
+	// One fetch thread per node
+	private final static int DEFAULT_FETCH_PARALLELISM = 0;
+	private final static int DEFAULT_QUEUE_SIZE = IngestionPipeline.DEFAULT_QUEUE_SIZE;
+	private final static int DEFAULT_POLLER_THREADS = PollScheduler.DEFAULT_POOL_SIZE;
+	private final static int DEFAULT_POLLING_INTERVAL = Client.DEFAULT_POLLING_INTERVAL;
+	private final static int DEFAULT_MIN_POLLING_INTERVAL = Client.DEFAULT_MIN_POLLING_INTERVAL;
+	private final static int DEFAULT_BLOCK_CACHE_SIZE = 1024;
+	private final static int DEFAULT_CHAIN_INDEX_SIZE = ChainIndex.DEFAULT_SIZE;
+	private final static int DEFAULT_WRITE_BATCH_SIZE = BatchWriter.DEFAULT_BATCH_SIZE;
+	private final static int DEFAULT_WRITE_BATCH_BYTES = BatchWriter.DEFAULT_BATCH_BYTES;
+	private final static int DEFAULT_WRITE_FLUSH_INTERVAL = BatchWriter.DEFAULT_FLUSH_INTERVAL;
+	private final static String DEFAULT_SPOOL_DIRECTORY = "spool";
+	private final static long DEFAULT_SPOOL_SEGMENT_SIZE = WriteAheadSpool.DEFAULT_SEGMENT_SIZE;
+	private final static long DEFAULT_SPOOL_SYNC_INTERVAL = WriteAheadSpool.DEFAULT_SYNC_INTERVAL;
+	private final static int DEFAULT_SCHEMA_VERSION = 1;
+	private final static int DEFAULT_EXPORT_CONCURRENCY = PartitionedExport.DEFAULT_CONCURRENCY;
+	private final static long DEFAULT_EXPORT_PARTITION_LENGTH = PartitionedExport.DEFAULT_PARTITION_LENGTH;
+	private final static boolean DEFAULT_EXPORT_MERGE = true;
+	private final static int DEFAULT_EXPORT_JOBS = ExportJobManager.DEFAULT_MAX_RUNNING_JOBS;
+	private final static int DEFAULT_HEALTH_WINDOW = ChainHealthMonitor.DEFAULT_WINDOW_SIZE;
+	private final static int DEFAULT_HEALTH_INTERVAL = 60;
+	private final static int DEFAULT_PROPAGATION_BLOCKS = PropagationTracker.DEFAULT_MAX_BLOCKS;
+	private final static int DEFAULT_METRICS_PORT = 0;
+	private final static boolean DEFAULT_METRICS_TO_INFLUX = false;
+	private final static int DEFAULT_TRACE_SAMPLING = BlockTracer.DEFAULT_SAMPLE_RATE;
+	private final static int DEFAULT_RECORD_INTERVAL = 60;
+	private final static long DEFAULT_CONNECT_TIMEOUT = BlockchainAdapter.DEFAULT_CONNECT_TIMEOUT;
+	private final static long DEFAULT_REQUEST_TIMEOUT = BlockchainAdapter.DEFAULT_REQUEST_TIMEOUT;
+	private final static int DEFAULT_CONNECT_THREADS = NodeConnector.DEFAULT_POOL_SIZE;
+
+	// time given to running exports to stop after their current chunk on shutdown
+	private final static long EXPORT_STOP_TIMEOUT = 10000;
 
 	private static Logger processLogger = Logger.getLogger("Process");
 	private static Process influxProcess;
@@ -257,6 +319,44 @@ public class Main {
 		String logFile = DEFAULT_LOG_FILE;
 		int retries = DEFAULT_RETRIES;
 		long timeBetweenRetries = DEFAULT_TIME_BETWEEN_RETRIES;
+		int backfillWorkers = DEFAULT_BACKFILL_WORKERS;
+		int backfillChunkSize = DEFAULT_BACKFILL_CHUNK_SIZE;
+		int backfillNodeConcurrency = DEFAULT_BACKFILL_NODE_CONCURRENCY;
+		String backfillCheckpoint = DEFAULT_BACKFILL_CHECKPOINT;
+		long[] backfillRange = null;
+		int fetchParallelism = DEFAULT_FETCH_PARALLELISM;
+		int reconcileParallelism = DEFAULT_PARALLELISM;
+		int encodeParallelism = DEFAULT_PARALLELISM;
+		int writeParallelism = DEFAULT_PARALLELISM;
+		int queueSize = DEFAULT_QUEUE_SIZE;
+		int pollerThreads = DEFAULT_POLLER_THREADS;
+		int pollingInterval = DEFAULT_POLLING_INTERVAL;
+		int minPollingInterval = DEFAULT_MIN_POLLING_INTERVAL;
+		int blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+		int chainIndexSize = DEFAULT_CHAIN_INDEX_SIZE;
+		int writeBatchSize = DEFAULT_WRITE_BATCH_SIZE;
+		int writeBatchBytes = DEFAULT_WRITE_BATCH_BYTES;
+		int writeFlushInterval = DEFAULT_WRITE_FLUSH_INTERVAL;
+		String spoolDirectory = DEFAULT_SPOOL_DIRECTORY;
+		long spoolSegmentSize = DEFAULT_SPOOL_SEGMENT_SIZE;
+		long spoolSyncInterval = DEFAULT_SPOOL_SYNC_INTERVAL;
+		int schemaVersionNumber = DEFAULT_SCHEMA_VERSION;
+		SchemaVersion schemaVersion = SchemaVersion.V1;
+		String migrationDatabase = null;
+		int exportConcurrency = DEFAULT_EXPORT_CONCURRENCY;
+		long exportPartitionLength = DEFAULT_EXPORT_PARTITION_LENGTH;
+		boolean exportMerge = DEFAULT_EXPORT_MERGE;
+		int exportJobs = DEFAULT_EXPORT_JOBS;
+		int healthWindow = DEFAULT_HEALTH_WINDOW;
+		int healthInterval = DEFAULT_HEALTH_INTERVAL;
+		int propagationBlocks = DEFAULT_PROPAGATION_BLOCKS;
+		int metricsPort = DEFAULT_METRICS_PORT;
+		boolean metricsToInflux = DEFAULT_METRICS_TO_INFLUX;
+		int traceSampling = DEFAULT_TRACE_SAMPLING;
+		int recordInterval = DEFAULT_RECORD_INTERVAL;
+		long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+		long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+		int connectThreads = DEFAULT_CONNECT_THREADS;
 		String configType = "default";
 
 		Options options = new Options();
@@ -273,6 +373,14 @@ public class Main {
 				.desc("Specify all ethereum nodes you want to connect to").numberOfArgs(Option.UNLIMITED_VALUES)
 				.valueSeparator(',').build();
 		options.addOption(multiNode);
+		// backfill mode
+		Option backfill = Option.builder("b").longOpt("backfill").argName("from-to").hasArg()
+				.desc("Load all blocks of the block number range into the DB and exit").build();
+		options.addOption(backfill);
+		// schema migration mode
+		Option migrate = Option.builder("m").longOpt("migrate").argName("database").hasArg()
+				.desc("Copy all blocks into the database using schema version 2 and exit").build();
+		options.addOption(migrate);
 		// help flag for to print help info
 		Option help = Option.builder("h").longOpt("help").desc("Help flag to print usage message").build();
 		options.addOption(help);
@@ -303,6 +411,42 @@ public class Main {
 					logFile = config.getString("Log4jConfig", "config" + File.separator + "log4j.properties");
 					retries = config.getInt("Retries", 10);
 					timeBetweenRetries = config.getLong("TimeBetweenRetries", 2000);
+					backfillWorkers = config.getInt("BackfillWorkers", DEFAULT_BACKFILL_WORKERS);
+					backfillChunkSize = config.getInt("BackfillChunkSize", DEFAULT_BACKFILL_CHUNK_SIZE);
+					backfillNodeConcurrency = config.getInt("BackfillNodeConcurrency",
+							DEFAULT_BACKFILL_NODE_CONCURRENCY);
+					backfillCheckpoint = config.getString("BackfillCheckpoint", DEFAULT_BACKFILL_CHECKPOINT);
+					fetchParallelism = config.getInt("FetchParallelism", DEFAULT_FETCH_PARALLELISM);
+					reconcileParallelism = config.getInt("ReconcileParallelism", DEFAULT_PARALLELISM);
+					encodeParallelism = config.getInt("EncodeParallelism", DEFAULT_PARALLELISM);
+					writeParallelism = config.getInt("WriteParallelism", DEFAULT_PARALLELISM);
+					queueSize = config.getInt("PipelineQueueSize", DEFAULT_QUEUE_SIZE);
+					pollerThreads = config.getInt("PollerThreads", DEFAULT_POLLER_THREADS);
+					pollingInterval = config.getInt("PollingInterval", DEFAULT_POLLING_INTERVAL);
+					minPollingInterval = config.getInt("MinPollingInterval", DEFAULT_MIN_POLLING_INTERVAL);
+					blockCacheSize = config.getInt("BlockCacheSize", DEFAULT_BLOCK_CACHE_SIZE);
+					chainIndexSize = config.getInt("ChainIndexSize", DEFAULT_CHAIN_INDEX_SIZE);
+					writeBatchSize = config.getInt("WriteBatchSize", DEFAULT_WRITE_BATCH_SIZE);
+					writeBatchBytes = config.getInt("WriteBatchBytes", DEFAULT_WRITE_BATCH_BYTES);
+					writeFlushInterval = config.getInt("WriteFlushInterval", DEFAULT_WRITE_FLUSH_INTERVAL);
+					spoolDirectory = config.getString("SpoolDirectory", DEFAULT_SPOOL_DIRECTORY);
+					spoolSegmentSize = config.getLong("SpoolSegmentSize", DEFAULT_SPOOL_SEGMENT_SIZE);
+					spoolSyncInterval = config.getLong("SpoolSyncInterval", DEFAULT_SPOOL_SYNC_INTERVAL);
+					schemaVersionNumber = config.getInt("SchemaVersion", DEFAULT_SCHEMA_VERSION);
+					exportConcurrency = config.getInt("ExportConcurrency", DEFAULT_EXPORT_CONCURRENCY);
+					exportPartitionLength = config.getLong("ExportPartitionLength", DEFAULT_EXPORT_PARTITION_LENGTH);
+					exportMerge = config.getBoolean("ExportMerge", DEFAULT_EXPORT_MERGE);
+					exportJobs = config.getInt("ExportJobs", DEFAULT_EXPORT_JOBS);
+					healthWindow = config.getInt("HealthWindow", DEFAULT_HEALTH_WINDOW);
+					healthInterval = config.getInt("HealthInterval", DEFAULT_HEALTH_INTERVAL);
+					propagationBlocks = config.getInt("PropagationBlocks", DEFAULT_PROPAGATION_BLOCKS);
+					metricsPort = config.getInt("MetricsPort", DEFAULT_METRICS_PORT);
+					metricsToInflux = config.getBoolean("MetricsToInflux", DEFAULT_METRICS_TO_INFLUX);
+					traceSampling = config.getInt("TraceSampling", DEFAULT_TRACE_SAMPLING);
+					recordInterval = config.getInt("RecordInterval", DEFAULT_RECORD_INTERVAL);
+					connectTimeout = config.getLong("ConnectTimeout", DEFAULT_CONNECT_TIMEOUT);
+					requestTimeout = config.getLong("RequestTimeout", DEFAULT_REQUEST_TIMEOUT);
+					connectThreads = config.getInt("ConnectThreads", DEFAULT_CONNECT_THREADS);
 				} catch (ConfigurationException e) {
 					System.err.println("Error loading config!");
 					e.printStackTrace();
@@ -322,6 +466,71 @@ public class Main {
 					logFile = props.getProperty("Log4jConfig", "config" + File.separator + "log4j.properties");
 					retries = Integer.parseInt(props.getProperty("Retries", "10"));
 					timeBetweenRetries = Long.parseLong(props.getProperty("TimeBetweenRetries", "2000"));
+					backfillWorkers = Integer.parseInt(
+							props.getProperty("BackfillWorkers", String.valueOf(DEFAULT_BACKFILL_WORKERS)));
+					backfillChunkSize = Integer.parseInt(
+							props.getProperty("BackfillChunkSize", String.valueOf(DEFAULT_BACKFILL_CHUNK_SIZE)));
+					backfillNodeConcurrency = Integer.parseInt(props.getProperty("BackfillNodeConcurrency",
+							String.valueOf(DEFAULT_BACKFILL_NODE_CONCURRENCY)));
+					backfillCheckpoint = props.getProperty("BackfillCheckpoint", DEFAULT_BACKFILL_CHECKPOINT);
+					fetchParallelism = Integer
+							.parseInt(props.getProperty("FetchParallelism", String.valueOf(DEFAULT_FETCH_PARALLELISM)));
+					reconcileParallelism = Integer
+							.parseInt(props.getProperty("ReconcileParallelism", String.valueOf(DEFAULT_PARALLELISM)));
+					encodeParallelism = Integer
+							.parseInt(props.getProperty("EncodeParallelism", String.valueOf(DEFAULT_PARALLELISM)));
+					writeParallelism = Integer
+							.parseInt(props.getProperty("WriteParallelism", String.valueOf(DEFAULT_PARALLELISM)));
+					queueSize = Integer.parseInt(props.getProperty("PipelineQueueSize", String.valueOf(DEFAULT_QUEUE_SIZE)));
+					pollerThreads = Integer
+							.parseInt(props.getProperty("PollerThreads", String.valueOf(DEFAULT_POLLER_THREADS)));
+					pollingInterval = Integer
+							.parseInt(props.getProperty("PollingInterval", String.valueOf(DEFAULT_POLLING_INTERVAL)));
+					minPollingInterval = Integer.parseInt(
+							props.getProperty("MinPollingInterval", String.valueOf(DEFAULT_MIN_POLLING_INTERVAL)));
+					blockCacheSize = Integer
+							.parseInt(props.getProperty("BlockCacheSize", String.valueOf(DEFAULT_BLOCK_CACHE_SIZE)));
+					chainIndexSize = Integer
+							.parseInt(props.getProperty("ChainIndexSize", String.valueOf(DEFAULT_CHAIN_INDEX_SIZE)));
+					writeBatchSize = Integer
+							.parseInt(props.getProperty("WriteBatchSize", String.valueOf(DEFAULT_WRITE_BATCH_SIZE)));
+					writeBatchBytes = Integer
+							.parseInt(props.getProperty("WriteBatchBytes", String.valueOf(DEFAULT_WRITE_BATCH_BYTES)));
+					writeFlushInterval = Integer.parseInt(
+							props.getProperty("WriteFlushInterval", String.valueOf(DEFAULT_WRITE_FLUSH_INTERVAL)));
+					spoolDirectory = props.getProperty("SpoolDirectory", DEFAULT_SPOOL_DIRECTORY);
+					spoolSegmentSize = Long
+							.parseLong(props.getProperty("SpoolSegmentSize", String.valueOf(DEFAULT_SPOOL_SEGMENT_SIZE)));
+					spoolSyncInterval = Long.parseLong(
+							props.getProperty("SpoolSyncInterval", String.valueOf(DEFAULT_SPOOL_SYNC_INTERVAL)));
+					schemaVersionNumber = Integer
+							.parseInt(props.getProperty("SchemaVersion", String.valueOf(DEFAULT_SCHEMA_VERSION)));
+					exportConcurrency = Integer.parseInt(
+							props.getProperty("ExportConcurrency", String.valueOf(DEFAULT_EXPORT_CONCURRENCY)));
+					exportPartitionLength = Long.parseLong(
+							props.getProperty("ExportPartitionLength", String.valueOf(DEFAULT_EXPORT_PARTITION_LENGTH)));
+					exportMerge = Boolean
+							.parseBoolean(props.getProperty("ExportMerge", String.valueOf(DEFAULT_EXPORT_MERGE)));
+					exportJobs = Integer.parseInt(props.getProperty("ExportJobs", String.valueOf(DEFAULT_EXPORT_JOBS)));
+					healthWindow = Integer
+							.parseInt(props.getProperty("HealthWindow", String.valueOf(DEFAULT_HEALTH_WINDOW)));
+					healthInterval = Integer
+							.parseInt(props.getProperty("HealthInterval", String.valueOf(DEFAULT_HEALTH_INTERVAL)));
+					propagationBlocks = Integer.parseInt(
+							props.getProperty("PropagationBlocks", String.valueOf(DEFAULT_PROPAGATION_BLOCKS)));
+					metricsPort = Integer.parseInt(props.getProperty("MetricsPort", String.valueOf(DEFAULT_METRICS_PORT)));
+					metricsToInflux = Boolean.parseBoolean(
+							props.getProperty("MetricsToInflux", String.valueOf(DEFAULT_METRICS_TO_INFLUX)));
+					traceSampling = Integer
+							.parseInt(props.getProperty("TraceSampling", String.valueOf(DEFAULT_TRACE_SAMPLING)));
+					recordInterval = Integer
+							.parseInt(props.getProperty("RecordInterval", String.valueOf(DEFAULT_RECORD_INTERVAL)));
+					connectTimeout = Long
+							.parseLong(props.getProperty("ConnectTimeout", String.valueOf(DEFAULT_CONNECT_TIMEOUT)));
+					requestTimeout = Long
+							.parseLong(props.getProperty("RequestTimeout", String.valueOf(DEFAULT_REQUEST_TIMEOUT)));
+					connectThreads = Integer
+							.parseInt(props.getProperty("ConnectThreads", String.valueOf(DEFAULT_CONNECT_THREADS)));
 				}
 				if (cmd.hasOption("ethNodes")) {
 					configType = "custom";
@@ -330,6 +539,27 @@ public class Main {
 
 				System.out.println("Starting with " + configType + " configuration!");
 			}
+
+			if (cmd.hasOption("backfill")) {
+				String[] range = cmd.getOptionValue("backfill").split("-");
+				if (range.length != 2)
+					throw new ParseException("Backfill range must be specified as <from>-<to>!");
+				try {
+					backfillRange = new long[] { Long.parseLong(range[0].trim()), Long.parseLong(range[1].trim()) };
+				} catch (NumberFormatException e) {
+					throw new ParseException("Backfill range must consist of two block numbers: " + e.getMessage());
+				}
+			}
+			if (cmd.hasOption("migrate"))
+				migrationDatabase = cmd.getOptionValue("migrate").trim();
+			schemaVersion = SchemaVersion.fromNumber(schemaVersionNumber);
+		} catch (NumberFormatException e) {
+			// thrown by the numeric -p properties, the input names the malformed value
+			System.err.println("Error parsing numeric property: " + e.getMessage() + "!");
+			return;
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return;
 		} catch (ParseException e) {
 			System.err.println("Error parsing command line args!");
 			e.printStackTrace();
@@ -341,7 +571,7 @@ public class Main {
 		// Connect to Influx
 		InfluxDB influxDB = InfluxDBFactory.connect(influxURL, influxUser, influxPwd);
 		System.out.println("Trying to connect to InfluxDB...");
-		boolean isSuccess = InfluxDBUtil.connectToDB(influxDB, dbName);
+		boolean isSuccess = InfluxDBUtil.isReady(influxDB) && InfluxDBUtil.connectToDB(influxDB, dbName);
 		if (isSuccess)
 			System.out.println("InfluxDB already running at " + influxURL + "!");
 		else {
@@ -372,23 +602,18 @@ public class Main {
 				}
 			}
 
-			// try to connect again and retry if fails
-			do {
-				System.out.println("Connecting...");
-				isSuccess = InfluxDBUtil.connectToDB(influxDB, dbName);
-				if (isSuccess)
-					break;
-				try {
-					Thread.sleep(timeBetweenRetries);
-				} catch (InterruptedException e1) {
-					e1.printStackTrace();
-				}
-				retries--;
-				if (retries == 0) {
-					System.err.println("InfluxDB connection couldn't be established!");
-					return;
-				}
-			} while (retries > 0);
+			// probe till Influx answers, waiting longer after every failed probe
+			System.out.println("Connecting...");
+			try {
+				isSuccess = InfluxDBUtil.awaitReady(influxDB, retries, timeBetweenRetries)
+						&& InfluxDBUtil.connectToDB(influxDB, dbName);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (!isSuccess) {
+				System.err.println("InfluxDB connection couldn't be established!");
+				return;
+			}
 		}
 		System.out.println("InfluxDB connection established!");
 
@@ -400,36 +625,207 @@ public class Main {
 			influxDB.setRetentionPolicy(rpName);
 		}
 
-		LinkedList<Client> clients = new LinkedList<>();
-		for (String bcNode : ethNodes) {
-			// start client
-			EthereumAdapter bca = new EthereumAdapter(bcNode.trim());
+		// copy the stored blocks into a database with the low-cardinality schema and exit
+		if (migrationDatabase != null) {
+			SchemaMigration migration = new SchemaMigration(influxDB, dbName, migrationDatabase, SchemaVersion.V2,
+					SchemaMigration.DEFAULT_CHUNK_SIZE);
+			try {
+				long migrated = migration.migrate(EthereumSchema.class);
+				System.out.println(migrated + " blocks migrated to " + migrationDatabase
+						+ "! Set DBName to it and SchemaVersion to 2 to continue with the new schema.");
+			} catch (SchemaMigration.MigrationException e) {
+				System.err.println(e.getMessage());
+				e.printStackTrace();
+			} catch (InterruptedException e) {
+				System.err.println("Migration interrupted!");
+			}
+			System.out.println("Shutting down...");
+			influxDB.close();
+			closeInflux();
+			return;
+		}
 
-			// if connection failed skip node
-			if (!bca.isConnected())
-				continue;
+		// introspect the measurement schemas once before the first block is encoded
+		SchemaCodec.register(schemaVersion, EthereumSchema.class);
+
+		// all records are written in batches
+		BatchWriter batchWriter = new BatchWriter(influxDB, writeBatchSize, writeBatchBytes, writeFlushInterval);
+		batchWriter.start();
+
+		// nodes are connected in parallel, so unreachable ones only delay themselves
+		final long nodeConnectTimeout = connectTimeout;
+		final long nodeRequestTimeout = requestTimeout;
+		NodeConnector connector = new NodeConnector(connectThreads);
+
+		// backfill the requested range and exit
+		if (backfillRange != null) {
+			connector.connect(ethNodes, bcNode -> new EthereumAdapter(bcNode,
+					EthereumAdapter.DEFAULT_HEADER_CACHE_SIZE, null, nodeConnectTimeout, nodeRequestTimeout), null);
+			List<BlockchainAdapter> adapters;
+			try {
+				adapters = connector.awaitAll();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				adapters = new ArrayList<>();
+			}
+			connector.stop();
+			if (adapters.isEmpty())
+				System.err.println("No ethereum node available for backfill!");
+			else {
+				System.out.println("Backfilling blocks " + backfillRange[0] + " - " + backfillRange[1] + "...");
+				Backfill bf = new Backfill(clientName, batchWriter, adapters, backfillWorkers, backfillChunkSize,
+						backfillNodeConcurrency, new File(backfillCheckpoint));
+				bf.setSchemaVersion(schemaVersion);
+				if (bf.run(backfillRange[0], backfillRange[1]))
+					System.out.println("Backfill finished!");
+				else
+					System.err.println("Backfill incomplete, start again to resume!");
+				for (BlockchainAdapter bca : adapters)
+					bca.stopConnection();
+			}
+			System.out.println("Shutting down...");
+			batchWriter.stop();
+			influxDB.close();
+			closeInflux();
+			return;
+		}
+
+		// records are journaled locally first, so an unreachable Influx doesn't stop ingestion
+		RecordWriter recordWriter = batchWriter;
+		WriteAheadSpool spool = null;
+		if (spoolDirectory != null && !spoolDirectory.trim().isEmpty()) {
+			spool = new WriteAheadSpool(new File(spoolDirectory.trim()), spoolSegmentSize, spoolSyncInterval,
+					batchWriter);
+			try {
+				spool.start();
+				recordWriter = spool;
+			} catch (IOException e) {
+				System.err.println("Spool directory " + spoolDirectory + " couldn't be used, writing directly to Influx!");
+				spool = null;
+			}
+		}
 
-			Client client = new Client(clientName, influxDB, bca);
-			clients.add(client);
-			client.start();
+		// all clients share one pipeline to process their blocks
+		if (fetchParallelism <= 0)
+			fetchParallelism = ethNodes.size();
+		IngestionPipeline pipeline = new IngestionPipeline(influxDB, recordWriter, fetchParallelism,
+				reconcileParallelism, encodeParallelism, writeParallelism, queueSize, chainIndexSize);
+		pipeline.setSchemaVersion(schemaVersion);
+		// propagation is measured between the nodes, so it needs at least two of them
+		PropagationTracker propagationTracker = null;
+		if (healthInterval > 0) {
+			pipeline.setHealthMonitor(new ChainHealthMonitor(healthWindow));
+			if (propagationBlocks > 0 && ethNodes.size() > 1) {
+				propagationTracker = new PropagationTracker(ethNodes.size(), propagationBlocks, healthWindow,
+						PropagationTracker.DEFAULT_SETTLE_TIME);
+				pipeline.setPropagationTracker(propagationTracker);
+			}
+			pipeline.setHealthInterval(healthInterval * 1000L);
+		}
+		// metrics and traces are stored in their own interval, also without chain health
+		if (recordInterval > 0) {
+			if (metricsToInflux)
+				pipeline.setMetricsRegistry(MetricsRegistry.getDefault());
+			if (traceSampling > 0)
+				pipeline.setBlockTracer(new BlockTracer(traceSampling));
+			pipeline.setRecordInterval(recordInterval * 1000L);
+		} else if (metricsToInflux)
+			System.err.println("MetricsToInflux needs a RecordInterval above 0, metrics are not stored in Influx!");
+		pipeline.start();
+
+		MetricsServer metricsServer = null;
+		if (metricsPort > 0) {
+			try {
+				metricsServer = new MetricsServer(MetricsRegistry.getDefault(), metricsPort);
+				metricsServer.start();
+			} catch (IOException e) {
+				System.err.println("Metrics endpoint couldn't be started on port " + metricsPort + "!");
+			}
+		}
+		// and one scheduler to poll their nodes
+		PollScheduler scheduler = new PollScheduler(pollerThreads);
+
+		// nodes of the same network share the blocks fetched by one of them
+		BlockCache blockCache = blockCacheSize > 0 && ethNodes.size() > 1 ? new BlockCache(blockCacheSize) : null;
+
+		// every client starts as soon as its node answered, failed nodes are skipped
+		final List<Client> clients = Collections.synchronizedList(new LinkedList<Client>());
+		final String id = clientName;
+		final int minInterval = minPollingInterval;
+		final int interval = pollingInterval;
+		final PropagationTracker tracker = propagationTracker;
+		connector.connect(ethNodes, bcNode -> new EthereumAdapter(bcNode, EthereumAdapter.DEFAULT_HEADER_CACHE_SIZE,
+				blockCache, nodeConnectTimeout, nodeRequestTimeout), bca -> {
+					Client client = new Client(id, bca, minInterval, interval, pipeline, scheduler);
+					if (tracker != null)
+						client.setPropagationTracker(tracker);
+					clients.add(client);
+					client.start();
+				});
+		try {
+			// the console is ready once the first node is, the others follow
+			connector.awaitConnected();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 
+		// exports run in the background and read over their own connection, so they
+		// don't compete with the writes of the clients
+		InfluxDB exportInfluxDB = InfluxDBFactory.connect(influxURL, influxUser, influxPwd);
+		exportInfluxDB.setDatabase(dbName);
+		ExportJobManager exportJobManager = new ExportJobManager(exportJobs, ExportJobManager.DEFAULT_MAX_QUEUED_JOBS,
+				ExportConsole::printJobResult);
+
 		if (!clients.isEmpty())
-			System.out.println("Type in any Influx Query to export data! q to quit.");
+			System.out.println("Type in any Influx Query to export data, export <from> <to> <query> to export a time"
+					+ " range in parallel, arrow <query> to export into Arrow files, incremental <query> to export"
+					+ " the rows since the last run, jobs to list the exports, cancel <id> to cancel one! q to quit.");
 		// end client when q is typed in console
 		Scanner sc = new Scanner(System.in);
 		while (!clients.isEmpty()) {
 			String input = sc.nextLine();
 			if (input.equals("q")) {
 				System.out.println("Shutdown request received!");
-				for (Client client : clients)
-					client.stopClient();
+				connector.stop();
+				synchronized (clients) {
+					for (Client client : clients)
+						client.stopClient();
+				}
 				break;
-			} else
-				InfluxDBUtil.exportData(influxDB, input);
+			} else if (input.trim().isEmpty())
+				continue;
+			else if (input.trim().equals("jobs"))
+				ExportConsole.printJobs(exportJobManager);
+			else if (input.startsWith("cancel "))
+				ExportConsole.cancelJob(exportJobManager, input.substring("cancel ".length()));
+			else if (input.startsWith("export "))
+				ExportConsole.exportTimeRange(exportJobManager, exportInfluxDB, input.substring("export ".length()),
+						exportConcurrency, Duration.ofSeconds(exportPartitionLength), exportMerge);
+			else if (input.startsWith("incremental "))
+				ExportConsole.submitIncrementalExport(exportJobManager, exportInfluxDB,
+						input.substring("incremental ".length()));
+			else if (input.startsWith("arrow "))
+				ExportConsole.submitExport(exportJobManager, exportInfluxDB, input.substring("arrow ".length()),
+						ExportFormat.ARROW);
+			else
+				ExportConsole.submitExport(exportJobManager, exportInfluxDB, input, ExportFormat.CSV);
 		}
 
 		System.out.println("Shutting down...");
+		connector.stop();
+		try {
+			exportJobManager.stop(EXPORT_STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		exportInfluxDB.close();
+		scheduler.shutdown();
+		pipeline.stop();
+		if (metricsServer != null)
+			metricsServer.stop();
+		if (spool != null)
+			spool.stop();
+		batchWriter.stop();
 		influxDB.close();
 		closeInflux();
 		sc.close();
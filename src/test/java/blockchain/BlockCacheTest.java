@@ -0,0 +1,105 @@
+package blockchain;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests claiming, sharing and evicting blocks of the
+ * {@link BlockCache}
+ *
+ * @author Yannick
+ *
+ */
+public class BlockCacheTest {
+
+	private static Block createBlock(String hash, long number) {
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setTime(Instant.ofEpochSecond(number * 15));
+		blockData.setHash(hash);
+		blockData.setBlockNumber(number);
+		return new Block(blockData, null);
+	}
+
+	/**
+	 * Tests if only the first adapter claims a block and the others get the block
+	 * it fetched
+	 */
+	@Test
+	public void testSharing() throws Exception {
+		BlockCache cache = new BlockCache(10);
+		CompletableFuture<Block> first = new CompletableFuture<>();
+		Assert.assertNull(cache.claim("a", first));
+
+		CompletableFuture<Block> shared = cache.claim("a", new CompletableFuture<>());
+		Assert.assertSame(first, shared);
+		Assert.assertNull(cache.peek("a"));
+
+		Block block = createBlock("a", 1);
+		cache.complete("a", first, block);
+		Assert.assertSame(block, shared.get());
+		Assert.assertSame(block, cache.peek("a"));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 * Tests if a block that couldn't be fetched is claimed again by the next
+	 * adapter
+	 */
+	@Test
+	public void testFailedFetch() throws Exception {
+		BlockCache cache = new BlockCache(10);
+		CompletableFuture<Block> first = new CompletableFuture<>();
+		cache.claim("a", first);
+		CompletableFuture<Block> shared = cache.claim("a", new CompletableFuture<>());
+		cache.complete("a", first, null);
+
+		Assert.assertNull(shared.get());
+		Assert.assertNull(cache.claim("a", new CompletableFuture<>()));
+	}
+
+	/**
+	 * Tests if a block claimed again after a failed fetch isn't evicted before
+	 * blocks claimed after the failed fetch
+	 */
+	@Test
+	public void testEvictionAfterFailedFetch() {
+		BlockCache cache = new BlockCache(2);
+		CompletableFuture<Block> failed = new CompletableFuture<>();
+		cache.claim("a", failed);
+		cache.complete("a", failed, null);
+
+		for (String hash : new String[] { "b", "a", "c" }) {
+			CompletableFuture<Block> claim = new CompletableFuture<>();
+			cache.claim(hash, claim);
+			cache.complete(hash, claim, createBlock(hash, 1));
+		}
+
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.peek("b"));
+		Assert.assertNotNull(cache.peek("a"));
+		Assert.assertNotNull(cache.peek("c"));
+	}
+
+	/**
+	 * Fills the cache beyond its size and tests if the oldest block is evicted
+	 */
+	@Test
+	public void testEviction() {
+		BlockCache cache = new BlockCache(2);
+		for (int i = 1; i <= 3; i++) {
+			CompletableFuture<Block> claim = new CompletableFuture<>();
+			cache.claim("b" + i, claim);
+			cache.complete("b" + i, claim, createBlock("b" + i, i));
+		}
+
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.peek("b1"));
+		Assert.assertEquals(3, cache.peek("b3").getBlockNumber());
+	}
+}
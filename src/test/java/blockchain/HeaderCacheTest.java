@@ -0,0 +1,51 @@
+package blockchain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test that tests the eviction and the counters of the {@link HeaderCache}
+ * 
+ * @author Yannick
+ *
+ */
+public class HeaderCacheTest {
+
+	/**
+	 * Fills the cache beyond its size and tests if the least recently used header
+	 * is evicted
+	 */
+	@Test
+	public void testEviction() {
+		HeaderCache cache = new HeaderCache(2);
+		cache.put("a", new HeaderCache.Header(1, 10, "genesis"));
+		cache.put("b", new HeaderCache.Header(2, 20, "a"));
+		// touch a so b becomes the least recently used header
+		Assert.assertNotNull(cache.get("a"));
+		cache.put("c", new HeaderCache.Header(3, 30, "b"));
+
+		Assert.assertEquals(2, cache.size());
+		Assert.assertNull(cache.get("b"));
+		Assert.assertEquals(30, cache.get("c").getTimestamp());
+		Assert.assertEquals("genesis", cache.get("a").getParentHash());
+	}
+
+	/**
+	 * Tests if hits and misses are counted correctly
+	 */
+	@Test
+	public void testCounters() {
+		HeaderCache cache = new HeaderCache(10);
+		cache.put("a", new HeaderCache.Header(1, 10, "genesis"));
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+
+		cache.clear();
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,130 @@
+package blockchain.ethereum;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import blockchain.NewBlockListener;
+
+/**
+ * Test that tests the newHeads subscription mode of the {@link EthereumAdapter}
+ * against a local stub node
+ * 
+ * @author Yannick
+ *
+ */
+public class EthereumAdapterTest {
+
+	private static final int PORT = 18546;
+	private static final String NODE_ADDRESS = "ws://127.0.0.1:" + PORT;
+	private static final String BLOCK_HASH = "0x5ce4fa1b4ef7d3b2b3bcc3b1d4a9d4cf0e2fbd7e8b4c63c2c0ad2e3c7b1a6f01";
+	private static final int TIMEOUT = 5000;
+
+	private StubWebSocketNode node;
+	private EthereumAdapter bca;
+
+	/**
+	 * Starts the stub node and waits till it is accepting connections
+	 * 
+	 * @param supportsSubscriptions
+	 *            - Whether the stub node accepts eth_subscribe requests
+	 */
+	private void startNode(boolean supportsSubscriptions) throws InterruptedException {
+		node = new StubWebSocketNode(PORT, supportsSubscriptions);
+		node.start();
+		// give the server time to bind
+		Thread.sleep(500);
+	}
+
+	/**
+	 * Runs after every test and stops the adapter and the stub node
+	 */
+	@After
+	public void cleanup() throws Exception {
+		if (bca != null && bca.isConnected())
+			bca.stopConnection();
+		if (node != null)
+			node.stop();
+	}
+
+	/**
+	 * Tests if pushed heads are delivered to the listener and returned by
+	 * getNextBlocks
+	 */
+	@Test
+	public void testSubscription() throws Exception {
+		startNode(true);
+		bca = new EthereumAdapter(NODE_ADDRESS);
+		Assert.assertTrue(bca.isConnected());
+
+		final CountDownLatch pushed = new CountDownLatch(1);
+		bca.setNewBlockListener(new NewBlockListener() {
+
+			@Override
+			public void onNewBlocks() {
+				pushed.countDown();
+			}
+		});
+
+		// the adapter subscribed while connecting
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!node.hasSubscriber() && System.currentTimeMillis() < deadline)
+			Thread.sleep(50);
+		Assert.assertTrue(bca.isSubscribed());
+		Assert.assertTrue(bca.getNextBlocks().isEmpty());
+
+		node.pushNewHead(BLOCK_HASH);
+		Assert.assertTrue(pushed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+		List<String> newBlocks = bca.getNextBlocks();
+		Assert.assertEquals(1, newBlocks.size());
+		Assert.assertEquals(BLOCK_HASH, newBlocks.get(0));
+		Assert.assertFalse(node.getReceivedMethods().contains("eth_getFilterChanges"));
+	}
+
+	/**
+	 * Tests if the adapter falls back to filter polling when the node rejects
+	 * subscriptions
+	 */
+	@Test
+	public void testFallbackToPolling() throws Exception {
+		startNode(false);
+		bca = new EthereumAdapter(NODE_ADDRESS);
+		Assert.assertTrue(bca.isConnected());
+		node.addFilterChange(BLOCK_HASH);
+
+		// the subscription error is reported asynchronously
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		List<String> newBlocks = bca.getNextBlocks();
+		while (newBlocks.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+			newBlocks = bca.getNextBlocks();
+		}
+
+		Assert.assertFalse(bca.isSubscribed());
+		Assert.assertEquals(1, newBlocks.size());
+		Assert.assertEquals(BLOCK_HASH, newBlocks.get(0));
+		Assert.assertTrue(node.getReceivedMethods().contains("eth_newBlockFilter"));
+	}
+
+	/**
+	 * Tests if a node that accepts the connection but never answers is given up
+	 * after the connect timeout
+	 */
+	@Test
+	public void testConnectTimeout() throws Exception {
+		try (ServerSocket silentNode = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			long start = System.currentTimeMillis();
+			bca = new EthereumAdapter("http://127.0.0.1:" + silentNode.getLocalPort(),
+					EthereumAdapter.DEFAULT_HEADER_CACHE_SIZE, null, 500);
+			Assert.assertFalse(bca.isConnected());
+			Assert.assertTrue(System.currentTimeMillis() - start < TIMEOUT);
+		}
+	}
+}
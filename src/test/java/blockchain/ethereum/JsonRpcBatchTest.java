@@ -0,0 +1,171 @@
+package blockchain.ethereum;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Web3ClientVersion;
+import org.web3j.protocol.websocket.WebSocketService;
+
+import blockchain.Block;
+import influx.schema.ethereum.EthereumSchema;
+import okhttp3.OkHttpClient;
+
+/**
+ * Test that tests sending {@link JsonRpcBatch}es to a local stub node and
+ * matching the responses to the requests
+ *
+ * @author Yannick
+ *
+ */
+public class JsonRpcBatchTest {
+
+	private static final int WS_PORT = 18547;
+	private static final String UNKNOWN_HASH = "0x0000000000000000000000000000000000000000000000000000000000000001";
+
+	private SyntheticChain chain;
+	private StubRpcNode node;
+
+	/**
+	 * Runs before every test and starts the stub node with a few mined blocks
+	 */
+	@Before
+	public void setup() throws Exception {
+		chain = new SyntheticChain(7, 0, 0, 1);
+		node = new StubRpcNode(chain, 0);
+		node.start();
+	}
+
+	/**
+	 * Runs after every test and stops the stub node
+	 */
+	@After
+	public void cleanup() {
+		node.stop();
+	}
+
+	private static Request<?, EthBlock> blockRequest(String blockHash) {
+		return new Request<>("eth_getBlockByHash", Arrays.asList(blockHash, false), null, EthBlock.class);
+	}
+
+	/**
+	 * Tests if responses in any order are matched to their requests by id and
+	 * missing and failed entries are reported per request
+	 */
+	@Test
+	public void testMatchById() throws Exception {
+		JsonRpcBatch batch = new JsonRpcBatch(null, null, null);
+		Request<?, EthBlock> first = blockRequest("0xa");
+		Request<?, EthBlock> second = blockRequest("0xb");
+		Request<?, EthBlock> third = blockRequest("0xc");
+		batch.add(first, EthBlock.class);
+		batch.add(second, EthBlock.class);
+		batch.add(third, EthBlock.class);
+
+		String json = "[{\"jsonrpc\":\"2.0\",\"id\":" + third.getId()
+				+ ",\"error\":{\"code\":-32000,\"message\":\"unknown block\"}},"
+				+ "{\"jsonrpc\":\"2.0\",\"id\":" + first.getId() + ",\"result\":null}]";
+		List<Response<?>> responses = batch
+				.readResponses(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+		Assert.assertEquals(3, responses.size());
+		Assert.assertFalse(responses.get(0).hasError());
+		Assert.assertNull(((EthBlock) responses.get(0)).getBlock());
+		Assert.assertNull(responses.get(1));
+		Assert.assertTrue(responses.get(2).hasError());
+		Assert.assertEquals("unknown block", responses.get(2).getError().getMessage());
+	}
+
+	/**
+	 * Tests if a batch is sent in one HTTP request and the reversed responses
+	 * are returned in the order of the requests
+	 */
+	@Test
+	public void testHttpBatch() throws Exception {
+		List<String> hashes = Arrays.asList(chain.mine().get(0), chain.mine().get(0), chain.mine().get(0));
+		node.setReversingBatches(true);
+
+		JsonRpcBatch batch = new JsonRpcBatch(new OkHttpClient(), node.getAddress(), null);
+		for (String hash : hashes)
+			batch.add(blockRequest(hash), EthBlock.class);
+		batch.add(blockRequest(UNKNOWN_HASH), EthBlock.class);
+		batch.add(new Request<>("eth_unsupported", Collections.emptyList(), null, Web3ClientVersion.class),
+				Web3ClientVersion.class);
+		List<Response<?>> responses = batch.send();
+
+		Assert.assertEquals(1, node.getHttpRequests());
+		Assert.assertEquals(5, responses.size());
+		for (int i = 0; i < hashes.size(); i++)
+			Assert.assertEquals(hashes.get(i), ((EthBlock) responses.get(i)).getBlock().getHash());
+		Assert.assertNull(((EthBlock) responses.get(3)).getBlock());
+		Assert.assertTrue(responses.get(4).hasError());
+	}
+
+	/**
+	 * Tests if the adapter requests parents that aren't part of the batch in a
+	 * second batch and finds them in the header cache afterwards
+	 */
+	@Test
+	public void testParentBatch() throws Exception {
+		String parent = chain.mine().get(0);
+		String child = chain.mine().get(0);
+		String grandChild = chain.mine().get(0);
+		node.setReversingBatches(true);
+		EthereumAdapter bca = new EthereumAdapter(node.getAddress());
+		try {
+			long requests = node.getHttpRequests();
+			Block block = bca.getBlocks(Arrays.asList(child)).get(0);
+			Assert.assertEquals(requests + 2, node.getHttpRequests());
+			long parentTimestamp = Long.decode(chain.getBlock(parent).get("timestamp").asText());
+			Assert.assertEquals(block.getTimestamp() - parentTimestamp,
+					((EthereumSchema) block.getBlockData()).getBlockCreationTime());
+
+			// the parent of the next block was stored with the block
+			requests = node.getHttpRequests();
+			Assert.assertNotNull(bca.getBlocks(Arrays.asList(grandChild)).get(0));
+			Assert.assertEquals(requests + 1, node.getHttpRequests());
+		} finally {
+			bca.stopConnection();
+		}
+	}
+
+	/**
+	 * Tests if the requests of a batch are sent one by one over a websocket and
+	 * the responses returned in the order of the requests
+	 */
+	@Test
+	public void testWebSocketFallback() throws Exception {
+		StubWebSocketNode wsNode = new StubWebSocketNode(WS_PORT, false);
+		wsNode.start();
+		// give the server time to bind
+		Thread.sleep(500);
+		WebSocketService service = new WebSocketService("ws://127.0.0.1:" + WS_PORT, false);
+		try {
+			service.connect();
+			JsonRpcBatch batch = new JsonRpcBatch(null, null, service);
+			batch.add(new Request<>("eth_getBlockByHash", Arrays.asList(UNKNOWN_HASH, false), service,
+					EthBlock.class), EthBlock.class);
+			batch.add(new Request<>("web3_clientVersion", Collections.<String>emptyList(), service,
+					Web3ClientVersion.class), Web3ClientVersion.class);
+			List<Response<?>> responses = batch.send();
+
+			Assert.assertEquals(2, responses.size());
+			Assert.assertTrue(responses.get(0).hasError());
+			Assert.assertEquals("StubNode/v1.0", ((Web3ClientVersion) responses.get(1)).getWeb3ClientVersion());
+			Assert.assertEquals(Arrays.asList("eth_getBlockByHash", "web3_clientVersion"),
+					wsNode.getReceivedMethods());
+		} finally {
+			service.close();
+			wsNode.stop();
+		}
+	}
+}
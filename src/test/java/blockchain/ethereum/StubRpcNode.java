@@ -0,0 +1,225 @@
+package blockchain.ethereum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.web3j.protocol.ObjectMapperFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server that simulates the JSON-RPC interface of an ethereum node
+ * serving a {@link SyntheticChain}. It answers single requests and batches of
+ * the methods the {@link EthereumAdapter} uses when polling a block filter.
+ * Announced blocks are returned by the next eth_getFilterChanges request. The
+ * responses of a batch can be returned in reverse order, as nodes may answer
+ * batches in any order
+ *
+ * @author Yannick
+ *
+ */
+public class StubRpcNode {
+
+	public static final long PEER_COUNT = 25;
+	private static final ObjectMapper MAPPER = ObjectMapperFactory.getObjectMapper();
+	private static final String FILTER_ID = "0x1";
+	private static final int THREADS = 4;
+
+	private final SyntheticChain chain;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final List<String> filterChanges = new ArrayList<>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong httpRequests = new AtomicLong();
+	private volatile boolean isReversingBatches;
+
+	/**
+	 * Constructor that binds the server to the loopback address
+	 *
+	 * @param chain
+	 *            - The {@link SyntheticChain} to serve
+	 * @param port
+	 *            - The port to listen on, 0 to pick a free one
+	 * @throws IOException
+	 *             if the port couldn't be bound
+	 */
+	public StubRpcNode(SyntheticChain chain, int port) throws IOException {
+		this.chain = chain;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/", this::handle);
+		executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("StubRpcNode");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		server.setExecutor(executor);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the address the {@link EthereumAdapter} connects to
+	 *
+	 * @return The http address of the node
+	 */
+	public String getAddress() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Announces new blocks to the block filter
+	 *
+	 * @param blockHashes
+	 *            - The hashes of the new blocks
+	 */
+	public void announce(Collection<String> blockHashes) {
+		synchronized (filterChanges) {
+			filterChanges.addAll(blockHashes);
+		}
+	}
+
+	/**
+	 * Sets whether the responses of a batch are returned in reverse order
+	 *
+	 * @param isReversingBatches
+	 *            - <code>true</code> to reverse the responses
+	 */
+	public void setReversingBatches(boolean isReversingBatches) {
+		this.isReversingBatches = isReversingBatches;
+	}
+
+	/**
+	 * Returns the number of answered JSON-RPC requests, every request of a batch
+	 * is counted
+	 *
+	 * @return The number of requests
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Returns the number of received HTTP requests, a batch is one HTTP request
+	 *
+	 * @return The number of HTTP requests
+	 */
+	public long getHttpRequests() {
+		return httpRequests.get();
+	}
+
+	/**
+	 * Answers a single request or a batch
+	 *
+	 * @param exchange
+	 *            - The {@link HttpExchange} of the request
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			httpRequests.incrementAndGet();
+			JsonNode request;
+			try (InputStream in = exchange.getRequestBody()) {
+				request = MAPPER.readTree(in);
+			}
+			JsonNode response;
+			if (request.isArray()) {
+				ArrayNode responses = MAPPER.createArrayNode();
+				for (JsonNode batchRequest : request) {
+					if (isReversingBatches)
+						responses.insert(0, answer(batchRequest));
+					else
+						responses.add(answer(batchRequest));
+				}
+				response = responses;
+			} else
+				response = answer(request);
+
+			byte[] body = MAPPER.writeValueAsBytes(response);
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Answers a single JSON-RPC request
+	 *
+	 * @param request
+	 *            - The request
+	 * @return The response
+	 */
+	private ObjectNode answer(JsonNode request) {
+		requests.incrementAndGet();
+		String method = request.get("method").asText();
+		JsonNode params = request.get("params");
+
+		ObjectNode response = MAPPER.createObjectNode();
+		response.put("jsonrpc", "2.0");
+		response.set("id", request.get("id"));
+		switch (method) {
+		case "web3_clientVersion":
+			response.put("result", "StubRpcNode/v1.0");
+			break;
+		case "net_peerCount":
+			response.put("result", "0x" + Long.toHexString(PEER_COUNT));
+			break;
+		case "eth_syncing":
+			response.put("result", false);
+			break;
+		case "eth_newBlockFilter":
+			response.put("result", FILTER_ID);
+			break;
+		case "eth_getFilterChanges":
+			ArrayNode changes = response.putArray("result");
+			synchronized (filterChanges) {
+				for (String hash : filterChanges)
+					changes.add(hash);
+				filterChanges.clear();
+			}
+			break;
+		case "eth_getBlockByHash":
+			response.set("result", chain.getBlock(params.get(0).asText()));
+			break;
+		case "eth_getBlockByNumber":
+			response.set("result", chain.getBlock(Long.decode(params.get(0).asText())));
+			break;
+		default:
+			ObjectNode error = response.putObject("error");
+			error.put("code", -32601);
+			error.put("message", "Method " + method + " not supported by stub");
+		}
+		return response;
+	}
+}
@@ -0,0 +1,149 @@
+package blockchain.ethereum;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.web3j.protocol.ObjectMapperFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Local websocket server that simulates the JSON-RPC interface of an ethereum
+ * node. It can either accept or reject newHeads subscriptions
+ * 
+ * @author Yannick
+ *
+ */
+public class StubWebSocketNode extends WebSocketServer {
+
+	private static final String SUBSCRIPTION_ID = "0x1";
+	private static final ObjectMapper MAPPER = ObjectMapperFactory.getObjectMapper();
+
+	private final boolean supportsSubscriptions;
+	private final LinkedList<String> filterChanges = new LinkedList<>();
+	private final List<String> receivedMethods = new LinkedList<>();
+	private volatile WebSocket subscriber;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param port
+	 *            - The local port to listen on
+	 * @param supportsSubscriptions
+	 *            - Whether eth_subscribe requests are accepted
+	 */
+	public StubWebSocketNode(int port, boolean supportsSubscriptions) {
+		super(new InetSocketAddress("127.0.0.1", port));
+		this.supportsSubscriptions = supportsSubscriptions;
+		setReuseAddr(true);
+	}
+
+	/**
+	 * Pushes a new head to the subscribed client
+	 * 
+	 * @param blockHash
+	 *            - The hash of the new block
+	 */
+	public void pushNewHead(String blockHash) {
+		ObjectNode head = MAPPER.createObjectNode();
+		head.put("hash", blockHash);
+		head.put("number", "0x1");
+		ObjectNode params = MAPPER.createObjectNode();
+		params.put("subscription", SUBSCRIPTION_ID);
+		params.set("result", head);
+		ObjectNode notification = MAPPER.createObjectNode();
+		notification.put("jsonrpc", "2.0");
+		notification.put("method", "eth_subscription");
+		notification.set("params", params);
+		subscriber.send(notification.toString());
+	}
+
+	/**
+	 * Adds a block hash that is returned on the next eth_getFilterChanges request
+	 * 
+	 * @param blockHash
+	 *            - The hash of the new block
+	 */
+	public synchronized void addFilterChange(String blockHash) {
+		filterChanges.add(blockHash);
+	}
+
+	public synchronized List<String> getReceivedMethods() {
+		return new LinkedList<>(receivedMethods);
+	}
+
+	public boolean hasSubscriber() {
+		return subscriber != null;
+	}
+
+	@Override
+	public synchronized void onMessage(WebSocket conn, String message) {
+		try {
+			JsonNode request = MAPPER.readTree(message);
+			String method = request.get("method").asText();
+			receivedMethods.add(method);
+
+			ObjectNode response = MAPPER.createObjectNode();
+			response.put("jsonrpc", "2.0");
+			response.put("id", request.get("id").asLong());
+			switch (method) {
+			case "web3_clientVersion":
+				response.put("result", "StubNode/v1.0");
+				break;
+			case "eth_subscribe":
+				if (supportsSubscriptions) {
+					response.put("result", SUBSCRIPTION_ID);
+					subscriber = conn;
+				} else {
+					ObjectNode error = response.putObject("error");
+					error.put("code", -32601);
+					error.put("message", "The method eth_subscribe does not exist/is not available");
+				}
+				break;
+			case "eth_unsubscribe":
+				response.put("result", true);
+				break;
+			case "eth_newBlockFilter":
+				response.put("result", "0x2");
+				break;
+			case "eth_getFilterChanges":
+				ArrayNode changes = response.putArray("result");
+				for (String hash : filterChanges)
+					changes.add(hash);
+				filterChanges.clear();
+				break;
+			default:
+				ObjectNode error = response.putObject("error");
+				error.put("code", -32601);
+				error.put("message", "Method " + method + " not supported by stub");
+			}
+			conn.send(response.toString());
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void onOpen(WebSocket conn, ClientHandshake handshake) {
+	}
+
+	@Override
+	public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+	}
+
+	@Override
+	public void onError(WebSocket conn, Exception ex) {
+		ex.printStackTrace();
+	}
+
+	@Override
+	public void onStart() {
+	}
+}
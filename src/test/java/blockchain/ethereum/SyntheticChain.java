@@ -0,0 +1,269 @@
+package blockchain.ethereum;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.web3j.protocol.ObjectMapperFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates an ethereum chain in memory as fast as blocks are requested. Every
+ * block is encoded as the result of an eth_getBlockByHash request. A height can
+ * first be mined by a competing block that is announced and then replaced by
+ * the mainchain block, such orphaned blocks can be included as uncles by the
+ * following blocks. Only the most recent blocks are kept, so the chain can grow
+ * without bounds. The chain is deterministic for a seed
+ *
+ * @author Yannick
+ *
+ */
+public class SyntheticChain {
+
+	public static final int DEFAULT_CAPACITY = 8192;
+	private static final ObjectMapper MAPPER = ObjectMapperFactory.getObjectMapper();
+	private static final long GENESIS_NUMBER = 8500000;
+	private static final long GENESIS_TIMESTAMP = 1567000000;
+	private static final long GAS_LIMIT = 8000000;
+	private static final long DIFFICULTY = 2100000000000000L;
+	// Uncles are only included up to this depth and at most two per block
+	private static final int MAX_UNCLE_DEPTH = 6;
+	private static final int MAX_UNCLES = 2;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final String[] MINERS = { "0xea674fdde714fd979de3edf0f56aa9716b898ec8",
+			"0x5a0b54d5dc17e0aadc383d2db43b0a0d3e029c4c", "0x829bd824b016326a401d083b33d092293333a830",
+			"0x52bc44d5378309ee2abf1539bf71de1b7d7be3b5" };
+
+	private final Random random;
+	private final double uncleRate;
+	private final double reorgRate;
+	private final int transactions;
+	private final Map<String, ObjectNode> blocks;
+	private final Map<Long, String> mainchain;
+	// orphaned blocks that can still be included as uncles
+	private final List<String> uncleCandidates = new ArrayList<>();
+	private final List<Long> uncleCandidateNumbers = new ArrayList<>();
+	private long headNumber = GENESIS_NUMBER;
+	private String headHash;
+	private long headTimestamp = GENESIS_TIMESTAMP;
+	private long totalDifficulty;
+	private long mainchainBlocks;
+	private long orphanedBlocks;
+
+	/**
+	 * Constructor that keeps the last {@link #DEFAULT_CAPACITY} blocks
+	 *
+	 * @param seed
+	 *            - The seed of the generated hashes and rates
+	 * @param uncleRate
+	 *            - The probability that an orphaned block is included as uncle
+	 * @param reorgRate
+	 *            - The probability that a height is first mined by a block that
+	 *            is orphaned
+	 * @param transactions
+	 *            - The number of transaction hashes of every block
+	 */
+	public SyntheticChain(long seed, double uncleRate, double reorgRate, int transactions) {
+		this(seed, uncleRate, reorgRate, transactions, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param seed
+	 *            - The seed of the generated hashes and rates
+	 * @param uncleRate
+	 *            - The probability that an orphaned block is included as uncle
+	 * @param reorgRate
+	 *            - The probability that a height is first mined by a block that
+	 *            is orphaned
+	 * @param transactions
+	 *            - The number of transaction hashes of every block
+	 * @param capacity
+	 *            - The number of most recent blocks that are kept
+	 */
+	public SyntheticChain(long seed, double uncleRate, double reorgRate, int transactions, final int capacity) {
+		if (uncleRate < 0 || uncleRate > 1 || reorgRate < 0 || reorgRate > 1)
+			throw new IllegalArgumentException("Rates must be between 0 and 1!");
+		this.random = new Random(seed);
+		this.uncleRate = uncleRate;
+		this.reorgRate = reorgRate;
+		this.transactions = transactions;
+		this.blocks = new LinkedHashMap<String, ObjectNode>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ObjectNode> eldest) {
+				return size() > capacity;
+			}
+		};
+		this.mainchain = new LinkedHashMap<Long, String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+				return size() > capacity;
+			}
+		};
+		headHash = createBlock(GENESIS_NUMBER, randomHash(), GENESIS_TIMESTAMP, new ArrayList<String>());
+		mainchain.put(GENESIS_NUMBER, headHash);
+	}
+
+	/**
+	 * Mines the next height of the mainchain
+	 *
+	 * @return The hashes of the new blocks in the order a node announces them: a
+	 *         competing block of the height if one was mined and the mainchain
+	 *         block which replaces it
+	 */
+	public synchronized List<String> mine() {
+		List<String> announced = new ArrayList<>(2);
+		long number = headNumber + 1;
+		long timestamp = headTimestamp + 1 + random.nextInt(25);
+
+		// the competitor of this height can't be an uncle of the mainchain block
+		List<String> uncles = selectUncles(number);
+		if (random.nextDouble() < reorgRate) {
+			String competitor = createBlock(number, headHash, timestamp, new ArrayList<String>());
+			uncleCandidates.add(competitor);
+			uncleCandidateNumbers.add(number);
+			orphanedBlocks++;
+			announced.add(competitor);
+		}
+
+		headHash = createBlock(number, headHash, timestamp, uncles);
+		headNumber = number;
+		headTimestamp = timestamp;
+		mainchain.put(number, headHash);
+		mainchainBlocks++;
+		announced.add(headHash);
+		return announced;
+	}
+
+	/**
+	 * Selects the orphaned blocks a block includes as uncles and drops the ones
+	 * that became too old
+	 */
+	private List<String> selectUncles(long number) {
+		List<String> uncles = new ArrayList<>(MAX_UNCLES);
+		for (int i = 0; i < uncleCandidates.size();) {
+			long depth = number - uncleCandidateNumbers.get(i);
+			if (depth < MAX_UNCLE_DEPTH && (uncles.size() == MAX_UNCLES || random.nextDouble() >= uncleRate)) {
+				i++;
+				continue;
+			}
+			if (depth <= MAX_UNCLE_DEPTH && uncles.size() < MAX_UNCLES)
+				uncles.add(uncleCandidates.get(i));
+			uncleCandidates.remove(i);
+			uncleCandidateNumbers.remove(i);
+		}
+		return uncles;
+	}
+
+	/**
+	 * Creates and stores a block with its quantities encoded as hex strings like a
+	 * node does
+	 *
+	 * @return The hash of the block
+	 */
+	private String createBlock(long number, String parentHash, long timestamp, List<String> uncles) {
+		long gasUsed = (long) (GAS_LIMIT * random.nextDouble());
+		totalDifficulty += DIFFICULTY;
+
+		String hash = randomHash();
+		ObjectNode block = MAPPER.createObjectNode();
+		block.put("number", toQuantity(number));
+		block.put("hash", hash);
+		block.put("parentHash", parentHash);
+		block.put("nonce", "0x" + Long.toHexString(random.nextLong() & Long.MAX_VALUE));
+		block.put("sha3Uncles", randomHash());
+		block.put("transactionsRoot", randomHash());
+		block.put("stateRoot", randomHash());
+		block.put("receiptsRoot", randomHash());
+		block.put("miner", MINERS[random.nextInt(MINERS.length)]);
+		block.put("mixHash", randomHash());
+		block.put("difficulty", toQuantity(DIFFICULTY));
+		block.put("totalDifficulty", toQuantity(totalDifficulty));
+		block.put("extraData", "0x73796e746865746963");
+		block.put("size", toQuantity(540 + 110 * transactions));
+		block.put("gasLimit", toQuantity(GAS_LIMIT));
+		block.put("gasUsed", toQuantity(gasUsed));
+		block.put("timestamp", toQuantity(timestamp));
+		ArrayNode transactionHashes = block.putArray("transactions");
+		for (int i = 0; i < transactions; i++)
+			transactionHashes.add(randomHash());
+		ArrayNode uncleHashes = block.putArray("uncles");
+		for (String uncle : uncles)
+			uncleHashes.add(uncle);
+		blocks.put(hash, block);
+		return hash;
+	}
+
+	private static String toQuantity(long value) {
+		return "0x" + Long.toHexString(value);
+	}
+
+	private String randomHash() {
+		char[] hash = new char[66];
+		hash[0] = '0';
+		hash[1] = 'x';
+		for (int i = 2; i < hash.length; i += 16) {
+			long bits = random.nextLong();
+			for (int j = 15; j >= 0; j--, bits >>>= 4)
+				hash[i + j] = HEX_DIGITS[(int) (bits & 0xf)];
+		}
+		return new String(hash);
+	}
+
+	/**
+	 * Returns a block in the encoding of a node. The block must not be modified
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @return The block or <code>null</code> if the block doesn't exist or is too
+	 *         old
+	 */
+	public synchronized ObjectNode getBlock(String blockHash) {
+		return blocks.get(blockHash);
+	}
+
+	/**
+	 * Returns a block of the mainchain in the encoding of a node. The block must
+	 * not be modified
+	 *
+	 * @param number
+	 *            - The number of the block
+	 * @return The block or <code>null</code> if the block doesn't exist or is too
+	 *         old
+	 */
+	public synchronized ObjectNode getBlock(long number) {
+		String blockHash = mainchain.get(number);
+		return blockHash == null ? null : blocks.get(blockHash);
+	}
+
+	/**
+	 * Checks if a block is part of the mainchain
+	 *
+	 * @param blockHash
+	 *            - The hash of the block
+	 * @return <code>true</code> if the block wasn't replaced otherwise
+	 *         <code>false</code>
+	 */
+	public synchronized boolean isMainchain(String blockHash) {
+		ObjectNode block = blocks.get(blockHash);
+		return block != null && blockHash.equals(mainchain.get(Long.decode(block.get("number").asText())));
+	}
+
+	public synchronized long getMainchainBlocks() {
+		return mainchainBlocks;
+	}
+
+	public synchronized long getOrphanedBlocks() {
+		return orphanedBlocks;
+	}
+}
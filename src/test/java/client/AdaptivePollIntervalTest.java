@@ -0,0 +1,119 @@
+package client;
+
+import java.time.Instant;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import blockchain.Block;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests how the {@link AdaptivePollInterval} reacts to the observed
+ * block time
+ * 
+ * @author Yannick
+ *
+ */
+public class AdaptivePollIntervalTest {
+
+	private static final long MIN_INTERVAL = 1000;
+	private static final long MAX_INTERVAL = 30000;
+	private static final long BLOCK_TIME = 15;
+
+	private long now;
+	private AdaptivePollInterval interval;
+
+	/**
+	 * Runs before every test and creates an interval with a controllable clock
+	 */
+	@Before
+	public void setup() {
+		now = 0;
+		interval = new AdaptivePollInterval(MIN_INTERVAL, MAX_INTERVAL) {
+			@Override
+			protected long currentTime() {
+				return now;
+			}
+		};
+	}
+
+	/**
+	 * Helper method that creates a block with the given timestamp, created one
+	 * block time after its parent
+	 */
+	private static Block block(long timestamp) {
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setHash("hash" + timestamp);
+		blockData.setTime(Instant.ofEpochSecond(timestamp));
+		blockData.setBlockCreationTime(BLOCK_TIME);
+		return new Block(blockData, null);
+	}
+
+	/**
+	 * Feeds blocks with a constant block time, the last one arriving now
+	 */
+	private void mineBlocks(int count) {
+		for (int i = 0; i < count; i++)
+			interval.onBlock(block(1000 + i * BLOCK_TIME));
+	}
+
+	/**
+	 * Tests if blocks that were never observed don't lengthen the estimate
+	 */
+	@Test
+	public void testGapInBlocks() {
+		mineBlocks(5);
+		// the next three blocks couldn't be fetched
+		interval.onBlock(block(1000 + 8 * BLOCK_TIME));
+		interval.onBlock(block(1000 + 9 * BLOCK_TIME));
+		Assert.assertEquals(BLOCK_TIME * 1000, interval.getExpectedBlockTime());
+	}
+
+	/**
+	 * Tests if the maximum interval is used while the block time is unknown
+	 */
+	@Test
+	public void testNoEstimate() {
+		Assert.assertEquals(MAX_INTERVAL, interval.nextDelay());
+		mineBlocks(2);
+		Assert.assertEquals(-1, interval.getExpectedBlockTime());
+		Assert.assertEquals(MAX_INTERVAL, interval.nextDelay());
+	}
+
+	/**
+	 * Tests if the poll sleeps till shortly before the next block, then polls
+	 * aggressively and finally backs off
+	 */
+	@Test
+	public void testAdaptsToBlockTime() {
+		mineBlocks(10);
+		Assert.assertEquals(BLOCK_TIME * 1000, interval.getExpectedBlockTime());
+
+		// right after a block: sleep till just before the next one
+		Assert.assertEquals(BLOCK_TIME * 1000 - MIN_INTERVAL, interval.nextDelay());
+
+		// next block is due
+		now = BLOCK_TIME * 1000;
+		Assert.assertEquals(MIN_INTERVAL, interval.nextDelay());
+
+		// block is overdue for a long time
+		now = 5 * BLOCK_TIME * 1000;
+		long backOff = interval.nextDelay();
+		Assert.assertTrue(backOff > MIN_INTERVAL);
+		now = 10 * BLOCK_TIME * 1000;
+		Assert.assertEquals(MAX_INTERVAL, interval.nextDelay());
+	}
+
+	/**
+	 * Tests if old or duplicate blocks don't change the estimate
+	 */
+	@Test
+	public void testIgnoresOldBlocks() {
+		mineBlocks(10);
+		interval.onBlock(block(1000));
+		interval.onBlock(block(1000 + 9 * BLOCK_TIME));
+		Assert.assertEquals(BLOCK_TIME * 1000, interval.getExpectedBlockTime());
+	}
+}
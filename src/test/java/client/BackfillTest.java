@@ -0,0 +1,113 @@
+package client;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import blockchain.Block;
+import blockchain.BlockchainAdapter;
+import influx.BatchWriter;
+import influx.RecordingInfluxDB;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests chunking and resuming of a {@link Backfill}
+ * 
+ * @author Yannick
+ *
+ */
+public class BackfillTest {
+
+	private static final String NODE_NAME = "TestNode";
+	private static final String CLIENT_NAME = "TestClient";
+	private static final int NR_BLOCKS = 25;
+	private static final int CHUNK_SIZE = 10;
+	private static final int FLUSH_INTERVAL = 50;
+
+	private TestAdapter bca;
+	private RecordingInfluxDB recorder;
+	private BatchWriter batchWriter;
+	private File checkpointFile;
+
+	/**
+	 * Runs before every test and mines the blocks to backfill
+	 */
+	@Before
+	public void setup() throws Exception {
+		bca = new TestAdapter(NODE_NAME);
+		for (int number = 0; number < NR_BLOCKS; number++) {
+			EthereumSchema blockData = new EthereumSchema();
+			blockData.setHash("hash" + number);
+			blockData.setBlockNumber(number);
+			blockData.setTime(Instant.ofEpochSecond(1000 + number));
+			bca.mineBlock(new Block(blockData, null));
+		}
+		recorder = new RecordingInfluxDB();
+		batchWriter = new BatchWriter(RecordingInfluxDB.create(recorder), BatchWriter.DEFAULT_BATCH_SIZE,
+				BatchWriter.DEFAULT_BATCH_BYTES, FLUSH_INTERVAL);
+		batchWriter.start();
+		checkpointFile = File.createTempFile("backfill", ".checkpoint");
+		checkpointFile.delete();
+	}
+
+	/**
+	 * Runs after every test, stops the writer and deletes the checkpoint file
+	 */
+	@After
+	public void cleanup() {
+		batchWriter.stop();
+		checkpointFile.delete();
+	}
+
+	/**
+	 * Tests if all blocks of the range are stored once per chunk
+	 */
+	@Test
+	public void testBackfill() {
+		List<BlockchainAdapter> adapters = Collections.<BlockchainAdapter>singletonList(bca);
+		Backfill backfill = new Backfill(CLIENT_NAME, batchWriter, adapters, 4, CHUNK_SIZE, 2, checkpointFile);
+
+		Assert.assertTrue(backfill.run(0, NR_BLOCKS - 1));
+		Assert.assertEquals(NR_BLOCKS, recorder.getRecords().size());
+		// chunks are combined into batches
+		Assert.assertTrue(recorder.getWriteCalls() <= 3);
+		Assert.assertTrue(checkpointFile.exists());
+	}
+
+	/**
+	 * Tests if chunks recorded in the checkpoint file are skipped
+	 */
+	@Test
+	public void testResume() throws Exception {
+		try (FileWriter fw = new FileWriter(checkpointFile)) {
+			fw.write("0-9" + System.lineSeparator());
+		}
+		List<BlockchainAdapter> adapters = Collections.<BlockchainAdapter>singletonList(bca);
+		Backfill backfill = new Backfill(CLIENT_NAME, batchWriter, adapters, 2, CHUNK_SIZE, 1, checkpointFile);
+
+		Assert.assertTrue(backfill.run(0, NR_BLOCKS - 1));
+		Assert.assertEquals(NR_BLOCKS - CHUNK_SIZE, recorder.getRecords().size());
+		for (String record : recorder.getRecords())
+			Assert.assertFalse(record.contains("Hash=hash0,"));
+	}
+
+	/**
+	 * Tests if an unreachable database leaves the chunks unrecorded
+	 */
+	@Test
+	public void testFailedWrite() {
+		recorder.setAvailable(false);
+		List<BlockchainAdapter> adapters = Collections.<BlockchainAdapter>singletonList(bca);
+		Backfill backfill = new Backfill(CLIENT_NAME, batchWriter, adapters, 2, CHUNK_SIZE, 1, checkpointFile);
+
+		Assert.assertFalse(backfill.run(0, NR_BLOCKS - 1));
+		Assert.assertFalse(checkpointFile.exists());
+	}
+}
@@ -0,0 +1,100 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import blockchain.ethereum.EthereumAdapter;
+import blockchain.ethereum.StubRpcNode;
+import blockchain.ethereum.SyntheticChain;
+import influx.LineProtocolSink;
+
+/**
+ * Test that runs the {@link Client} with an {@link EthereumAdapter} against a
+ * local stub node serving a synthetic chain with reorgs and uncles, the records
+ * are validated by a {@link LineProtocolSink}
+ *
+ * @author Yannick
+ *
+ */
+public class EndToEndTest {
+
+	private static final String CLIENT_NAME = "TestClient";
+	private static final int POLLING_INTERVAL = 50;
+	private static final int NR_HEIGHTS = 300;
+	private static final int HEIGHTS_PER_POLL = 30;
+	private static final int TIMEOUT = 10000;
+
+	private SyntheticChain chain;
+	private StubRpcNode node;
+	private LineProtocolSink sink;
+	// Whether a stored block was marked as orphan by hash
+	private Map<String, Boolean> storedBlocks = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs before every test and starts the stub node
+	 */
+	@Before
+	public void setup() throws Exception {
+		chain = new SyntheticChain(42, 0.5, 0.1, 5);
+		node = new StubRpcNode(chain, 0);
+		node.start();
+		sink = new LineProtocolSink();
+		sink.setListener(record -> {
+			if (!record.getMeasurement().equals("Ethereum"))
+				return;
+			boolean isOrphan = Boolean.parseBoolean(record.get("Orphan"));
+			storedBlocks.merge(record.get("Hash"), isOrphan, Boolean::logicalOr);
+		});
+	}
+
+	/**
+	 * Runs after every test and stops the stub node
+	 */
+	@After
+	public void cleanup() {
+		node.stop();
+	}
+
+	/**
+	 * Mines blocks while the client polls and tests if every block is stored and
+	 * every replaced block is marked as orphan
+	 */
+	@Test
+	public void testSyntheticChain() throws Exception {
+		Client client = new Client(CLIENT_NAME, LineProtocolSink.create(sink), new EthereumAdapter(node.getAddress()),
+				POLLING_INTERVAL);
+		client.start();
+
+		List<String> mined = new ArrayList<>();
+		for (int i = 0; i < NR_HEIGHTS; i++) {
+			List<String> announced = chain.mine();
+			mined.addAll(announced);
+			node.announce(announced);
+			if (i % HEIGHTS_PER_POLL == 0)
+				Thread.sleep(POLLING_INTERVAL);
+		}
+
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!storedBlocks.keySet().containsAll(mined) && System.currentTimeMillis() < deadline)
+			Thread.sleep(POLLING_INTERVAL);
+		client.stopClient();
+
+		Assert.assertEquals(sink.getErrors().toString(), 0, sink.getInvalidRecords());
+		Assert.assertTrue(chain.getOrphanedBlocks() > 0);
+		Assert.assertEquals(NR_HEIGHTS + chain.getOrphanedBlocks(), mined.size());
+		for (String hash : mined) {
+			Assert.assertTrue("Block " + hash + " wasn't stored", storedBlocks.containsKey(hash));
+			Assert.assertEquals("Block " + hash + " has the wrong orphan flag", !chain.isMainchain(hash),
+					storedBlocks.get(hash));
+		}
+		// blocks are fetched in batches
+		Assert.assertTrue(node.getHttpRequests() < node.getRequests());
+	}
+}
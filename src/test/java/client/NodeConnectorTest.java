@@ -0,0 +1,126 @@
+package client;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import blockchain.Block;
+import blockchain.BlockchainAdapter;
+
+/**
+ * Test that tests that the {@link NodeConnector} hands over every node as soon
+ * as it connected
+ *
+ * @author Yannick
+ *
+ */
+public class NodeConnectorTest {
+
+	private static final int TIMEOUT = 5000;
+
+	/**
+	 * Adapter that connects if its address starts with "up" and waits for the
+	 * release latch first if it starts with "slow"
+	 */
+	private static class DelayedAdapter extends BlockchainAdapter {
+
+		private static CountDownLatch release;
+
+		public DelayedAdapter(String bcNodeAddress) {
+			super(bcNodeAddress);
+		}
+
+		@Override
+		protected boolean connect(String bcNodeAddress) {
+			if (bcNodeAddress.startsWith("slow")) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					return false;
+				}
+				return true;
+			}
+			return bcNodeAddress.startsWith("up");
+		}
+
+		@Override
+		protected void cleanUp() {
+		}
+
+		@Override
+		public Block getBlock(String blockHash) {
+			return null;
+		}
+
+		@Override
+		public List<String> getNextBlocks() {
+			return null;
+		}
+
+		@Override
+		public boolean isSynced() {
+			return true;
+		}
+	}
+
+	/**
+	 * Tests if connected nodes are handed over while a slow node still connects
+	 * and failed nodes are skipped
+	 */
+	@Test
+	public void testSlowNodeDoesntBlock() throws Exception {
+		DelayedAdapter.release = new CountDownLatch(1);
+		final List<String> connected = new CopyOnWriteArrayList<>();
+		final CountDownLatch upConnected = new CountDownLatch(2);
+		NodeConnector connector = new NodeConnector(4);
+		connector.connect(Arrays.asList("slow1", "down1", " up1 ", "up2", "down2"), DelayedAdapter::new, bca -> {
+			connected.add(bca.getNodeAddress());
+			upConnected.countDown();
+		});
+
+		Assert.assertTrue(connector.awaitConnected());
+		Assert.assertTrue(upConnected.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Assert.assertFalse(connected.contains("slow1"));
+		Assert.assertTrue(connected.containsAll(Arrays.asList("up1", "up2")));
+
+		DelayedAdapter.release.countDown();
+		List<BlockchainAdapter> adapters = connector.awaitAll();
+		Assert.assertEquals(3, adapters.size());
+		Assert.assertEquals(3, connected.size());
+		connector.stop();
+	}
+
+	/**
+	 * Tests if a node that connects after the connector was stopped isn't handed
+	 * over but disconnected
+	 */
+	@Test
+	public void testStop() throws Exception {
+		DelayedAdapter.release = new CountDownLatch(1);
+		final List<BlockchainAdapter> connected = new CopyOnWriteArrayList<>();
+		NodeConnector connector = new NodeConnector(1);
+		connector.connect(Arrays.asList("slow1", "up1"), DelayedAdapter::new, connected::add);
+		connector.stop();
+
+		Assert.assertTrue(connector.awaitAll().isEmpty());
+		Assert.assertFalse(connector.awaitConnected());
+		Assert.assertTrue(connected.isEmpty());
+	}
+
+	/**
+	 * Tests if all failed nodes are reported
+	 */
+	@Test
+	public void testNoNodeAvailable() throws Exception {
+		NodeConnector connector = new NodeConnector(2);
+		connector.connect(Arrays.asList("down1", "down2", "down3"), DelayedAdapter::new, null);
+		Assert.assertFalse(connector.awaitConnected());
+		Assert.assertTrue(connector.awaitAll().isEmpty());
+		connector.stop();
+	}
+}
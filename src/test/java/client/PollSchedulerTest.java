@@ -0,0 +1,98 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import client.PollScheduler.ScheduledPoll;
+
+/**
+ * Test that tests that the {@link PollScheduler} runs many polls on few threads
+ * without overlapping executions of the same poll
+ * 
+ * @author Yannick
+ *
+ */
+public class PollSchedulerTest {
+
+	private static final int NR_POLLS = 50;
+	private static final int POOL_SIZE = 2;
+	private static final int INTERVAL = 20;
+
+	/**
+	 * Poll that records how often it ran and whether it ever overlapped with
+	 * itself
+	 */
+	private static class CountingPoll implements Runnable {
+
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger executions = new AtomicInteger();
+		private volatile boolean hasOverlapped;
+
+		@Override
+		public void run() {
+			if (running.incrementAndGet() > 1)
+				hasOverlapped = true;
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executions.incrementAndGet();
+			running.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Schedules many polls and triggers them while they run
+	 */
+	@Test
+	public void testNoOverlap() throws Exception {
+		PollScheduler scheduler = new PollScheduler(POOL_SIZE);
+		List<CountingPoll> polls = new ArrayList<>();
+		List<ScheduledPoll> scheduledPolls = new ArrayList<>();
+		for (int i = 0; i < NR_POLLS; i++) {
+			CountingPoll poll = new CountingPoll();
+			polls.add(poll);
+			scheduledPolls.add(scheduler.schedule(poll, INTERVAL));
+		}
+		for (int i = 0; i < 5; i++)
+			for (ScheduledPoll scheduledPoll : scheduledPolls)
+				scheduledPoll.trigger();
+
+		Thread.sleep(1000);
+		for (ScheduledPoll scheduledPoll : scheduledPolls)
+			scheduledPoll.cancel();
+		scheduler.shutdown();
+
+		for (CountingPoll poll : polls) {
+			Assert.assertFalse(poll.hasOverlapped);
+			Assert.assertTrue(poll.executions.get() > 0);
+		}
+	}
+
+	/**
+	 * Tests if a trigger during a running poll leads to exactly one more run
+	 */
+	@Test
+	public void testTriggerWhileRunning() throws Exception {
+		PollScheduler scheduler = new PollScheduler(POOL_SIZE);
+		CountingPoll poll = new CountingPoll();
+		// long interval so only the first scheduled run happens
+		ScheduledPoll scheduledPoll = scheduler.schedule(poll, 60000);
+		Thread.sleep(1);
+		scheduledPoll.trigger();
+		scheduledPoll.trigger();
+
+		Thread.sleep(200);
+		scheduledPoll.cancel();
+		scheduler.shutdown();
+
+		Assert.assertFalse(poll.hasOverlapped);
+		Assert.assertTrue(poll.executions.get() >= 2);
+		Assert.assertTrue(poll.executions.get() <= 3);
+	}
+}
@@ -0,0 +1,109 @@
+package client;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test that tests the recorded arrivals, the reported spreads and the eviction
+ * of the {@link PropagationTracker}
+ *
+ * @author Yannick
+ *
+ */
+public class PropagationTrackerTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * Helper method that returns the record of a measurement
+	 */
+	private static String find(List<String> records, String prefix) {
+		for (String record : records)
+			if (record.startsWith(prefix))
+				return record;
+		Assert.fail("No record " + prefix + " in " + records);
+		return null;
+	}
+
+	/**
+	 * Tests if a block is reported once when all nodes saw it and the lags of the
+	 * nodes are measured from the first arrival
+	 */
+	@Test
+	public void testSpreadAndLag() {
+		PropagationTracker tracker = new PropagationTracker(3, 10, 10, 60000);
+		PropagationTracker.Node first = tracker.register("client", "node1");
+		PropagationTracker.Node second = tracker.register("client", "node2");
+		PropagationTracker.Node third = tracker.register("client", "node3");
+		long start = System.nanoTime();
+		first.onBlock("0x1", start, true);
+		second.onBlock("0x1", start + 40 * MS, true);
+		// a repeated arrival is ignored
+		second.onBlock("0x1", start + 90 * MS, true);
+		Assert.assertFalse(tracker.toRecords(1000).get(0).startsWith(PropagationTracker.BLOCK_MEASUREMENT + " "));
+		third.onBlock("0x1", start + 100 * MS, true);
+
+		List<String> records = tracker.toRecords(1000);
+		String block = find(records, PropagationTracker.BLOCK_MEASUREMENT + " ");
+		Assert.assertTrue(block.contains("Hash=\"0x1\""));
+		Assert.assertTrue(block.contains("Nodes=3i"));
+		Assert.assertTrue(block.contains("Spread=100.0"));
+		String lag = find(records, PropagationTracker.NODE_MEASUREMENT + ",Client=client,Discovery=push,Node=node2 ");
+		Assert.assertTrue(lag.contains("LagP99=40.0"));
+		Assert.assertEquals(4, records.size());
+
+		// the spread is only reported once
+		for (String record : tracker.toRecords(1000))
+			Assert.assertFalse(record.startsWith(PropagationTracker.BLOCK_MEASUREMENT + " "));
+		try {
+			tracker.register("client", "node4");
+			Assert.fail("Fourth node should be rejected!");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests if the lags of pushed and polled blocks are reported separately
+	 */
+	@Test
+	public void testPushAndPoll() {
+		PropagationTracker tracker = new PropagationTracker(2, 10, 10, 60000);
+		PropagationTracker.Node first = tracker.register("client", "node1");
+		PropagationTracker.Node second = tracker.register("client", "node2");
+		long start = System.nanoTime();
+		first.onBlock("0x1", start, true);
+		second.onBlock("0x1", start + 10 * MS, true);
+		first.onBlock("0x2", start, true);
+		second.onBlock("0x2", start + 500 * MS, false);
+
+		List<String> records = tracker.toRecords(1000);
+		String pushed = find(records, PropagationTracker.NODE_MEASUREMENT + ",Client=client,Discovery=push,Node=node2 ");
+		Assert.assertTrue(pushed.contains("LagP99=10.0"));
+		String polled = find(records, PropagationTracker.NODE_MEASUREMENT + ",Client=client,Discovery=poll,Node=node2 ");
+		Assert.assertTrue(polled.contains("LagP99=500.0"));
+	}
+
+	/**
+	 * Tests if the oldest block is evicted and reported even if not all nodes saw
+	 * it
+	 */
+	@Test
+	public void testEviction() {
+		PropagationTracker tracker = new PropagationTracker(2, 2, 10, 60000);
+		PropagationTracker.Node node = tracker.register("client", "node1");
+		tracker.register("client", "node2");
+		long start = System.nanoTime();
+		node.onBlock("0x1", start, true);
+		node.onBlock("0x2", start, true);
+		node.onBlock("0x3", start, true);
+		Assert.assertEquals(2, tracker.size());
+		List<String> records = tracker.toRecords(1000);
+		String block = find(records, PropagationTracker.BLOCK_MEASUREMENT + " ");
+		Assert.assertTrue(block.contains("Hash=\"0x1\""));
+		Assert.assertTrue(block.contains("Nodes=1i"));
+	}
+}
@@ -1,8 +1,10 @@
 package client;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import blockchain.Block;
 import blockchain.BlockchainAdapter;
@@ -17,7 +19,10 @@ import blockchain.BlockchainAdapter;
 public class TestAdapter extends BlockchainAdapter {
 
 	int processedBlocks = 0;
-	LinkedHashMap<String, Block> blockchain;
+	Map<String, Block> blockchain;
+	// hashes in mining order, the blocks after processedBlocks are new
+	List<String> minedHashes;
+	Map<Long, Block> blocksByNumber;
 
 	public TestAdapter(String bcNodeAddress) {
 		super(bcNodeAddress);
@@ -26,37 +31,46 @@ public class TestAdapter extends BlockchainAdapter {
 	@Override
 	protected boolean connect(String bcNodeAddress) {
 		// TODO Auto-generated method stub
-		blockchain = new LinkedHashMap<>();
+		reset();
 		return true;
 	}
 
 	@Override
 	protected void cleanUp() {
 		// TODO Auto-generated method stub
-		blockchain = new LinkedHashMap<>();
+		reset();
+	}
+
+	private synchronized void reset() {
+		blockchain = new HashMap<>();
+		minedHashes = new ArrayList<>();
+		blocksByNumber = new HashMap<>();
 		processedBlocks = 0;
 	}
 
 	@Override
-	public Block getBlock(String blockHash) {
+	public synchronized Block getBlock(String blockHash) {
 		// TODO Auto-generated method stub
 
 		return blockchain.get(blockHash);
 	}
 
 	@Override
-	public List<String> getNextBlocks() {
-		// TODO Auto-generated method stub
+	public synchronized List<Block> getBlockRange(long from, long to) {
+		List<Block> blocks = new LinkedList<>();
+		for (long number = from; number <= to; number++)
+			blocks.add(blocksByNumber.get(number));
 
-		LinkedList<String> nextBlock = new LinkedList<>();
-		int index = 0;
-		for (String hash : blockchain.keySet()) {
-			if (processedBlocks++ == index)
-				nextBlock.add(hash);
-			index++;
-		}
+		return blocks;
+	}
+
+	@Override
+	public synchronized List<String> getNextBlocks() {
+		// Only the blocks mined since the last call are visited
+		LinkedList<String> nextBlocks = new LinkedList<>(minedHashes.subList(processedBlocks, minedHashes.size()));
+		processedBlocks = minedHashes.size();
 
-		return nextBlock;
+		return nextBlocks;
 	}
 
 	@Override
@@ -71,7 +85,10 @@ public class TestAdapter extends BlockchainAdapter {
 	 * @param block
 	 *            - The block that is added
 	 */
-	protected void mineBlock(Block block) {
-		blockchain.put(block.getHash(), block);
+	protected synchronized void mineBlock(Block block) {
+		if (blockchain.put(block.getHash(), block) == null)
+			minedHashes.add(block.getHash());
+		// the last mined block of a number is part of the mainchain
+		blocksByNumber.put(block.getBlockNumber(), block);
 	}
 }
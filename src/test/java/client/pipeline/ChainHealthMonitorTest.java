@@ -0,0 +1,79 @@
+package client.pipeline;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import blockchain.Block;
+import client.RollingWindow;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests the rolling windows and the records of the
+ * {@link ChainHealthMonitor}
+ *
+ * @author Yannick
+ *
+ */
+public class ChainHealthMonitorTest {
+
+	/**
+	 * Helper method that creates a block with the given statistics
+	 */
+	private static Block block(long number, long blockTime, long gasUsed, long uncles, long transactions) {
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setHash("hash" + number);
+		blockData.setBlockNumber(number);
+		blockData.setTime(Instant.ofEpochSecond(1000 + number * 15));
+		blockData.setBlockCreationTime(blockTime);
+		blockData.setGasUsed(gasUsed);
+		blockData.setGasLimit(1000);
+		blockData.setUncles(uncles);
+		blockData.setTransactions(transactions);
+		return new Block(blockData, null);
+	}
+
+	/**
+	 * Tests if the oldest samples are evicted and the mean and percentiles only
+	 * cover the window
+	 */
+	@Test
+	public void testRollingWindow() {
+		RollingWindow window = new RollingWindow(4);
+		Assert.assertTrue(Double.isNaN(window.getMean()));
+		for (int i = 1; i <= 6; i++)
+			window.add(i);
+		Assert.assertEquals(4, window.getCount());
+		Assert.assertEquals(4.5, window.getMean(), 0.0001);
+		Assert.assertEquals(4, window.getPercentile(50), 0.0001);
+		Assert.assertEquals(6, window.getPercentile(99), 0.0001);
+		Assert.assertEquals(3, window.getPercentile(0), 0.0001);
+	}
+
+	/**
+	 * Tests if one record per node with the statistics of its blocks is created
+	 */
+	@Test
+	public void testRecords() {
+		ChainHealthMonitor monitor = new ChainHealthMonitor(10);
+		Assert.assertTrue(monitor.toRecords(2000).isEmpty());
+		monitor.onBlock("client", "node1", block(1, 10, 500, 1, 20));
+		monitor.onBlock("client", "node1", block(2, 20, 1000, 0, 40));
+		monitor.onBlock("client", "node2", block(2, 20, 1000, 0, 40));
+
+		List<String> records = monitor.toRecords(2000);
+		Assert.assertEquals(2, records.size());
+		String node1 = records.get(0).contains("Node=node1") ? records.get(0) : records.get(1);
+		Assert.assertTrue(node1.startsWith(ChainHealthMonitor.MEASUREMENT + ",Client=client,Node=node1 "));
+		Assert.assertTrue(node1.contains("Blocks=2i"));
+		Assert.assertTrue(node1.contains("BlockTimeMean=15.0"));
+		Assert.assertTrue(node1.contains("BlockTimeP50=10.0"));
+		Assert.assertTrue(node1.contains("BlockTimeP99=20.0"));
+		Assert.assertTrue(node1.contains("GasUtilization=0.75"));
+		Assert.assertTrue(node1.contains("UncleRate=0.5"));
+		Assert.assertTrue(node1.contains("Transactions=30.0"));
+		Assert.assertTrue(node1.endsWith(" 2000000000000"));
+	}
+}
@@ -0,0 +1,102 @@
+package client.pipeline;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test that tests the orphan and reorg detection of the {@link ChainIndex}
+ *
+ * @author Yannick
+ *
+ */
+public class ChainIndexTest {
+
+	/**
+	 * Tests if a reorg marks the replaced block and its descendants as orphans
+	 */
+	@Test
+	public void testReorg() {
+		ChainIndex index = new ChainIndex(10);
+		Assert.assertTrue(index.add(TestBlocks.createBlock("a1", 1, "a0")).isEmpty());
+		Assert.assertTrue(index.add(TestBlocks.createBlock("a2", 2, "a1")).isEmpty());
+		Assert.assertTrue(index.add(TestBlocks.createBlock("a3", 3, "a2")).isEmpty());
+
+		// b2 replaces a2 and therefore also a3
+		List<ChainIndex.Entry> orphans = index.add(TestBlocks.createBlock("b2", 2, "a1"));
+		Assert.assertEquals(2, orphans.size());
+		Assert.assertEquals("a2", orphans.get(0).getHash());
+		Assert.assertEquals("a3", orphans.get(1).getHash());
+		Assert.assertEquals(1003, orphans.get(1).getTimestamp());
+
+		Assert.assertTrue(index.add(TestBlocks.createBlock("b3", 3, "b2")).isEmpty());
+		// already added blocks are ignored
+		Assert.assertTrue(index.add(TestBlocks.createBlock("b2", 2, "a1")).isEmpty());
+	}
+
+	/**
+	 * Tests if blocks arriving out of order are not taken for a reorg
+	 */
+	@Test
+	public void testOutOfOrder() {
+		ChainIndex index = new ChainIndex(10);
+		index.add(TestBlocks.createBlock("a1", 1, "a0"));
+		index.add(TestBlocks.createBlock("a3", 3, "a2"));
+		Assert.assertTrue(index.add(TestBlocks.createBlock("a2", 2, "a1")).isEmpty());
+	}
+
+	/**
+	 * Tests if blocks of unknown ancestry at the same height don't replace each
+	 * other
+	 */
+	@Test
+	public void testUnknownParents() {
+		ChainIndex index = new ChainIndex(10);
+		index.add(TestBlocks.createBlock("a1", 1, null));
+		index.add(TestBlocks.createBlock("a2", 2, null));
+		Assert.assertTrue(index.add(TestBlocks.createBlock("b1", 1, null)).isEmpty());
+		Assert.assertTrue(index.add(TestBlocks.createBlock("b2", 2, "b1")).isEmpty());
+		Assert.assertTrue(index.add(TestBlocks.createBlock("c1", 1, "c0")).isEmpty());
+	}
+
+	/**
+	 * Tests if uncles are only marked once
+	 */
+	@Test
+	public void testMarkOrphan() {
+		ChainIndex index = new ChainIndex(10);
+		index.add(TestBlocks.createBlock("a1", 1, "a0"));
+		Assert.assertEquals(1, index.markOrphan("a1").getNumber());
+		Assert.assertNull(index.markOrphan("a1"));
+		Assert.assertNull(index.markOrphan("unknown"));
+	}
+
+	/**
+	 * Fills the index beyond its size and tests if the oldest blocks are evicted
+	 */
+	@Test
+	public void testEviction() {
+		ChainIndex index = new ChainIndex(3);
+		for (int i = 1; i <= 5; i++)
+			index.add(TestBlocks.createBlock("a" + i, i, "a" + (i - 1)));
+
+		Assert.assertEquals(3, index.size());
+		Assert.assertFalse(index.contains("a2"));
+		Assert.assertTrue(index.contains("a3"));
+		Assert.assertTrue(index.covers(3));
+		Assert.assertFalse(index.covers(2));
+
+		// the lowest number is kept if a later added block is evicted
+		index = new ChainIndex(3);
+		index.add(TestBlocks.createBlock("b5", 5, null));
+		index.add(TestBlocks.createBlock("b3", 3, null));
+		index.add(TestBlocks.createBlock("b4", 4, null));
+		index.add(TestBlocks.createBlock("b6", 6, null));
+		Assert.assertTrue(index.covers(3));
+		Assert.assertFalse(index.covers(2));
+		index.add(TestBlocks.createBlock("b7", 7, null));
+		Assert.assertTrue(index.covers(4));
+		Assert.assertFalse(index.covers(3));
+	}
+}
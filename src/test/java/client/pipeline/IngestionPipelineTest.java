@@ -0,0 +1,281 @@
+package client.pipeline;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import blockchain.Block;
+import blockchain.BlockchainAdapter;
+import influx.RecordingInfluxDB;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests the stages of the {@link IngestionPipeline}
+ * 
+ * @author Yannick
+ *
+ */
+public class IngestionPipelineTest {
+
+	private static final String NODE_NAME = "TestNode";
+	private static final String CLIENT_NAME = "TestClient";
+	private static final int NR_BLOCKS = 20;
+	private static final int TIMEOUT = 5000;
+
+	/**
+	 * Adapter that serves generated blocks for any hash
+	 */
+	private static class GeneratingAdapter extends BlockchainAdapter {
+
+		public GeneratingAdapter() {
+			super(NODE_NAME);
+		}
+
+		@Override
+		protected boolean connect(String bcNodeAddress) {
+			return true;
+		}
+
+		@Override
+		protected void cleanUp() {
+		}
+
+		@Override
+		public Block getBlock(String blockHash) {
+			EthereumSchema blockData = new EthereumSchema();
+			long number = Long.parseLong(blockHash.substring(4));
+			blockData.setHash(blockHash);
+			blockData.setBlockNumber(number);
+			blockData.setTime(Instant.ofEpochSecond(1000 + number));
+			return new Block(blockData, null);
+		}
+
+		@Override
+		public List<String> getNextBlocks() {
+			return new LinkedList<>();
+		}
+
+		@Override
+		public boolean isSynced() {
+			return true;
+		}
+	}
+
+	/**
+	 * Tests if all submitted blocks are written by the last stage
+	 */
+	@Test
+	public void testAllBlocksWritten() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		IngestionPipeline pipeline = new IngestionPipeline(RecordingInfluxDB.create(recorder), 2, 1, 2, 2, 4);
+		pipeline.start();
+
+		BlockchainAdapter bca = new GeneratingAdapter();
+		for (int i = 0; i < NR_BLOCKS; i += 2) {
+			List<String> hashes = new LinkedList<>();
+			hashes.add("hash" + i);
+			hashes.add("hash" + (i + 1));
+			pipeline.submit(new FetchTask(CLIENT_NAME, bca, hashes));
+		}
+		pipeline.stop();
+
+		Assert.assertEquals(NR_BLOCKS, recorder.getRecords().size());
+		for (Stage<?> stage : pipeline.getStages()) {
+			Assert.assertEquals(0, stage.getQueueDepth());
+			Assert.assertEquals(0, stage.getFailed());
+		}
+		Assert.assertEquals(NR_BLOCKS, pipeline.getStages().get(3).getProcessed());
+	}
+
+	/**
+	 * Tests if every sampled block gets a span with the durations of the stages
+	 */
+	@Test
+	public void testTracing() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		IngestionPipeline pipeline = new IngestionPipeline(RecordingInfluxDB.create(recorder));
+		BlockTracer tracer = new BlockTracer(5);
+		pipeline.setBlockTracer(tracer);
+		pipeline.setRecordInterval(TimeUnit.HOURS.toMillis(1));
+		pipeline.start();
+
+		BlockchainAdapter bca = new GeneratingAdapter();
+		for (int i = 0; i < NR_BLOCKS; i++)
+			pipeline.submit(new FetchTask(CLIENT_NAME, bca, Arrays.asList("hash" + i)));
+		pipeline.stop();
+
+		List<String> spans = tracer.toRecords();
+		Assert.assertEquals(NR_BLOCKS / 5, spans.size());
+		boolean isFirstTraced = false;
+		for (String span : spans) {
+			isFirstTraced |= span.contains("Hash=\"hash0\"");
+			Assert.assertTrue(
+					span.startsWith(BlockTracer.MEASUREMENT + ",Client=" + CLIENT_NAME + ",Node=" + NODE_NAME));
+			Assert.assertTrue(span.contains("FetchTime="));
+			Assert.assertTrue(span.contains("ReconcileTime="));
+			Assert.assertTrue(span.contains("WriteTime="));
+			Assert.assertTrue(span.contains("TotalTime="));
+		}
+		Assert.assertTrue(isFirstTraced);
+		Assert.assertTrue(tracer.toRecords().isEmpty());
+	}
+
+	/**
+	 * Tests if a replaced block is marked as orphan without querying the database
+	 * and written together with the replacing block
+	 */
+	@Test
+	public void testLocalOrphanResolution() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		IngestionPipeline pipeline = new IngestionPipeline(RecordingInfluxDB.create(recorder));
+		pipeline.start();
+
+		final Map<String, Block> chain = new HashMap<>();
+		List<String> order = new LinkedList<>();
+		for (int i = 0; i < NR_BLOCKS; i++) {
+			// the node first reports a fork at height 10 which is later replaced
+			if (i == 10) {
+				chain.put("fork10", TestBlocks.createBlock("fork10", i, "hash9", null));
+				order.add("fork10");
+			}
+			// the fork is included as uncle two blocks later
+			List<String> uncles = i == 12 ? Arrays.asList("fork10") : null;
+			chain.put("hash" + i, TestBlocks.createBlock("hash" + i, i, "hash" + (i - 1), uncles));
+			order.add("hash" + i);
+		}
+		BlockchainAdapter bca = new GeneratingAdapter() {
+			@Override
+			public Block getBlock(String blockHash) {
+				return chain.get(blockHash);
+			}
+		};
+		for (String hash : order)
+			pipeline.submit(new FetchTask(CLIENT_NAME, bca, Arrays.asList(hash)));
+		pipeline.stop();
+
+		Assert.assertTrue(recorder.getQueries().isEmpty());
+		// blocks are combined into batches
+		Assert.assertTrue(recorder.getWriteCalls() < NR_BLOCKS + 1);
+		List<String> records = recorder.getRecords();
+		Assert.assertEquals(NR_BLOCKS + 2, records.size());
+		// orphan update of fork10 followed by hash10 in one write
+		Assert.assertTrue(records.get(11).contains("Hash=fork10"));
+		Assert.assertTrue(records.get(11).contains("Orphan=true"));
+		Assert.assertTrue(records.get(12).contains("Hash=hash10"));
+	}
+
+	/**
+	 * Tests if blocks without parent hash that reuse the heights of earlier blocks
+	 * don't orphan them, as happens if a node is reset
+	 */
+	@Test
+	public void testUnknownParentsAtSameHeight() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		IngestionPipeline pipeline = new IngestionPipeline(RecordingInfluxDB.create(recorder));
+		pipeline.start();
+
+		final Map<String, Block> chain = new HashMap<>();
+		for (int i = 1; i <= 5; i++) {
+			chain.put("first" + i, TestBlocks.createBlock("first" + i, i, null, null));
+			chain.put("second" + i, TestBlocks.createBlock("second" + i, i, null, null));
+		}
+		BlockchainAdapter bca = new GeneratingAdapter() {
+			@Override
+			public Block getBlock(String blockHash) {
+				return chain.get(blockHash);
+			}
+		};
+		for (int i = 1; i <= 5; i++)
+			pipeline.submit(new FetchTask(CLIENT_NAME, bca, Arrays.asList("first" + i)));
+		for (int i = 1; i <= 5; i++)
+			pipeline.submit(new FetchTask(CLIENT_NAME, bca, Arrays.asList("second" + i)));
+		pipeline.stop();
+
+		Assert.assertEquals(10, recorder.getRecords().size());
+		for (String record : recorder.getRecords())
+			Assert.assertTrue(record, record.contains("Orphan=false"));
+	}
+
+	/**
+	 * Tests if the items of a key are processed in order by a partitioned stage
+	 * with several workers, even if items of other keys take longer
+	 */
+	@Test
+	public void testPartitionOrder() throws Exception {
+		final Map<String, List<Integer>> processed = new HashMap<>();
+		Stage<String> stage = new Stage<>("Partitioned", 4, 100, new StageWorker<String>() {
+			@Override
+			public void process(String item) throws Exception {
+				String key = item.substring(0, 1);
+				int seq = Integer.parseInt(item.substring(1));
+				// the items of the slow key would be overtaken by a shared queue
+				if (key.equals("a"))
+					Thread.sleep(seq % 2 == 0 ? 20 : 1);
+				synchronized (processed) {
+					List<Integer> seqs = processed.get(key);
+					if (seqs == null)
+						processed.put(key, seqs = new LinkedList<>());
+					seqs.add(seq);
+				}
+			}
+		}, item -> item.substring(0, 1));
+		stage.start();
+		for (int i = 0; i < NR_BLOCKS; i++)
+			for (String key : Arrays.asList("a", "b", "c"))
+				stage.put(key + i);
+		stage.stop();
+
+		Assert.assertEquals(3 * NR_BLOCKS, stage.getProcessed());
+		for (List<Integer> seqs : processed.values())
+			for (int i = 0; i < NR_BLOCKS; i++)
+				Assert.assertEquals(i, (int) seqs.get(i));
+	}
+
+	/**
+	 * Tests if a full stage blocks the producer until the stage catches up
+	 */
+	@Test
+	public void testBackpressure() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		Stage<Integer> stage = new Stage<>("Blocked", 1, 1, new StageWorker<Integer>() {
+			@Override
+			public void process(Integer item) throws Exception {
+				release.await();
+			}
+		});
+		stage.start();
+
+		// first item is taken by the worker, second fills the queue
+		stage.put(1);
+		stage.put(2);
+		final CountDownLatch thirdQueued = new CountDownLatch(1);
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					stage.put(3);
+					thirdQueued.countDown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		producer.start();
+
+		Assert.assertFalse(thirdQueued.await(500, TimeUnit.MILLISECONDS));
+		Assert.assertEquals(1, stage.getQueueDepth());
+
+		release.countDown();
+		Assert.assertTrue(thirdQueued.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		stage.stop();
+		Assert.assertEquals(3, stage.getProcessed());
+	}
+}
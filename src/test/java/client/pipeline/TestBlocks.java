@@ -0,0 +1,53 @@
+package client.pipeline;
+
+import java.time.Instant;
+import java.util.List;
+
+import blockchain.Block;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Creates the blocks the pipeline tests feed to the {@link ChainIndex} and the
+ * {@link IngestionPipeline}. A block of number n has the timestamp 1000 + n
+ *
+ * @author Yannick
+ *
+ */
+public class TestBlocks {
+
+	/**
+	 * Creates a block without uncles
+	 *
+	 * @param hash
+	 *            - The hash of the block
+	 * @param number
+	 *            - The block number
+	 * @param parentHash
+	 *            - The hash of the parent or <code>null</code> if unknown
+	 * @return The {@link Block}
+	 */
+	public static Block createBlock(String hash, long number, String parentHash) {
+		return createBlock(hash, number, parentHash, null);
+	}
+
+	/**
+	 * Creates a block
+	 *
+	 * @param hash
+	 *            - The hash of the block
+	 * @param number
+	 *            - The block number
+	 * @param parentHash
+	 *            - The hash of the parent or <code>null</code> if unknown
+	 * @param uncles
+	 *            - The hashes of the uncles or <code>null</code>
+	 * @return The {@link Block}
+	 */
+	public static Block createBlock(String hash, long number, String parentHash, List<String> uncles) {
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setHash(hash);
+		blockData.setBlockNumber(number);
+		blockData.setTime(Instant.ofEpochSecond(1000 + number));
+		return new Block(blockData, uncles, parentHash);
+	}
+}
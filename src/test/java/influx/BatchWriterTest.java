@@ -0,0 +1,128 @@
+package influx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test that tests the flush policy of the {@link BatchWriter}
+ *
+ * @author Yannick
+ *
+ */
+public class BatchWriterTest {
+
+	private static final int TIMEOUT = 5000;
+
+	/**
+	 * Tests if a batch is flushed once it reaches the maximum number of records
+	 */
+	@Test
+	public void testFlushBySize() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		BatchWriter writer = new BatchWriter(RecordingInfluxDB.create(recorder), 3, BatchWriter.DEFAULT_BATCH_BYTES,
+				60000);
+		writer.start();
+
+		CompletableFuture<Void> first = writer.write(Arrays.asList("a", "b"));
+		Assert.assertFalse(first.isDone());
+		CompletableFuture<Void> second = writer.write(Arrays.asList("c"));
+		second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(first.isDone());
+		Assert.assertEquals(1, recorder.getWriteCalls());
+		Assert.assertEquals(Arrays.asList("a", "b", "c"), recorder.getRecords());
+		writer.stop();
+	}
+
+	/**
+	 * Tests if a batch is flushed once its oldest record waited for the flush
+	 * interval and if stopping the writer flushes the remaining records
+	 */
+	@Test
+	public void testFlushByLatency() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		BatchWriter writer = new BatchWriter(RecordingInfluxDB.create(recorder), 100, BatchWriter.DEFAULT_BATCH_BYTES,
+				100);
+		writer.start();
+
+		writer.write(Arrays.asList("a")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertEquals(1, recorder.getWriteCalls());
+
+		writer.write(Arrays.asList("b"));
+		writer.stop();
+		Assert.assertEquals(2, recorder.getRecords().size());
+		Assert.assertEquals(2, writer.getFlushes());
+	}
+
+	/**
+	 * Stops the writer while other threads write and tests if every write is
+	 * either flushed or rejected
+	 */
+	@Test
+	public void testWriteDuringStop() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		final BatchWriter writer = new BatchWriter(RecordingInfluxDB.create(recorder), 2,
+				BatchWriter.DEFAULT_BATCH_BYTES, 60000);
+		writer.start();
+
+		final List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+		List<Thread> writers = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int j = 0; j < 1000; j++)
+						futures.add(writer.write(Arrays.asList("a")));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			writers.add(thread);
+			thread.start();
+		}
+		Thread.sleep(5);
+		writer.stop();
+		for (Thread thread : writers)
+			thread.join();
+
+		int written = 0;
+		for (CompletableFuture<Void> future : futures) {
+			try {
+				future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+				written++;
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+		Assert.assertEquals(written, recorder.getRecords().size());
+		Assert.assertTrue(writer.write(Arrays.asList("b")).isCompletedExceptionally());
+	}
+
+	/**
+	 * Tests if a failed write completes the futures of all records of the batch
+	 * exceptionally
+	 */
+	@Test
+	public void testFailedFlush() throws Exception {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		recorder.setAvailable(false);
+		BatchWriter writer = new BatchWriter(RecordingInfluxDB.create(recorder), 1, BatchWriter.DEFAULT_BATCH_BYTES,
+				60000);
+		writer.start();
+
+		try {
+			writer.write(Arrays.asList("a")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+			Assert.fail("Write should fail!");
+		} catch (ExecutionException e) {
+			Assert.assertEquals(1, writer.getFailedFlushes());
+		}
+		writer.stop();
+	}
+}
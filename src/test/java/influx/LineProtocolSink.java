@@ -0,0 +1,301 @@
+package influx;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.QueryResult;
+
+/**
+ * In-memory stand-in for an {@link InfluxDB} that parses every written line
+ * protocol record instead of keeping it. Valid records are counted per
+ * measurement and handed to a listener, invalid ones are counted and the first
+ * errors are kept. Queries return no results. Unlike the
+ * {@link RecordingInfluxDB} its memory doesn't grow with the written records,
+ * so it can take the writes of long load tests
+ *
+ * @author Yannick
+ *
+ */
+public class LineProtocolSink implements InvocationHandler {
+
+	private static final int MAX_ERRORS = 100;
+
+	/**
+	 * A parsed line protocol record
+	 */
+	public static class Record {
+
+		private final String measurement;
+		private final Map<String, String> tags;
+		private final Map<String, String> fields;
+		private final long timestamp;
+
+		private Record(String measurement, Map<String, String> tags, Map<String, String> fields, long timestamp) {
+			this.measurement = measurement;
+			this.tags = tags;
+			this.fields = fields;
+			this.timestamp = timestamp;
+		}
+
+		public String getMeasurement() {
+			return measurement;
+		}
+
+		public Map<String, String> getTags() {
+			return tags;
+		}
+
+		/**
+		 * Returns the fields with their values as encoded, strings are quoted,
+		 * integers end with i
+		 *
+		 * @return The fields of the record
+		 */
+		public Map<String, String> getFields() {
+			return fields;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Returns the value of a tag or a field, string fields are unquoted
+		 *
+		 * @param key
+		 *            - The name of the tag or field
+		 * @return The value or <code>null</code> if the record has no such tag or
+		 *         field
+		 */
+		public String get(String key) {
+			String value = tags.get(key);
+			if (value != null)
+				return value;
+			value = fields.get(key);
+			if (value != null && value.startsWith("\""))
+				return value.substring(1, value.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+			return value;
+		}
+	}
+
+	private final Map<String, LongAdder> measurements = new ConcurrentHashMap<>();
+	private final AtomicLong writeCalls = new AtomicLong();
+	private final LongAdder records = new LongAdder();
+	private final LongAdder invalidRecords = new LongAdder();
+	private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+	private volatile Consumer<Record> listener;
+
+	/**
+	 * Creates a new {@link InfluxDB} proxy that writes into the given sink
+	 *
+	 * @param sink
+	 *            - The {@link LineProtocolSink} that validates the writes
+	 * @return The {@link InfluxDB} proxy
+	 */
+	public static InfluxDB create(LineProtocolSink sink) {
+		return (InfluxDB) Proxy.newProxyInstance(InfluxDB.class.getClassLoader(), new Class<?>[] { InfluxDB.class },
+				sink);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getName().equals("query")) {
+			QueryResult queryResult = new QueryResult();
+			queryResult.setResults(Collections.singletonList(new QueryResult.Result()));
+			return queryResult;
+		}
+		if (!method.getName().equals("write"))
+			return null;
+
+		writeCalls.incrementAndGet();
+		Object written = args[args.length - 1];
+		if (written instanceof Point)
+			accept(((Point) written).lineProtocol());
+		else if (written instanceof String)
+			for (String line : ((String) written).split("\n"))
+				accept(line);
+		else if (written instanceof List)
+			for (String line : (List<String>) written)
+				accept(line);
+		return null;
+	}
+
+	/**
+	 * Validates and counts a record
+	 */
+	private void accept(String line) {
+		Record record;
+		try {
+			record = parse(line);
+		} catch (IllegalArgumentException e) {
+			invalidRecords.increment();
+			if (errors.size() < MAX_ERRORS)
+				errors.add(e.getMessage() + ": " + line);
+			return;
+		}
+		records.increment();
+		measurements.computeIfAbsent(record.getMeasurement(), m -> new LongAdder()).increment();
+		Consumer<Record> listener = this.listener;
+		if (listener != null)
+			listener.accept(record);
+	}
+
+	/**
+	 * Parses a line protocol record
+	 *
+	 * @param line
+	 *            - The record
+	 * @return The parsed {@link Record}
+	 * @throws IllegalArgumentException
+	 *             if the record isn't valid line protocol
+	 */
+	public static Record parse(String line) {
+		int[] position = { 0 };
+		String measurement = readToken(line, position, ", ", false);
+		if (measurement.isEmpty())
+			throw new IllegalArgumentException("Missing measurement");
+
+		Map<String, String> tags = new HashMap<>();
+		while (position[0] < line.length() && line.charAt(position[0]) == ',') {
+			position[0]++;
+			String key = readToken(line, position, "=", false);
+			expect(line, position, '=');
+			String value = readToken(line, position, ", ", false);
+			if (key.isEmpty() || value.isEmpty())
+				throw new IllegalArgumentException("Empty tag");
+			tags.put(key, value);
+		}
+		expect(line, position, ' ');
+
+		Map<String, String> fields = new HashMap<>();
+		do {
+			if (!fields.isEmpty())
+				position[0]++;
+			String key = readToken(line, position, "=", false);
+			expect(line, position, '=');
+			String value = readToken(line, position, ", ", true);
+			if (key.isEmpty())
+				throw new IllegalArgumentException("Empty field key");
+			checkFieldValue(key, value);
+			fields.put(key, value);
+		} while (position[0] < line.length() && line.charAt(position[0]) == ',');
+
+		long timestamp = -1;
+		if (position[0] < line.length()) {
+			expect(line, position, ' ');
+			try {
+				timestamp = Long.parseLong(line.substring(position[0]));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid timestamp");
+			}
+		}
+		return new Record(measurement, tags, fields, timestamp);
+	}
+
+	/**
+	 * Reads till one of the delimiters that isn't escaped or quoted
+	 */
+	private static String readToken(String line, int[] position, String delimiters, boolean isQuotable) {
+		int start = position[0];
+		boolean isQuoted = false;
+		int i = start;
+		for (; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\\') {
+				i++;
+				continue;
+			}
+			if (isQuotable && c == '"')
+				isQuoted = !isQuoted;
+			else if (!isQuoted && delimiters.indexOf(c) >= 0)
+				break;
+		}
+		if (isQuoted)
+			throw new IllegalArgumentException("Unterminated string");
+		position[0] = i;
+		return line.substring(start, i);
+	}
+
+	private static void expect(String line, int[] position, char expected) {
+		if (position[0] >= line.length() || line.charAt(position[0]) != expected)
+			throw new IllegalArgumentException("Expected '" + expected + "' at " + position[0]);
+		position[0]++;
+	}
+
+	/**
+	 * Checks if a field value is a string, an integer, a float or a boolean
+	 */
+	private static void checkFieldValue(String key, String value) {
+		if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+			return;
+		if (value.equals("true") || value.equals("false"))
+			return;
+		try {
+			if (value.endsWith("i"))
+				Long.parseLong(value.substring(0, value.length() - 1));
+			else
+				Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value of field " + key);
+		}
+	}
+
+	/**
+	 * Sets the listener that gets every valid record, it is called by the writing
+	 * thread
+	 *
+	 * @param listener
+	 *            - The {@link Consumer} of the records or <code>null</code>
+	 */
+	public void setListener(Consumer<Record> listener) {
+		this.listener = listener;
+	}
+
+	public long getRecords() {
+		return records.sum();
+	}
+
+	/**
+	 * Returns the number of valid records of a measurement
+	 *
+	 * @param measurement
+	 *            - The name of the measurement
+	 * @return The number of records
+	 */
+	public long getRecords(String measurement) {
+		LongAdder count = measurements.get(measurement);
+		return count == null ? 0 : count.sum();
+	}
+
+	public long getInvalidRecords() {
+		return invalidRecords.sum();
+	}
+
+	/**
+	 * Returns why records were invalid, only the first errors are kept
+	 *
+	 * @return The errors with the invalid records
+	 */
+	public List<String> getErrors() {
+		synchronized (errors) {
+			return new ArrayList<>(errors);
+		}
+	}
+
+	public long getWriteCalls() {
+		return writeCalls.get();
+	}
+}
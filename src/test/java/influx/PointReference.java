@@ -0,0 +1,56 @@
+package influx;
+
+import java.util.concurrent.TimeUnit;
+
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Point.Builder;
+
+import blockchain.Block;
+import influx.schema.BlockSchema;
+
+/**
+ * Builds the records of a block through Influx {@link Point}s like the client
+ * did before the {@link SchemaCodec}. The tests and the benchmarks compare the
+ * codec with these reference records
+ *
+ * @author Yannick
+ *
+ */
+public class PointReference {
+
+	/**
+	 * Creates the Influx point that stores a block of the mainchain
+	 * 
+	 * @param block
+	 *            - The {@link Block} to store
+	 * @param clientId
+	 *            - The ID of the client that retrieved the block
+	 * @param nodeAddress
+	 *            - The address of the node the block was retrieved from
+	 * @return The {@link Point} of the block
+	 */
+	public static Point toPoint(Block block, String clientId, String nodeAddress) {
+		Builder builder = Point.measurement(block.getMeasurementName()).time(block.getTimestamp(), TimeUnit.SECONDS)
+				.tag("Hash", block.getHash()).tag("Client", clientId).tag("Node", nodeAddress)
+				.addField("BlockNumber", block.getBlockNumber()).addField("Orphan", false);
+
+		builder.addFieldsFromPOJO(block.getBlockData());
+		return builder.build();
+	}
+
+	/**
+	 * Creates the Influx point that marks a stored block as not part of the
+	 * mainchain anymore
+	 * 
+	 * @param measurementName
+	 *            - The name of the measurement the block is stored in
+	 * @param record
+	 *            - The stored block
+	 * @return The {@link Point} that overwrites the orphan flag of the block
+	 */
+	public static Point toOrphanPoint(String measurementName, BlockSchema record) {
+		return Point.measurement(measurementName).time(record.getTime().getEpochSecond(), TimeUnit.SECONDS)
+				.tag("Hash", record.getHash()).tag("Client", record.getClient()).tag("Node", record.getNode())
+				.addField("Orphan", true).build();
+	}
+}
@@ -0,0 +1,191 @@
+package influx;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.InfluxDBException;
+import org.influxdb.InfluxDBIOException;
+import org.influxdb.dto.Point;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+
+/**
+ * In-memory stand-in for an {@link InfluxDB} that records all written line
+ * protocol records and queries instead of sending them to a database. Queries
+ * return no results, chunked queries return the added chunks. Writes can be made
+ * to fail to simulate an unreachable database or records Influx rejects
+ * 
+ * @author Yannick
+ *
+ */
+public class RecordingInfluxDB implements InvocationHandler {
+
+	private final List<String> records = Collections.synchronizedList(new ArrayList<String>());
+	private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+	private final List<QueryResult> chunks = Collections.synchronizedList(new ArrayList<QueryResult>());
+	// Part of the command a chunk is returned for, null for all commands
+	private final List<String> chunkFilters = Collections.synchronizedList(new ArrayList<String>());
+	private volatile boolean isAvailable = true;
+	// Part of the records whose writes are rejected, null to accept all
+	private volatile String rejectedPart;
+	private volatile int writeCalls;
+
+	/**
+	 * Creates a new {@link InfluxDB} proxy that writes into the given recorder
+	 * 
+	 * @param recorder
+	 *            - The {@link RecordingInfluxDB} that records the writes
+	 * @return The {@link InfluxDB} proxy
+	 */
+	public static InfluxDB create(RecordingInfluxDB recorder) {
+		return (InfluxDB) Proxy.newProxyInstance(InfluxDB.class.getClassLoader(), new Class<?>[] { InfluxDB.class },
+				recorder);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getName().equals("query")) {
+			queries.add(((Query) args[0]).getCommand());
+			if (args.length >= 4 && args[2] instanceof BiConsumer) {
+				streamChunks(((Query) args[0]).getCommand(), (BiConsumer<InfluxDB.Cancellable, QueryResult>) args[2],
+						(Runnable) args[3]);
+				return null;
+			}
+			QueryResult queryResult = new QueryResult();
+			queryResult.setResults(Collections.singletonList(new QueryResult.Result()));
+			return queryResult;
+		}
+		if (!method.getName().equals("write"))
+			return null;
+		if (!isAvailable)
+			throw new InfluxDBIOException(new java.io.IOException("Database unavailable"));
+
+		Object records = args[args.length - 1];
+		if (rejectedPart != null && records.toString().contains(rejectedPart))
+			throw InfluxDBException.buildExceptionForErrorState(
+					"{\"error\":\"unable to parse '" + rejectedPart + "': invalid field format\"}");
+
+		writeCalls++;
+		if (records instanceof Point)
+			this.records.add(((Point) records).lineProtocol());
+		else if (records instanceof String)
+			Collections.addAll(this.records, ((String) records).split("\n"));
+		else if (records instanceof List)
+			this.records.addAll((List<String>) records);
+		return null;
+	}
+
+	/**
+	 * Passes the added chunks to the consumer of a chunked query like the Influx
+	 * client does
+	 */
+	private void streamChunks(String command, BiConsumer<InfluxDB.Cancellable, QueryResult> consumer,
+			Runnable onComplete) {
+		final boolean[] isCanceled = new boolean[1];
+		InfluxDB.Cancellable cancellable = new InfluxDB.Cancellable() {
+			@Override
+			public void cancel() {
+				isCanceled[0] = true;
+			}
+
+			@Override
+			public boolean isCanceled() {
+				return isCanceled[0];
+			}
+		};
+		for (QueryResult chunk : getChunks(command)) {
+			if (isCanceled[0])
+				return;
+			consumer.accept(cancellable, chunk);
+		}
+		QueryResult done = new QueryResult();
+		done.setError("DONE");
+		consumer.accept(cancellable, done);
+		if (!isCanceled[0] && onComplete != null)
+			onComplete.run();
+	}
+
+	/**
+	 * Adds a chunk returned by chunked queries
+	 * 
+	 * @param chunk
+	 *            - The {@link QueryResult} of the chunk
+	 */
+	public void addChunk(QueryResult chunk) {
+		addChunk(null, chunk);
+	}
+
+	/**
+	 * Adds a chunk returned by chunked queries containing the given part
+	 * 
+	 * @param commandPart
+	 *            - The part of the command, <code>null</code> for all queries
+	 * @param chunk
+	 *            - The {@link QueryResult} of the chunk
+	 */
+	public void addChunk(String commandPart, QueryResult chunk) {
+		synchronized (chunks) {
+			chunks.add(chunk);
+			chunkFilters.add(commandPart);
+		}
+	}
+
+	/**
+	 * Removes all added chunks
+	 */
+	public void clearChunks() {
+		synchronized (chunks) {
+			chunks.clear();
+			chunkFilters.clear();
+		}
+	}
+
+	private List<QueryResult> getChunks(String command) {
+		synchronized (chunks) {
+			List<QueryResult> result = new ArrayList<>();
+			for (int i = 0; i < chunks.size(); i++)
+				if (chunkFilters.get(i) == null || command.contains(chunkFilters.get(i)))
+					result.add(chunks.get(i));
+			return result;
+		}
+	}
+
+	public List<String> getRecords() {
+		synchronized (records) {
+			return new ArrayList<>(records);
+		}
+	}
+
+	public List<String> getQueries() {
+		synchronized (queries) {
+			return new ArrayList<>(queries);
+		}
+	}
+
+	public int getWriteCalls() {
+		return writeCalls;
+	}
+
+	public void setAvailable(boolean isAvailable) {
+		this.isAvailable = isAvailable;
+	}
+
+	/**
+	 * Rejects all writes containing a record with the given part like Influx
+	 * rejects records it can't parse
+	 * 
+	 * @param rejectedPart
+	 *            - The part of the rejected records, <code>null</code> to accept
+	 *            all records
+	 */
+	public void setRejected(String rejectedPart) {
+		this.rejectedPart = rejectedPart;
+	}
+}
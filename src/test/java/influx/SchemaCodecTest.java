@@ -0,0 +1,179 @@
+package influx;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import org.influxdb.annotation.Column;
+import org.influxdb.annotation.Measurement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import blockchain.Block;
+import influx.schema.BlockSchema;
+import influx.schema.SchemaVersion;
+import influx.schema.bitcoin.BitcoinSchema;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests if the {@link SchemaCodec} writes the same records as the
+ * Influx {@link org.influxdb.dto.Point}
+ *
+ * @author Yannick
+ *
+ */
+public class SchemaCodecTest {
+
+	/**
+	 * Schema with all column types, partly without getters
+	 */
+	@Measurement(name = "Test Chain")
+	public static class TestSchema extends BlockSchema {
+
+		@Column(name = "Region", tag = true)
+		private String region;
+
+		@Column(name = "Ratio")
+		private double ratio;
+
+		@Column(name = "Count")
+		private int count;
+
+		@Column(name = "Synced")
+		private boolean synced;
+
+		@Column(name = "Reward")
+		private BigDecimal reward;
+
+		@Column(name = "Boxed")
+		private Long boxed;
+
+		@Column(name = "Hidden")
+		private float hidden;
+
+		public String getRegion() {
+			return region;
+		}
+
+		public double getRatio() {
+			return ratio;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public boolean isSynced() {
+			return synced;
+		}
+
+		public Long getBoxed() {
+			return boxed;
+		}
+	}
+
+	private static void assertSameRecord(Block block, String clientId, String nodeAddress) {
+		Assert.assertEquals(PointReference.toPoint(block, clientId, nodeAddress).lineProtocol(),
+				InfluxDBUtil.toLineProtocol(block, clientId, nodeAddress));
+	}
+
+	/**
+	 * Tests an Ethereum block with characters that have to be escaped
+	 */
+	@Test
+	public void testEthereum() {
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setHash("0xab");
+		blockData.setBlockNumber(42);
+		blockData.setTime(Instant.ofEpochSecond(1500000000));
+		blockData.setDifficulty(7);
+		blockData.setPeerCount(5);
+		blockData.setMiner("0xm i,n=er\"x\\");
+		blockData.setTotalDifficulty("123");
+		Block block = new Block(blockData, null);
+
+		assertSameRecord(block, "Cl ient", "http://n,o=de");
+		Assert.assertEquals("Ethereum,Client=Cl\\ ient,Hash=0xab,Node=http://n\\,o\\=de BlockCreationTime=0i,"
+				+ "BlockNumber=42i,Difficulty=7i,GasLimit=0i,GasUsed=0i,Miner=\"0xm i,n=er\\\"x\\\\\",Orphan=false,"
+				+ "PeerCount=5i,Size=0i,TotalDifficulty=\"123\",Transactions=0i,Uncles=0i 1500000000000000000",
+				InfluxDBUtil.toLineProtocol(block, "Cl ient", "http://n,o=de"));
+
+		blockData.setExtraData("data");
+		assertSameRecord(block, "", "node");
+	}
+
+	/**
+	 * Tests a schema without own columns
+	 */
+	@Test
+	public void testBitcoin() {
+		BitcoinSchema blockData = new BitcoinSchema();
+		blockData.setHash("h");
+		blockData.setTime(Instant.ofEpochSecond(1));
+		assertSameRecord(new Block(blockData, null), "c", "n");
+	}
+
+	/**
+	 * Tests all column types and null values
+	 */
+	@Test
+	public void testColumnTypes() {
+		TestSchema blockData = new TestSchema();
+		blockData.setHash("h");
+		blockData.setBlockNumber(3);
+		blockData.setTime(Instant.ofEpochSecond(2));
+		Block block = new Block(blockData, null);
+		// Point fails on null tags
+		Assert.assertEquals("Test\\ Chain,Client=c,Hash=h,Node=n BlockNumber=3i,Count=0i,Hidden=0.0,Orphan=false,"
+				+ "Ratio=0.0,Synced=false 2000000000", InfluxDBUtil.toLineProtocol(block, "c", "n"));
+
+		blockData.region = "";
+		assertSameRecord(block, "c", "n");
+
+		blockData.region = "eu west";
+		blockData.ratio = 0.1;
+		blockData.count = -4;
+		blockData.synced = true;
+		blockData.reward = new BigDecimal("12345678901234567890.5");
+		blockData.boxed = 9L;
+		blockData.hidden = 1.5f;
+		assertSameRecord(block, "c", "n");
+	}
+
+	/**
+	 * Tests the record that marks a stored block as orphan
+	 */
+	@Test
+	public void testOrphan() {
+		EthereumSchema record = new EthereumSchema();
+		record.setHash("0x1");
+		record.setClient("a client");
+		record.setNode("node");
+		record.setTime(Instant.ofEpochSecond(10));
+		Assert.assertEquals(PointReference.toOrphanPoint("Ethereum", record).lineProtocol(),
+				InfluxDBUtil.toOrphanLineProtocol(EthereumSchema.class, record));
+	}
+
+	/**
+	 * Tests if the hash is stored as field and the block and its orphan record
+	 * share the same timestamp in schema version 2
+	 */
+	@Test
+	public void testVersion2() {
+		EthereumSchema blockData = new EthereumSchema();
+		blockData.setHash("0xab");
+		blockData.setBlockNumber(42);
+		blockData.setTime(Instant.ofEpochSecond(1500000000));
+		Block block = new Block(blockData, null);
+
+		String record = InfluxDBUtil.toLineProtocol(block, "client", "node", SchemaVersion.V2);
+		Assert.assertTrue(record.startsWith("Ethereum,Client=client,Node=node BlockCreationTime=0i,BlockNumber=42i,"
+				+ "Difficulty=0i,GasLimit=0i,GasUsed=0i,Hash=\"0xab\",Orphan=false,"));
+		long time = Long.parseLong(record.substring(record.lastIndexOf(' ') + 1));
+		Assert.assertEquals(1500000000L, time / 1000000000L);
+
+		blockData.setClient("client");
+		blockData.setNode("node");
+		Assert.assertEquals("Ethereum,Client=client,Node=node Orphan=true " + time,
+				InfluxDBUtil.toOrphanLineProtocol(EthereumSchema.class, blockData, SchemaVersion.V2));
+	}
+}
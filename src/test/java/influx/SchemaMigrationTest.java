@@ -0,0 +1,84 @@
+package influx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.influxdb.dto.QueryResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import influx.schema.SchemaVersion;
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests if stored blocks are migrated to the low-cardinality schema
+ *
+ * @author Yannick
+ *
+ */
+public class SchemaMigrationTest {
+
+	private static final List<String> COLUMNS = Arrays.asList("time", "BlockNumber", "Client", "Hash", "Miner",
+			"Node", "Orphan");
+
+	private static QueryResult chunk(List<List<Object>> values) {
+		QueryResult.Series series = new QueryResult.Series();
+		series.setName("Ethereum");
+		series.setColumns(COLUMNS);
+		series.setValues(values);
+		QueryResult.Result result = new QueryResult.Result();
+		result.setSeries(Collections.singletonList(series));
+		QueryResult queryResult = new QueryResult();
+		queryResult.setResults(Collections.singletonList(result));
+		return queryResult;
+	}
+
+	private static List<Object> row(String time, double number, String hash, boolean isOrphan) {
+		return new ArrayList<Object>(Arrays.asList(time, number, "client", hash, "0xminer", "node", isOrphan));
+	}
+
+	/**
+	 * Migrates two chunks and tests if all blocks keep their orphan flag and get
+	 * different timestamps although they were created in the same second
+	 */
+	@Test
+	public void testMigration() throws InterruptedException {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		recorder.addChunk(chunk(Arrays.asList(row("1970-01-01T00:00:10Z", 1, "0x1", false),
+				row("1970-01-01T00:00:20Z", 2, "0x2", true))));
+		recorder.addChunk(chunk(Arrays.asList(row("1970-01-01T00:00:20Z", 2, "0x3", false))));
+
+		SchemaMigration migration = new SchemaMigration(RecordingInfluxDB.create(recorder), "Blockchain",
+				"Blockchain_v2", SchemaVersion.V2, 2);
+		Assert.assertEquals(3, migration.migrate(EthereumSchema.class));
+
+		List<String> records = recorder.getRecords();
+		Assert.assertEquals(3, records.size());
+		Assert.assertTrue(records.get(0).startsWith("Ethereum,Client=client,Node=node BlockCreationTime=0i,"
+				+ "BlockNumber=1i,Difficulty=0i,GasLimit=0i,GasUsed=0i,Hash=\"0x1\",Miner=\"0xminer\",Orphan=false,"));
+		Assert.assertTrue(records.get(1).contains("Hash=\"0x2\",Miner=\"0xminer\",Orphan=true,"));
+
+		String time2 = records.get(1).substring(records.get(1).lastIndexOf(' ') + 1);
+		String time3 = records.get(2).substring(records.get(2).lastIndexOf(' ') + 1);
+		Assert.assertNotEquals(time2, time3);
+		Assert.assertEquals(20, Long.parseLong(time2) / 1000000000L);
+		Assert.assertEquals(20, Long.parseLong(time3) / 1000000000L);
+
+		Assert.assertEquals("CREATE DATABASE \"Blockchain_v2\"", recorder.getQueries().get(0));
+	}
+
+	/**
+	 * Tests if a failing write aborts the migration
+	 */
+	@Test(expected = SchemaMigration.MigrationException.class)
+	public void testFailedWrite() throws InterruptedException {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		recorder.addChunk(chunk(Arrays.asList(row("1970-01-01T00:00:10Z", 1, "0x1", false))));
+		recorder.setAvailable(false);
+
+		new SchemaMigration(RecordingInfluxDB.create(recorder), "Blockchain", "Blockchain_v2", SchemaVersion.V2, 2)
+				.migrate(EthereumSchema.class);
+	}
+}
@@ -0,0 +1,156 @@
+package influx;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that tests journaling, draining and replaying of the
+ * {@link WriteAheadSpool}
+ *
+ * @author Yannick
+ *
+ */
+public class WriteAheadSpoolTest {
+
+	private static final int FLUSH_INTERVAL = 50;
+	private static final int TIMEOUT = 5000;
+
+	private File directory;
+	private RecordingInfluxDB recorder;
+	private BatchWriter batchWriter;
+
+	/**
+	 * Runs before every test and creates the spool directory
+	 */
+	@Before
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("spool").toFile();
+		recorder = new RecordingInfluxDB();
+		batchWriter = new BatchWriter(RecordingInfluxDB.create(recorder), BatchWriter.DEFAULT_BATCH_SIZE,
+				BatchWriter.DEFAULT_BATCH_BYTES, FLUSH_INTERVAL);
+		batchWriter.start();
+	}
+
+	/**
+	 * Runs after every test and deletes the spool directory
+	 */
+	@After
+	public void cleanup() {
+		batchWriter.stop();
+		for (File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+
+	/**
+	 * Tests if records written during an outage are kept and written in order
+	 * once the database is reachable again
+	 */
+	@Test
+	public void testOutage() throws Exception {
+		recorder.setAvailable(false);
+		WriteAheadSpool spool = new WriteAheadSpool(directory, 20, batchWriter);
+		spool.start();
+
+		CompletableFuture<Void> first = spool.write(Arrays.asList("a value=1", "b value=2"));
+		CompletableFuture<Void> second = spool.write(Arrays.asList("c value=3"));
+		Thread.sleep(200);
+		Assert.assertFalse(first.isDone());
+		Assert.assertTrue(spool.getPendingBytes() > 0);
+		// the first write fills the segment, the second starts a new one
+		Assert.assertEquals(2, directory.listFiles().length);
+
+		recorder.setAvailable(true);
+		second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(first.isDone());
+		Assert.assertEquals(Arrays.asList("a value=1", "b value=2", "c value=3"), recorder.getRecords());
+		Assert.assertEquals(0, spool.getPendingBytes());
+
+		spool.stop();
+		Assert.assertEquals(0, directory.listFiles().length);
+	}
+
+	/**
+	 * Tests if records forced to disk on every write are drained like the ones
+	 * forced in an interval
+	 */
+	@Test
+	public void testSyncOnWrite() throws Exception {
+		WriteAheadSpool spool = new WriteAheadSpool(directory, 20, 0, batchWriter);
+		spool.start();
+		spool.write(Arrays.asList("a value=1", "b value=2"));
+		spool.write(Arrays.asList("c value=3")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		spool.stop();
+
+		Assert.assertEquals(Arrays.asList("a value=1", "b value=2", "c value=3"), recorder.getRecords());
+		Assert.assertEquals(0, directory.listFiles().length);
+	}
+
+	/**
+	 * Tests if records Influx rejects are moved to the dead-letter file and the
+	 * records after them are still drained
+	 */
+	@Test
+	public void testRejectedRecords() throws Exception {
+		recorder.setRejected("bad");
+		WriteAheadSpool spool = new WriteAheadSpool(directory, WriteAheadSpool.DEFAULT_SEGMENT_SIZE, batchWriter);
+		spool.start();
+		spool.write(Arrays.asList("a value=1")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		CompletableFuture<Void> rejected = spool.write(Arrays.asList("bad value=x"));
+		try {
+			rejected.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			Assert.fail("Rejected records were acknowledged as written!");
+		} catch (ExecutionException e) {
+			Assert.assertFalse(rejected.isCancelled());
+		}
+		spool.write(Arrays.asList("c value=3")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		spool.stop();
+
+		Assert.assertEquals(Arrays.asList("a value=1", "c value=3"), recorder.getRecords());
+		File deadLetter = new File(directory, "dead-letter.lp");
+		Assert.assertEquals(Arrays.asList("bad value=x"), Files.readAllLines(deadLetter.toPath()));
+	}
+
+	/**
+	 * Tests if writes after the spool was stopped fail instead of throwing
+	 */
+	@Test
+	public void testWriteAfterStop() throws Exception {
+		WriteAheadSpool spool = new WriteAheadSpool(directory, WriteAheadSpool.DEFAULT_SEGMENT_SIZE, batchWriter);
+		spool.start();
+		spool.stop();
+		Assert.assertTrue(spool.write(Arrays.asList("a value=1")).isCompletedExceptionally());
+	}
+
+	/**
+	 * Tests if records left in the spool are replayed by the next run
+	 */
+	@Test
+	public void testReplay() throws Exception {
+		recorder.setAvailable(false);
+		WriteAheadSpool spool = new WriteAheadSpool(directory, WriteAheadSpool.DEFAULT_SEGMENT_SIZE, batchWriter);
+		spool.start();
+		spool.write(Arrays.asList("a value=1"));
+		spool.stop();
+		Assert.assertTrue(recorder.getRecords().isEmpty());
+		Assert.assertEquals(1, directory.listFiles().length);
+
+		recorder.setAvailable(true);
+		spool = new WriteAheadSpool(directory, WriteAheadSpool.DEFAULT_SEGMENT_SIZE, batchWriter);
+		spool.start();
+		spool.write(Arrays.asList("b value=2")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		spool.stop();
+
+		Assert.assertEquals(Arrays.asList("a value=1", "b value=2"), recorder.getRecords());
+		Assert.assertEquals(0, directory.listFiles().length);
+	}
+}
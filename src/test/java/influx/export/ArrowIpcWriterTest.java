@@ -0,0 +1,116 @@
+package influx.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.TimeStampNanoTZVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryEncoder;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.influxdb.dto.QueryResult.Series;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import influx.schema.ethereum.EthereumSchema;
+
+/**
+ * Test that tests the typed and dictionary encoded Arrow export
+ *
+ * @author Yannick
+ *
+ */
+public class ArrowIpcWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@SafeVarargs
+	private static Series chunk(List<Object>... rows) {
+		Series series = new Series();
+		series.setName("Ethereum");
+		series.setColumns(Arrays.asList("time", "Hash", "BlockNumber", "Miner", "Orphan", "Unknown"));
+		series.setTags(Collections.singletonMap("Node", "node1"));
+		series.setValues(Arrays.asList(rows));
+		return series;
+	}
+
+	private static List<Object> row(Object... values) {
+		return new ArrayList<>(Arrays.asList(values));
+	}
+
+	/**
+	 * Writes two chunks and tests the types, values and dictionaries of the read
+	 * file
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testWrite() throws IOException {
+		File file = new File(folder.getRoot(), "Ethereum.arrow");
+		try (ArrowIpcWriter writer = new ArrowIpcWriter(file, EthereumSchema.class)) {
+			writer.writeSeries(chunk(row("1970-01-01T00:00:01.5Z", "0x1", 1.0, "0xa", false, "x"),
+					row("1970-01-01T00:00:02Z", "0x2", 2.0, "0xa", true, "x")));
+			writer.writeSeries(chunk(row("1970-01-01T00:00:03Z", "0x3", 3.0, null, false, "x"),
+					row("1970-01-01T00:00:04Z", "0x4", 4.0, "0xb", false, "x")));
+			Assert.assertEquals(4, writer.getRows());
+		}
+		Assert.assertFalse(new File(folder.getRoot(), "Ethereum.arrow.tmp").exists());
+
+		try (BufferAllocator allocator = new RootAllocator();
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				ArrowFileReader reader = new ArrowFileReader(channel, allocator, CommonsCompressionFactory.INSTANCE)) {
+			VectorSchemaRoot root = reader.getVectorSchemaRoot();
+			for (org.apache.arrow.vector.types.pojo.Field field : root.getSchema().getFields())
+				Assert.assertNotEquals("Unknown", field.getName());
+			Assert.assertEquals(new ArrowType.Int(64, true), root.getSchema().findField("GasUsed").getType());
+			Assert.assertNotNull(root.getSchema().findField("Node").getDictionary());
+			Assert.assertNotNull(root.getSchema().findField("Miner").getDictionary());
+			Assert.assertNull(root.getSchema().findField("Hash").getDictionary());
+
+			List<Long> blockNumbers = new ArrayList<>();
+			List<String> miners = new ArrayList<>();
+			List<String> nodes = new ArrayList<>();
+			int orphans = 0;
+			while (reader.loadNextBatch()) {
+				BigIntVector blockNumber = (BigIntVector) root.getVector("BlockNumber");
+				BitVector orphan = (BitVector) root.getVector("Orphan");
+				Dictionary minerDictionary = reader.getDictionaryVectors()
+						.get(root.getSchema().findField("Miner").getDictionary().getId());
+				Dictionary nodeDictionary = reader.getDictionaryVectors()
+						.get(root.getSchema().findField("Node").getDictionary().getId());
+				try (ValueVector miner = DictionaryEncoder.decode(root.getVector("Miner"), minerDictionary);
+						ValueVector node = DictionaryEncoder.decode(root.getVector("Node"), nodeDictionary)) {
+					for (int i = 0; i < root.getRowCount(); i++) {
+						blockNumbers.add(blockNumber.get(i));
+						orphans += orphan.get(i);
+						miners.add(miner.isNull(i) ? null : ((VarCharVector) miner).getObject(i).toString());
+						nodes.add(((VarCharVector) node).getObject(i).toString());
+					}
+				}
+				if (blockNumbers.size() == 2)
+					Assert.assertEquals(1500000000L, ((TimeStampNanoTZVector) root.getVector("time")).get(0));
+				Assert.assertTrue(root.getVector("GasUsed").isNull(0));
+			}
+			Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L), blockNumbers);
+			Assert.assertEquals(Arrays.asList("0xa", "0xa", null, "0xb"), miners);
+			Assert.assertEquals(Collections.nCopies(4, "node1"), nodes);
+			Assert.assertEquals(1, orphans);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package influx.export;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import influx.export.ExportJobManager.ExportJob;
+import influx.export.ExportJobManager.Status;
+
+/**
+ * Test that tests the queueing and cancellation of export jobs
+ *
+ * @author Yannick
+ *
+ */
+public class ExportJobManagerTest {
+
+	/**
+	 * An export that runs till it is canceled
+	 */
+	private static class BlockingExport implements Export {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch canceled = new CountDownLatch(1);
+
+		long run() throws InterruptedException {
+			started.countDown();
+			canceled.await();
+			return 0;
+		}
+
+		@Override
+		public void cancel() {
+			canceled.countDown();
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled.getCount() == 0;
+		}
+
+		@Override
+		public long getRows() {
+			return 0;
+		}
+
+		@Override
+		public long getRowsPerSecond() {
+			return 0;
+		}
+
+		@Override
+		public List<File> getFiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String getProgress() {
+			return "0 rows";
+		}
+	}
+
+	/**
+	 * Runs one job at a time with one queued job and tests the cap, the
+	 * cancellation of the running and the queued job and the reported results
+	 */
+	@Test
+	public void testQueueAndCancel() throws InterruptedException {
+		List<ExportJob> finished = new CopyOnWriteArrayList<>();
+		CountDownLatch allFinished = new CountDownLatch(2);
+		ExportJobManager manager = new ExportJobManager(1, 1, job -> {
+			finished.add(job);
+			allFinished.countDown();
+		});
+
+		BlockingExport running = new BlockingExport();
+		ExportJob first = manager.submit("first", running, running::run);
+		Assert.assertTrue(running.started.await(5, TimeUnit.SECONDS));
+		BlockingExport queued = new BlockingExport();
+		ExportJob second = manager.submit("second", queued, queued::run);
+		Assert.assertEquals(Status.RUNNING, first.getStatus());
+		Assert.assertEquals(Status.QUEUED, second.getStatus());
+		try {
+			BlockingExport rejected = new BlockingExport();
+			manager.submit("third", rejected, rejected::run);
+			Assert.fail("Third job should be rejected!");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+
+		Assert.assertTrue(manager.cancel(second.getId()));
+		Assert.assertTrue(manager.cancel(first.getId()));
+		Assert.assertTrue(allFinished.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(Status.CANCELED, first.getStatus());
+		Assert.assertEquals(Status.CANCELED, second.getStatus());
+		Assert.assertEquals(1, queued.started.getCount());
+		Assert.assertFalse(manager.cancel(first.getId()));
+		Assert.assertEquals(2, finished.size());
+		Assert.assertEquals(2, manager.getJobs().size());
+		manager.stop(1000);
+	}
+
+	/**
+	 * Tests if a failed export is reported with its error
+	 */
+	@Test
+	public void testFailure() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		ExportJobManager manager = new ExportJobManager(1, 1, job -> done.countDown());
+		ExportJob job = manager.submit("failing", new BlockingExport(), () -> {
+			throw new QueryExport.ExportException("Malformed Query!");
+		});
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(Status.FAILED, job.getStatus());
+		Assert.assertEquals("Malformed Query!", job.getError());
+		manager.stop(1000);
+	}
+}
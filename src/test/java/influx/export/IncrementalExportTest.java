@@ -0,0 +1,139 @@
+package influx.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.influxdb.dto.QueryResult;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import influx.RecordingInfluxDB;
+
+/**
+ * Test that tests the watermarks, correction records and rollback of the
+ * incremental export
+ *
+ * @author Yannick
+ *
+ */
+public class IncrementalExportTest {
+
+	private static final String NL = System.lineSeparator();
+	private static final String QUERY = "select time, Hash, BlockNumber, Orphan from Ethereum";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// Recent block times, so orphans stay within the correction window
+	private final String t1 = Instant.now().minus(30, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.SECONDS).toString();
+	private final String t2 = Instant.now().minus(20, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.SECONDS).toString();
+
+	@SafeVarargs
+	private static QueryResult chunk(List<Object>... rows) {
+		QueryResult.Series series = new QueryResult.Series();
+		series.setName("Ethereum");
+		series.setColumns(Arrays.asList("time", "Hash", "BlockNumber", "Orphan"));
+		series.setValues(Arrays.asList(rows));
+		QueryResult.Result result = new QueryResult.Result();
+		result.setSeries(Collections.singletonList(series));
+		QueryResult queryResult = new QueryResult();
+		queryResult.setResults(Collections.singletonList(result));
+		return queryResult;
+	}
+
+	private static List<Object> row(Object... values) {
+		return new ArrayList<>(Arrays.asList(values));
+	}
+
+	private String readFile() throws IOException {
+		File file = new File(IncrementalExport.getDirectory(folder.getRoot(), QUERY), "Ethereum-00001.csv");
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Exports three runs and tests if every run only appends the new rows and
+	 * orphans are corrected once
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRuns() throws InterruptedException, IOException {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		recorder.addChunk("time >= '1970-01-01T00:00:00Z'",
+				chunk(row(t1, "0x1", 1.0, false), row(t2, "0x2", 2.0, false)));
+		IncrementalExport first = new IncrementalExport(RecordingInfluxDB.create(recorder), folder.getRoot(), QUERY, 10);
+		Assert.assertEquals(2, first.run());
+		Assert.assertEquals(2, first.getBlockNumber());
+		Instant watermark = first.getWatermark();
+		Assert.assertNotNull(watermark);
+		Assert.assertEquals(1, recorder.getQueries().size());
+
+		// block 1 became an orphan and block 3 was added
+		recorder.clearChunks();
+		recorder.addChunk("Orphan = true", chunk(row(t1, "0x1", 1.0, true)));
+		recorder.addChunk("time >= '" + watermark + "' AND", chunk(row(Instant.now().toString(), "0x3", 3.0, false)));
+		IncrementalExport second = new IncrementalExport(RecordingInfluxDB.create(recorder), folder.getRoot(), QUERY,
+				10);
+		second.setLag(Duration.ofSeconds(-1));
+		Assert.assertEquals(2, second.run());
+		Assert.assertEquals(1, second.getCorrections());
+		Assert.assertEquals(3, second.getBlockNumber());
+		Assert.assertTrue(recorder.getQueries().get(1).startsWith(QUERY + " WHERE Orphan = true AND time >= '"));
+
+		// the orphan was already corrected
+		recorder.clearChunks();
+		recorder.addChunk("Orphan = true", chunk(row(t1, "0x1", 1.0, true)));
+		IncrementalExport third = new IncrementalExport(RecordingInfluxDB.create(recorder), folder.getRoot(), QUERY, 10);
+		third.setLag(Duration.ofSeconds(-2));
+		Assert.assertEquals(0, third.run());
+
+		String rows = readFile();
+		Assert.assertTrue(rows.startsWith("time,Hash,BlockNumber,Orphan" + NL + t1 + ",0x1,1,false" + NL + t2
+				+ ",0x2,2,false" + NL + t1 + ",0x1,1,true" + NL));
+		Assert.assertEquals(5, rows.split(NL).length);
+	}
+
+	/**
+	 * Tests if a failed run leaves the files and the watermark unchanged
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRollback() throws InterruptedException, IOException {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		recorder.addChunk(chunk(row(t1, "0x1", 1.0, false)));
+		IncrementalExport first = new IncrementalExport(RecordingInfluxDB.create(recorder), folder.getRoot(), QUERY, 10);
+		Assert.assertEquals(1, first.run());
+		String rows = readFile();
+
+		QueryResult error = new QueryResult();
+		error.setError("timeout");
+		recorder.addChunk(error);
+		IncrementalExport second = new IncrementalExport(RecordingInfluxDB.create(recorder), folder.getRoot(), QUERY,
+				10);
+		second.setLag(Duration.ofSeconds(-1));
+		try {
+			second.run();
+			Assert.fail("Run should fail!");
+		} catch (QueryExport.ExportException e) {
+			// expected
+		}
+		Assert.assertEquals(rows, readFile());
+
+		IncrementalExport third = new IncrementalExport(RecordingInfluxDB.create(recorder), folder.getRoot(), QUERY, 10);
+		third.setLag(Duration.ofSeconds(-1));
+		recorder.clearChunks();
+		third.run();
+		List<String> queries = recorder.getQueries();
+		Assert.assertTrue(queries.get(queries.size() - 1).contains("time >= '" + first.getWatermark() + "'"));
+	}
+}
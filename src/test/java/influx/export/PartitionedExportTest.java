@@ -0,0 +1,129 @@
+package influx.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Query;
+import org.influxdb.dto.QueryResult;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test that tests the partitioning and merging of the parallel export
+ *
+ * @author Yannick
+ *
+ */
+public class PartitionedExportTest {
+
+	private static final String NL = System.lineSeparator();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static QueryResult chunk(List<String> columns, List<Object> row) {
+		QueryResult.Series series = new QueryResult.Series();
+		series.setName("Ethereum");
+		series.setColumns(columns);
+		series.setValues(Collections.singletonList(row));
+		QueryResult.Result result = new QueryResult.Result();
+		result.setSeries(Collections.singletonList(series));
+		QueryResult queryResult = new QueryResult();
+		queryResult.setResults(Collections.singletonList(result));
+		return queryResult;
+	}
+
+	/**
+	 * Creates an {@link InfluxDB} that returns one row per partition. The first
+	 * partition has no Miner column and the second one fails once
+	 */
+	@SuppressWarnings("unchecked")
+	private static InfluxDB createInfluxDB(AtomicInteger queries) {
+		return (InfluxDB) Proxy.newProxyInstance(InfluxDB.class.getClassLoader(), new Class<?>[] { InfluxDB.class },
+				(proxy, method, args) -> {
+					if (!method.getName().equals("query") || args.length < 4)
+						return null;
+					queries.incrementAndGet();
+					String command = ((Query) args[0]).getCommand();
+					BiConsumer<InfluxDB.Cancellable, QueryResult> consumer = (BiConsumer<InfluxDB.Cancellable, QueryResult>) args[2];
+					InfluxDB.Cancellable cancellable = new InfluxDB.Cancellable() {
+						@Override
+						public void cancel() {
+						}
+
+						@Override
+						public boolean isCanceled() {
+							return false;
+						}
+					};
+					if (command.contains("time >= '1970-01-01T00:00:00Z'"))
+						consumer.accept(cancellable, chunk(Arrays.asList("time", "BlockNumber"),
+								new ArrayList<Object>(Arrays.asList("1970-01-01T00:00:01Z", 1.0))));
+					else if (queries.get() == 2) {
+						QueryResult error = new QueryResult();
+						error.setError("timeout");
+						consumer.accept(cancellable, error);
+						return null;
+					} else
+						consumer.accept(cancellable, chunk(Arrays.asList("time", "BlockNumber", "Miner"),
+								new ArrayList<Object>(Arrays.asList("1970-01-01T00:00:11Z", 2.0, "a,b"))));
+					QueryResult done = new QueryResult();
+					done.setError("DONE");
+					consumer.accept(cancellable, done);
+					((Runnable) args[3]).run();
+					return null;
+				});
+	}
+
+	/**
+	 * Tests if the time range is added to the where clause
+	 */
+	@Test
+	public void testWithTimeRange() {
+		Instant start = Instant.ofEpochSecond(0);
+		Instant end = Instant.ofEpochSecond(10);
+		Assert.assertEquals(
+				"select * from Ethereum WHERE time >= '1970-01-01T00:00:00Z' AND time < '1970-01-01T00:00:10Z'",
+				PartitionedExport.withTimeRange("select * from Ethereum", start, end));
+		Assert.assertEquals(
+				"select * from Ethereum WHERE (Orphan = true OR BlockNumber = 1) AND time >= '1970-01-01T00:00:00Z'"
+						+ " AND time < '1970-01-01T00:00:10Z' group by Node",
+				PartitionedExport.withTimeRange("select * from Ethereum where Orphan = true OR BlockNumber = 1 group by Node",
+						start, end));
+	}
+
+	/**
+	 * Exports two partitions with different columns, one of which fails once, and
+	 * tests the merged file
+	 */
+	@Test
+	public void testMerge() throws InterruptedException, IOException {
+		AtomicInteger queries = new AtomicInteger();
+		PartitionedExport export = new PartitionedExport(createInfluxDB(queries), folder.getRoot(), 1, 10);
+		Assert.assertEquals(2, export.run("select * from Ethereum", Instant.ofEpochSecond(0),
+				Instant.ofEpochSecond(20), Duration.ofSeconds(10), true));
+		Assert.assertEquals(3, queries.get());
+
+		List<File> files = export.getFiles();
+		Assert.assertEquals(1, files.size());
+		Assert.assertEquals("Ethereum-0-20.csv", files.get(0).getName());
+		Assert.assertEquals("time,BlockNumber,Miner" + NL + "1970-01-01T00:00:01Z,1," + NL
+				+ "1970-01-01T00:00:11Z,2,\"a,b\"" + NL,
+				new String(Files.readAllBytes(files.get(0).toPath()), StandardCharsets.UTF_8));
+		Assert.assertFalse(new File(folder.getRoot(), "partitions-0-20").exists());
+	}
+}
@@ -0,0 +1,87 @@
+package influx.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.influxdb.dto.QueryResult;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import influx.RecordingInfluxDB;
+
+/**
+ * Test that tests the streaming CSV export
+ *
+ * @author Yannick
+ *
+ */
+public class QueryExportTest {
+
+	private static final String NL = System.lineSeparator();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@SafeVarargs
+	private static QueryResult chunk(String name, List<Object>... rows) {
+		QueryResult.Series series = new QueryResult.Series();
+		series.setName(name);
+		series.setColumns(Arrays.asList("time", "BlockNumber", "Miner", "Orphan"));
+		series.setValues(Arrays.asList(rows));
+		QueryResult.Result result = new QueryResult.Result();
+		result.setSeries(Collections.singletonList(series));
+		QueryResult queryResult = new QueryResult();
+		queryResult.setResults(Collections.singletonList(result));
+		return queryResult;
+	}
+
+	private static List<Object> row(Object... values) {
+		return new ArrayList<>(Arrays.asList(values));
+	}
+
+	/**
+	 * Exports a series delivered in two chunks and a second series and tests if
+	 * every file only contains its own rows
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testExport() throws InterruptedException, IOException {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		recorder.addChunk(chunk("Ethereum", row("1970-01-01T00:00:01Z", 1.0, "0xa", false),
+				row("1970-01-01T00:00:02Z", 2.0, "a \"quoted\", miner", true)));
+		recorder.addChunk(chunk("Ethereum", row("1970-01-01T00:00:03Z", 1.5, null, false)));
+		recorder.addChunk(chunk("Bitcoin", row("1970-01-01T00:00:04Z", 4.0, "0xb", false)));
+
+		QueryExport export = new QueryExport(RecordingInfluxDB.create(recorder), folder.getRoot(), 2);
+		Assert.assertEquals(4, export.run("select * from /.*/"));
+
+		List<File> files = export.getFiles();
+		Assert.assertEquals(2, files.size());
+		Assert.assertTrue(files.get(0).getName().startsWith("Ethereum-"));
+		Assert.assertEquals("time,BlockNumber,Miner,Orphan" + NL + "1970-01-01T00:00:01Z,1,0xa,false" + NL
+				+ "1970-01-01T00:00:02Z,2,\"a \"\"quoted\"\", miner\",true" + NL + "1970-01-01T00:00:03Z,1.5,,false" + NL,
+				new String(Files.readAllBytes(files.get(0).toPath()), StandardCharsets.UTF_8));
+		Assert.assertEquals("time,BlockNumber,Miner,Orphan" + NL + "1970-01-01T00:00:04Z,4,0xb,false" + NL,
+				new String(Files.readAllBytes(files.get(1).toPath()), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Tests if a query error is reported
+	 */
+	@Test(expected = QueryExport.ExportException.class)
+	public void testQueryError() throws InterruptedException {
+		RecordingInfluxDB recorder = new RecordingInfluxDB();
+		QueryResult error = new QueryResult();
+		error.setError("error parsing query");
+		recorder.addChunk(error);
+		new QueryExport(RecordingInfluxDB.create(recorder), folder.getRoot(), 2).run("selec");
+	}
+}
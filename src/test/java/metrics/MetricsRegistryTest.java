@@ -0,0 +1,102 @@
+package metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test that tests the registration, the Prometheus text format, the Influx
+ * records and the HTTP endpoint of the metrics
+ *
+ * @author Yannick
+ *
+ */
+public class MetricsRegistryTest {
+
+	/**
+	 * Creates a registry with a counter, a gauge and a histogram
+	 */
+	private static MetricsRegistry createRegistry() {
+		MetricsRegistry registry = new MetricsRegistry();
+		Counter counter = registry.counter("test_blocks_total", "Blocks", "node", "http://node:8545");
+		counter.increment();
+		counter.add(2);
+		Assert.assertSame(counter, registry.counter("test_blocks_total", "Blocks", "node", "http://node:8545"));
+		registry.gauge("test_queue_depth", "Queue", () -> 7, "stage", "Fetch");
+		LatencyHistogram histogram = registry.histogram("test_latency_seconds", "Latency", "method", "eth_syncing");
+		for (int i = 1; i <= 100; i++)
+			histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(i));
+		return registry;
+	}
+
+	/**
+	 * Tests if all metrics are rendered in the Prometheus text format
+	 */
+	@Test
+	public void testPrometheus() {
+		String text = createRegistry().toPrometheus();
+		Assert.assertTrue(text.contains("# TYPE test_blocks_total counter\ntest_blocks_total{node=\"http://node:8545\"} 3.0\n"));
+		Assert.assertTrue(text.contains("# TYPE test_queue_depth gauge\ntest_queue_depth{stage=\"Fetch\"} 7.0\n"));
+		Assert.assertTrue(text.contains("# TYPE test_latency_seconds summary\n"));
+		Assert.assertTrue(text.contains("test_latency_seconds_count{method=\"eth_syncing\"} 100.0\n"));
+		Assert.assertTrue(text.contains("test_latency_seconds_sum{method=\"eth_syncing\"} 5.05\n"));
+		Assert.assertTrue(text.contains("test_latency_seconds{method=\"eth_syncing\",quantile=\"0.5\"} 0.05"));
+		Assert.assertTrue(text.contains("test_latency_seconds{method=\"eth_syncing\",quantile=\"0.99\"} 0.099"));
+	}
+
+	/**
+	 * Tests if every metric is encoded as record with its labels as tags
+	 */
+	@Test
+	public void testRecords() {
+		List<String> records = createRegistry().toRecords(1000);
+		Assert.assertEquals(3, records.size());
+		Assert.assertEquals("test_blocks_total,node=http://node:8545 value=3i 1000000000000", records.get(0));
+		Assert.assertEquals("test_queue_depth,stage=Fetch value=7.0 1000000000000", records.get(1));
+		Assert.assertTrue(records.get(2).startsWith("test_latency_seconds,method=eth_syncing count=100i,"));
+		Assert.assertTrue(records.get(2).contains("p999="));
+	}
+
+	/**
+	 * Tests if a metric name can't be registered with another type
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testTypeConflict() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("test_metric", "Metric");
+		registry.histogram("test_metric", "Metric");
+	}
+
+	/**
+	 * Scrapes the metrics from the HTTP endpoint
+	 */
+	@Test
+	public void testServer() throws IOException {
+		MetricsServer server = new MetricsServer(createRegistry(), 0);
+		server.start();
+		try {
+			URL url = new URL("http://localhost:" + server.getPort() + MetricsServer.PATH);
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			Assert.assertEquals(200, connection.getResponseCode());
+			Assert.assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = connection.getInputStream()) {
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = in.read(buffer)) != -1)
+					body.write(buffer, 0, read);
+			}
+			Assert.assertTrue(new String(body.toByteArray(), StandardCharsets.UTF_8).contains("test_blocks_total"));
+		} finally {
+			server.stop();
+		}
+	}
+}